@@ -63,6 +63,7 @@ public class BCLParameters {
     public final boolean hasIndex2;
     public final int index1Length;
     public final int index2Length;
+    public final Map<Integer, List<String>> tileNameListByLaneInt;
 
     public BCLParameters(Path bclPath) throws ParserConfigurationException, IOException, SAXException {
 
@@ -81,6 +82,9 @@ public class BCLParameters {
         // record index length(s)
         this.index1Length = getIndex1Length(this.readInfoSet);
         this.index2Length = getIndex2Length(this.readInfoSet);
+
+        // record the tiles of each lane
+        this.tileNameListByLaneInt = getTileNameListByLaneInt(runInfoXML);
     }
 
     static Set<ReadInfo> getReadInfoSet(String runInfoXML)
@@ -147,6 +151,80 @@ public class BCLParameters {
                 .length;
     }
 
+    static Map<Integer, List<String>> getTileNameListByLaneInt(String runInfoXML)
+            throws IOException, SAXException, ParserConfigurationException {
+
+        // create xml document
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(new InputSource(new StringReader(runInfoXML)));
+
+        // get all the tile nodes, older run info files do not list their tiles
+        NodeList tileNodeList = document.getElementsByTagName("Tile");
+
+        // create the tile name list map, tiles are listed as lane_tile
+        Map<Integer, List<String>> tileNameListByLaneInt = new HashMap<>();
+        for (int i = 0; i < tileNodeList.getLength(); i++) {
+
+            String[] laneTile = tileNodeList.item(i).getTextContent().strip().split("_");
+
+            if (laneTile.length != 2) {
+                throw new RuntimeException("could not parse the tile, " + tileNodeList.item(i).getTextContent());
+            }
+
+            int laneInt = Integer.parseInt(laneTile[0]);
+
+            if (!tileNameListByLaneInt.containsKey(laneInt)) { tileNameListByLaneInt.put(laneInt, new ArrayList<>()); }
+
+            tileNameListByLaneInt.get(laneInt).add(laneTile[1]);
+        }
+
+        // set sorted unmodifiable views of the tile lists
+        tileNameListByLaneInt.replaceAll((k,v)->v.stream().sorted().collect(Collectors.toUnmodifiableList()));
+
+        return Collections.unmodifiableMap(tileNameListByLaneInt);
+    }
+
+    public List<String> getTilesArgList(Set<Integer> laneIntSet, int tileShardNumber) {
+        return getTilesArgList(this.tileNameListByLaneInt, laneIntSet, tileShardNumber);
+    }
+
+    static List<String> getTilesArgList(
+            Map<Integer, List<String>> tileNameListByLaneInt, Set<Integer> laneIntSet, int tileShardNumber) {
+
+        // we can only split lanes whose tiles are known
+        if (tileShardNumber < 2 || !tileNameListByLaneInt.keySet().containsAll(laneIntSet)) { return List.of(); }
+
+        // every shard needs at least one tile from every lane
+        for (int laneInt : laneIntSet) {
+            tileShardNumber = Math.min(tileShardNumber, tileNameListByLaneInt.get(laneInt).size());
+        }
+
+        if (tileShardNumber < 2) { return List.of(); }
+
+        // give each shard a contiguous range of each lane's tiles
+        List<String> tilesArgList = new ArrayList<>();
+        for (int i = 0; i < tileShardNumber; i++) {
+
+            List<String> tileRegexList = new ArrayList<>();
+            for (int laneInt : laneIntSet.stream().sorted().collect(Collectors.toList())) {
+
+                List<String> tileNameList = tileNameListByLaneInt.get(laneInt);
+
+                int start = tileNameList.size() * i / tileShardNumber;
+                int end = tileNameList.size() * (i + 1) / tileShardNumber;
+
+                for (String tileName : tileNameList.subList(start, end)) {
+                    tileRegexList.add("s_" + laneInt + "_" + tileName);
+                }
+            }
+
+            tilesArgList.add(String.join(",", tileRegexList));
+        }
+
+        return Collections.unmodifiableList(tilesArgList);
+    }
+
     public List<String> getLogLines() {
 
         List<String> logLines = new ArrayList<>();
@@ -154,6 +232,9 @@ public class BCLParameters {
         logLines.add("Index 1 Length: " + this.index1Length);
         logLines.add("Index 2 Length: " + this.index2Length);
         logLines.add("Has Index 2: " + this.hasIndex2);
+        logLines.add("Tile Count By Lane: " + this.tileNameListByLaneInt.keySet().stream().sorted()
+                .map(laneInt -> laneInt + "=" + this.tileNameListByLaneInt.get(laneInt).size())
+                .collect(Collectors.joining(", ")));
         logLines.add("Read Info Set:");
 
         for (BCLParameters.ReadInfo readInfo : this.readInfoSet) {
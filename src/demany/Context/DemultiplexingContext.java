@@ -1,7 +1,6 @@
 package demany.Context;
 
 import demany.Fastq.Fastq;
-import demany.SampleIndex.SampleIndexKeyMappingCollection;
 import demany.SampleIndex.SampleIndexLookup;
 import demany.SampleIndex.SampleIndexSpec;
 
@@ -51,8 +50,11 @@ public class DemultiplexingContext {
     public final int index1Length;
     public final int index2Length;
     public final boolean index2ReverseCompliment;
+    public final int index1MismatchLimit;
+    public final int index2MismatchLimit;
     public final Set<String> readTypeSet;
     public final Set<String> nonIndexReadTypeSet;
+    public final Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr;
     public final Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr;
     public final Map<String, Set<SampleIdData>> sampleIdDataSetByLaneStr;
     public final Map<String, Set<SampleIndexSpec>> sampleIndexSpecSetByLaneStr;
@@ -60,19 +62,24 @@ public class DemultiplexingContext {
     public final Map<String, Map<String, Map<String, Fastq>>> outputFastqByReadTypeByIdByLaneStr;
 
     public DemultiplexingContext(
-            Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr,
+            Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr,
             Map<String, Set<SampleIndexSpec>> sampleIndexSpecSetByLaneStr,
             int index1Length,
             int index2Length,
             boolean index2ReverseCompliment,
+            int index1MismatchLimit,
+            int index2MismatchLimit,
             Path demultiplexedFastqsDirPath,
             Path indexCountsDirPath
     ) throws IOException {
 
         // check input
-        if (masterFastqByReadTypeByLaneStr.isEmpty()) {
+        if (masterFastqByReadTypeListByLaneStr.isEmpty()) {
             throw new RuntimeException("the master fastq map cannot be empty");
         }
+        if (masterFastqByReadTypeListByLaneStr.values().stream().anyMatch(List::isEmpty)) {
+            throw new RuntimeException("each lane needs at least one set of master fastqs");
+        }
         if (sampleIndexSpecSetByLaneStr.isEmpty()) {
             throw new RuntimeException("cannot have an empty sample index spec by lane str map");
         }
@@ -91,13 +98,25 @@ public class DemultiplexingContext {
         if (index2ReverseCompliment && index2Length == 0) {
             throw new RuntimeException("if index 2 is reverse compliment it cannot be of length 0");
         }
+        if (index1MismatchLimit < 0 || index2MismatchLimit < 0) {
+            throw new RuntimeException("index mismatch limits cannot be less than 0");
+        }
+
+        this.masterFastqByReadTypeListByLaneStr = masterFastqByReadTypeListByLaneStr;
+
+        // a lane split into tile shards has a set of master fastqs for each shard, the first stands in for the lane
+        this.masterFastqByReadTypeByLaneStr = masterFastqByReadTypeListByLaneStr.keySet().stream()
+                .collect(Collectors.toUnmodifiableMap(
+                        laneStr -> laneStr, laneStr -> masterFastqByReadTypeListByLaneStr.get(laneStr).get(0)
+                ));
 
-        this.masterFastqByReadTypeByLaneStr = masterFastqByReadTypeByLaneStr;
         this.sampleIndexSpecSetByLaneStr = sampleIndexSpecSetByLaneStr;
         this.hasIndex2 = index2Length != 0;
         this.index1Length = index1Length;
         this.index2Length = index2Length;
         this.index2ReverseCompliment = index2ReverseCompliment;
+        this.index1MismatchLimit = index1MismatchLimit;
+        this.index2MismatchLimit = index2MismatchLimit;
         this.demultiplexedFastqsDirPath = demultiplexedFastqsDirPath;
         this.indexCountsDirPath = indexCountsDirPath;
 
@@ -193,21 +212,19 @@ public class DemultiplexingContext {
 
     private Map<String, SampleIndexLookup> getSampleIndexLookupByLaneStr() {
 
-        Map<String, SampleIndexLookup> sampleIndexLookupByLaneStr = new HashMap<>();
-        for (String laneStr : this.sampleIndexSpecSetByLaneStr.keySet()) {
-
-            sampleIndexLookupByLaneStr.put(
-                    laneStr,
-                    new SampleIndexLookup(
-                            new SampleIndexKeyMappingCollection(
-                                    this.sampleIndexSpecSetByLaneStr.get(laneStr), index1Length, index2Length
-                            ),
-                            this.index2ReverseCompliment
-                    )
-            );
-        }
-
-        return Collections.unmodifiableMap(sampleIndexLookupByLaneStr);
+        // the lanes' lookups do not depend on each other, so they are built in parallel
+        return this.sampleIndexSpecSetByLaneStr.keySet().parallelStream()
+                .collect(Collectors.toUnmodifiableMap(
+                        laneStr -> laneStr,
+                        laneStr -> new SampleIndexLookup(
+                                this.sampleIndexSpecSetByLaneStr.get(laneStr),
+                                this.index1Length,
+                                this.index2Length,
+                                this.index2ReverseCompliment,
+                                this.index1MismatchLimit,
+                                this.index2MismatchLimit
+                        )
+                ));
     }
 
     private Map<String, Map<String, Map<String, Fastq>>> getOutputFastqByReadTypeByIdByLaneStr() throws IOException {
@@ -1,5 +1,6 @@
 package demany.Context;
 
+import demany.SampleIndex.SampleIndexLookup;
 import demany.SampleIndex.SampleIndexSpec;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -19,6 +20,13 @@ public class Input {
     static final String bclPathKey = "bclPath";
     static final String processingThreadNumberKey = "processingThreadNumber";
     static final String useBasesMaskArgKey = "--use-bases-mask";
+    static final String masterFastqDirPathKey = "masterFastqDirPath";
+    static final String tileShardNumberKey = "tileShardNumber";
+    static final String compressionThreadNumberKey = "compressionThreadNumber";
+    static final String sharedNothingPipelineKey = "sharedNothingPipeline";
+    static final String inFlightByteBudgetKey = "inFlightByteBudget";
+    static final String index1MismatchLimitKey = "index1MismatchLimit";
+    static final String index2MismatchLimitKey = "index2MismatchLimit";
 
     public final Set<SampleIndexSpec> sampleIndexSpecSet;
     public final boolean sampleSpecSetHasIndex2;
@@ -26,6 +34,13 @@ public class Input {
     public final Path bclPath;
     public final int processingThreadNumber;
     public final String useBasesMaskArg;
+    public final Path masterFastqDirPath;
+    public final int tileShardNumber;
+    public final int compressionThreadNumber;
+    public final boolean sharedNothingPipeline;
+    public final long inFlightByteBudget;
+    public final int index1MismatchLimit;
+    public final int index2MismatchLimit;
 
     public Input(String jsonInput) throws Exception {
 
@@ -52,12 +67,48 @@ public class Input {
         // get the bcl dir path
         this.bclPath = Paths.get(inputObject.get(Input.bclPathKey).toString()).toAbsolutePath();
 
-        // get the processing Thread Number
-        this.processingThreadNumber = Integer.parseInt(inputObject.get(Input.processingThreadNumberKey).toString());
+        // get the processing thread number, by default it is every processor the jvm sees, which already honours the
+        // container's cpu quota
+        this.processingThreadNumber = inputObject.containsKey(Input.processingThreadNumberKey) ?
+                Integer.parseInt(inputObject.get(Input.processingThreadNumberKey).toString()) :
+                Runtime.getRuntime().availableProcessors();
 
         // get the use bases mask argument if it is available
         this.useBasesMaskArg = inputObject.containsKey(Input.useBasesMaskArgKey) ?
                 inputObject.get(Input.useBasesMaskArgKey).toString() : null;
 
+        // get the dir of master fastqs to demultiplex instead of running bcl2fastq if it is available, its fastqs may be
+        // gzipped or uncompressed
+        this.masterFastqDirPath = inputObject.containsKey(Input.masterFastqDirPathKey) ?
+                Paths.get(inputObject.get(Input.masterFastqDirPathKey).toString()).toAbsolutePath() : null;
+
+        // get the number of tile shards to split each lane into if it is available
+        this.tileShardNumber = inputObject.containsKey(Input.tileShardNumberKey) ?
+                Integer.parseInt(inputObject.get(Input.tileShardNumberKey).toString()) : 1;
+
+        // get how many of the processing threads start out compressing if it is available, by default most of them
+        this.compressionThreadNumber = inputObject.containsKey(Input.compressionThreadNumberKey) ?
+                Integer.parseInt(inputObject.get(Input.compressionThreadNumberKey).toString()) :
+                Math.max(1, this.processingThreadNumber * 3 / 4);
+
+        // determine if each thread should read, classify and compress a shard of its own if it is available, by default
+        // the threads are shared between the stages of the demultiplexing pipeline
+        this.sharedNothingPipeline = inputObject.containsKey(Input.sharedNothingPipelineKey) &&
+                Boolean.parseBoolean(inputObject.get(Input.sharedNothingPipelineKey).toString());
+
+        // get the most bytes of sequences that may be read but not yet written if it is available, by default a
+        // quarter of the heap
+        this.inFlightByteBudget = inputObject.containsKey(Input.inFlightByteBudgetKey) ?
+                Long.parseLong(inputObject.get(Input.inFlightByteBudgetKey).toString()) :
+                Runtime.getRuntime().maxMemory() / 4;
+
+        // get how many mismatches each index may have and still match a sample if they are available
+        this.index1MismatchLimit = inputObject.containsKey(Input.index1MismatchLimitKey) ?
+                Integer.parseInt(inputObject.get(Input.index1MismatchLimitKey).toString()) :
+                SampleIndexLookup.DEFAULT_MISMATCH_LIMIT;
+        this.index2MismatchLimit = inputObject.containsKey(Input.index2MismatchLimitKey) ?
+                Integer.parseInt(inputObject.get(Input.index2MismatchLimitKey).toString()) :
+                SampleIndexLookup.DEFAULT_MISMATCH_LIMIT;
+
     }
 }
@@ -1,101 +1,185 @@
 package demany.Fastq;
 
-import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import demany.Utils.ChunkedByteArrayOutputStream;
+import demany.Utils.PooledGzipOutputStream;
+
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
 public class CompressedSequenceGroup {
 
-    private static class BufferedWriterCountPair {
+    private static class SequenceBytesCountTriple {
 
-        final BufferedWriter bufferedWriter;
+        // the sequence bytes go into pooled chunks, so growing never copies them
+        ChunkedByteArrayOutputStream bytes = new ChunkedByteArrayOutputStream();
         int count = 0;
-
-        BufferedWriterCountPair(BufferedWriter bufferedWriter) { this.bufferedWriter = bufferedWriter; }
     }
 
-    public final HashMap<String, ByteArrayOutputStream> byteArrayByReadType = new HashMap<>();
-    private final HashMap<String, GZIPOutputStream> gzipOutputStreamByReadType = new HashMap<>();
-    private final HashMap<String, BufferedWriterCountPair> bufferedWriterCountByReadType = new HashMap<>();
+    public final HashMap<String, ChunkedByteArrayOutputStream> byteArrayByReadType = new HashMap<>();
+    private final HashMap<String, SequenceBytesCountTriple> sequenceBytesCountByReadType = new HashMap<>();
     private boolean completed = false;
+    private boolean compressed = false;
     private int sequencesWritten = 0;
 
-    public CompressedSequenceGroup(Set<String> readTypeSet) throws IOException {
+    public CompressedSequenceGroup(Set<String> readTypeSet) {
 
+        // create the buffer that will hold the uncompressed sequence bytes for each read type
         for (String readType : readTypeSet) {
+            this.sequenceBytesCountByReadType.put(readType, new SequenceBytesCountTriple());
+        }
+    }
 
-            // create the byte array and buffered writer
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(32768);
-            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-            BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(gzipOutputStream));
+    public void addSequence(String readType, SequenceBlock sequenceBlock, int sequenceIndex) {
 
-            // store the byte array output stream
-            this.byteArrayByReadType.put(readType, byteArrayOutputStream);
+        if (this.completed) { throw new RuntimeException("cannot add sequence lines to a completed sequence group"); }
 
-            // store the gzip output stream
-            this.gzipOutputStreamByReadType.put(readType, gzipOutputStream);
+        SequenceBytesCountTriple triple = this.sequenceBytesCountByReadType.get(readType);
 
-            // store the buffered writer
-            this.bufferedWriterCountByReadType.put(readType, new BufferedWriterCountPair(bufferedWriter));
+        // copy the sequence's bytes as they were read from the input into the buffer, unless its lines end in carriage
+        // returns, which are dropped so that every line ends in a new line character alone
+        int lineByteNumber = 0;
+        for (int lineNumber = 1; lineNumber <= SequenceBlock.LINES_PER_SEQUENCE; lineNumber++) {
+            lineByteNumber += sequenceBlock.getLineLength(sequenceIndex, lineNumber) + 1;
         }
+
+        if (lineByteNumber == sequenceBlock.getSequenceLength(sequenceIndex)) {
+
+            triple.bytes.write(
+                    sequenceBlock.buffer,
+                    sequenceBlock.getSequenceStart(sequenceIndex),
+                    sequenceBlock.getSequenceLength(sequenceIndex)
+            );
+
+        } else {
+
+            for (int lineNumber = 1; lineNumber <= SequenceBlock.LINES_PER_SEQUENCE; lineNumber++) {
+
+                triple.bytes.write(
+                        sequenceBlock.buffer,
+                        sequenceBlock.getLineStart(sequenceIndex, lineNumber),
+                        sequenceBlock.getLineLength(sequenceIndex, lineNumber)
+                );
+                triple.bytes.write('\n');
+            }
+        }
+
+        triple.count++;
     }
 
-    public void addSequence(String readType, SequenceLines sequenceLines) throws IOException {
+    // moves the sequences of a completed group that has not been compressed to the end of this one
+    public void addSequences(CompressedSequenceGroup compressedSequenceGroup) {
 
-        if (this.completed) { throw new RuntimeException("cannot add sequence lines to a completed sequence group"); }
+        if (this.completed) { throw new RuntimeException("cannot add sequences to a completed sequence group"); }
+        if (!compressedSequenceGroup.completed || compressedSequenceGroup.compressed) {
+            throw new RuntimeException("only the sequences of a completed, uncompressed sequence group can be added");
+        }
+        if (!this.sequenceBytesCountByReadType.keySet().equals(
+                compressedSequenceGroup.sequenceBytesCountByReadType.keySet())) {
+            throw new RuntimeException("only the sequences of a sequence group with the same read types can be added");
+        }
 
-        BufferedWriterCountPair pair = this.bufferedWriterCountByReadType.get(readType);
-        BufferedWriter writer = pair.bufferedWriter;
+        for (String readType : this.sequenceBytesCountByReadType.keySet()) {
 
-        writer.write(sequenceLines.line1); writer.newLine();
+            SequenceBytesCountTriple triple = this.sequenceBytesCountByReadType.get(readType);
+            SequenceBytesCountTriple addedTriple = compressedSequenceGroup.sequenceBytesCountByReadType.get(readType);
 
-        writer.write(sequenceLines.line2); writer.newLine();
+            try {
+                addedTriple.bytes.writeTo(triple.bytes);
+            } catch (IOException e) {
+                throw new RuntimeException("could not add sequences: " + e.getMessage());
+            }
 
-        writer.write(sequenceLines.line3); writer.newLine();
+            triple.count += addedTriple.count;
+        }
 
-        writer.write(sequenceLines.line4); writer.newLine();
+        // the added group's bytes live on in this one
+        compressedSequenceGroup.recycle();
+    }
 
-        pair.count++;
+    // the number of uncompressed sequence bytes the group holds
+    public long getUncompressedByteNumber() {
+
+        long byteNumber = 0;
+        for (SequenceBytesCountTriple triple : this.sequenceBytesCountByReadType.values()) {
+            if (triple.bytes != null) { byteNumber += triple.bytes.size(); }
+        }
+
+        return byteNumber;
     }
 
-    public void markCompleted() throws IOException {
+    public void markCompleted() {
 
         if (this.completed) { throw new RuntimeException("a sequence group should not be marked completed twice"); }
 
-        // flush all the writers and check the number of sequences written to each
+        // check the number of sequences written to each read type
         int sequencesWritten = -1;
-        for (BufferedWriterCountPair pair : this.bufferedWriterCountByReadType.values()) {
+        for (SequenceBytesCountTriple triple : this.sequenceBytesCountByReadType.values()) {
 
-            // check the number of sequences written
             if (sequencesWritten == -1) {
-                sequencesWritten = pair.count;
+                sequencesWritten = triple.count;
 
-            } else if (sequencesWritten != pair.count) {
+            } else if (sequencesWritten != triple.count) {
 
                 throw new RuntimeException(
                         "a compressed sequence group with different number of sequences written cannot be completed"
                 );
             }
+        }
+
+        this.completed = true;
+        this.sequencesWritten = Math.max(sequencesWritten, 0);
+    }
+
+    public void compress() throws IOException {
 
-            // flush the writer
-            pair.bufferedWriter.flush();
+        if (!this.completed) {
+            throw new RuntimeException("a sequence group must be completed before it is compressed");
         }
+        if (this.compressed) { throw new RuntimeException("a sequence group should not be compressed twice"); }
+
+        // compress the sequence bytes of each read type in one pass
+        for (String readType : this.sequenceBytesCountByReadType.keySet()) {
+
+            SequenceBytesCountTriple triple = this.sequenceBytesCountByReadType.get(readType);
+
+            ChunkedByteArrayOutputStream byteArrayOutputStream = new ChunkedByteArrayOutputStream();
+
+            // the gzip member is deflated by this thread's pooled deflater
+            PooledGzipOutputStream gzipOutputStream = new PooledGzipOutputStream(byteArrayOutputStream);
+            triple.bytes.writeTo(gzipOutputStream);
+            gzipOutputStream.close();
 
-        // finish all the gzip output streams
-        for (GZIPOutputStream gzipOutputStream : this.gzipOutputStreamByReadType.values()) {
-            gzipOutputStream.finish();
+            this.byteArrayByReadType.put(readType, byteArrayOutputStream);
+
+            // hand the uncompressed bytes' chunks back for the next group
+            triple.bytes.release();
+            triple.bytes = null;
         }
 
-        this.completed = true;
-        this.sequencesWritten = sequencesWritten;
+        this.compressed = true;
     }
 
     public boolean isCompleted() { return this.completed; }
 
+    public boolean isCompressed() { return this.compressed; }
+
+    // hands the compressed bytes' chunks back once they have been written, the group cannot be written again
+    public void recycle() {
+
+        for (ChunkedByteArrayOutputStream byteArrayOutputStream : this.byteArrayByReadType.values()) {
+            byteArrayOutputStream.release();
+        }
+
+        // a group that was never compressed still holds its uncompressed bytes
+        for (SequenceBytesCountTriple triple : this.sequenceBytesCountByReadType.values()) {
+            if (triple.bytes != null) {
+                triple.bytes.release();
+                triple.bytes = null;
+            }
+        }
+    }
+
     public boolean isEmpty() {
 
         if (!this.completed) {
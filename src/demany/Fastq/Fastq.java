@@ -20,14 +20,15 @@ public class Fastq {
     public static final String INDEX_2_READ_TYPE_STR = "I2";
     public static final String SAMPLE_1_STR = "S1";
     public static final String STANDARD_TAIL = "001.fastq.gz";
+    private static final String GZIP_EXTENSION = ".gz";
 
     public static final Pattern undeterminedFastqPattern = Pattern.compile(
-            "^(undetermined)_(S[0-9]+)_(L[0-9]*[1-9]+)_([RI][1-9]+[0-9]*)_(001\\.fastq\\.gz)$",
+            "^(undetermined)_(S[0-9]+)_(L[0-9]*[1-9]+)_([RI][1-9]+[0-9]*)_(001\\.fastq(?:\\.gz)?)$",
             Pattern.CASE_INSENSITIVE
     );
 
     public static final Pattern sampleFastqPattern = Pattern.compile(
-            "^([A-Z0-9-_]+)_(S[0-9]+)_(L[0-9]*[1-9]+)_([RI][1-9]+[0-9]*)_(001\\.fastq\\.gz)$",
+            "^([A-Z0-9-_]+)_(S[0-9]+)_(L[0-9]*[1-9]+)_([RI][1-9]+[0-9]*)_(001\\.fastq(?:\\.gz)?)$",
             Pattern.CASE_INSENSITIVE
     );
 
@@ -73,7 +74,7 @@ public class Fastq {
     }
 
     public static FilenameFilter getFastqFilenameFilter() {
-        return (dir, name) -> name.toLowerCase().endsWith("fastq.gz");
+        return (dir, name) -> name.toLowerCase().endsWith("fastq.gz") || name.toLowerCase().endsWith(".fastq");
     }
 
     public static int getLaneIntFromLaneStr(String laneStr) {
@@ -100,6 +101,7 @@ public class Fastq {
     public final String tail;
     private final boolean isUndetermined;
     public final boolean isAnIndexFastq;
+    public final boolean isGzipped;
 
     public Fastq(Path path) throws RuntimeException {
 
@@ -134,6 +136,9 @@ public class Fastq {
 
         // determine if this is an index fastq
         this.isAnIndexFastq = Fastq.indexReadTypePattern.matcher(this.readTypeStr).matches();
+
+        // determine if this fastq is gzipped or plain text
+        this.isGzipped = this.tail.toLowerCase().endsWith(Fastq.GZIP_EXTENSION);
     }
 
     @Override
@@ -161,7 +166,7 @@ public class Fastq {
 
     public String getFirstReadID() throws IOException {
 
-        BufferedReader reader = Utils.getBufferedGzippedFileReader(path);
+        BufferedReader reader = Utils.getBufferedFastqFileReader(path);
 
         String firstLine = reader.readLine();
 
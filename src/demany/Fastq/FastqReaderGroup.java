@@ -1,68 +1,56 @@
 package demany.Fastq;
 
-import demany.Utils.Utils;
-
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 
 public class FastqReaderGroup {
 
-    private final Map<String, BufferedReader> readerByReadType;
+    private final Map<String, SequenceBlockScanner> fastqScannerByReadType;
     private boolean doneReading = false;
 
-    public FastqReaderGroup(Map<String, Fastq> fastqByReadType) throws IOException {
-
-        // get a reader for each fastq passed in
-        Map<String, BufferedReader> tempReaderByReadType = new HashMap<>();
-        for (String readType : fastqByReadType.keySet()) {
-
-            tempReaderByReadType.put(
-                    readType, Utils.getBufferedGzippedFileReader(fastqByReadType.get(readType).path)
-            );
-        }
-
-        this.readerByReadType = Collections.unmodifiableMap(tempReaderByReadType);
+    public FastqReaderGroup(Map<String, SequenceBlockScanner> fastqScannerByReadType) {
+        this.fastqScannerByReadType = Collections.unmodifiableMap(new HashMap<>(fastqScannerByReadType));
     }
 
-    public SequenceGroup readSequences() throws IOException {
+    public SequenceGroup readSequences() { return readSequences(SequenceGroup.MAX_NUMBER_OF_SEQUENCES); }
+
+    public SequenceGroup readSequences(int maxNumberOfSequences) {
 
         // make sure we haven't already finished reading
         if (this.doneReading) { throw new RuntimeException("cannot read sequences after we're done reading"); }
 
-        // create the sequence group that we will be reading in
-        SequenceGroup sequenceGroup = new SequenceGroup(this.readerByReadType.keySet());
-
-        // read in sequences from each reader
-        for (String readType : this.readerByReadType.keySet()) {
+        // scan the next block of each fastq as its own task, so that the fastqs are inflated on whichever workers of
+        // the pool are free, outside of a pool the fastqs are scanned one after another
+        Map<String, ForkJoinTask<SequenceBlock>> scanTaskByReadType = new HashMap<>();
+        for (String readType : this.fastqScannerByReadType.keySet()) {
 
-            BufferedReader reader = this.readerByReadType.get(readType);
+            SequenceBlockScanner fastqScanner = this.fastqScannerByReadType.get(readType);
 
-            for (int i = 0; i < SequenceGroup.MAX_NUMBER_OF_SEQUENCES; i++) {
+            scanTaskByReadType.put(
+                    readType,
+                    ForkJoinTask.adapt(() -> fastqScanner.scanSequences(maxNumberOfSequences))
+            );
+        }
 
-                // read in a sequence, ie 4 lines, from a fastq
-                SequenceLines sequenceLines = new SequenceLines(
-                        reader.readLine(), reader.readLine(), reader.readLine(), reader.readLine()
-                );
+        if (ForkJoinTask.inForkJoinPool()) {
+            ForkJoinTask.invokeAll(scanTaskByReadType.values());
+        } else {
+            for (ForkJoinTask<SequenceBlock> scanTask : scanTaskByReadType.values()) { scanTask.invoke(); }
+        }
 
-                // check to see if we are done reading
-                if (sequenceLines.line1 == null) {
+        // create the sequence group that we will be reading in
+        SequenceGroup sequenceGroup = new SequenceGroup(this.fastqScannerByReadType.keySet());
 
-                    // make sure that all lines are null
-                    if (!sequenceLines.allLinesAreNull()) {
-                        throw new RuntimeException("a partial set of 4 sequence lines was read");
-                    }
+        // zip together the next block of sequences from each fastq
+        for (String readType : this.fastqScannerByReadType.keySet()) {
 
-                    this.doneReading = true;
-                    reader.close();
-                    break;
-                }
+            // add the block to the sequence group that we are reading
+            sequenceGroup.addSequenceBlock(readType, scanTaskByReadType.get(readType).join());
 
-                // add the sequence to the sequence group that we are reading
-                sequenceGroup.addSequence(readType, sequenceLines);
-            }
+            // check to see if we are done reading
+            if (!this.fastqScannerByReadType.get(readType).isNotDoneScanning()) { this.doneReading = true; }
         }
 
         sequenceGroup.markCompleted();
@@ -0,0 +1,162 @@
+package demany.Fastq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class FastqScanner implements SequenceBlockScanner {
+
+    private static final int MINIMUM_BLOCK_SIZE = 65536;
+    private static final int MAXIMUM_BLOCK_SIZE = Integer.MAX_VALUE - 8;
+
+    private final InputStream inputStream;
+    private final long maxTotalNumberOfSequences;
+    private long scannedSequenceNumber = 0;
+    private byte[] carryBytes = new byte[0];
+    private int bytesPerSequenceEstimate = 0;
+    private boolean endOfStream = false;
+    private boolean doneScanning = false;
+
+    public FastqScanner(InputStream inputStream) {
+        this(inputStream, Long.MAX_VALUE);
+    }
+
+    public FastqScanner(InputStream inputStream, long maxTotalNumberOfSequences) {
+
+        // check input
+        if (maxTotalNumberOfSequences < 0) { throw new RuntimeException("cannot scan a negative number of sequences"); }
+
+        this.inputStream = inputStream;
+        this.maxTotalNumberOfSequences = maxTotalNumberOfSequences;
+    }
+
+    @Override
+    public SequenceBlock scanSequences(int maxNumberOfSequences) throws IOException {
+
+        // make sure we haven't already finished scanning
+        if (this.doneScanning) { throw new RuntimeException("cannot scan sequences after we're done scanning"); }
+
+        // never scan past the total number of sequences we were asked for
+        maxNumberOfSequences = (int) Math.min(
+                maxNumberOfSequences, this.maxTotalNumberOfSequences - this.scannedSequenceNumber
+        );
+
+        // take a byte array for this block, sized from the sequences we have seen so far
+        byte[] bytes = SequenceBlockRecycler.takeBytes(getBlockSize(maxNumberOfSequences));
+
+        // start the block with the bytes left over from the last block
+        System.arraycopy(this.carryBytes, 0, bytes, 0, this.carryBytes.length);
+        int length = this.carryBytes.length;
+
+        // find the start of each line, the last entry marks the end of the last complete sequence
+        int maxNumberOfLines = maxNumberOfSequences * SequenceBlock.LINES_PER_SEQUENCE;
+        int[] lineStarts = SequenceBlockRecycler.takeLineStarts(maxNumberOfLines + 1);
+        int lineCount = 0;
+        int position = 0;
+
+        while (lineCount < maxNumberOfLines) {
+
+            // look for the next new line in the bytes we have
+            int newLinePosition = -1;
+            for (int i = position; i < length; i++) {
+
+                if (bytes[i] == '\n') {
+                    newLinePosition = i;
+                    break;
+                }
+            }
+
+            // record the start of the next line if we found one
+            if (newLinePosition != -1) {
+
+                lineCount++;
+                lineStarts[lineCount] = newLinePosition + 1;
+                position = newLinePosition + 1;
+
+                continue;
+            }
+
+            // everything we have has been searched
+            position = length;
+
+            if (this.endOfStream) { break; }
+
+            // make room for more bytes if the block is full
+            if (length == bytes.length) { bytes = growBlock(bytes); }
+
+            // read more bytes into the block
+            int readCount = this.inputStream.read(bytes, length, bytes.length - length);
+
+            if (readCount == -1) {
+
+                this.endOfStream = true;
+                this.inputStream.close();
+
+                // terminate a last line that has no new line character
+                if (length > lineStarts[lineCount]) {
+
+                    if (length == bytes.length) { bytes = growBlock(bytes); }
+
+                    bytes[length] = '\n';
+                    length++;
+                }
+
+            } else {
+                length += readCount;
+            }
+        }
+
+        // determine the number of complete sequences and where they end
+        int numberOfSequences = lineCount / SequenceBlock.LINES_PER_SEQUENCE;
+        int sequencesEnd = lineStarts[numberOfSequences * SequenceBlock.LINES_PER_SEQUENCE];
+
+        // keep the bytes past the last complete sequence for the next block
+        this.carryBytes = Arrays.copyOfRange(bytes, sequencesEnd, length);
+
+        if (this.endOfStream && lineCount < maxNumberOfLines && this.carryBytes.length > 0) {
+            throw new RuntimeException("a partial set of 4 sequence lines was scanned");
+        }
+
+        // check to see if we are done scanning, the rest of the stream is left alone once we have every sequence
+        this.scannedSequenceNumber += numberOfSequences;
+        if (this.scannedSequenceNumber == this.maxTotalNumberOfSequences) {
+
+            this.doneScanning = true;
+            this.carryBytes = new byte[0];
+            this.inputStream.close();
+
+        } else if (this.endOfStream && this.carryBytes.length == 0) {
+            this.doneScanning = true;
+        }
+
+        // update the estimate used to size the next block
+        if (numberOfSequences > 0) { this.bytesPerSequenceEstimate = sequencesEnd / numberOfSequences + 1; }
+
+        return new SequenceBlock(bytes, lineStarts, numberOfSequences, true);
+    }
+
+    @Override
+    public boolean isNotDoneScanning() { return !this.doneScanning; }
+
+    @Override
+    public void close() throws IOException { this.inputStream.close(); }
+
+    private int getBlockSize(int maxNumberOfSequences) {
+
+        long estimatedSize = (long) this.bytesPerSequenceEstimate * maxNumberOfSequences;
+
+        // leave some slack so that a block with slightly longer sequences does not need to grow
+        long blockSize = this.carryBytes.length + estimatedSize + estimatedSize / 8 + MINIMUM_BLOCK_SIZE;
+
+        return (int) Math.min(blockSize, MAXIMUM_BLOCK_SIZE);
+    }
+
+    private static byte[] growBlock(byte[] bytes) {
+
+        if (bytes.length == MAXIMUM_BLOCK_SIZE) {
+            throw new RuntimeException("a sequence block cannot grow beyond the maximum block size");
+        }
+
+        return Arrays.copyOf(bytes, (int) Math.min(bytes.length * 2L, MAXIMUM_BLOCK_SIZE));
+    }
+}
@@ -1,6 +1,7 @@
 package demany.Fastq;
 
-import java.io.ByteArrayOutputStream;
+import demany.Utils.ChunkedByteArrayOutputStream;
+
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collections;
@@ -27,16 +28,17 @@ public class FastqWriterGroup {
 
     public void writeSequences(CompressedSequenceGroup compressedSequenceGroup) throws IOException {
 
-        // make sure the compressed sequence group has completed
-        if (!compressedSequenceGroup.isCompleted()) {
-            throw new RuntimeException("attempted to write an incomplete compressed sequence group to file");
+        // make sure the compressed sequence group has been compressed
+        if (!compressedSequenceGroup.isCompressed()) {
+            throw new RuntimeException("attempted to write an uncompressed sequence group to file");
         }
 
         // write out the sequences
         for (String readType : compressedSequenceGroup.byteArrayByReadType.keySet()) {
 
             // get the byte array output stream
-            ByteArrayOutputStream byteArrayOutputStream = compressedSequenceGroup.byteArrayByReadType.get(readType);
+            ChunkedByteArrayOutputStream byteArrayOutputStream =
+                    compressedSequenceGroup.byteArrayByReadType.get(readType);
 
             // get the file output stream
             FileOutputStream fileOutputStream = this.fileOutputStreamByReadType.get(readType);
@@ -44,6 +46,9 @@ public class FastqWriterGroup {
             // write the byte array output stream's bytes to the file output stream
             byteArrayOutputStream.writeTo(fileOutputStream);
         }
+
+        // the bytes are on their way to disk, hand the group's buffers back for reuse
+        compressedSequenceGroup.recycle();
     }
 
     public void close() throws IOException {
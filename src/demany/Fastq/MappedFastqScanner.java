@@ -0,0 +1,150 @@
+package demany.Fastq;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// scans an uncompressed fastq through memory mapped windows of the file, each block is a slice of the window that
+// holds it, so the sequences are never copied until they are added to a compressed sequence group
+public class MappedFastqScanner implements SequenceBlockScanner {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024 * 1024;
+    private static final int MAXIMUM_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private int windowSize;
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    private long position = 0;
+    private boolean doneScanning = false;
+
+    public MappedFastqScanner(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFastqScanner(Path path, int windowSize) throws IOException {
+
+        // check input
+        if (windowSize < 1) { throw new RuntimeException("the window size must be at least 1"); }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public SequenceBlock scanSequences(int maxNumberOfSequences) throws IOException {
+
+        // make sure we haven't already finished scanning
+        if (this.doneScanning) { throw new RuntimeException("cannot scan sequences after we're done scanning"); }
+
+        // map the first window, later windows are mapped when a block runs past the end of the current one
+        if (this.window == null) { mapWindow(); }
+
+        // find the start of each line, the last entry marks the end of the last complete sequence
+        int maxNumberOfLines = maxNumberOfSequences * SequenceBlock.LINES_PER_SEQUENCE;
+        int[] lineStarts = SequenceBlockRecycler.takeLineStarts(maxNumberOfLines + 1);
+        int blockStart = (int) (this.position - this.windowStart);
+        int lineCount = 0;
+        int index = blockStart;
+        boolean endOfFile = false;
+
+        while (lineCount < maxNumberOfLines) {
+
+            // the block runs past the end of the window
+            if (index == this.window.limit()) {
+
+                if (this.windowStart + this.window.limit() == this.fileSize) {
+                    endOfFile = true;
+                    break;
+                }
+
+                // map a window that starts at this block, a larger one if the block already starts the window
+                if (blockStart == 0) {
+
+                    if (this.windowSize == MAXIMUM_WINDOW_SIZE) {
+                        throw new RuntimeException("a sequence block cannot grow beyond the maximum window size");
+                    }
+
+                    this.windowSize = (int) Math.min(this.windowSize * 2L, MAXIMUM_WINDOW_SIZE);
+                }
+
+                mapWindow();
+
+                index -= blockStart;
+                blockStart = 0;
+                continue;
+            }
+
+            if (this.window.get(index++) == '\n') {
+                lineCount++;
+                lineStarts[lineCount] = index - blockStart;
+            }
+        }
+
+        // determine the number of complete sequences and where they end
+        int numberOfSequences = lineCount / SequenceBlock.LINES_PER_SEQUENCE;
+        int sequencesEnd = lineStarts[numberOfSequences * SequenceBlock.LINES_PER_SEQUENCE];
+        int length = index - blockStart;
+
+        SequenceBlock sequenceBlock;
+        if (endOfFile && length > lineStarts[lineCount]) {
+
+            // a last line with no new line character can only be terminated in a copy of the block
+            if ((lineCount + 1) % SequenceBlock.LINES_PER_SEQUENCE != 0) {
+                throw new RuntimeException("a partial set of 4 sequence lines was scanned");
+            }
+
+            byte[] bytes = new byte[length + 1];
+            this.window.get(blockStart, bytes, 0, length);
+            bytes[length] = '\n';
+
+            lineCount++;
+            lineStarts[lineCount] = length + 1;
+            numberOfSequences = lineCount / SequenceBlock.LINES_PER_SEQUENCE;
+            sequencesEnd = length;
+
+            sequenceBlock = new SequenceBlock(bytes, lineStarts, numberOfSequences);
+
+        } else {
+
+            if (endOfFile && sequencesEnd != length) {
+                throw new RuntimeException("a partial set of 4 sequence lines was scanned");
+            }
+
+            sequenceBlock = new SequenceBlock(
+                    this.window.slice(blockStart, sequencesEnd), lineStarts, numberOfSequences
+            );
+        }
+
+        // move past the complete sequences
+        this.position += sequencesEnd;
+
+        // check to see if we are done scanning
+        if (endOfFile) {
+            this.doneScanning = true;
+            this.close();
+        }
+
+        return sequenceBlock;
+    }
+
+    private void mapWindow() throws IOException {
+
+        this.windowStart = this.position;
+        this.window = this.channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                this.windowStart,
+                Math.min(this.windowSize, this.fileSize - this.windowStart)
+        );
+    }
+
+    @Override
+    public boolean isNotDoneScanning() { return !this.doneScanning; }
+
+    @Override
+    public void close() throws IOException { this.channel.close(); }
+}
@@ -0,0 +1,148 @@
+package demany.Fastq;
+
+import demany.Utils.GzipMemberIndex;
+import demany.Utils.InflateChunkScheduler;
+import demany.Utils.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+// a range of sequences from a lane's master fastqs, a lane split into several shards can be read by several readers
+public class MasterFastqShard {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    // the fastqs' lines are counted on the given number of threads, which is only worth it for lanes large enough to
+    // be split
+    public static List<MasterFastqShard> getMasterFastqShardList(
+            String laneStr, Map<String, Fastq> fastqByReadType, int maxShardNumber, int threadNumber)
+            throws IOException {
+
+        // a lane that only gets one shard is read whole
+        if (maxShardNumber < 2) { return List.of(new MasterFastqShard(laneStr, fastqByReadType, null, 0, -1)); }
+
+        // so is a lane whose fastqs are not all bgzf, since only bgzf members can be found without inflating the file
+        Map<String, GzipMemberIndex> gzipMemberIndexByReadType =
+                buildGzipMemberIndexByReadType(fastqByReadType, threadNumber);
+
+        if (gzipMemberIndexByReadType == null) {
+            return List.of(new MasterFastqShard(laneStr, fastqByReadType, null, 0, -1));
+        }
+
+        // make sure each fastq of the lane has the same number of sequences
+        Set<Long> lineCountSet = new HashSet<>();
+        for (GzipMemberIndex gzipMemberIndex : gzipMemberIndexByReadType.values()) {
+            lineCountSet.add(gzipMemberIndex.lineCount);
+        }
+
+        if (lineCountSet.size() != 1) {
+            throw new RuntimeException("master fastq files for lane " + laneStr + " had different numbers of lines");
+        }
+
+        long lineCount = lineCountSet.iterator().next();
+        if (lineCount % SequenceBlock.LINES_PER_SEQUENCE != 0) {
+            throw new RuntimeException("master fastq files for lane " + laneStr + " had a partial set of 4 lines");
+        }
+
+        // split the sequences evenly between the shards
+        long numberOfSequences = lineCount / SequenceBlock.LINES_PER_SEQUENCE;
+        int shardNumber = (int) Math.max(1, Math.min(maxShardNumber, numberOfSequences));
+
+        List<MasterFastqShard> masterFastqShardList = new ArrayList<>();
+        for (int i = 0; i < shardNumber; i++) {
+
+            long firstSequence = numberOfSequences * i / shardNumber;
+            long nextFirstSequence = numberOfSequences * (i + 1) / shardNumber;
+
+            masterFastqShardList.add(new MasterFastqShard(
+                    laneStr, fastqByReadType, gzipMemberIndexByReadType, firstSequence,
+                    nextFirstSequence - firstSequence
+            ));
+        }
+
+        return Collections.unmodifiableList(masterFastqShardList);
+    }
+
+    // returns null unless every fastq is bgzf
+    private static Map<String, GzipMemberIndex> buildGzipMemberIndexByReadType(
+            Map<String, Fastq> fastqByReadType, int threadNumber) throws IOException {
+
+        Map<String, GzipMemberIndex> gzipMemberIndexByReadType = new HashMap<>();
+        for (String readType : fastqByReadType.keySet()) {
+
+            Fastq fastq = fastqByReadType.get(readType);
+            if (!fastq.isGzipped) { return null; }
+
+            GzipMemberIndex gzipMemberIndex = GzipMemberIndex.build(fastq.path, threadNumber);
+            if (gzipMemberIndex == null) { return null; }
+
+            gzipMemberIndexByReadType.put(readType, gzipMemberIndex);
+        }
+
+        return Collections.unmodifiableMap(gzipMemberIndexByReadType);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    public final String laneStr;
+    public final long firstSequence;
+    public final long numberOfSequences;
+    private final Map<String, Fastq> fastqByReadType;
+    private final Map<String, GzipMemberIndex> gzipMemberIndexByReadType;
+
+    private MasterFastqShard(String laneStr, Map<String, Fastq> fastqByReadType,
+                             Map<String, GzipMemberIndex> gzipMemberIndexByReadType,
+                             long firstSequence, long numberOfSequences) {
+
+        this.laneStr = laneStr;
+        this.fastqByReadType = fastqByReadType;
+        this.gzipMemberIndexByReadType = gzipMemberIndexByReadType;
+        this.firstSequence = firstSequence;
+        this.numberOfSequences = numberOfSequences;
+    }
+
+    public boolean isWholeLane() { return this.gzipMemberIndexByReadType == null; }
+
+    public FastqReaderGroup getFastqReaderGroup() throws IOException {
+        return getFastqReaderGroup(InflateChunkScheduler.DEFAULT);
+    }
+
+    // the gzipped fastqs of a whole lane inflate their read ahead chunks through the given scheduler, or only as they
+    // are read without one
+    public FastqReaderGroup getFastqReaderGroup(InflateChunkScheduler inflateChunkScheduler) throws IOException {
+
+        // get a scanner for each read type that starts at this shard's first sequence
+        Map<String, SequenceBlockScanner> fastqScannerByReadType = new HashMap<>();
+        for (String readType : this.fastqByReadType.keySet()) {
+
+            Fastq fastq = this.fastqByReadType.get(readType);
+
+            if (!fastq.isGzipped) {
+
+                // uncompressed fastqs are scanned straight from memory mapped windows of the file
+                fastqScannerByReadType.put(readType, new MappedFastqScanner(fastq.path));
+
+            } else if (isWholeLane()) {
+
+                fastqScannerByReadType.put(
+                        readType,
+                        new FastqScanner(Utils.getGzippedFileInputStream(fastq.path, inflateChunkScheduler))
+                );
+
+            } else {
+
+                InputStream inputStream = this.gzipMemberIndexByReadType.get(readType)
+                        .getInputStreamAtLine(this.firstSequence * SequenceBlock.LINES_PER_SEQUENCE);
+
+                fastqScannerByReadType.put(readType, new FastqScanner(inputStream, this.numberOfSequences));
+            }
+        }
+
+        return new FastqReaderGroup(fastqScannerByReadType);
+    }
+}
@@ -0,0 +1,133 @@
+package demany.Fastq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class SequenceBlock {
+
+    public static final int LINES_PER_SEQUENCE = 4;
+
+    // the block's bytes start at index 0, either a wrapped array or a slice of a memory mapped fastq
+    public final ByteBuffer buffer;
+    private final int[] lineStarts;
+    private final int size;
+
+    // whether the block's byte array came from the recycler, a slice of a mapped fastq has only its line starts
+    private final boolean pooledBytes;
+    private boolean recycled = false;
+
+    SequenceBlock(byte[] bytes, int[] lineStarts, int size) {
+        this(ByteBuffer.wrap(bytes), lineStarts, size, false);
+    }
+
+    SequenceBlock(byte[] bytes, int[] lineStarts, int size, boolean pooledBytes) {
+        this(ByteBuffer.wrap(bytes), lineStarts, size, pooledBytes);
+    }
+
+    SequenceBlock(ByteBuffer buffer, int[] lineStarts, int size) {
+        this(buffer, lineStarts, size, false);
+    }
+
+    private SequenceBlock(ByteBuffer buffer, int[] lineStarts, int size, boolean pooledBytes) {
+
+        // check input
+        if (size < 0) { throw new RuntimeException("a sequence block cannot have a negative size"); }
+        if (lineStarts.length < size * LINES_PER_SEQUENCE + 1) {
+            throw new RuntimeException("a sequence block needs a line start for every line plus the block end");
+        }
+
+        this.buffer = buffer;
+        this.lineStarts = lineStarts;
+        this.size = size;
+        this.pooledBytes = pooledBytes;
+    }
+
+    public int size() { return this.size; }
+
+    // hands the block's arrays back to the scanners, the block cannot be read once its sequences have been copied
+    public void recycle() {
+
+        if (this.recycled) { return; }
+
+        SequenceBlockRecycler.returnLineStarts(this.lineStarts);
+        if (this.pooledBytes) { SequenceBlockRecycler.returnBytes(this.buffer.array()); }
+
+        this.recycled = true;
+    }
+
+    public boolean isEmpty() { return this.size == 0; }
+
+    // the number of bytes the block's sequences take up
+    public int getByteNumber() { return this.lineStarts[this.size * LINES_PER_SEQUENCE]; }
+
+    public int getSequenceStart(int sequenceIndex) {
+        return this.lineStarts[sequenceIndex * LINES_PER_SEQUENCE];
+    }
+
+    public int getSequenceEnd(int sequenceIndex) {
+        return this.lineStarts[(sequenceIndex + 1) * LINES_PER_SEQUENCE];
+    }
+
+    public int getSequenceLength(int sequenceIndex) {
+        return getSequenceEnd(sequenceIndex) - getSequenceStart(sequenceIndex);
+    }
+
+    public void copySequence(int sequenceIndex, byte[] destination, int destinationPosition) {
+        this.buffer.get(
+                getSequenceStart(sequenceIndex), destination, destinationPosition, getSequenceLength(sequenceIndex)
+        );
+    }
+
+    public int getLineStart(int sequenceIndex, int lineNumber) {
+
+        checkLineNumber(lineNumber);
+
+        return this.lineStarts[sequenceIndex * LINES_PER_SEQUENCE + lineNumber - 1];
+    }
+
+    public int getLineLength(int sequenceIndex, int lineNumber) {
+
+        int start = getLineStart(sequenceIndex, lineNumber);
+
+        // the line ends before its new line character, and before a carriage return if there is one
+        int end = this.lineStarts[sequenceIndex * LINES_PER_SEQUENCE + lineNumber] - 1;
+        if (end > start && this.buffer.get(end - 1) == '\r') { end--; }
+
+        return end - start;
+    }
+
+    public String getLineString(int sequenceIndex, int lineNumber) {
+        return getString(getLineStart(sequenceIndex, lineNumber), getLineLength(sequenceIndex, lineNumber));
+    }
+
+    public String getLinePrefixString(int sequenceIndex, int lineNumber, int prefixLength) {
+
+        if (prefixLength > getLineLength(sequenceIndex, lineNumber)) {
+            throw new RuntimeException("a line prefix cannot be longer than the line it is taken from");
+        }
+
+        return getString(getLineStart(sequenceIndex, lineNumber), prefixLength);
+    }
+
+    private String getString(int start, int length) {
+
+        // read array backed blocks in place
+        if (this.buffer.hasArray()) {
+            return new String(
+                    this.buffer.array(), this.buffer.arrayOffset() + start, length, StandardCharsets.US_ASCII
+            );
+        }
+
+        byte[] bytes = new byte[length];
+        this.buffer.get(start, bytes);
+
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static void checkLineNumber(int lineNumber) {
+
+        if (lineNumber < 1 || lineNumber > LINES_PER_SEQUENCE) {
+            throw new RuntimeException("a sequence line number must be between 1 and " + LINES_PER_SEQUENCE);
+        }
+    }
+}
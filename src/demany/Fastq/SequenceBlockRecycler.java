@@ -0,0 +1,102 @@
+package demany.Fastq;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// the return channel for the arrays behind sequence blocks, once a block's sequences have been classified its bytes
+// and line starts come back here and the scanners take them for their next blocks instead of allocating new ones
+public class SequenceBlockRecycler {
+
+    // the pool holds at most a small share of the heap, block sizes grow with the batch size so a count of arrays says
+    // nothing about the bytes they hold
+    static final long MAX_POOLED_BYTE_NUMBER = Runtime.getRuntime().maxMemory() / 32;
+
+    private static final Queue<byte[]> pooledBytesQueue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledBytesNumber = new AtomicInteger(0);
+
+    private static final Queue<int[]> pooledLineStartsQueue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledLineStartsNumber = new AtomicInteger(0);
+
+    private static final AtomicLong pooledByteNumber = new AtomicLong(0);
+
+    // returns an array of at least the given length, a pooled array that is too short is left for the garbage
+    // collector so that the pool follows the block sizes the scanners settle on
+    static byte[] takeBytes(int minLength) {
+
+        byte[] bytes = pooledBytesQueue.poll();
+        if (bytes == null) { return new byte[minLength]; }
+
+        pooledBytesNumber.decrementAndGet();
+        pooledByteNumber.addAndGet(-bytes.length);
+
+        return bytes.length < minLength ? new byte[minLength] : bytes;
+    }
+
+    static int[] takeLineStarts(int minLength) {
+
+        int[] lineStarts = pooledLineStartsQueue.poll();
+        if (lineStarts == null) { return new int[minLength]; }
+
+        pooledLineStartsNumber.decrementAndGet();
+        pooledByteNumber.addAndGet(-(long) lineStarts.length * Integer.BYTES);
+
+        if (lineStarts.length < minLength) { return new int[minLength]; }
+
+        // every block's first line starts at 0
+        lineStarts[0] = 0;
+
+        return lineStarts;
+    }
+
+    static void returnBytes(byte[] bytes) {
+        if (tryToPool(bytes.length)) {
+            pooledBytesNumber.incrementAndGet();
+            pooledBytesQueue.add(bytes);
+        }
+    }
+
+    static void returnLineStarts(int[] lineStarts) {
+        if (tryToPool((long) lineStarts.length * Integer.BYTES)) {
+            pooledLineStartsNumber.incrementAndGet();
+            pooledLineStartsQueue.add(lineStarts);
+        }
+    }
+
+    private static boolean tryToPool(long byteNumber) {
+
+        // arrays that would take the pool past its bytes are left for the garbage collector
+        while (true) {
+
+            long pooledByteNumber = SequenceBlockRecycler.pooledByteNumber.get();
+            if (pooledByteNumber + byteNumber > MAX_POOLED_BYTE_NUMBER) { return false; }
+
+            if (SequenceBlockRecycler.pooledByteNumber.compareAndSet(pooledByteNumber, pooledByteNumber + byteNumber)) {
+                return true;
+            }
+        }
+    }
+
+    // leaves every pooled array for the garbage collector, for when the heap is under pressure
+    public static void emptyPool() {
+
+        byte[] bytes;
+        while ((bytes = pooledBytesQueue.poll()) != null) {
+            pooledBytesNumber.decrementAndGet();
+            pooledByteNumber.addAndGet(-bytes.length);
+        }
+
+        int[] lineStarts;
+        while ((lineStarts = pooledLineStartsQueue.poll()) != null) {
+            pooledLineStartsNumber.decrementAndGet();
+            pooledByteNumber.addAndGet(-(long) lineStarts.length * Integer.BYTES);
+        }
+    }
+
+    static int getPooledBytesNumber() { return pooledBytesNumber.get(); }
+
+    static int getPooledLineStartsNumber() { return pooledLineStartsNumber.get(); }
+
+    static long getPooledByteNumber() { return pooledByteNumber.get(); }
+}
@@ -0,0 +1,13 @@
+package demany.Fastq;
+
+import java.io.IOException;
+
+// something that hands out the sequences of one fastq a block at a time
+public interface SequenceBlockScanner {
+
+    SequenceBlock scanSequences(int maxNumberOfSequences) throws IOException;
+
+    boolean isNotDoneScanning();
+
+    void close() throws IOException;
+}
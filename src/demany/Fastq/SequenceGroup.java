@@ -1,31 +1,35 @@
 package demany.Fastq;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
 
 public class SequenceGroup {
 
+    // the number of sequences a group is read with when nothing sizes it by bytes
     public static final int MAX_NUMBER_OF_SEQUENCES = 12000;
 
-    public final HashMap<String, ArrayList<SequenceLines>> sequenceListByReadType = new HashMap<>();
+    public final HashMap<String, SequenceBlock> sequenceBlockByReadType = new HashMap<>();
+    private final Set<String> readTypeSet;
     private int size = 0;
     private boolean completed = false;
 
     public SequenceGroup(Set<String> readTypeSet) {
+        this.readTypeSet = readTypeSet;
+    }
 
-        // add an array of sequences to the sequence-list map for each read type
-        for (String readType : readTypeSet) {
+    public void addSequenceBlock(String readType, SequenceBlock sequenceBlock) {
 
-            sequenceListByReadType.put(readType, new ArrayList<>(SequenceGroup.MAX_NUMBER_OF_SEQUENCES));
-        }
-    }
+        if (this.completed) { throw new RuntimeException("cannot add a sequence block to a completed sequence group"); }
 
-    public void addSequence(String readType, SequenceLines sequenceLines) {
+        if (!this.readTypeSet.contains(readType)) {
+            throw new RuntimeException("cannot add a sequence block for an unknown read type: " + readType);
+        }
 
-        if (this.completed) { throw new RuntimeException("cannot add sequence lines to a completed sequence group"); }
+        if (this.sequenceBlockByReadType.containsKey(readType)) {
+            throw new RuntimeException("a sequence group can only have one sequence block per read type");
+        }
 
-        sequenceListByReadType.get(readType).add(sequenceLines);
+        this.sequenceBlockByReadType.put(readType, sequenceBlock);
     }
 
     public void markCompleted() {
@@ -34,23 +38,28 @@ public class SequenceGroup {
             throw new RuntimeException("a sequence group should not be marked completed twice");
         }
 
-        // determined the size of each sequence lines array, and make sure all are the same
+        // make sure there is a sequence block for every read type
+        if (!this.sequenceBlockByReadType.keySet().equals(this.readTypeSet)) {
+            throw new RuntimeException("a sequence group without a sequence block for every read type cannot be complete");
+        }
+
+        // determined the size of each sequence block, and make sure all are the same
         int size = -1;
-        for (ArrayList<SequenceLines> sequenceLinesArrayList : this.sequenceListByReadType.values()) {
+        for (SequenceBlock sequenceBlock : this.sequenceBlockByReadType.values()) {
 
             if (size == -1) {
-                size = sequenceLinesArrayList.size();
+                size = sequenceBlock.size();
 
             } else {
-                if (size != sequenceLinesArrayList.size()) {
+                if (size != sequenceBlock.size()) {
                     throw new RuntimeException(
-                            "a sequence group with different sized lists of sequence lines cannot be complete"
+                            "a sequence group with different sized sequence blocks cannot be complete"
                     );
                 }
             }
         }
 
-        this.size = size;
+        this.size = Math.max(size, 0);
         this.completed = true;
     }
 
@@ -73,4 +82,19 @@ public class SequenceGroup {
 
         return this.size;
     }
+
+    public long getByteNumber() {
+
+        long byteNumber = 0;
+        for (SequenceBlock sequenceBlock : this.sequenceBlockByReadType.values()) {
+            byteNumber += sequenceBlock.getByteNumber();
+        }
+
+        return byteNumber;
+    }
+
+    // hands the arrays of every sequence block back to the scanners once the group's sequences have been classified
+    public void recycle() {
+        for (SequenceBlock sequenceBlock : this.sequenceBlockByReadType.values()) { sequenceBlock.recycle(); }
+    }
 }
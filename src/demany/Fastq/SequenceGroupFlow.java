@@ -1,6 +1,8 @@
 package demany.Fastq;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -9,211 +11,302 @@ public class SequenceGroupFlow {
 
     private static final int SEQUENCE_GROUP_QUEUE_MAX_SIZE = 4;
 
-    private static class LockSequenceGroupQueuePair {
+    public static class LaneSequenceGroupPair {
 
-        final ReentrantLock lock = new ReentrantLock();
-        final Queue<SequenceGroup> sequenceGroupQueue = new LinkedList<>();
+        public final String laneStr;
+        public final SequenceGroup sequenceGroup;
+
+        LaneSequenceGroupPair(String laneStr, SequenceGroup sequenceGroup) {
+            this.laneStr = laneStr;
+            this.sequenceGroup = sequenceGroup;
+        }
     }
 
-    private static class LockSequenceGroupByIdQueuePair {
+    // a lane's demultiplexed sequence groups for one of its writers, the groups it was split from are written once
+    // every writer has written its part
+    public static class DemultiplexedSequenceGroups {
+
+        public final Map<String, CompressedSequenceGroup> compressedSequenceGroupById;
+        private final AtomicInteger unwrittenPartNumber;
+
+        // the in flight bytes that were acquired for the sequence group the parts were demultiplexed from
+        public final long inFlightByteNumber;
+
+        DemultiplexedSequenceGroups(Map<String, CompressedSequenceGroup> compressedSequenceGroupById,
+                                    AtomicInteger unwrittenPartNumber, long inFlightByteNumber) {
 
-        final ReentrantLock lock = new ReentrantLock();
-        final Queue<HashMap<String, CompressedSequenceGroup>> compressedSequenceGroupByIdQueue = new LinkedList<>();
+            this.compressedSequenceGroupById = compressedSequenceGroupById;
+            this.unwrittenPartNumber = unwrittenPartNumber;
+            this.inFlightByteNumber = inFlightByteNumber;
+        }
     }
 
-    private final Lock readerThreadFinishedByLaneStrLock = new ReentrantLock();
-    private final Map<String, Boolean> readerThreadFinishedByLaneStr = new HashMap<>();
+    // the number of each lane's readers that have yet to finish
+    private final Map<String, AtomicInteger> unfinishedReaderNumberByLaneStr = new HashMap<>();
+
+    // each lane's queues are lock free rings, several readers and demultiplexing tasks can share a multiplexed ring
+    // and several demultiplexing tasks feed each of the lane's writers through its own demultiplexed ring
+    private final Map<String, SequenceGroupRing<SequenceGroup>> multiplexedSeqGroupsByLaneStr = new HashMap<>();
+    private final Map<String, List<SequenceGroupRing<DemultiplexedSequenceGroups>>>
+            demultiplexedSeqGroupsListByLaneStr = new HashMap<>();
 
-    private final Lock demultiplexingThreadFinishedByIdLock = new ReentrantLock();
-    private final Map<Integer, Boolean> demultiplexingThreadFinishedById = new HashMap<>();
+    // the writer that owns each sample id of each lane, ids that are not listed belong to the first writer
+    private final Map<String, Map<String, Integer>> writerIndexByIdByLaneStr;
 
-    private final Map<String, LockSequenceGroupQueuePair> multiplexedSeqGroupsByLaneStr = new HashMap<>();
-    private final Map<String, LockSequenceGroupByIdQueuePair> demultiplexedSeqGroupsByLaneStr = new HashMap<>();
+    // the number of each lane's demultiplexed sequence groups that are queued or being demultiplexed
+    private final Map<String, AtomicInteger> demultiplexedNumberByLaneStr = new HashMap<>();
+
+    // whether each lane's end has been taken, and whether the place for its last demultiplexed sequence groups is held
+    private final Map<String, AtomicBoolean> laneEndTakenByLaneStr = new HashMap<>();
+    private final Map<String, AtomicBoolean> laneEndHeldByLaneStr = new HashMap<>();
 
     private final Lock countByIndexStrByIdByLaneStrLock = new ReentrantLock();
     private final Map<String, HashMap<String, HashMap<String, Long>>> countByIndexStrByIdByLaneStr = new HashMap<>();
 
-    public SequenceGroupFlow(Set<String> laneStrSet, Set<Integer> demultiplexingThreadIdSet) {
+    public SequenceGroupFlow(Set<String> laneStrSet) {
+        this(laneStrSet.stream().collect(Collectors.toMap(laneStr -> laneStr, laneStr -> 1)));
+    }
+
+    public SequenceGroupFlow(Map<String, Integer> readerNumberByLaneStr) {
+        this(readerNumberByLaneStr, Map.of());
+    }
+
+    public SequenceGroupFlow(Map<String, Integer> readerNumberByLaneStr,
+                             Map<String, Map<String, Integer>> writerIndexByIdByLaneStr) {
 
-        // init a map to store when reader threads have completed
+        Set<String> laneStrSet = readerNumberByLaneStr.keySet();
+
+        // init a map to store how many of each lane's readers have yet to complete
         for (String laneStr : laneStrSet) {
-            this.readerThreadFinishedByLaneStr.put(laneStr, false);
-        }
 
-        // init a map to store when demultiplexing threads have completed
-        for (int id : demultiplexingThreadIdSet) {
-            this.demultiplexingThreadFinishedById.put(id, false);
+            if (readerNumberByLaneStr.get(laneStr) < 1) {
+                throw new RuntimeException("each lane needs at least one reader, " + laneStr);
+            }
+
+            this.unfinishedReaderNumberByLaneStr.put(laneStr, new AtomicInteger(readerNumberByLaneStr.get(laneStr)));
         }
 
-        // init the multiplexed sequence group by lane map
+        // init the multiplexed and demultiplexed sequence group rings for each lane
         for (String laneStr : laneStrSet) {
 
-            this.multiplexedSeqGroupsByLaneStr.put(laneStr, new LockSequenceGroupQueuePair());
+            this.multiplexedSeqGroupsByLaneStr.put(
+                    laneStr, new SequenceGroupRing<>(SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE)
+            );
+            this.demultiplexedNumberByLaneStr.put(laneStr, new AtomicInteger(0));
+            this.laneEndTakenByLaneStr.put(laneStr, new AtomicBoolean(false));
+            this.laneEndHeldByLaneStr.put(laneStr, new AtomicBoolean(false));
         }
 
-        // init the demultiplexed sequence group by lane map
+        // init a demultiplexed sequence group ring for each writer of each lane, each ring gets at most one part of
+        // each of the lane's demultiplexed sequence groups, so it never holds more than they do
+        this.writerIndexByIdByLaneStr = writerIndexByIdByLaneStr;
+
         for (String laneStr : laneStrSet) {
-            this.demultiplexedSeqGroupsByLaneStr.put(laneStr, new LockSequenceGroupByIdQueuePair());
-        }
-    }
 
-    public void markReaderThreadFinished(String laneStr) {
+            int writerNumber = 1;
+            if (writerIndexByIdByLaneStr.containsKey(laneStr)) {
+                for (int writerIndex : writerIndexByIdByLaneStr.get(laneStr).values()) {
 
-        this.readerThreadFinishedByLaneStrLock.lock();
+                    if (writerIndex < 0) { throw new RuntimeException("a writer index cannot be negative"); }
 
-        try {
-            this.readerThreadFinishedByLaneStr.put(laneStr, true);
+                    writerNumber = Math.max(writerNumber, writerIndex + 1);
+                }
+            }
 
-        } finally {
-            this.readerThreadFinishedByLaneStrLock.unlock();
-        }
-    }
+            List<SequenceGroupRing<DemultiplexedSequenceGroups>> ringList = new ArrayList<>();
+            for (int i = 0; i < writerNumber; i++) {
+                ringList.add(new SequenceGroupRing<>(SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE));
+            }
 
-    public boolean allReaderThreadsFinished() {
-        return this.readerThreadFinishedByLaneStr.values().stream().allMatch(Boolean::booleanValue);
+            this.demultiplexedSeqGroupsListByLaneStr.put(laneStr, Collections.unmodifiableList(ringList));
+        }
     }
 
-    public void markDemultiplexingThreadFinished(int demultiplexingThreadId) {
+    public int getWriterNumber(String laneStr) { return this.demultiplexedSeqGroupsListByLaneStr.get(laneStr).size(); }
 
-        this.demultiplexingThreadFinishedByIdLock.lock();
+    // the number of sequence groups waiting to be demultiplexed across every lane, a snapshot
+    public int getMultiplexedSequenceGroupNumber() {
 
-        try {
-            this.demultiplexingThreadFinishedById.put(demultiplexingThreadId, true);
-
-        } finally {
-            this.demultiplexingThreadFinishedByIdLock.unlock();
+        int number = 0;
+        for (SequenceGroupRing<SequenceGroup> ring : this.multiplexedSeqGroupsByLaneStr.values()) {
+            number += ring.size();
         }
+
+        return number;
     }
 
-    public boolean allDemultiplexingThreadsFinished() {
-        return this.demultiplexingThreadFinishedById.values().stream().allMatch(Boolean::booleanValue);
+    // the number of sequence groups the multiplexed rings of every lane can hold together
+    public int getMultiplexedSequenceGroupCapacity() {
+        return this.multiplexedSeqGroupsByLaneStr.size() * SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE;
     }
 
-    public boolean moreMultiplexedSequenceGroupsAvailable() {
+    // the number of demultiplexed sequence group parts waiting to be written across every writer, a snapshot
+    public int getDemultiplexedSequenceGroupNumber() {
 
-        for (String laneStr : multiplexedSeqGroupsByLaneStr.keySet()) {
+        int number = 0;
+        for (List<SequenceGroupRing<DemultiplexedSequenceGroups>> ringList :
+                this.demultiplexedSeqGroupsListByLaneStr.values()) {
 
-            // lock not needed
-            if (!multiplexedSeqGroupsByLaneStr.get(laneStr).sequenceGroupQueue.isEmpty())  {
-                return true;
-            }
+            for (SequenceGroupRing<DemultiplexedSequenceGroups> ring : ringList) { number += ring.size(); }
         }
 
-        return false;
+        return number;
     }
 
-    public boolean moreMultiplexedSequenceGroupsNeeded(String laneStr) {
+    public void markReaderFinished(String laneStr) {
 
-        LockSequenceGroupQueuePair pair = multiplexedSeqGroupsByLaneStr.get(laneStr);
+        AtomicInteger unfinishedReaderNumber = this.unfinishedReaderNumberByLaneStr.get(laneStr);
 
-        // lock is not necessary
-        return pair.sequenceGroupQueue.size() < SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE;
+        if (unfinishedReaderNumber.getAndUpdate(number -> Math.max(0, number - 1)) == 0) {
+            throw new RuntimeException("more readers finished than were started for lane " + laneStr);
+        }
     }
 
-    public void addMultiplexedSequenceGroup(String laneStr, SequenceGroup sequenceGroup) {
+    // a lane is finished once its readers have finished and every one of its sequence groups has been written
+    public boolean isLaneFinished(String laneStr) {
 
-        LockSequenceGroupQueuePair pair = multiplexedSeqGroupsByLaneStr.get(laneStr);
+        // read in the order that sequence groups move through the flow, so that none can slip past us
+        return this.unfinishedReaderNumberByLaneStr.get(laneStr).get() == 0
+                && this.multiplexedSeqGroupsByLaneStr.get(laneStr).isEmpty()
+                && this.demultiplexedNumberByLaneStr.get(laneStr).get() == 0;
+    }
 
-        // block until we get the lock on the queue
-        pair.lock.lock();
+    // returns true to just one caller once the lane is finished, that caller must then add the lane's last
+    // demultiplexed sequence groups, which may be empty, to carry whatever was held back from the earlier ones
+    public boolean tryToTakeLaneEnd(String laneStr) {
 
-        try {
-            pair.sequenceGroupQueue.add(sequenceGroup);
+        AtomicBoolean laneEndTaken = this.laneEndTakenByLaneStr.get(laneStr);
 
-        } finally {
-            pair.lock.unlock();
-        }
+        if (laneEndTaken.get() || !isLaneFinished(laneStr)) { return false; }
+        if (!laneEndTaken.compareAndSet(false, true)) { return false; }
+
+        // nothing is left to take from the lane, so the place is ours, hold it before the lane end can be seen as held
+        this.demultiplexedNumberByLaneStr.get(laneStr).incrementAndGet();
+        this.laneEndHeldByLaneStr.get(laneStr).set(true);
+
+        return true;
     }
 
-    public SequenceGroup takeMultiplexedSequenceGroup(String laneStr) {
+    // a lane's end is written once it has been taken and its last demultiplexed sequence groups have been written
+    public boolean isLaneEndWritten(String laneStr) {
+        return this.laneEndHeldByLaneStr.get(laneStr).get() && isLaneFinished(laneStr);
+    }
 
-        LockSequenceGroupQueuePair pair = multiplexedSeqGroupsByLaneStr.get(laneStr);
+    public boolean multiplexedSequenceGroupRoomAvailable(String laneStr) {
+        return this.multiplexedSeqGroupsByLaneStr.get(laneStr).size() < SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE;
+    }
 
-        // block until we get the lock on the queue
-        pair.lock.lock();
+    // returns false if the lane's ring is full
+    public boolean tryToAddMultiplexedSequenceGroup(String laneStr, SequenceGroup sequenceGroup) {
+        return this.multiplexedSeqGroupsByLaneStr.get(laneStr).offer(sequenceGroup);
+    }
 
-        try {
+    // takes a multiplexed sequence group from the lane with the most of them waiting whose demultiplexed ring has room,
+    // returns null if there is no such lane
+    public LaneSequenceGroupPair tryToTakeMultiplexedSequenceGroup() {
 
-            if (pair.sequenceGroupQueue.isEmpty()) {
-                return null;
-            }
+        while (true) {
 
-            return pair.sequenceGroupQueue.remove();
+            // find the most urgent lane that can take another demultiplexed sequence group
+            String takeLaneStr = null;
+            int takeQueueSize = 0;
+            for (String laneStr : this.multiplexedSeqGroupsByLaneStr.keySet()) {
 
-        } finally {
-            pair.lock.unlock();
-        }
-    }
+                int queueSize = this.multiplexedSeqGroupsByLaneStr.get(laneStr).size();
+                if (queueSize == 0) { continue; }
+
+                if (this.demultiplexedNumberByLaneStr.get(laneStr).get()
+                        >= SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE) { continue; }
 
-    public List<String> getMultiplexedSequenceGroupLaneStrPriorityList() {
+                if (queueSize > takeQueueSize) {
+                    takeLaneStr = laneStr;
+                    takeQueueSize = queueSize;
+                }
+            }
 
-        // collect all the lane str values with multiplexed sequence groups
-        LinkedList<String> laneStrList = new LinkedList<>();
-        for (String laneStr : multiplexedSeqGroupsByLaneStr.keySet()) {
+            if (takeLaneStr == null) { return null; }
 
-            LockSequenceGroupQueuePair pair = multiplexedSeqGroupsByLaneStr.get(laneStr);
+            // hold a place in the lane's demultiplexed ring for the sequence group we take
+            AtomicInteger demultiplexedNumber = this.demultiplexedNumberByLaneStr.get(takeLaneStr);
+            int number = demultiplexedNumber.get();
+            if (number >= SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE
+                    || !demultiplexedNumber.compareAndSet(number, number + 1)) { continue; }
 
-            // lock not needed
-            int queueSize = pair.sequenceGroupQueue.size();
-            if (queueSize > 0) {
+            SequenceGroup sequenceGroup = this.multiplexedSeqGroupsByLaneStr.get(takeLaneStr).poll();
 
-                laneStrList.add(laneStr);
+            // another task got there first
+            if (sequenceGroup == null) {
+                demultiplexedNumber.decrementAndGet();
+                continue;
             }
-        }
 
-        // return a sorted list of lane str in decending order of queue size
-        return laneStrList.stream()
-                .sorted(Comparator.comparingInt(ls -> -multiplexedSeqGroupsByLaneStr.get(ls).sequenceGroupQueue.size())
-                ).collect(Collectors.toList());
+            return new LaneSequenceGroupPair(takeLaneStr, sequenceGroup);
+        }
     }
 
-    public boolean moreDemultiplexedSequenceGroupsAvailable(String laneStr) {
-
-        // lock not needed
-        return !this.demultiplexedSeqGroupsByLaneStr.get(laneStr).compressedSequenceGroupByIdQueue.isEmpty();
+    public void addDemultiplexedSequenceGroups(String laneStr,
+                                               HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById) {
+        addDemultiplexedSequenceGroups(laneStr, compressedSequenceGroupById, 0);
     }
 
-    public boolean moreDemultiplexedSequenceGroupsNeeded(String laneStr) {
+    public void addDemultiplexedSequenceGroups(String laneStr,
+                                               HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById,
+                                               long inFlightByteNumber) {
 
-        LockSequenceGroupByIdQueuePair pair = this.demultiplexedSeqGroupsByLaneStr.get(laneStr);
+        List<SequenceGroupRing<DemultiplexedSequenceGroups>> ringList =
+                this.demultiplexedSeqGroupsListByLaneStr.get(laneStr);
 
-        // lock not needed
-        return pair.compressedSequenceGroupByIdQueue.size() < SequenceGroupFlow.SEQUENCE_GROUP_QUEUE_MAX_SIZE;
-    }
+        Map<String, Integer> writerIndexById = this.writerIndexByIdByLaneStr.getOrDefault(laneStr, Map.of());
 
-    public void addDemultiplexedSequenceGroups(String laneStr,
-                                               HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById) {
+        // split the sequence groups between the writers that own their sample ids
+        List<Map<String, CompressedSequenceGroup>> partList = new ArrayList<>();
+        for (int i = 0; i < ringList.size(); i++) { partList.add(new HashMap<>()); }
 
-        LockSequenceGroupByIdQueuePair pair = this.demultiplexedSeqGroupsByLaneStr.get(laneStr);
+        for (String id : compressedSequenceGroupById.keySet()) {
+            partList.get(writerIndexById.getOrDefault(id, 0)).put(id, compressedSequenceGroupById.get(id));
+        }
 
-        // block until we get the lock on the queue
-        pair.lock.lock();
+        // writers with nothing to write are skipped, though the first writer always gets a part so that the place held
+        // for these sequence groups is freed by a write
+        int partNumber = 0;
+        for (int i = 0; i < ringList.size(); i++) {
+            if (i == 0 || !partList.get(i).isEmpty()) { partNumber++; }
+        }
 
-        try {
+        AtomicInteger unwrittenPartNumber = new AtomicInteger(partNumber);
+        for (int i = 0; i < ringList.size(); i++) {
 
-            pair.compressedSequenceGroupByIdQueue.add(compressedSequenceGroupById);
+            if (i != 0 && partList.get(i).isEmpty()) { continue; }
 
-        } finally {
-            pair.lock.unlock();
+            // the place for these sequence groups was held when they were taken, so the ring always has room for them
+            DemultiplexedSequenceGroups part = new DemultiplexedSequenceGroups(
+                    partList.get(i), unwrittenPartNumber, inFlightByteNumber
+            );
+
+            if (!ringList.get(i).offer(part)) {
+                throw new RuntimeException("the demultiplexed sequence group ring for lane " + laneStr + " was full");
+            }
         }
     }
 
-    public Map<String, CompressedSequenceGroup> takeDemultiplexedSequenceGroups(String laneStr) {
-
-        LockSequenceGroupByIdQueuePair pair = this.demultiplexedSeqGroupsByLaneStr.get(laneStr);
+    public boolean moreDemultiplexedSequenceGroupsAvailable(String laneStr, int writerIndex) {
+        return !this.demultiplexedSeqGroupsListByLaneStr.get(laneStr).get(writerIndex).isEmpty();
+    }
 
-        // block until we get the lock on the queue
-        pair.lock.lock();
+    // returns null if the writer's ring is empty, the sequence groups' place is freed once every part is written
+    public DemultiplexedSequenceGroups tryToTakeDemultiplexedSequenceGroups(String laneStr, int writerIndex) {
+        return this.demultiplexedSeqGroupsListByLaneStr.get(laneStr).get(writerIndex).poll();
+    }
 
-        try {
+    // returns true once every part of the sequence groups has been written
+    public boolean markDemultiplexedSequenceGroupsWritten(String laneStr,
+                                                          DemultiplexedSequenceGroups demultiplexedSequenceGroups) {
 
-            if (pair.compressedSequenceGroupByIdQueue.isEmpty()) { return null; }
+        if (demultiplexedSequenceGroups.unwrittenPartNumber.decrementAndGet() != 0) { return false; }
 
-            return pair.compressedSequenceGroupByIdQueue.remove();
+        this.demultiplexedNumberByLaneStr.get(laneStr).decrementAndGet();
 
-        } finally {
-            pair.lock.unlock();
-        }
+        return true;
     }
 
     public void submitCountByIndexStrByIdByLaneStr(
@@ -0,0 +1,108 @@
+package demany.Fastq;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// a preallocated, bounded, lock free ring that any number of threads can offer to and poll from, each slot has a
+// sequence number that says whether it is ready to be written or read for the current lap around the ring
+class SequenceGroupRing<T> {
+
+    private final Object[] slots;
+    private final AtomicLongArray slotSequences;
+    private final int mask;
+    private final AtomicLong offerPosition = new AtomicLong(0);
+    private final AtomicLong pollPosition = new AtomicLong(0);
+
+    SequenceGroupRing(int capacity) {
+
+        // check input
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new RuntimeException("a sequence group ring's capacity must be a power of two");
+        }
+
+        this.slots = new Object[capacity];
+        this.slotSequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < capacity; i++) { this.slotSequences.set(i, i); }
+    }
+
+    // returns false if the ring is full
+    boolean offer(T item) {
+
+        long position = this.offerPosition.get();
+        while (true) {
+
+            int index = (int) (position & this.mask);
+            long difference = this.slotSequences.get(index) - position;
+
+            if (difference == 0) {
+
+                // claim the slot, then publish the item in it
+                if (this.offerPosition.compareAndSet(position, position + 1)) {
+
+                    this.slots[index] = item;
+                    this.slotSequences.set(index, position + 1);
+
+                    return true;
+                }
+
+                position = this.offerPosition.get();
+
+            } else if (difference < 0) {
+
+                // the slot still holds an item from the last lap
+                return false;
+
+            } else {
+                position = this.offerPosition.get();
+            }
+        }
+    }
+
+    // returns null if the ring is empty
+    @SuppressWarnings("unchecked")
+    T poll() {
+
+        long position = this.pollPosition.get();
+        while (true) {
+
+            int index = (int) (position & this.mask);
+            long difference = this.slotSequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+
+                // claim the slot, then free it for the next lap
+                if (this.pollPosition.compareAndSet(position, position + 1)) {
+
+                    T item = (T) this.slots[index];
+                    this.slots[index] = null;
+                    this.slotSequences.set(index, position + this.mask + 1);
+
+                    return item;
+                }
+
+                position = this.pollPosition.get();
+
+            } else if (difference < 0) {
+
+                // the slot has not been published for this lap
+                return null;
+
+            } else {
+                position = this.pollPosition.get();
+            }
+        }
+    }
+
+    // a snapshot that can be out of date by the time it is used
+    int size() {
+
+        long pollPosition = this.pollPosition.get();
+        long size = this.offerPosition.get() - pollPosition;
+
+        return (int) Math.max(0, Math.min(size, this.slots.length));
+    }
+
+    boolean isEmpty() { return size() == 0; }
+}
@@ -4,14 +4,12 @@ import demany.Context.BCLParameters;
 import demany.Context.DemultiplexingContext;
 import demany.Context.Input;
 import demany.Fastq.Fastq;
-import demany.Fastq.SequenceGroupFlow;
+import demany.Fastq.MasterFastqShard;
 import demany.Fastq.SequenceLines;
-import demany.SampleIndex.SampleIndexKeyMappingCollection;
 import demany.SampleIndex.SampleIndexLookup;
 import demany.SampleIndex.SampleIndexSpec;
-import demany.Threading.DemultiplexingThread;
-import demany.Threading.ReaderThread;
-import demany.Threading.WriterThread;
+import demany.Threading.DemultiplexingPipeline;
+import demany.Threading.SharedNothingPipeline;
 import demany.Utils.Utils;
 
 import java.io.*;
@@ -27,6 +25,10 @@ public class Demultiplex {
 
     private static final Logger LOGGER = Logger.getLogger( Demultiplex.class.getName() );
 
+    private static final int PROCESSING_THREADS_PER_READER_SHARD = 8;
+    private static final long MIN_READER_SHARD_FILE_SIZE = 256L * 1024 * 1024;
+    private static final int PROCESSING_THREADS_PER_LANE_WRITER = 8;
+
     public static int ExecuteDemultiplex(Input input) {
 
         try {
@@ -40,6 +42,18 @@ public class Demultiplex {
             if (input.processingThreadNumber < 1) {
                 throw new RuntimeException("the processing thread number must be greater than 1");
             }
+            if (input.tileShardNumber < 1) {
+                throw new RuntimeException("the tile shard number must be at least 1");
+            }
+            if (input.compressionThreadNumber < 1) {
+                throw new RuntimeException("the compression thread number must be at least 1");
+            }
+            if (input.inFlightByteBudget < 1) {
+                throw new RuntimeException("the in flight byte budget must be at least 1");
+            }
+            if (input.index1MismatchLimit < 0 || input.index2MismatchLimit < 0) {
+                throw new RuntimeException("the index mismatch limits cannot be negative");
+            }
             if (Files.exists(input.workdirPath)) {
                 throw new RuntimeException(
                         "workdir path already exists, stopping to avoid overwrite, " + input.workdirPath.toString()
@@ -48,6 +62,11 @@ public class Demultiplex {
             if (!Files.isDirectory(input.bclPath)) {
                 throw new RuntimeException("bcl path is not to an existant directory, " + input.bclPath.toString());
             }
+            if (input.masterFastqDirPath != null && !Files.isDirectory(input.masterFastqDirPath)) {
+                throw new RuntimeException(
+                        "master fastq dir path is not to an existant directory, " + input.masterFastqDirPath.toString()
+                );
+            }
             if (!Files.exists(input.bclPath.resolve("RTAComplete.txt"))) {
                 throw new RuntimeException("bcl path is not to a completed sequencing run, no RTAComplete.txt file found");
             }
@@ -60,14 +79,26 @@ public class Demultiplex {
             BCLParameters bclParameters = new BCLParameters(input.bclPath);
             for (String line : bclParameters.getLogLines()) { LOGGER.info(line); }
 
-            // run bcl2fastq
-            Path bcl2fastqOutputDirPath = runBcl2fastq(bclParameters, input);
+            // run bcl2fastq, unless the master fastqs were given
+            List<Path> bcl2fastqOutputDirPathList;
+            if (input.masterFastqDirPath != null) {
 
-            // get master fastq by read type by lane str map
-            Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr = getMasterFastqByReadTypeByLaneStr(
-                    input,
-                    bcl2fastqOutputDirPath
-            );
+                LOGGER.info("-- using the master fastqs at " + input.masterFastqDirPath + " --");
+                bcl2fastqOutputDirPathList = List.of(input.masterFastqDirPath);
+
+            } else {
+                bcl2fastqOutputDirPathList = runBcl2fastq(bclParameters, input);
+            }
+
+            // get master fastq by read type list by lane str map, with a set of master fastqs for each tile shard
+            Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr =
+                    getMasterFastqByReadTypeListByLaneStr(input, bcl2fastqOutputDirPathList);
+
+            // get master fastq by read type by lane str map from the first tile shard of each lane
+            Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr =
+                    masterFastqByReadTypeListByLaneStr.keySet().stream().collect(Collectors.toUnmodifiableMap(
+                            Function.identity(), laneStr -> masterFastqByReadTypeListByLaneStr.get(laneStr).get(0)
+                    ));
 
             // get lane str by lane int map
             Map<Integer, String> laneStrByLaneInt = getLaneStrByLaneInt(masterFastqByReadTypeByLaneStr);
@@ -87,7 +118,7 @@ public class Demultiplex {
             DemultiplexingContext demultiplexingContext = determineDemultiplexingContext(
                     input,
                     bclParameters,
-                    masterFastqByReadTypeByLaneStr,
+                    masterFastqByReadTypeListByLaneStr,
                     sampleIndexSpecSetByLaneStr,
                     index2ReverseCompliment
             );
@@ -131,15 +162,11 @@ public class Demultiplex {
         }
     }
 
-    private static Path runBcl2fastq(BCLParameters bclParameters, Input input)
+    private static List<Path> runBcl2fastq(BCLParameters bclParameters, Input input)
             throws InterruptedException, IOException {
 
         // create paths
         Path sampleSheetPath = input.workdirPath.resolve("bcl2fastq_sample_sheet.csv");
-        Path outputDirPath = input.workdirPath.resolve("bcl2fastq-output");
-        Path interopDirPath = input.workdirPath.resolve("bcl2fastq-interop");
-        Path statsDirPath = input.workdirPath.resolve("bcl2fastq-stats");
-        Path reportsDirPath = input.workdirPath.resolve("bcl2fastq-reports");
 
         // get all the lanes to demultiplex
         Set<Integer> laneIntSet = input.sampleIndexSpecSet.stream().map(v -> v.lane).collect(Collectors.toSet());
@@ -178,9 +205,51 @@ public class Demultiplex {
         }
 
         // determine the number of threads to use
-        int pthreads = input.processingThreadNumber;
-        int iothreads = pthreads / 3;
-        if (iothreads == 0) { iothreads = 1; }
+        // bcl2fastq's reading and writing threads run alongside its processing threads, so keep all of them within
+        // the processing thread budget
+        int iothreads = Math.max(1, input.processingThreadNumber / 6);
+        int pthreads = Math.max(1, input.processingThreadNumber - 2 * iothreads);
+
+        // split each lane into ranges of tiles if asked to, so that each lane gets several sets of master fastqs
+        List<String> tilesArgList = bclParameters.getTilesArgList(laneIntSet, input.tileShardNumber);
+
+        if (input.tileShardNumber > 1 && tilesArgList.isEmpty()) {
+            LOGGER.info("the tiles of each lane are not known, lanes will not be split into tile shards");
+        }
+
+        // run bcl2fastq once, or once for each tile shard
+        List<Path> outputDirPathList = new ArrayList<>();
+        if (tilesArgList.isEmpty()) {
+
+            outputDirPathList.add(runBcl2fastqProcess(
+                    input, sampleSheetPath, minTrimmedReadLength, pthreads, iothreads, null, ""
+            ));
+
+        } else {
+
+            for (int i = 0; i < tilesArgList.size(); i++) {
+
+                LOGGER.info("running bcl2fastq for tile shard " + (i + 1) + " of " + tilesArgList.size());
+
+                outputDirPathList.add(runBcl2fastqProcess(
+                        input, sampleSheetPath, minTrimmedReadLength, pthreads, iothreads, tilesArgList.get(i),
+                        "-tile-shard-" + (i + 1)
+                ));
+            }
+        }
+
+        return outputDirPathList;
+    }
+
+    private static Path runBcl2fastqProcess(Input input, Path sampleSheetPath, int minTrimmedReadLength,
+                                            int pthreads, int iothreads, String tilesArg, String dirSuffix)
+            throws InterruptedException, IOException {
+
+        // create paths
+        Path outputDirPath = input.workdirPath.resolve("bcl2fastq-output" + dirSuffix);
+        Path interopDirPath = input.workdirPath.resolve("bcl2fastq-interop" + dirSuffix);
+        Path statsDirPath = input.workdirPath.resolve("bcl2fastq-stats" + dirSuffix);
+        Path reportsDirPath = input.workdirPath.resolve("bcl2fastq-reports" + dirSuffix);
 
         // define the process
         ProcessBuilder builder = new ProcessBuilder();
@@ -200,6 +269,10 @@ public class Demultiplex {
             commandList.add("--use-bases-mask"); commandList.add(input.useBasesMaskArg);
         }
 
+        if (tilesArg != null) {
+            commandList.add("--tiles"); commandList.add(tilesArg);
+        }
+
         commandList.add("--runfolder-dir"); commandList.add(input.bclPath.toString());
         commandList.add("--sample-sheet"); commandList.add(sampleSheetPath.toString());
         commandList.add("--interop-dir"); commandList.add(interopDirPath.toString());
@@ -222,6 +295,46 @@ public class Demultiplex {
         return outputDirPath;
     }
 
+    static Map<String, List<Map<String, Fastq>>> getMasterFastqByReadTypeListByLaneStr(
+            Input input, List<Path> bcl2fastqOutputDirPathList) throws IOException {
+
+        // group the master fastqs of each tile shard's output dir by lane
+        Map<String, List<Map<String, Fastq>>> resultMap = new HashMap<>();
+        for (Path bcl2fastqOutputDirPath : bcl2fastqOutputDirPathList) {
+
+            Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr = getMasterFastqByReadTypeByLaneStr(
+                    input, bcl2fastqOutputDirPath
+            );
+
+            for (String laneStr : masterFastqByReadTypeByLaneStr.keySet()) {
+
+                if (!resultMap.containsKey(laneStr)) { resultMap.put(laneStr, new ArrayList<>()); }
+
+                resultMap.get(laneStr).add(masterFastqByReadTypeByLaneStr.get(laneStr));
+            }
+        }
+
+        // make sure every tile shard has every lane and the same read types
+        Set<String> readTypeSet = resultMap.values().iterator().next().get(0).keySet();
+        for (String laneStr : resultMap.keySet()) {
+
+            if (resultMap.get(laneStr).size() != bcl2fastqOutputDirPathList.size()) {
+                throw new RuntimeException("lane " + laneStr + " was missing from some of the tile shards");
+            }
+
+            for (Map<String, Fastq> masterFastqByReadType : resultMap.get(laneStr)) {
+                if (!readTypeSet.equals(masterFastqByReadType.keySet())) {
+                    throw new RuntimeException("different tile shards of the master fastqs had different read types");
+                }
+            }
+        }
+
+        // create an unmodifiable view
+        resultMap.replaceAll((k,v)->Collections.unmodifiableList(v));
+
+        return Collections.unmodifiableMap(resultMap);
+    }
+
     private static Map<String, Map<String, Fastq>> getMasterFastqByReadTypeByLaneStr(
             Input input, Path bcl2fastqOutputDirPath) throws IOException {
 
@@ -357,19 +470,22 @@ public class Demultiplex {
             // skip this lane if we don't have dual index samples
             if (sampleIndexSpecSet.isEmpty()) { continue; }
 
-            // get the sample index key mapping collection
-            SampleIndexKeyMappingCollection sampleIndexKeyMappingCollection = new SampleIndexKeyMappingCollection(
-                    sampleIndexSpecSet,
-                    bclParameters.index1Length,
-                    bclParameters.index2Length
-            );
-
             // get the sample index lookups
             SampleIndexLookup forwardLookup = new SampleIndexLookup(
-                    sampleIndexKeyMappingCollection, false
+                    sampleIndexSpecSet,
+                    bclParameters.index1Length,
+                    bclParameters.index2Length,
+                    false,
+                    input.index1MismatchLimit,
+                    input.index2MismatchLimit
             );
             SampleIndexLookup revCompLookup = new SampleIndexLookup(
-                    sampleIndexKeyMappingCollection, true
+                    sampleIndexSpecSet,
+                    bclParameters.index1Length,
+                    bclParameters.index2Length,
+                    true,
+                    input.index1MismatchLimit,
+                    input.index2MismatchLimit
             );
 
             // get the index fastqs
@@ -377,8 +493,8 @@ public class Demultiplex {
             Fastq index2Fastq = masterFastqByReadTypeByLaneStr.get(laneStr).get(Fastq.INDEX_2_READ_TYPE_STR);
 
             // create index fastq readers
-            BufferedReader index1Reader = Utils.getBufferedGzippedFileReader(index1Fastq.path);
-            BufferedReader index2Reader = Utils.getBufferedGzippedFileReader(index2Fastq.path);
+            BufferedReader index1Reader = Utils.getBufferedFastqFileReader(index1Fastq.path);
+            BufferedReader index2Reader = Utils.getBufferedFastqFileReader(index2Fastq.path);
 
             // read the first 1,000,000 sequences
             for (int i = 0; i < 1000000; i++) {
@@ -512,7 +628,7 @@ public class Demultiplex {
     private static DemultiplexingContext determineDemultiplexingContext(
             Input input,
             BCLParameters bclParameters,
-            Map<String, Map<String, Fastq>> masterFastqByReadTypeByLaneStr,
+            Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr,
             Map<String, Set<SampleIndexSpec>> sampleIndexSpecSetByLaneStr,
             boolean index2ReverseCompliment
     ) throws IOException {
@@ -529,60 +645,117 @@ public class Demultiplex {
 
         // create the context of this demultiplexing process
         return new DemultiplexingContext(
-                masterFastqByReadTypeByLaneStr,
+                masterFastqByReadTypeListByLaneStr,
                 sampleIndexSpecSetByLaneStr,
                 bclParameters.index1Length,
                 index2Length,
                 index2ReverseCompliment,
+                input.index1MismatchLimit,
+                input.index2MismatchLimit,
                 demultiplexedFastqsDirPath,
                 indexCountsDirPath
         );
     }
 
-    private static Map<String, Map<String, Map<String, Long>>> demultiplexMasterFastqs(
+    static Map<String, Map<String, Map<String, Long>>> demultiplexMasterFastqs(
             Input input, DemultiplexingContext demultiplexingContext) throws IOException, InterruptedException {
 
-        // get a set of ids for demultiplexing threads
-        Set<Integer> demultiplexingThreadIdSet = new HashSet<>();
-        for (int i = 1; i <= input.processingThreadNumber; i++) {
+        // split the lanes into reader shards
+        Map<String, List<MasterFastqShard>> masterFastqShardListByLaneStr = getMasterFastqShardListByLaneStr(
+                input, demultiplexingContext
+        );
+
+        // let each thread take a shard from end to end if asked to
+        if (input.sharedNothingPipeline) {
 
-            demultiplexingThreadIdSet.add(i);
+            LOGGER.info("demultiplexing with up to " + input.processingThreadNumber + " shared nothing workers");
+
+            return new SharedNothingPipeline(
+                    input.processingThreadNumber,
+                    input.inFlightByteBudget,
+                    masterFastqShardListByLaneStr,
+                    demultiplexingContext
+            ).run();
         }
 
-        // create a sequence group flow
-        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(
-                new HashSet<>(demultiplexingContext.masterFastqByReadTypeByLaneStr.keySet()),
-                demultiplexingThreadIdSet
-        );
+        // give a lane more writers, each owning some of its samples, when one writer cannot keep up with its threads
+        int writerNumber = Math.max(1, input.processingThreadNumber
+                / (PROCESSING_THREADS_PER_LANE_WRITER * masterFastqShardListByLaneStr.size()));
 
-        // create the demultiplexing threads
-        ArrayList<DemultiplexingThread> demultiplexingThreadList = new ArrayList<>();
-        for (int i : demultiplexingThreadIdSet) {
+        Map<String, Integer> writerNumberByLaneStr = new HashMap<>();
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
 
-            demultiplexingThreadList.add(
-                    new DemultiplexingThread(i, sequenceGroupFlow, demultiplexingContext)
-            );
+            writerNumberByLaneStr.put(laneStr, Math.min(
+                    writerNumber, demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(laneStr).size()
+            ));
+
+            LOGGER.info("lane " + laneStr + " will be written by " + writerNumberByLaneStr.get(laneStr) + " writers");
         }
 
-        // create the reader and writer threads
-        ArrayList<ReaderThread> readerThreadList = new ArrayList<>();
-        ArrayList<WriterThread> writerThreadList = new ArrayList<>();
-        for (String laneStr : demultiplexingContext.masterFastqByReadTypeByLaneStr.keySet()) {
+        // read, classify, compress and write every lane within the processing thread budget, compression starts out
+        // with the compression thread number and the stages' threads move as the run goes
+        LOGGER.info("demultiplexing with a budget of " + input.processingThreadNumber + " threads");
+
+        DemultiplexingPipeline demultiplexingPipeline = new DemultiplexingPipeline(
+                input.processingThreadNumber,
+                input.compressionThreadNumber,
+                input.inFlightByteBudget,
+                masterFastqShardListByLaneStr,
+                writerNumberByLaneStr,
+                demultiplexingContext
+        );
 
-            readerThreadList.add(new ReaderThread(laneStr, sequenceGroupFlow, demultiplexingContext));
-            writerThreadList.add(new WriterThread(laneStr, sequenceGroupFlow, demultiplexingContext));
-        }
+        // return the count by index string by id by lane string map
+        return demultiplexingPipeline.run();
+    }
 
-        // start threads
-        for (ReaderThread readerThread : readerThreadList) { readerThread.start(); }
-        for (DemultiplexingThread demultiplexingThread : demultiplexingThreadList) { demultiplexingThread.start(); }
-        for (WriterThread writerThread : writerThreadList) { writerThread.start(); }
+    private static Map<String, List<MasterFastqShard>> getMasterFastqShardListByLaneStr(
+            Input input, DemultiplexingContext demultiplexingContext) throws IOException {
+        return getMasterFastqShardListByLaneStr(input, demultiplexingContext, MIN_READER_SHARD_FILE_SIZE);
+    }
 
-        // wait on the writer threads which should be the last to complete
-        for (WriterThread writerThread : writerThreadList) { writerThread.join(); }
+    static Map<String, List<MasterFastqShard>> getMasterFastqShardListByLaneStr(
+            Input input, DemultiplexingContext demultiplexingContext, long minReaderShardFileSize) throws IOException {
 
-        // return the count by index string by id by lane string map
-        return sequenceGroupFlow.getCountByIndexStrByIdByLaneStr();
+        Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr =
+                demultiplexingContext.masterFastqByReadTypeListByLaneStr;
+
+        // give a lane more readers when there are more processing threads than its one reader can keep busy, shared
+        // nothing workers each need a shard of their own
+        int threadsPerReaderShard = input.sharedNothingPipeline ? 1 : PROCESSING_THREADS_PER_READER_SHARD;
+        int maxShardNumber = input.processingThreadNumber
+                / (threadsPerReaderShard * masterFastqByReadTypeListByLaneStr.size());
+
+        Map<String, List<MasterFastqShard>> masterFastqShardListByLaneStr = new HashMap<>();
+        for (String laneStr : masterFastqByReadTypeListByLaneStr.keySet()) {
+
+            // each tile shard already gets its own reader, and they share the rest
+            List<Map<String, Fastq>> masterFastqByReadTypeList = masterFastqByReadTypeListByLaneStr.get(laneStr);
+            int tileShardMaxShardNumber = maxShardNumber / masterFastqByReadTypeList.size();
+
+            List<MasterFastqShard> masterFastqShardList = new ArrayList<>();
+            for (Map<String, Fastq> masterFastqByReadType : masterFastqByReadTypeList) {
+
+                // only split fastqs that are large enough to be worth indexing
+                long largestFileSize = 0;
+                for (Fastq fastq : masterFastqByReadType.values()) {
+                    largestFileSize = Math.max(largestFileSize, Files.size(fastq.path));
+                }
+
+                masterFastqShardList.addAll(MasterFastqShard.getMasterFastqShardList(
+                        laneStr,
+                        masterFastqByReadType,
+                        (int) Math.min(tileShardMaxShardNumber, largestFileSize / minReaderShardFileSize),
+                        input.processingThreadNumber
+                ));
+            }
+
+            LOGGER.info("lane " + laneStr + " will be read by " + masterFastqShardList.size() + " shard readers");
+
+            masterFastqShardListByLaneStr.put(laneStr, masterFastqShardList);
+        }
+
+        return Collections.unmodifiableMap(masterFastqShardListByLaneStr);
     }
 
     private static void writeIndexCounts(
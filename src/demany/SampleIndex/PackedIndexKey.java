@@ -0,0 +1,85 @@
+package demany.SampleIndex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// packs an index key into a long, two bits for each base and a mask bit for each N, so that keys can be looked up
+// straight from the bytes of a read without building a string, distinct keys of one length always pack differently
+public class PackedIndexKey {
+
+    public static final int MAX_LENGTH = 21;
+
+    // returned for keys that are too long or have a character other than A, C, G, T or N, never a packed key
+    public static final long INVALID_KEY = -1;
+
+    private static final int N_MASK_SHIFT = 2 * MAX_LENGTH;
+
+    // the two bits of each base, or -1 for an N, or -2 for any other character
+    private static final byte[] CODE_BY_CHARACTER = new byte[256];
+    static {
+        Arrays.fill(CODE_BY_CHARACTER, (byte) -2);
+        CODE_BY_CHARACTER['A'] = 0;
+        CODE_BY_CHARACTER['C'] = 1;
+        CODE_BY_CHARACTER['G'] = 2;
+        CODE_BY_CHARACTER['T'] = 3;
+        CODE_BY_CHARACTER['N'] = -1;
+    }
+
+    private static final char[] CHARACTER_BY_CODE = {'A', 'C', 'G', 'T'};
+
+    public static long pack(String key) {
+
+        if (key.length() > MAX_LENGTH) { return INVALID_KEY; }
+
+        long packedKey = 0;
+        for (int i = 0; i < key.length(); i++) {
+
+            char character = key.charAt(i);
+            if (character > 255) { return INVALID_KEY; }
+
+            packedKey = addBase(packedKey, i, CODE_BY_CHARACTER[character]);
+            if (packedKey == INVALID_KEY) { return INVALID_KEY; }
+        }
+
+        return packedKey;
+    }
+
+    public static long pack(ByteBuffer buffer, int start, int length) {
+
+        if (length > MAX_LENGTH) { return INVALID_KEY; }
+
+        long packedKey = 0;
+        for (int i = 0; i < length; i++) {
+
+            packedKey = addBase(packedKey, i, CODE_BY_CHARACTER[buffer.get(start + i) & 0xff]);
+            if (packedKey == INVALID_KEY) { return INVALID_KEY; }
+        }
+
+        return packedKey;
+    }
+
+    // the key a packed key was packed from, given its length
+    public static String unpack(long packedKey, int length) {
+
+        if (packedKey == INVALID_KEY || length > MAX_LENGTH) {
+            throw new RuntimeException("cannot unpack an invalid index key");
+        }
+
+        char[] characters = new char[length];
+        for (int i = 0; i < length; i++) {
+
+            if ((packedKey >>> (N_MASK_SHIFT + i) & 1L) == 1L) { characters[i] = 'N'; }
+            else { characters[i] = CHARACTER_BY_CODE[(int) (packedKey >>> (2 * i) & 3L)]; }
+        }
+
+        return new String(characters);
+    }
+
+    private static long addBase(long packedKey, int position, byte code) {
+
+        if (code == -2) { return INVALID_KEY; }
+        if (code == -1) { return packedKey | 1L << (N_MASK_SHIFT + position); }
+
+        return packedKey | (long) code << (2 * position);
+    }
+}
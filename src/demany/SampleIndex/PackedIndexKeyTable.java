@@ -0,0 +1,90 @@
+package demany.SampleIndex;
+
+import java.util.Arrays;
+
+// an open addressing table from packed index keys to sample ordinals, with linear probing over primitive arrays so
+// that a lookup neither allocates nor boxes
+class PackedIndexKeyTable {
+
+    static final int MISSING_VALUE = -1;
+
+    private static final long EMPTY_KEY = PackedIndexKey.INVALID_KEY;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    PackedIndexKeyTable(int expectedSize) {
+
+        // keep the table at most half full
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) * 2;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY_KEY);
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+
+        // the finalizer of murmur hash 3, so that keys differing in a few bases spread over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        return (int) key;
+    }
+
+    void put(long key, int value) {
+
+        if (key == EMPTY_KEY) { throw new RuntimeException("an invalid index key cannot be put in the table"); }
+        if (value < 0) { throw new RuntimeException("a table value cannot be negative"); }
+
+        if ((this.size + 1) * 2 > this.keys.length) { grow(); }
+
+        int slot = hash(key) & this.mask;
+        while (this.keys[slot] != EMPTY_KEY && this.keys[slot] != key) { slot = (slot + 1) & this.mask; }
+
+        if (this.keys[slot] == EMPTY_KEY) { this.size++; }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+    }
+
+    int get(long key) {
+
+        if (key == EMPTY_KEY) { return MISSING_VALUE; }
+
+        int slot = hash(key) & this.mask;
+        while (true) {
+
+            long slotKey = this.keys[slot];
+            if (slotKey == key) { return this.values[slot]; }
+            if (slotKey == EMPTY_KEY) { return MISSING_VALUE; }
+
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    int size() { return this.size; }
+
+    private void grow() {
+
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+
+        allocate(oldKeys.length * 2);
+        this.size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) { put(oldKeys[i], oldValues[i]); }
+        }
+    }
+}
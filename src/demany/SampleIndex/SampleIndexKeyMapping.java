@@ -3,7 +3,9 @@ package demany.SampleIndex;
 import demany.Fastq.SequenceOperator;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 
 public class SampleIndexKeyMapping {
 
@@ -58,6 +60,15 @@ public class SampleIndexKeyMapping {
         return new HashSet<>(index2KeySet);
     }
 
+    // read only views of the key sets, for going over the keys without copying them
+    Set<String> getIndex1IdentityKeySet() { return Collections.unmodifiableSet(this.index1IdentityKeySet); }
+
+    Set<String> getIndex1KeySet() { return Collections.unmodifiableSet(this.index1KeySet); }
+
+    Set<String> getIndex2IdentityKeySet() { return Collections.unmodifiableSet(this.index2IdentityKeySet); }
+
+    Set<String> getIndex2KeySet() { return Collections.unmodifiableSet(this.index2KeySet); }
+
     private static void fillKeySet(String index, int keyLength, HashSet<String> identityKeySet,
                                    HashSet<String> keySet) {
 
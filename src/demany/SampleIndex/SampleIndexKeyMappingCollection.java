@@ -1,14 +1,21 @@
 package demany.SampleIndex;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class SampleIndexKeyMappingCollection {
 
     private final ArrayList<SampleIndexKeyMapping> sampleIndexKeyMappingList;
-    private final ArrayList<SampleIndexKeyMappingOverlapCheck> sampleIndexKeyMappingOverlapCheckList;
+    private final HashMap<Long, Integer> index1IdentityKeyCollisionNumberByPair;
+    private final HashMap<Long, Integer> index2IdentityKeyCollisionNumberByPair;
+    private final HashMap<Long, Integer> index1KeyOverlapNumberByPair;
+    private final HashMap<Long, Integer> index2KeyOverlapNumberByPair;
     private final boolean hasIdentityKeyCollision;
     private final boolean hasKeyOverlap;
+    private final int index1KeyLength;
+    private final int index2KeyLength;
 
     public SampleIndexKeyMappingCollection(Set<SampleIndexSpec> sampleIndexSpecSet, int index1KeyLength,
                                            int index2KeyLength) {
@@ -18,6 +25,9 @@ public class SampleIndexKeyMappingCollection {
         if (!(index1KeyLength > 0)) { throw new RuntimeException("index 1 key length must be greater than 0"); }
         if (!(index2KeyLength > -1)) { throw new RuntimeException("index 2 key length must be greater than -1"); }
 
+        this.index1KeyLength = index1KeyLength;
+        this.index2KeyLength = index2KeyLength;
+
         // fill the key mapping list
         this.sampleIndexKeyMappingList = new ArrayList<>();
         for (SampleIndexSpec sampleIndexSpec : sampleIndexSpecSet) {
@@ -27,30 +37,36 @@ public class SampleIndexKeyMappingCollection {
             );
         }
 
-        // create the key mapping overlap check list
-        this.sampleIndexKeyMappingOverlapCheckList = new ArrayList<>();
-        for (int i = 0; i < this.sampleIndexKeyMappingList.size() - 1; i++) {
-            for (int j = i+1; j < this.sampleIndexKeyMappingList.size(); j++) {
+        // index the owners of every key in one pass, and count the keys each pair of mappings shares from them
+        SampleIndexKeyOwnerIndex index1IdentityKeyOwnerIndex = new SampleIndexKeyOwnerIndex();
+        SampleIndexKeyOwnerIndex index2IdentityKeyOwnerIndex = new SampleIndexKeyOwnerIndex();
+        SampleIndexKeyOwnerIndex index1KeyOwnerIndex = new SampleIndexKeyOwnerIndex();
+        SampleIndexKeyOwnerIndex index2KeyOwnerIndex = new SampleIndexKeyOwnerIndex();
+        for (int i = 0; i < this.sampleIndexKeyMappingList.size(); i++) {
+
+            SampleIndexKeyMapping sampleIndexKeyMapping = this.sampleIndexKeyMappingList.get(i);
 
-                this.sampleIndexKeyMappingOverlapCheckList.add(
-                        new SampleIndexKeyMappingOverlapCheck(
-                                this.sampleIndexKeyMappingList.get(i), this.sampleIndexKeyMappingList.get(j)
-                        )
-                );
+            index1IdentityKeyOwnerIndex.add(sampleIndexKeyMapping.getIndex1IdentityKeySet(), i);
+            index1KeyOwnerIndex.add(sampleIndexKeyMapping.getIndex1KeySet(), i);
+
+            if (sampleIndexKeyMapping.hasIndex2()) {
+                index2IdentityKeyOwnerIndex.add(sampleIndexKeyMapping.getIndex2IdentityKeySet(), i);
+                index2KeyOwnerIndex.add(sampleIndexKeyMapping.getIndex2KeySet(), i);
             }
         }
 
+        this.index1IdentityKeyCollisionNumberByPair = index1IdentityKeyOwnerIndex.getSharedKeyNumberByOwnerPair();
+        this.index2IdentityKeyCollisionNumberByPair = index2IdentityKeyOwnerIndex.getSharedKeyNumberByOwnerPair();
+        this.index1KeyOverlapNumberByPair = index1KeyOwnerIndex.getSharedKeyNumberByOwnerPair();
+        this.index2KeyOverlapNumberByPair = index2KeyOwnerIndex.getSharedKeyNumberByOwnerPair();
+
         // determine if we have an identity key collision anywhere
-        this.hasIdentityKeyCollision = this.sampleIndexKeyMappingOverlapCheckList
-                .stream()
-                .map(SampleIndexKeyMappingOverlapCheck::hasIdentityKeyCollision)
-                .reduce(false, (a, b) -> a || b);
+        this.hasIdentityKeyCollision = !this.index1IdentityKeyCollisionNumberByPair.isEmpty() ||
+                !this.index2IdentityKeyCollisionNumberByPair.isEmpty();
 
         // determine if we have an key overlap anywhere
-        this.hasKeyOverlap = this.sampleIndexKeyMappingOverlapCheckList
-                .stream()
-                .map(SampleIndexKeyMappingOverlapCheck::hasKeyOverlap)
-                .reduce(false, (a, b) -> a || b);
+        this.hasKeyOverlap = !this.index1KeyOverlapNumberByPair.isEmpty() ||
+                !this.index2KeyOverlapNumberByPair.isEmpty();
     }
 
     public boolean hasIdentityKeyCollision() {
@@ -61,17 +77,35 @@ public class SampleIndexKeyMappingCollection {
         return hasKeyOverlap;
     }
 
+    public int getIndex1KeyLength() { return index1KeyLength; }
+
+    public int getIndex2KeyLength() { return index2KeyLength; }
+
     public ArrayList<SampleIndexKeyMapping> getSampleIndexKeyMappingList() {
         return new ArrayList<>(sampleIndexKeyMappingList);
     }
 
     public ArrayList<String> getOverlapReportLines() {
 
+        // report the pairs of mappings that share keys in the order of the mapping list
+        TreeSet<Long> pairSet = new TreeSet<>();
+        pairSet.addAll(this.index1IdentityKeyCollisionNumberByPair.keySet());
+        pairSet.addAll(this.index2IdentityKeyCollisionNumberByPair.keySet());
+        pairSet.addAll(this.index1KeyOverlapNumberByPair.keySet());
+        pairSet.addAll(this.index2KeyOverlapNumberByPair.keySet());
+
         ArrayList<String> lineList = new ArrayList<>();
 
-        for (SampleIndexKeyMappingOverlapCheck overlapCheck : sampleIndexKeyMappingOverlapCheckList) {
+        for (long pair : pairSet) {
 
-            lineList.addAll(overlapCheck.getOverlapReportLines());
+            lineList.addAll(SampleIndexKeyMappingOverlapCheck.getOverlapReportLines(
+                    this.sampleIndexKeyMappingList.get(SampleIndexKeyOwnerIndex.getFirstOwner(pair)),
+                    this.sampleIndexKeyMappingList.get(SampleIndexKeyOwnerIndex.getSecondOwner(pair)),
+                    this.index1IdentityKeyCollisionNumberByPair.containsKey(pair),
+                    this.index2IdentityKeyCollisionNumberByPair.containsKey(pair),
+                    this.index1KeyOverlapNumberByPair.getOrDefault(pair, 0),
+                    this.index2KeyOverlapNumberByPair.getOrDefault(pair, 0)
+            ));
         }
 
         return lineList;
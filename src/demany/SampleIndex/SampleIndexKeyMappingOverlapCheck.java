@@ -86,106 +86,115 @@ public class SampleIndexKeyMappingOverlapCheck {
 
     public ArrayList<String> getOverlapReportLines() {
 
+        return getOverlapReportLines(
+                this.firstSampleIndexKeyMapping,
+                this.secondSampleIndexKeyMapping,
+                hasIndex1IdentityKeyCollision(),
+                hasIndex2IdentityKeyCollision(),
+                this.index1KeyOverlapSet.size(),
+                hasIndex2KeyOverlapSets() ? this.index2KeyOverlapSet.size() : 0
+        );
+    }
+
+    // the report lines of two mappings from their identity collisions and the number of keys they share on each index
+    static ArrayList<String> getOverlapReportLines(SampleIndexKeyMapping firstSampleIndexKeyMapping,
+                                                   SampleIndexKeyMapping secondSampleIndexKeyMapping,
+                                                   boolean hasIndex1IdentityKeyCollision,
+                                                   boolean hasIndex2IdentityKeyCollision,
+                                                   int index1KeyOverlapNumber,
+                                                   int index2KeyOverlapNumber) {
+
         ArrayList<String> lineList = new ArrayList<>();
         StringBuilder lineBuilder;
 
         // first and second index strings
         String firstAndSecondIndex1 = String.format(
                 "first: %s, second: %s",
-                this.firstSampleIndexKeyMapping.sampleIndexSpec.index1,
-                this.secondSampleIndexKeyMapping.sampleIndexSpec.index1
+                firstSampleIndexKeyMapping.sampleIndexSpec.index1,
+                secondSampleIndexKeyMapping.sampleIndexSpec.index1
         );
         String firstAndSecondIndex2 = String.format(
                 "first: %s, second: %s",
-                this.firstSampleIndexKeyMapping.sampleIndexSpec.index2,
-                this.secondSampleIndexKeyMapping.sampleIndexSpec.index2
+                firstSampleIndexKeyMapping.sampleIndexSpec.index2,
+                secondSampleIndexKeyMapping.sampleIndexSpec.index2
         );
 
-        // lines for identity key collision
-        if (hasIdentityKeyCollision()) {
+        // line for index 1 collision
+        if (hasIndex1IdentityKeyCollision) {
 
-            // line for index 1 collision
-            if (hasIndex1IdentityKeyCollision()) {
+            lineBuilder = new StringBuilder();
 
-                lineBuilder = new StringBuilder();
-
-                lineBuilder.append(
-                        String.format("%s - %s and %s - %s have a collision on index 1, ",
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.sample
-                        )
-                );
+            lineBuilder.append(
+                    String.format("%s - %s and %s - %s have a collision on index 1, ",
+                            firstSampleIndexKeyMapping.sampleIndexSpec.project,
+                            firstSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.project,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.sample
+                    )
+            );
 
-                lineBuilder.append(firstAndSecondIndex1);
+            lineBuilder.append(firstAndSecondIndex1);
 
-                lineList.add(lineBuilder.toString());
-            }
+            lineList.add(lineBuilder.toString());
+        }
 
-            // line for index 2 collision
-            if (hasIndex2IdentityKeyCollision()) {
+        // line for index 2 collision
+        if (hasIndex2IdentityKeyCollision) {
 
-                lineBuilder = new StringBuilder();
+            lineBuilder = new StringBuilder();
 
-                lineBuilder.append(
-                        String.format("%s - %s and %s - %s have a collision on index 2, ",
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.sample
-                        )
-                );
+            lineBuilder.append(
+                    String.format("%s - %s and %s - %s have a collision on index 2, ",
+                            firstSampleIndexKeyMapping.sampleIndexSpec.project,
+                            firstSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.project,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.sample
+                    )
+            );
 
-                lineBuilder.append(firstAndSecondIndex2);
+            lineBuilder.append(firstAndSecondIndex2);
 
-                lineList.add(lineBuilder.toString());
-            }
+            lineList.add(lineBuilder.toString());
         }
 
-        // lines for key overlap
-        if (hasKeyOverlap()) {
-
-            // line for index 1 key overlap
-            if (hasIndex1KeyOverlap()) {
-
-                lineBuilder = new StringBuilder();
+        // line for index 1 key overlap
+        if (index1KeyOverlapNumber > 0) {
 
-                lineBuilder.append(
-                        String.format("%s - %s and %s - %s have %d shared keys for index 1, ",
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.index1KeyOverlapSet.size()
-                        )
-                );
+            lineBuilder = new StringBuilder();
 
-                lineBuilder.append(firstAndSecondIndex1);
+            lineBuilder.append(
+                    String.format("%s - %s and %s - %s have %d shared keys for index 1, ",
+                            firstSampleIndexKeyMapping.sampleIndexSpec.project,
+                            firstSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.project,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            index1KeyOverlapNumber
+                    )
+            );
 
-                lineList.add(lineBuilder.toString());
-            }
+            lineBuilder.append(firstAndSecondIndex1);
 
-            // line fore index 2 key overlap
-            if (hasIndex2KeyOverlap()) {
+            lineList.add(lineBuilder.toString());
+        }
 
-                lineBuilder = new StringBuilder();
+        // line fore index 2 key overlap
+        if (index2KeyOverlapNumber > 0) {
 
-                lineBuilder.append(
-                        String.format("%s - %s and %s - %s have %d shared keys for index 2, ",
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.firstSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.project,
-                                this.secondSampleIndexKeyMapping.sampleIndexSpec.sample,
-                                this.index2KeyOverlapSet.size()
-                        )
-                );
+            lineBuilder = new StringBuilder();
 
-                lineBuilder.append(firstAndSecondIndex2);
+            lineBuilder.append(
+                    String.format("%s - %s and %s - %s have %d shared keys for index 2, ",
+                            firstSampleIndexKeyMapping.sampleIndexSpec.project,
+                            firstSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.project,
+                            secondSampleIndexKeyMapping.sampleIndexSpec.sample,
+                            index2KeyOverlapNumber
+                    )
+            );
 
-                lineList.add(lineBuilder.toString());
-            }
+            lineBuilder.append(firstAndSecondIndex2);
 
+            lineList.add(lineBuilder.toString());
         }
 
         return lineList;
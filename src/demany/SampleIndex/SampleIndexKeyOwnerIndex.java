@@ -0,0 +1,66 @@
+package demany.SampleIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+// an inverted index from each key to the ordinals of the key sets that hold it, built in one pass over the key sets, so
+// that the keys each pair of sets shares are counted from the keys held more than once rather than by intersecting the
+// sets of every pair
+class SampleIndexKeyOwnerIndex {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    // a pair of owner ordinals, the lower one first, packed into a long that sorts in the order of the pair
+    static long getOwnerPair(int firstOrdinal, int secondOrdinal) {
+
+        if (firstOrdinal > secondOrdinal) { return getOwnerPair(secondOrdinal, firstOrdinal); }
+
+        return (long) firstOrdinal << 32 | secondOrdinal;
+    }
+
+    static int getFirstOwner(long ownerPair) { return (int) (ownerPair >>> 32); }
+
+    static int getSecondOwner(long ownerPair) { return (int) ownerPair; }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static final int[] NO_OWNERS = new int[0];
+
+    private final HashMap<String, int[]> ownerOrdinalsByKey = new HashMap<>();
+
+    void add(Set<String> keySet, int ordinal) {
+
+        for (String key : keySet) {
+
+            // most keys have a single owner, so each key's owners are a small array that grows by one
+            int[] ownerOrdinals = this.ownerOrdinalsByKey.getOrDefault(key, NO_OWNERS);
+            int[] newOwnerOrdinals = Arrays.copyOf(ownerOrdinals, ownerOrdinals.length + 1);
+            newOwnerOrdinals[ownerOrdinals.length] = ordinal;
+
+            this.ownerOrdinalsByKey.put(key, newOwnerOrdinals);
+        }
+    }
+
+    // the number of keys each pair of owners shares, only the pairs that share a key are present
+    HashMap<Long, Integer> getSharedKeyNumberByOwnerPair() {
+
+        HashMap<Long, Integer> sharedKeyNumberByOwnerPair = new HashMap<>();
+        for (int[] ownerOrdinals : this.ownerOrdinalsByKey.values()) {
+
+            if (ownerOrdinals.length < 2) { continue; }
+
+            for (int i = 0; i < ownerOrdinals.length - 1; i++) {
+                for (int j = i + 1; j < ownerOrdinals.length; j++) {
+                    sharedKeyNumberByOwnerPair.merge(getOwnerPair(ownerOrdinals[i], ownerOrdinals[j]), 1, Integer::sum);
+                }
+            }
+        }
+
+        return sharedKeyNumberByOwnerPair;
+    }
+}
@@ -1,109 +1,247 @@
 package demany.SampleIndex;
 
-import demany.Fastq.SequenceOperator;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 public class SampleIndexLookup {
 
-    static class ProjectSampleIdIndex2KeySetPair {
+    public static final int NO_SAMPLE = SampleIndexMatcher.NO_SAMPLE;
+
+    // the mismatches a key may have and still match a sample, that of the enumerated sample index key sets
+    public static final int DEFAULT_MISMATCH_LIMIT = 1;
+
+    // the index 2 barcode of a sample that is matched on index 1 alone
+    private static final int ANY_INDEX2_BARCODE = -2;
+
+    // the index 1 and index 2 keys each resolve to a barcode, matched by mismatch counts against the distinct
+    // barcodes of the samples, and the pair of barcodes resolves to a sample, so samples may share either barcode
+    //
+    // an index 1 barcode of a single sample keeps that sample and its index 2 barcode, and an index 1 barcode that
+    // samples share keeps a dense row of samples by index 2 barcode, so a sheet of unique dual indexes takes no more
+    // room than its samples while a combinatorial one is still a single array probe
+    private final String[] idByOrdinal;
+    private final SampleIndexMatcher index1Matcher;
+    private final SampleIndexMatcher index2Matcher;
+    private final int[] onlyOrdinalByIndex1Barcode;
+    private final int[] onlyIndex2BarcodeByIndex1Barcode;
+    private final int[][] ordinalByIndex2BarcodeByIndex1Barcode;
+    private final int index1KeyLength;
+    private final int index2KeyLength;
 
-        String id;
-        HashSet<String> index2KeySet;
+    public SampleIndexLookup(SampleIndexKeyMappingCollection sampleIndexKeyMappingCollection,
+                             boolean index2ReverseCompliment) {
 
-        ProjectSampleIdIndex2KeySetPair(SampleIndexSpec sampleIndexSpec, HashSet<String> index2KeySet) {
-            this.id = sampleIndexSpec.id;
-            this.index2KeySet = index2KeySet;
-        }
+        this(
+                getSampleIndexSpecList(sampleIndexKeyMappingCollection),
+                sampleIndexKeyMappingCollection.getIndex1KeyLength(),
+                sampleIndexKeyMappingCollection.getIndex2KeyLength(),
+                index2ReverseCompliment,
+                DEFAULT_MISMATCH_LIMIT,
+                DEFAULT_MISMATCH_LIMIT
+        );
     }
 
-    private final HashMap<String, ProjectSampleIdIndex2KeySetPair> lookupMap = new HashMap<>();
+    public SampleIndexLookup(Collection<SampleIndexSpec> sampleIndexSpecCollection, int index1KeyLength,
+                             int index2KeyLength, boolean index2ReverseCompliment, int index1MismatchLimit,
+                             int index2MismatchLimit) {
 
-    public SampleIndexLookup(SampleIndexKeyMappingCollection sampleIndexKeyMappingCollection,
-                             boolean index2ReverseCompliment) {
-
-        // check argument
-        if (sampleIndexKeyMappingCollection.hasIdentityKeyCollision()) {
+        // check input
+        if (sampleIndexSpecCollection.isEmpty()) {
+            throw new RuntimeException("the sample index spec collection cannot be empty");
+        }
+        if (!(index1KeyLength > 0)) { throw new RuntimeException("index 1 key length must be greater than 0"); }
+        if (!(index2KeyLength > -1)) { throw new RuntimeException("index 2 key length must be greater than -1"); }
+        if (index1KeyLength > PackedIndexKey.MAX_LENGTH || index2KeyLength > PackedIndexKey.MAX_LENGTH) {
             throw new RuntimeException(
-                    "cannot create a lookup table with a sample index key mapping collection that has an " +
-                            "identity collision"
+                    "cannot create a lookup table for index keys longer than " + PackedIndexKey.MAX_LENGTH
             );
         }
+        if (index1MismatchLimit < 0 || index2MismatchLimit < 0) {
+            throw new RuntimeException("index mismatch limits cannot be negative");
+        }
+
+        this.index1KeyLength = index1KeyLength;
+        this.index2KeyLength = index2KeyLength;
 
-        // fill the lookup map
-        ArrayList<SampleIndexKeyMapping> sampleIndexKeyMappingArrayList =
-                sampleIndexKeyMappingCollection.getSampleIndexKeyMappingList();
-        for (int i = 0; i < sampleIndexKeyMappingArrayList.size(); i++) {
+        // give each sample an ordinal and each distinct barcode, as far as the keys read it, an id, a sample only has
+        // an index 2 barcode if index 2 is read
+        ArrayList<SampleIndexSpec> sampleIndexSpecList = new ArrayList<>(sampleIndexSpecCollection);
 
-            // get this mapping's key maps
-            SampleIndexKeyMapping keyMapping = sampleIndexKeyMappingArrayList.get(i);
-            HashSet<String> index1KeySet = keyMapping.getIndex1KeySetCopy();
+        this.idByOrdinal = new String[sampleIndexSpecList.size()];
+        int[] index1BarcodeByOrdinal = new int[sampleIndexSpecList.size()];
+        int[] index2BarcodeByOrdinal = new int[sampleIndexSpecList.size()];
+        LinkedHashMap<String, Integer> index1BarcodeIdByBarcode = new LinkedHashMap<>();
+        LinkedHashMap<String, Integer> index2BarcodeIdByBarcode = new LinkedHashMap<>();
 
-            HashSet<String> index2KeySet = null;
-            if (keyMapping.hasIndex2()) { index2KeySet = keyMapping.getIndex2KeySetCopy(); }
+        for (int i = 0; i < sampleIndexSpecList.size(); i++) {
 
-            // prune the key maps to non-overlapping keys
-            for (int j = 0; j < sampleIndexKeyMappingArrayList.size(); j++) {
+            SampleIndexSpec sampleIndexSpec = sampleIndexSpecList.get(i);
+
+            this.idByOrdinal[i] = sampleIndexSpec.id;
+            index1BarcodeByOrdinal[i] = getBarcodeId(sampleIndexSpec.index1, index1KeyLength, index1BarcodeIdByBarcode);
+            index2BarcodeByOrdinal[i] = index2KeyLength > 0 && sampleIndexSpec.hasIndex2() ?
+                    getBarcodeId(sampleIndexSpec.index2, index2KeyLength, index2BarcodeIdByBarcode) :
+                    ANY_INDEX2_BARCODE;
+        }
 
-                // skip if i and j are the same
-                if (i == j) { continue; }
+        String[] index1Barcodes = index1BarcodeIdByBarcode.keySet().toArray(new String[0]);
+        String[] index2Barcodes = index2BarcodeIdByBarcode.keySet().toArray(new String[0]);
 
-                // get the other key maps
-                SampleIndexKeyMapping otherKeyMapping = sampleIndexKeyMappingArrayList.get(j);
-                HashSet<String> otherIndex1KeySet = otherKeyMapping.getIndex1KeySetCopy();
+        // no two distinct barcodes of an index can be an exact match for the same key
+        checkIdentityCollision(index1Barcodes, index1KeyLength, 1);
+        checkIdentityCollision(index2Barcodes, index2KeyLength, 2);
 
-                HashSet<String> otherIndex2KeySet = null;
-                if (otherKeyMapping.hasIndex2()) { otherIndex2KeySet = otherKeyMapping.getIndex2KeySetCopy(); }
+        // fill the samples of each index 1 barcode, a dense row of them if they share it
+        this.onlyOrdinalByIndex1Barcode = new int[index1Barcodes.length];
+        this.onlyIndex2BarcodeByIndex1Barcode = new int[index1Barcodes.length];
+        this.ordinalByIndex2BarcodeByIndex1Barcode = new int[index1Barcodes.length][];
+        Arrays.fill(this.onlyOrdinalByIndex1Barcode, NO_SAMPLE);
 
-                // prune shared keys
-                index1KeySet.removeAll(otherIndex1KeySet);
+        for (int i = 0; i < sampleIndexSpecList.size(); i++) {
 
-                if (index2KeySet != null && otherIndex2KeySet != null) {
-                    index2KeySet.removeAll(otherIndex2KeySet);
-                }
+            int index1Barcode = index1BarcodeByOrdinal[i];
+            int otherOrdinal = this.onlyOrdinalByIndex1Barcode[index1Barcode];
+
+            if (otherOrdinal == NO_SAMPLE && this.ordinalByIndex2BarcodeByIndex1Barcode[index1Barcode] == null) {
+
+                this.onlyOrdinalByIndex1Barcode[index1Barcode] = i;
+                this.onlyIndex2BarcodeByIndex1Barcode[index1Barcode] = index2BarcodeByOrdinal[i];
+                continue;
             }
 
-            // get reverse compliment if necessary
-            if (index2KeySet != null && index2ReverseCompliment) {
+            // samples that share an index 1 barcode are told apart by index 2 alone
+            int[] ordinalByIndex2Barcode = this.ordinalByIndex2BarcodeByIndex1Barcode[index1Barcode];
+            if (ordinalByIndex2Barcode == null) {
 
-                HashSet<String> newIndex2KeySet = new HashSet<>();
-                for (String key : index2KeySet) {
-                    newIndex2KeySet.add(SequenceOperator.getReverseCompliment(key));
-                }
+                ordinalByIndex2Barcode = new int[index2Barcodes.length];
+                Arrays.fill(ordinalByIndex2Barcode, NO_SAMPLE);
+                this.ordinalByIndex2BarcodeByIndex1Barcode[index1Barcode] = ordinalByIndex2Barcode;
 
-                index2KeySet = newIndex2KeySet;
+                this.onlyOrdinalByIndex1Barcode[index1Barcode] = NO_SAMPLE;
+                addToRow(ordinalByIndex2Barcode, otherOrdinal, index2BarcodeByOrdinal[otherOrdinal]);
             }
 
-            // add index 1 key -> (sample index spec, index 2 key set) mappings to the lookup dict
-            ProjectSampleIdIndex2KeySetPair pair = new ProjectSampleIdIndex2KeySetPair(
-                    keyMapping.sampleIndexSpec, index2KeySet
+            addToRow(ordinalByIndex2Barcode, i, index2BarcodeByOrdinal[i]);
+        }
+
+        // create the index matchers over the distinct barcodes
+        this.index1Matcher = new SampleIndexMatcher(index1Barcodes, index1KeyLength, index1MismatchLimit, false);
+        this.index2Matcher = index2KeyLength == 0 ? null : new SampleIndexMatcher(
+                index2Barcodes, index2KeyLength, index2MismatchLimit, index2ReverseCompliment
+        );
+    }
+
+    // the id of a barcode as far as keys of the length read it, the next id if it has none yet
+    private static int getBarcodeId(String barcode, int keyLength, HashMap<String, Integer> barcodeIdByBarcode) {
+
+        String readBarcode = barcode.length() > keyLength ? barcode.substring(0, keyLength) : barcode;
+
+        return barcodeIdByBarcode.computeIfAbsent(readBarcode, k -> barcodeIdByBarcode.size());
+    }
+
+    private static void checkIdentityCollision(String[] barcodes, int keyLength, int indexNumber) {
+
+        int[] identityCollision = SampleIndexMatcher.findIdentityCollision(barcodes, keyLength);
+
+        if (identityCollision != null) {
+            throw new RuntimeException(
+                    "cannot create a lookup table for index " + indexNumber + " barcodes with an identity " +
+                            "collision, " + barcodes[identityCollision[0]] + " and " + barcodes[identityCollision[1]]
             );
+        }
+    }
 
-            for (String key : index1KeySet) {
-                this.lookupMap.put(key, pair);
-            }
+    private void addToRow(int[] ordinalByIndex2Barcode, int ordinal, int index2Barcode) {
+
+        // a sample without an index 2 barcode, or with the same one, cannot be told apart from the others
+        if (index2Barcode == ANY_INDEX2_BARCODE) {
+            throw new RuntimeException(
+                    "cannot create a lookup table for samples with an identity collision, " +
+                            this.idByOrdinal[ordinal] + " shares index 1 without an index 2"
+            );
+        }
+        if (ordinalByIndex2Barcode[index2Barcode] != NO_SAMPLE) {
+            throw new RuntimeException(
+                    "cannot create a lookup table for samples with an identity collision, " +
+                            this.idByOrdinal[ordinalByIndex2Barcode[index2Barcode]] + " and " +
+                            this.idByOrdinal[ordinal]
+            );
         }
+
+        ordinalByIndex2Barcode[index2Barcode] = ordinal;
+    }
+
+    private static ArrayList<SampleIndexSpec> getSampleIndexSpecList(
+            SampleIndexKeyMappingCollection sampleIndexKeyMappingCollection) {
+
+        ArrayList<SampleIndexSpec> sampleIndexSpecList = new ArrayList<>();
+        for (SampleIndexKeyMapping keyMapping : sampleIndexKeyMappingCollection.getSampleIndexKeyMappingList()) {
+            sampleIndexSpecList.add(keyMapping.sampleIndexSpec);
+        }
+
+        return sampleIndexSpecList;
+    }
+
+    public int getSampleNumber() { return this.idByOrdinal.length; }
+
+    public String getSampleId(int ordinal) { return this.idByOrdinal[ordinal]; }
+
+    public int getIndex1KeyLength() { return this.index1KeyLength; }
+
+    public int getIndex2KeyLength() { return this.index2KeyLength; }
+
+    // looks a sample up by its packed index 1 key alone, samples that share an index 1 barcode are no match
+    public int lookupSampleOrdinal(long index1Key) {
+
+        int index1Barcode = this.index1Matcher.match(index1Key);
+
+        return index1Barcode == NO_SAMPLE ? NO_SAMPLE : this.onlyOrdinalByIndex1Barcode[index1Barcode];
+    }
+
+    // looks a sample up by its packed index keys, a sample without an index 2 is matched on index 1 alone
+    public int lookupSampleOrdinal(long index1Key, long index2Key) {
+
+        int index1Barcode = this.index1Matcher.match(index1Key);
+        if (index1Barcode == NO_SAMPLE) { return NO_SAMPLE; }
+
+        int ordinal = this.onlyOrdinalByIndex1Barcode[index1Barcode];
+        if (ordinal != NO_SAMPLE) {
+
+            int onlyIndex2Barcode = this.onlyIndex2BarcodeByIndex1Barcode[index1Barcode];
+            if (onlyIndex2Barcode == ANY_INDEX2_BARCODE) { return ordinal; }
+
+            return this.index2Matcher.match(index2Key) == onlyIndex2Barcode ? ordinal : NO_SAMPLE;
+        }
+
+        int index2Barcode = this.index2Matcher.match(index2Key);
+        if (index2Barcode == NO_SAMPLE) { return NO_SAMPLE; }
+
+        return this.ordinalByIndex2BarcodeByIndex1Barcode[index1Barcode][index2Barcode];
     }
 
     public String lookupProjectSampleId(String index1, String index2) {
 
-        ProjectSampleIdIndex2KeySetPair pair = this.lookupMap.get(index1);
+        // keys only match indexes of their own length
+        long index1Key =
+                index1.length() == this.index1KeyLength ? PackedIndexKey.pack(index1) : PackedIndexKey.INVALID_KEY;
 
-        // if we have not found a pair, then return null
-        if (pair == null) { return null; }
+        int ordinal;
+        if (index2 == null) {
+            ordinal = lookupSampleOrdinal(index1Key);
 
-        // if we can, then check index 2
-        if (index2 != null && pair.index2KeySet != null) {
+        } else {
+            long index2Key =
+                    index2.length() == this.index2KeyLength ? PackedIndexKey.pack(index2) : PackedIndexKey.INVALID_KEY;
 
-            if (pair.index2KeySet.contains(index2)) {
-                return pair.id;
-            }
-            return null;
+            ordinal = lookupSampleOrdinal(index1Key, index2Key);
         }
 
-        // without index 2 return the sample index spec id
-        return pair.id;
+        // if we have not found a sample, then return null
+        if (ordinal == NO_SAMPLE) { return null; }
+
+        return this.idByOrdinal[ordinal];
     }
 }
@@ -0,0 +1,197 @@
+package demany.SampleIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// a cache for one thread in front of a lane's sample index lookup, keyed on the packed raw index pair of a read, in a
+// lane a handful of exact index pairs make up most reads, so the sample and the index count of those is one array probe
+//
+// each distinct index pair has a counter slot that holds its sample ordinal and its count, a direct mapped table of
+// recent pairs finds the slot without hashing into the slot table, and only a pair never seen before is looked up
+public class SampleIndexLookupCache {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    public static final int NO_COUNTER_SLOT = -1;
+
+    static final int CACHE_SIZE = 1024;
+
+    private static int hash(long index1Key, long index2Key) {
+
+        // the finalizer of murmur hash 3 over both keys
+        long key = index1Key * 0x9e3779b97f4a7c15L ^ index2Key;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        return (int) key;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final SampleIndexLookup sampleIndexLookup;
+    private final boolean hasIndex2;
+
+    // the direct mapped cache of recent index pairs and their counter slots
+    private final long[] cachedIndex1Keys = new long[CACHE_SIZE];
+    private final long[] cachedIndex2Keys = new long[CACHE_SIZE];
+    private final int[] cachedCounterSlots = new int[CACHE_SIZE];
+
+    // the counter slots, and an open addressing table of them by index pair that is kept at most half full
+    private long[] index1KeyByCounterSlot = new long[64];
+    private long[] index2KeyByCounterSlot = new long[64];
+    private int[] ordinalByCounterSlot = new int[64];
+    private long[] countByCounterSlot = new long[64];
+    private int counterSlotNumber = 0;
+    private int[] counterSlotTable = new int[128];
+
+    private long hitNumber = 0;
+    private long missNumber = 0;
+
+    public SampleIndexLookupCache(SampleIndexLookup sampleIndexLookup) {
+
+        this.sampleIndexLookup = sampleIndexLookup;
+        this.hasIndex2 = sampleIndexLookup.getIndex2KeyLength() > 0;
+
+        Arrays.fill(this.cachedIndex1Keys, PackedIndexKey.INVALID_KEY);
+        Arrays.fill(this.counterSlotTable, NO_COUNTER_SLOT);
+    }
+
+    // the counter slot of a packed index pair, the index 2 key is ignored without an index 2, a pair with a key that
+    // could not be packed has no counter slot
+    public int getCounterSlot(long index1Key, long index2Key) {
+
+        if (!this.hasIndex2) { index2Key = 0; }
+        if (index1Key == PackedIndexKey.INVALID_KEY || index2Key == PackedIndexKey.INVALID_KEY) {
+            return NO_COUNTER_SLOT;
+        }
+
+        int hash = hash(index1Key, index2Key);
+
+        int cacheSlot = hash & (CACHE_SIZE - 1);
+        if (this.cachedIndex1Keys[cacheSlot] == index1Key && this.cachedIndex2Keys[cacheSlot] == index2Key) {
+            this.hitNumber++;
+            return this.cachedCounterSlots[cacheSlot];
+        }
+
+        this.missNumber++;
+
+        int counterSlot = getOrAddCounterSlot(index1Key, index2Key, hash);
+
+        this.cachedIndex1Keys[cacheSlot] = index1Key;
+        this.cachedIndex2Keys[cacheSlot] = index2Key;
+        this.cachedCounterSlots[cacheSlot] = counterSlot;
+
+        return counterSlot;
+    }
+
+    public int getSampleOrdinal(int counterSlot) { return this.ordinalByCounterSlot[counterSlot]; }
+
+    public void count(int counterSlot) { this.countByCounterSlot[counterSlot]++; }
+
+    public long getHitNumber() { return this.hitNumber; }
+
+    public long getMissNumber() { return this.missNumber; }
+
+    public double getHitRate() {
+
+        long lookupNumber = this.hitNumber + this.missNumber;
+
+        return lookupNumber == 0 ? 0 : (double) this.hitNumber / lookupNumber;
+    }
+
+    // adds the counts to a count by index str by id map, keyed by the index strings and sample ids the counts have
+    // always been kept by, and starts the counts over
+    public void drainCounts(HashMap<String, HashMap<String, Long>> countByIndexStrById, String noSampleId) {
+
+        for (int counterSlot = 0; counterSlot < this.counterSlotNumber; counterSlot++) {
+
+            long count = this.countByCounterSlot[counterSlot];
+            if (count == 0) { continue; }
+
+            int ordinal = this.ordinalByCounterSlot[counterSlot];
+            String id = ordinal == SampleIndexLookup.NO_SAMPLE ?
+                    noSampleId : this.sampleIndexLookup.getSampleId(ordinal);
+
+            String indexStr = PackedIndexKey.unpack(
+                    this.index1KeyByCounterSlot[counterSlot], this.sampleIndexLookup.getIndex1KeyLength()
+            );
+            if (this.hasIndex2) {
+                indexStr += "-" + PackedIndexKey.unpack(
+                        this.index2KeyByCounterSlot[counterSlot], this.sampleIndexLookup.getIndex2KeyLength()
+                );
+            }
+
+            countByIndexStrById.get(id).merge(indexStr, count, Long::sum);
+            this.countByCounterSlot[counterSlot] = 0;
+        }
+    }
+
+    private int getOrAddCounterSlot(long index1Key, long index2Key, int hash) {
+
+        int mask = this.counterSlotTable.length - 1;
+        int tableSlot = hash & mask;
+        while (this.counterSlotTable[tableSlot] != NO_COUNTER_SLOT) {
+
+            int counterSlot = this.counterSlotTable[tableSlot];
+            if (this.index1KeyByCounterSlot[counterSlot] == index1Key &&
+                    this.index2KeyByCounterSlot[counterSlot] == index2Key) {
+                return counterSlot;
+            }
+
+            tableSlot = (tableSlot + 1) & mask;
+        }
+
+        // an index pair never seen before is looked up once
+        int ordinal = this.hasIndex2 ?
+                this.sampleIndexLookup.lookupSampleOrdinal(index1Key, index2Key) :
+                this.sampleIndexLookup.lookupSampleOrdinal(index1Key);
+
+        int counterSlot = addCounterSlot(index1Key, index2Key, ordinal);
+        this.counterSlotTable[tableSlot] = counterSlot;
+
+        if (this.counterSlotNumber * 2 > this.counterSlotTable.length) { growCounterSlotTable(); }
+
+        return counterSlot;
+    }
+
+    private int addCounterSlot(long index1Key, long index2Key, int ordinal) {
+
+        if (this.counterSlotNumber == this.ordinalByCounterSlot.length) {
+
+            int length = this.ordinalByCounterSlot.length * 2;
+            this.index1KeyByCounterSlot = Arrays.copyOf(this.index1KeyByCounterSlot, length);
+            this.index2KeyByCounterSlot = Arrays.copyOf(this.index2KeyByCounterSlot, length);
+            this.ordinalByCounterSlot = Arrays.copyOf(this.ordinalByCounterSlot, length);
+            this.countByCounterSlot = Arrays.copyOf(this.countByCounterSlot, length);
+        }
+
+        this.index1KeyByCounterSlot[this.counterSlotNumber] = index1Key;
+        this.index2KeyByCounterSlot[this.counterSlotNumber] = index2Key;
+        this.ordinalByCounterSlot[this.counterSlotNumber] = ordinal;
+
+        return this.counterSlotNumber++;
+    }
+
+    private void growCounterSlotTable() {
+
+        this.counterSlotTable = new int[this.counterSlotTable.length * 2];
+        Arrays.fill(this.counterSlotTable, NO_COUNTER_SLOT);
+
+        int mask = this.counterSlotTable.length - 1;
+        for (int counterSlot = 0; counterSlot < this.counterSlotNumber; counterSlot++) {
+
+            int tableSlot = hash(this.index1KeyByCounterSlot[counterSlot], this.index2KeyByCounterSlot[counterSlot]) &
+                    mask;
+            while (this.counterSlotTable[tableSlot] != NO_COUNTER_SLOT) { tableSlot = (tableSlot + 1) & mask; }
+
+            this.counterSlotTable[tableSlot] = counterSlot;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package demany.SampleIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// matches the packed key of one index read to the one sample barcode it is within the mismatch limit of, by counting
+// mismatches against the packed barcodes rather than enumerating every key a barcode could be read as, a key within the
+// limit of more than one barcode matches none of them
+//
+// a barcode is only compared at the positions it has, positions past its length match anything, an N only matches an N,
+// and a barcode character that is not a base or an N is a mismatch for every key, which are the assignments the
+// enumerated sample index key sets make with a mismatch limit of 1
+class SampleIndexMatcher {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final int NO_SAMPLE = PackedIndexKeyTable.MISSING_VALUE;
+
+    private static final int N_MASK_SHIFT = 2 * PackedIndexKey.MAX_LENGTH;
+    private static final long BASE_MASK = (1L << N_MASK_SHIFT) - 1;
+    private static final long EVEN_BIT_MASK = 0x5555555555555555L & BASE_MASK;
+
+    // spreads the N mask bits of a packed key onto the low bit of each position's base bits
+    private static long spreadNMask(long packedKey) {
+
+        long nMask = packedKey >>> N_MASK_SHIFT;
+
+        long spreadNMask = 0;
+        while (nMask != 0) {
+
+            spreadNMask |= 1L << (2 * Long.numberOfTrailingZeros(nMask));
+            nMask &= nMask - 1;
+        }
+
+        return spreadNMask;
+    }
+
+    private static char getCompliment(char character) {
+
+        switch (character) {
+            case 'A': return 'T';
+            case 'T': return 'A';
+            case 'G': return 'C';
+            case 'C': return 'G';
+            default: return character;
+        }
+    }
+
+    // a pair of ordinals whose barcodes some key matches exactly, or null if there is none, the compared part of one
+    // barcode must then start the other's, so each barcode's starts are looked up in a table of the compared parts
+    static int[] findIdentityCollision(String[] barcodeByOrdinal, int keyLength) {
+
+        HashMap<String, Integer> ordinalByComparedBarcode = new HashMap<>();
+        for (int ordinal = 0; ordinal < barcodeByOrdinal.length; ordinal++) {
+
+            if (barcodeByOrdinal[ordinal] == null) { continue; }
+
+            String comparedBarcode = getComparedBarcode(barcodeByOrdinal[ordinal], keyLength);
+            Integer otherOrdinal = ordinalByComparedBarcode.putIfAbsent(comparedBarcode, ordinal);
+            if (otherOrdinal != null) { return new int[] {otherOrdinal, ordinal}; }
+        }
+
+        for (int ordinal = 0; ordinal < barcodeByOrdinal.length; ordinal++) {
+
+            if (barcodeByOrdinal[ordinal] == null) { continue; }
+
+            String comparedBarcode = getComparedBarcode(barcodeByOrdinal[ordinal], keyLength);
+            for (int length = 1; length < comparedBarcode.length(); length++) {
+
+                Integer otherOrdinal = ordinalByComparedBarcode.get(comparedBarcode.substring(0, length));
+                if (otherOrdinal != null) { return new int[] {otherOrdinal, ordinal}; }
+            }
+        }
+
+        return null;
+    }
+
+    private static String getComparedBarcode(String barcode, int keyLength) {
+        return barcode.length() > keyLength ? barcode.substring(0, keyLength) : barcode;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    // the packed bases and N positions of each barcode, the positions it is compared at, and how many more mismatches
+    // a key may have at those positions, negative for a barcode no key can match
+    private final long[] packedBarcodeByOrdinal;
+    private final long[] spreadNMaskByOrdinal;
+    private final long[] positionMaskByOrdinal;
+    private final int[] mismatchAllowanceByOrdinal;
+
+    // a key within the limit of a barcode matches it exactly on at least one of mismatch limit + 1 segments, so each
+    // segment of the barcodes compared at the same positions has a table of barcodes by their bases on the segment
+    private final List<BarcodePartition> barcodePartitionList = new ArrayList<>();
+
+    private static class BarcodePartition {
+
+        private final long[] segmentMaskArray;
+        private final PackedIndexKeyTable[] candidateListIndexTableArray;
+        private final List<int[]> candidateOrdinalsList = new ArrayList<>();
+
+        private BarcodePartition(long[] segmentMaskArray) {
+
+            this.segmentMaskArray = segmentMaskArray;
+            this.candidateListIndexTableArray = new PackedIndexKeyTable[segmentMaskArray.length];
+            for (int i = 0; i < segmentMaskArray.length; i++) {
+                this.candidateListIndexTableArray[i] = new PackedIndexKeyTable(16);
+            }
+        }
+    }
+
+    // takes the barcode of each ordinal, null for an ordinal without one
+    SampleIndexMatcher(String[] barcodeByOrdinal, int keyLength, int mismatchLimit, boolean reverseCompliment) {
+
+        // check input
+        if (keyLength < 1 || keyLength > PackedIndexKey.MAX_LENGTH) {
+            throw new RuntimeException("index keys must be between 1 and " + PackedIndexKey.MAX_LENGTH + " long");
+        }
+        if (mismatchLimit < 0) { throw new RuntimeException("the mismatch limit cannot be negative"); }
+
+        this.packedBarcodeByOrdinal = new long[barcodeByOrdinal.length];
+        this.spreadNMaskByOrdinal = new long[barcodeByOrdinal.length];
+        this.positionMaskByOrdinal = new long[barcodeByOrdinal.length];
+        this.mismatchAllowanceByOrdinal = new int[barcodeByOrdinal.length];
+
+        // split the key positions into mismatch limit + 1 segments, some of them empty if the key is short
+        int segmentNumber = mismatchLimit + 1;
+        int[] segmentByPosition = new int[keyLength];
+        for (int position = 0; position < keyLength; position++) {
+            segmentByPosition[position] = (int) ((long) position * segmentNumber / keyLength);
+        }
+
+        // pack each barcode and add it to the partition of its compared positions
+        Map<Long, BarcodePartition> barcodePartitionByPositionMask = new HashMap<>();
+        Map<BarcodePartition, List<Map<Long, List<Integer>>>> candidateOrdinalListByKeyListByPartition =
+                new HashMap<>();
+
+        for (int ordinal = 0; ordinal < barcodeByOrdinal.length; ordinal++) {
+
+            this.mismatchAllowanceByOrdinal[ordinal] = -1;
+            if (barcodeByOrdinal[ordinal] == null) { continue; }
+
+            String barcode = barcodeByOrdinal[ordinal];
+
+            long packedBarcode = 0;
+            long positionMask = 0;
+            int fixedMismatchNumber = 0;
+            long[] segmentMaskArray = new long[segmentNumber];
+            for (int position = 0; position < keyLength; position++) {
+
+                // the barcode position a key position is read from, a reverse compliment index is read backwards,
+                // and positions past the barcode's length are not compared
+                int barcodePosition = reverseCompliment ? keyLength - 1 - position : position;
+                if (barcodePosition >= barcode.length()) { continue; }
+
+                char character = barcode.charAt(barcodePosition);
+                if (reverseCompliment) { character = getCompliment(character); }
+
+                long packedCharacter = PackedIndexKey.pack(String.valueOf(character));
+                if (packedCharacter == PackedIndexKey.INVALID_KEY) {
+                    fixedMismatchNumber++;
+                    continue;
+                }
+
+                // move the character's bits from the first position to this one
+                long positionBits = (3L << (2 * position)) | (1L << (N_MASK_SHIFT + position));
+                packedBarcode |= ((packedCharacter & 3L) << (2 * position)) |
+                        ((packedCharacter >>> N_MASK_SHIFT) << (N_MASK_SHIFT + position));
+                positionMask |= 1L << (2 * position);
+                segmentMaskArray[segmentByPosition[position]] |= positionBits;
+            }
+
+            this.packedBarcodeByOrdinal[ordinal] = packedBarcode;
+            this.spreadNMaskByOrdinal[ordinal] = spreadNMask(packedBarcode);
+            this.positionMaskByOrdinal[ordinal] = positionMask;
+            this.mismatchAllowanceByOrdinal[ordinal] = mismatchLimit - fixedMismatchNumber;
+
+            // a barcode with more fixed mismatches than the limit can never match
+            if (this.mismatchAllowanceByOrdinal[ordinal] < 0) { continue; }
+
+            BarcodePartition barcodePartition = barcodePartitionByPositionMask.get(positionMask);
+            if (barcodePartition == null) {
+
+                barcodePartition = new BarcodePartition(segmentMaskArray);
+                barcodePartitionByPositionMask.put(positionMask, barcodePartition);
+                this.barcodePartitionList.add(barcodePartition);
+
+                List<Map<Long, List<Integer>>> candidateOrdinalListByKeyList = new ArrayList<>();
+                for (int i = 0; i < segmentNumber; i++) { candidateOrdinalListByKeyList.add(new HashMap<>()); }
+                candidateOrdinalListByKeyListByPartition.put(barcodePartition, candidateOrdinalListByKeyList);
+            }
+
+            List<Map<Long, List<Integer>>> candidateOrdinalListByKeyList =
+                    candidateOrdinalListByKeyListByPartition.get(barcodePartition);
+            for (int i = 0; i < segmentNumber; i++) {
+                candidateOrdinalListByKeyList.get(i)
+                        .computeIfAbsent(packedBarcode & segmentMaskArray[i], k -> new ArrayList<>())
+                        .add(ordinal);
+            }
+        }
+
+        // fill the segment tables with the index of each segment key's candidate ordinals
+        for (BarcodePartition barcodePartition : this.barcodePartitionList) {
+
+            List<Map<Long, List<Integer>>> candidateOrdinalListByKeyList =
+                    candidateOrdinalListByKeyListByPartition.get(barcodePartition);
+
+            for (int i = 0; i < segmentNumber; i++) {
+                for (Map.Entry<Long, List<Integer>> entry : candidateOrdinalListByKeyList.get(i).entrySet()) {
+
+                    barcodePartition.candidateListIndexTableArray[i].put(
+                            entry.getKey(), barcodePartition.candidateOrdinalsList.size()
+                    );
+                    barcodePartition.candidateOrdinalsList.add(
+                            entry.getValue().stream().mapToInt(Integer::intValue).toArray()
+                    );
+                }
+            }
+        }
+    }
+
+    // the number of mismatches between a packed key and a sample's barcode, counted at the barcode's positions
+    private int getMismatchNumber(long packedKey, long keySpreadNMask, int ordinal) {
+
+        long baseDifference = (packedKey ^ this.packedBarcodeByOrdinal[ordinal]) & BASE_MASK;
+        long mismatchMask = ((baseDifference | baseDifference >>> 1) & EVEN_BIT_MASK) |
+                (keySpreadNMask ^ this.spreadNMaskByOrdinal[ordinal]);
+
+        return Long.bitCount(mismatchMask & this.positionMaskByOrdinal[ordinal]);
+    }
+
+    // returns the ordinal of the one barcode the key is within the mismatch limit of, or no sample
+    int match(long packedKey) {
+
+        if (packedKey == PackedIndexKey.INVALID_KEY) { return NO_SAMPLE; }
+
+        long keySpreadNMask = spreadNMask(packedKey);
+
+        int matchOrdinal = NO_SAMPLE;
+        for (BarcodePartition barcodePartition : this.barcodePartitionList) {
+            for (int i = 0; i < barcodePartition.segmentMaskArray.length; i++) {
+
+                int candidateListIndex = barcodePartition.candidateListIndexTableArray[i].get(
+                        packedKey & barcodePartition.segmentMaskArray[i]
+                );
+                if (candidateListIndex == PackedIndexKeyTable.MISSING_VALUE) { continue; }
+
+                // a barcode can be a candidate on more than one segment
+                for (int ordinal : barcodePartition.candidateOrdinalsList.get(candidateListIndex)) {
+
+                    if (ordinal == matchOrdinal) { continue; }
+                    if (getMismatchNumber(packedKey, keySpreadNMask, ordinal) >
+                            this.mismatchAllowanceByOrdinal[ordinal]) { continue; }
+
+                    // a key that matches two barcodes cannot be told apart
+                    if (matchOrdinal != NO_SAMPLE) { return NO_SAMPLE; }
+                    matchOrdinal = ordinal;
+                }
+            }
+        }
+
+        return matchOrdinal;
+    }
+}
@@ -0,0 +1,108 @@
+package demany.Threading;
+
+import java.util.logging.Logger;
+
+// sizes the sequence groups the readers read by bytes rather than by a fixed number of sequences, the number of
+// sequences follows from the bytes per sequence seen so far, and the byte target is tuned as the run goes from how long
+// groups take to classify and how full the multiplexed rings are kept
+public class BatchSizeController {
+
+    private static final Logger LOGGER = Logger.getLogger( BatchSizeController.class.getName() );
+
+    static final long INITIAL_GROUP_BYTE_NUMBER = 8L * 1024 * 1024;
+    static final long MIN_GROUP_BYTE_NUMBER = 1024 * 1024;
+    static final long MAX_GROUP_BYTE_NUMBER = 64L * 1024 * 1024;
+    static final int MIN_SEQUENCE_NUMBER = 1000;
+    static final int MAX_SEQUENCE_NUMBER = 250000;
+
+    // groups that classify faster than this are mostly per group overhead, groups that classify slower than this are
+    // too coarse to share out between threads once the rings run low
+    static final long MIN_GROUP_NANOS = 2_000_000;
+    static final long MAX_GROUP_NANOS = 50_000_000;
+    static final double LOW_OCCUPANCY = 0.5;
+
+    static final int WINDOW_GROUP_NUMBER = 16;
+
+    private final long maxGroupByteNumber;
+    private long groupByteNumber;
+
+    // the bytes per sequence of the groups read so far
+    private long readByteNumber = 0;
+    private long readSequenceNumber = 0;
+
+    // the classifications seen since the byte target was last tuned
+    private int windowGroupNumber = 0;
+    private long windowNanos = 0;
+    private double windowOccupancy = 0;
+
+    public BatchSizeController(long inFlightByteBudget, int threadBudget) {
+
+        // enough groups must fit in the in flight byte budget to keep every thread busy
+        this.maxGroupByteNumber = Math.max(
+                MIN_GROUP_BYTE_NUMBER,
+                Math.min(MAX_GROUP_BYTE_NUMBER, inFlightByteBudget / Math.max(1, 2L * threadBudget))
+        );
+
+        this.groupByteNumber = Math.min(INITIAL_GROUP_BYTE_NUMBER, this.maxGroupByteNumber);
+    }
+
+    // the number of sequences the next group should be read with
+    public synchronized int getSequenceNumber() {
+
+        // before any group has been read assume the sequences of a 2x150 run with two index reads
+        if (this.readSequenceNumber == 0) {
+            return (int) Math.max(MIN_SEQUENCE_NUMBER, Math.min(MAX_SEQUENCE_NUMBER, this.groupByteNumber / 700));
+        }
+
+        long bytesPerSequence = Math.max(1, this.readByteNumber / this.readSequenceNumber);
+
+        return (int) Math.max(
+                MIN_SEQUENCE_NUMBER, Math.min(MAX_SEQUENCE_NUMBER, this.groupByteNumber / bytesPerSequence)
+        );
+    }
+
+    public synchronized void recordSequenceGroupRead(long byteNumber, int sequenceNumber) {
+
+        this.readByteNumber += byteNumber;
+        this.readSequenceNumber += sequenceNumber;
+    }
+
+    // records how long a group took to classify and how full the multiplexed rings were, as a fraction of their room
+    public synchronized void recordSequenceGroupClassified(long nanos, double occupancy) {
+
+        this.windowGroupNumber++;
+        this.windowNanos += nanos;
+        this.windowOccupancy += occupancy;
+
+        if (this.windowGroupNumber < WINDOW_GROUP_NUMBER) { return; }
+
+        long meanNanos = this.windowNanos / this.windowGroupNumber;
+        double meanOccupancy = this.windowOccupancy / this.windowGroupNumber;
+
+        this.windowGroupNumber = 0;
+        this.windowNanos = 0;
+        this.windowOccupancy = 0;
+
+        long groupByteNumber = this.groupByteNumber;
+        if (meanNanos < MIN_GROUP_NANOS) {
+            groupByteNumber = Math.min(this.maxGroupByteNumber, groupByteNumber * 2);
+        } else if (meanNanos > MAX_GROUP_NANOS && meanOccupancy < LOW_OCCUPANCY) {
+            groupByteNumber = Math.max(MIN_GROUP_BYTE_NUMBER, groupByteNumber / 2);
+        }
+
+        if (groupByteNumber != this.groupByteNumber) {
+
+            this.groupByteNumber = groupByteNumber;
+            LOGGER.info("sequence groups now hold about " + groupByteNumber + " bytes, " + getSequenceNumber() +
+                    " sequences, after classifying in " + meanNanos / 1000 + "us at " +
+                    Math.round(meanOccupancy * 100) + "% ring occupancy");
+        }
+    }
+
+    public synchronized long getGroupByteNumber() { return this.groupByteNumber; }
+
+    @Override
+    public synchronized String toString() {
+        return "sequence groups held about " + this.groupByteNumber + " bytes, " + getSequenceNumber() + " sequences";
+    }
+}
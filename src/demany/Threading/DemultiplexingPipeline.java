@@ -0,0 +1,530 @@
+package demany.Threading;
+
+import demany.Context.DemultiplexingContext;
+import demany.Fastq.CompressedSequenceGroup;
+import demany.Fastq.MasterFastqShard;
+import demany.Fastq.SequenceGroup;
+import demany.Fastq.SequenceGroupFlow;
+import demany.Utils.InflateChunkScheduler;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+// runs reading, the inflating of gzip chunks ahead of the readers, classification, compression and writing as small
+// tasks on one fork join pool that never holds more threads than the budget, each stage is limited to a share of the
+// budget so that cheap classification never waits behind compression, and a controller moves threads to whichever
+// stage falls behind
+public class DemultiplexingPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger( DemultiplexingPipeline.class.getName() );
+
+    private static final long POOL_KEEP_ALIVE_SECONDS = 60;
+
+    private final ForkJoinPool forkJoinPool;
+    private final PipelineStage readStage;
+    private final PipelineStage inflateStage;
+    private final PipelineStage classificationStage;
+    private final PipelineStage compressionStage;
+    private final PipelineStage writeStage;
+    private final StageThreadController stageThreadController;
+    private final SequenceGroupFlow sequenceGroupFlow;
+    private final List<ShardReader> shardReaderList = new ArrayList<>();
+    private final Map<String, Queue<ShardReader>> stalledShardReaderQueueByLaneStr = new HashMap<>();
+    private final Queue<ShardReader> overBudgetShardReaderQueue = new ConcurrentLinkedQueue<>();
+    private final InFlightByteGovernor inFlightByteGovernor;
+    private final Map<String, List<LaneWriter>> laneWriterListByLaneStr = new HashMap<>();
+    private final SampleAccumulator sampleAccumulator;
+    private final BatchSizeController batchSizeController;
+
+    // each worker classifies with its own demultiplexer so that index counts are never shared between workers
+    private final Queue<SequenceGroupDemultiplexer> sequenceGroupDemultiplexerQueue = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<SequenceGroupDemultiplexer> sequenceGroupDemultiplexer;
+
+    // completed once every lane writer has closed, or exceptionally with the first failure of any task
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final AtomicInteger unfinishedLaneWriterNumber = new AtomicInteger(0);
+
+    public DemultiplexingPipeline(int threadBudget, int compressionThreadNumber, long inFlightByteBudget,
+                                  Map<String, List<MasterFastqShard>> masterFastqShardListByLaneStr,
+                                  Map<String, Integer> writerNumberByLaneStr,
+                                  DemultiplexingContext demultiplexingContext) throws IOException {
+
+        // check input
+        if (threadBudget < 1) { throw new RuntimeException("a demultiplexing pipeline needs at least one thread"); }
+        if (compressionThreadNumber < 1) {
+            throw new RuntimeException("a demultiplexing pipeline needs at least one compression thread");
+        }
+
+        // the pool never grows past the budget, not even to make up for a task blocked on a join
+        this.forkJoinPool = new ForkJoinPool(
+                threadBudget,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                null,
+                false,
+                0,
+                threadBudget,
+                1,
+                forkJoinPool -> true,
+                POOL_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS
+        );
+        this.inFlightByteGovernor = new InFlightByteGovernor(inFlightByteBudget);
+        this.batchSizeController = new BatchSizeController(inFlightByteBudget, threadBudget);
+
+        // give each lane's writers a share of its sample ids
+        Map<String, Map<String, Integer>> writerIndexByIdByLaneStr = new HashMap<>();
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
+
+            if (!writerNumberByLaneStr.containsKey(laneStr) || writerNumberByLaneStr.get(laneStr) < 1) {
+                throw new RuntimeException("lane " + laneStr + " needs at least one writer");
+            }
+
+            writerIndexByIdByLaneStr.put(laneStr, getWriterIndexById(
+                    demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(laneStr).keySet(),
+                    writerNumberByLaneStr.get(laneStr)
+            ));
+        }
+
+        // create a sequence group flow with a reader for each shard and a ring for each writer
+        Map<String, Integer> readerNumberByLaneStr = new HashMap<>();
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
+            readerNumberByLaneStr.put(laneStr, masterFastqShardListByLaneStr.get(laneStr).size());
+        }
+
+        this.sequenceGroupFlow = new SequenceGroupFlow(readerNumberByLaneStr, writerIndexByIdByLaneStr);
+
+        // the readers' gzip read ahead is inflated by the inflate stage and charged to the in flight byte budget
+        InflateChunkScheduler inflateChunkScheduler = new InflateChunkScheduler(
+                this::submitInflate,
+                this.inFlightByteGovernor::tryToAcquireReadAhead,
+                this.inFlightByteGovernor::releaseReadAhead
+        );
+
+        // create the readers and writers
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
+
+            for (MasterFastqShard masterFastqShard : masterFastqShardListByLaneStr.get(laneStr)) {
+                this.shardReaderList.add(
+                        new ShardReader(masterFastqShard, this.batchSizeController, inflateChunkScheduler)
+                );
+            }
+
+            this.stalledShardReaderQueueByLaneStr.put(laneStr, new ConcurrentLinkedQueue<>());
+
+            List<LaneWriter> laneWriterList = new ArrayList<>();
+            for (int writerIndex = 0; writerIndex < this.sequenceGroupFlow.getWriterNumber(laneStr); writerIndex++) {
+
+                Set<String> idSet = new HashSet<>();
+                for (Map.Entry<String, Integer> entry : writerIndexByIdByLaneStr.get(laneStr).entrySet()) {
+                    if (entry.getValue() == writerIndex) { idSet.add(entry.getKey()); }
+                }
+
+                laneWriterList.add(new LaneWriter(laneStr, writerIndex, idSet, demultiplexingContext));
+            }
+
+            this.laneWriterListByLaneStr.put(laneStr, Collections.unmodifiableList(laneWriterList));
+            this.unfinishedLaneWriterNumber.addAndGet(laneWriterList.size());
+        }
+
+        // hold back the sequences of small samples until there are enough of them for a worthwhile gzip member
+        int sampleNumber = 0;
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
+            sampleNumber += writerIndexByIdByLaneStr.get(laneStr).size();
+        }
+
+        long sampleAccumulationByteThreshold = SampleAccumulator.getByteThreshold(inFlightByteBudget, sampleNumber);
+        LOGGER.info("samples are compressed once they hold " + sampleAccumulationByteThreshold + " bytes");
+
+        this.sampleAccumulator = new SampleAccumulator(
+                sampleAccumulationByteThreshold,
+                masterFastqShardListByLaneStr.keySet(),
+                demultiplexingContext.readTypeSet,
+                this.inFlightByteGovernor
+        );
+
+        // start compression with the threads it was given, and split the rest between the other stages, every stage
+        // keeps at least one thread, so the limits add up to the budget once it has a thread for each stage, below
+        // that the pool's size keeps the stages within it
+        int compressionThreadLimit = Math.max(1, Math.min(compressionThreadNumber, threadBudget - 4));
+        int otherThreadNumber = threadBudget - compressionThreadLimit;
+        int readThreadLimit = Math.max(1, otherThreadNumber / 6);
+        int inflateThreadLimit = Math.max(1, otherThreadNumber / 4);
+        int writeThreadLimit = Math.max(1, otherThreadNumber / 6);
+        int classificationThreadLimit =
+                Math.max(1, otherThreadNumber - readThreadLimit - inflateThreadLimit - writeThreadLimit);
+
+        this.readStage = new PipelineStage(
+                "read", this.forkJoinPool, readThreadLimit, this::getReadBacklog
+        );
+        this.inflateStage = new PipelineStage(
+                "inflate", this.forkJoinPool, inflateThreadLimit, this::getInflateBacklog
+        );
+        this.classificationStage = new PipelineStage(
+                "classification",
+                this.forkJoinPool,
+                classificationThreadLimit,
+                this.sequenceGroupFlow::getMultiplexedSequenceGroupNumber
+        );
+        this.compressionStage = new PipelineStage(
+                "compression", this.forkJoinPool, compressionThreadLimit, this::getCompressionBacklog
+        );
+        this.writeStage = new PipelineStage(
+                "write",
+                this.forkJoinPool,
+                writeThreadLimit,
+                this.sequenceGroupFlow::getDemultiplexedSequenceGroupNumber
+        );
+
+        this.stageThreadController = new StageThreadController(List.of(
+                this.readStage, this.inflateStage, this.classificationStage, this.compressionStage, this.writeStage
+        ));
+
+        this.sequenceGroupDemultiplexer = ThreadLocal.withInitial(() -> {
+
+            SequenceGroupDemultiplexer demultiplexer = new SequenceGroupDemultiplexer(demultiplexingContext);
+            this.sequenceGroupDemultiplexerQueue.add(demultiplexer);
+
+            return demultiplexer;
+        });
+    }
+
+    public Map<String, Map<String, Map<String, Long>>> run() throws InterruptedException {
+
+        try {
+
+            // start reading every shard, and move threads between the stages and shrink the in flight byte budget as
+            // the run goes
+            this.inFlightByteGovernor.watchHeapPressure();
+            for (ShardReader shardReader : this.shardReaderList) { scheduleRead(shardReader); }
+            this.stageThreadController.start();
+
+            // wait for every lane to be written, or for a task to fail
+            try {
+                this.completion.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("demultiplexing failed: " + e.getCause().getMessage());
+            }
+
+        } finally {
+            this.inFlightByteGovernor.stopWatchingHeapPressure();
+            this.stageThreadController.stop();
+            this.forkJoinPool.shutdownNow();
+        }
+
+        for (PipelineStage pipelineStage : List.of(
+                this.readStage, this.inflateStage, this.classificationStage, this.compressionStage, this.writeStage)) {
+            LOGGER.info(pipelineStage.metrics.toString());
+        }
+        LOGGER.info(this.batchSizeController.toString());
+
+        // gather the index counts of every worker
+        for (SequenceGroupDemultiplexer demultiplexer : this.sequenceGroupDemultiplexerQueue) {
+            demultiplexer.submitCounts(this.sequenceGroupFlow);
+        }
+
+        return this.sequenceGroupFlow.getCountByIndexStrByIdByLaneStr();
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static Map<String, Integer> getWriterIndexById(Set<String> idSet, int writerNumber) {
+
+        // deal the ids out to the writers in order, undetermined first as it usually gets the most sequences
+        List<String> idList = new ArrayList<>(idSet);
+        idList.sort(Comparator.comparing((String id) -> !id.equals(DemultiplexingContext.UNDETERMINED_ID))
+                .thenComparing(Comparator.naturalOrder()));
+
+        Map<String, Integer> writerIndexById = new HashMap<>();
+        for (int i = 0; i < idList.size(); i++) { writerIndexById.put(idList.get(i), i % writerNumber); }
+
+        return writerIndexById;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private int getReadBacklog() { return this.readStage.getWaitingTaskNumber(); }
+
+    private int getInflateBacklog() { return this.inflateStage.getWaitingTaskNumber(); }
+
+    private int getCompressionBacklog() { return this.compressionStage.getWaitingTaskNumber(); }
+
+    private void submit(PipelineStage pipelineStage, Runnable runnable) {
+
+        // record the first failure of any task and stop waiting for the rest
+        pipelineStage.submit(() -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException | Error e) {
+                this.completion.completeExceptionally(e);
+            }
+        });
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     READ
+    // -------------------------------------------------------------------------------------------------------------
+
+    private void scheduleRead(ShardReader shardReader) {
+        if (shardReader.scheduled.compareAndSet(false, true)) { submit(this.readStage, () -> read(shardReader)); }
+    }
+
+    private void read(ShardReader shardReader) {
+
+        String laneStr = shardReader.laneStr;
+
+        // read a sequence group, the shard's scans are tasks of their own
+        SequenceGroup sequenceGroup = shardReader.takeSequenceGroup();
+
+        if (sequenceGroup == null) {
+
+            // the shard has been read, the lane's writers may be able to finish the lane now
+            this.sequenceGroupFlow.markReaderFinished(laneStr);
+            scheduleLaneWrites(laneStr);
+
+            return;
+        }
+
+        // the group's bytes must fit the in flight byte budget before it goes into the pipeline
+        long byteNumber = sequenceGroup.getByteNumber();
+        if (!shardReader.takenInFlightBytesAcquired() && !this.inFlightByteGovernor.tryToAcquire(byteNumber)) {
+
+            // hold on to the group until a write releases some bytes
+            shardReader.returnSequenceGroup(sequenceGroup, false);
+            shardReader.scheduled.set(false);
+            this.overBudgetShardReaderQueue.add(shardReader);
+
+            // bytes may have been released before we were in the queue
+            if (this.inFlightByteGovernor.hasRoomFor(byteNumber)) { scheduleRead(shardReader); }
+
+            return;
+        }
+
+        if (this.sequenceGroupFlow.tryToAddMultiplexedSequenceGroup(laneStr, sequenceGroup)) {
+
+            // classify the group and keep reading
+            submitClassify();
+
+            shardReader.scheduled.set(false);
+            scheduleRead(shardReader);
+
+            return;
+        }
+
+        // the lane's ring is full, hold on to the group until a classification task makes room
+        shardReader.returnSequenceGroup(sequenceGroup, true);
+        shardReader.scheduled.set(false);
+        this.stalledShardReaderQueueByLaneStr.get(laneStr).add(shardReader);
+
+        // room may have been made before we were in the queue
+        if (this.sequenceGroupFlow.multiplexedSequenceGroupRoomAvailable(laneStr)) { scheduleRead(shardReader); }
+    }
+
+    private void resumeStalledRead(String laneStr) {
+
+        Queue<ShardReader> stalledShardReaderQueue = this.stalledShardReaderQueueByLaneStr.get(laneStr);
+
+        ShardReader shardReader;
+        while ((shardReader = stalledShardReaderQueue.poll()) != null) {
+
+            // a reader that was already started again is skipped
+            if (shardReader.scheduled.compareAndSet(false, true)) {
+                ShardReader resumedShardReader = shardReader;
+                submit(this.readStage, () -> read(resumedShardReader));
+                return;
+            }
+        }
+    }
+
+    private void resumeOverBudgetReads() {
+
+        // every reader tries again, those whose groups still do not fit go back in the queue
+        ShardReader shardReader;
+        while ((shardReader = this.overBudgetShardReaderQueue.poll()) != null) { scheduleRead(shardReader); }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INFLATE
+    // -------------------------------------------------------------------------------------------------------------
+
+    // a gzip chunk that a reader will take later, the reader inflates it itself if the stage has not started it yet
+    private void submitInflate(Runnable runnable) { submit(this.inflateStage, runnable); }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     CLASSIFY
+    // -------------------------------------------------------------------------------------------------------------
+
+    private void submitClassify() { submit(this.classificationStage, this::classify); }
+
+    // one of these is submitted for each sequence group added to the flow and for each write that frees a place in a
+    // demultiplexed ring, so a sequence group left waiting on a full lane is always picked up by a later one
+    private void classify() {
+
+        SequenceGroupFlow.LaneSequenceGroupPair pair = this.sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup();
+
+        if (pair == null) { return; }
+
+        // the group's place in the multiplexed ring is free for a stalled reader
+        resumeStalledRead(pair.laneStr);
+
+        // sort the group's sequences by sample, timing it for the batch size controller
+        long startNanos = System.nanoTime();
+        HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById =
+                this.sequenceGroupDemultiplexer.get().classifySequenceGroup(pair.laneStr, pair.sequenceGroup);
+
+        this.batchSizeController.recordSequenceGroupClassified(
+                System.nanoTime() - startNanos,
+                (double) this.sequenceGroupFlow.getMultiplexedSequenceGroupNumber()
+                        / this.sequenceGroupFlow.getMultiplexedSequenceGroupCapacity()
+        );
+
+        long inFlightByteNumber = pair.sequenceGroup.getByteNumber();
+
+        // the sequences have been copied out of the group, its arrays can go back to the readers
+        pair.sequenceGroup.recycle();
+
+        // only the samples that hold enough sequences go on to be compressed now, with any held sequences they bring
+        HashMap<String, CompressedSequenceGroup> readySequenceGroupById =
+                this.sampleAccumulator.accumulate(pair.laneStr, compressedSequenceGroupById);
+
+        submitCompression(
+                pair.laneStr,
+                readySequenceGroupById,
+                inFlightByteNumber
+                        + SampleAccumulator.getLetGoByteNumber(readySequenceGroupById, compressedSequenceGroupById)
+        );
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     COMPRESS
+    // -------------------------------------------------------------------------------------------------------------
+
+    private void submitCompression(String laneStr,
+                                   HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById,
+                                   long inFlightByteNumber) {
+
+        // hand each sample's sequences to the compression stage
+        if (compressedSequenceGroupById.isEmpty()) {
+            addDemultiplexedSequenceGroups(laneStr, compressedSequenceGroupById, inFlightByteNumber);
+            return;
+        }
+
+        AtomicInteger uncompressedGroupNumber = new AtomicInteger(compressedSequenceGroupById.size());
+        for (CompressedSequenceGroup compressedSequenceGroup : compressedSequenceGroupById.values()) {
+
+            submit(this.compressionStage, () -> compress(
+                    laneStr,
+                    compressedSequenceGroup,
+                    compressedSequenceGroupById,
+                    uncompressedGroupNumber,
+                    inFlightByteNumber
+            ));
+        }
+    }
+
+    private void compress(String laneStr, CompressedSequenceGroup compressedSequenceGroup,
+                          HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById,
+                          AtomicInteger uncompressedGroupNumber, long inFlightByteNumber) {
+
+        try {
+            compressedSequenceGroup.compress();
+        } catch (IOException e) {
+            throw new RuntimeException("could not compress a sequence group: " + e.getMessage());
+        }
+
+        // the last of the classified group's samples to be compressed passes them all on to the writers
+        if (uncompressedGroupNumber.decrementAndGet() == 0) {
+            addDemultiplexedSequenceGroups(laneStr, compressedSequenceGroupById, inFlightByteNumber);
+        }
+    }
+
+    private void addDemultiplexedSequenceGroups(String laneStr,
+                                                HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById,
+                                                long inFlightByteNumber) {
+
+        // put the demultiplexed sequence groups in the rings of the lane writers that own their ids
+        this.sequenceGroupFlow.addDemultiplexedSequenceGroups(laneStr, compressedSequenceGroupById, inFlightByteNumber);
+
+        scheduleLaneWrites(laneStr);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     WRITE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private void scheduleLaneWrites(String laneStr) {
+
+        // a writer with nothing waiting for it returns straight away
+        for (LaneWriter laneWriter : this.laneWriterListByLaneStr.get(laneStr)) { scheduleWrite(laneWriter); }
+    }
+
+    private void scheduleWrite(LaneWriter laneWriter) {
+        if (laneWriter.scheduled.compareAndSet(false, true)) { submit(this.writeStage, () -> write(laneWriter)); }
+    }
+
+    private void write(LaneWriter laneWriter) {
+
+        String laneStr = laneWriter.laneStr;
+        int writerIndex = laneWriter.writerIndex;
+
+        if (laneWriter.isClosed()) {
+            laneWriter.scheduled.set(false);
+            return;
+        }
+
+        // write everything that is waiting for this writer
+        SequenceGroupFlow.DemultiplexedSequenceGroups demultiplexedSequenceGroups;
+        while ((demultiplexedSequenceGroups =
+                this.sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups(laneStr, writerIndex)) != null) {
+
+            laneWriter.writeSequenceGroups(demultiplexedSequenceGroups.compressedSequenceGroupById);
+            // once every part of the group has been written its bytes are no longer in flight
+            if (this.sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten(laneStr, demultiplexedSequenceGroups)) {
+                this.inFlightByteGovernor.release(demultiplexedSequenceGroups.inFlightByteNumber);
+                resumeOverBudgetReads();
+            }
+
+            // a place in the lane's demultiplexed rings may be free again
+            submitClassify();
+        }
+
+        // once everything has been read and written, the sequences held back for the lane's samples are compressed and
+        // written as the lane's last demultiplexed sequence groups
+        if (this.sequenceGroupFlow.tryToTakeLaneEnd(laneStr)) {
+            HashMap<String, CompressedSequenceGroup> readySequenceGroupById = this.sampleAccumulator.drain(laneStr);
+            submitCompression(
+                    laneStr,
+                    readySequenceGroupById,
+                    SampleAccumulator.getLetGoByteNumber(readySequenceGroupById, Map.of())
+            );
+        }
+
+        // close the writer once the lane's end has been written, and make sure its siblings see it too
+        if (this.sequenceGroupFlow.isLaneEndWritten(laneStr)) {
+
+            laneWriter.close();
+            LOGGER.info("lane " + laneStr + " writer " + writerIndex + " has finished writing");
+
+            if (this.unfinishedLaneWriterNumber.decrementAndGet() == 0) { this.completion.complete(null); }
+
+            laneWriter.scheduled.set(false);
+            scheduleLaneWrites(laneStr);
+
+            return;
+        }
+
+        laneWriter.scheduled.set(false);
+
+        // a group may have been added, or the lane may have finished, while we still held the writer
+        if (this.sequenceGroupFlow.moreDemultiplexedSequenceGroupsAvailable(laneStr, writerIndex)
+                || this.sequenceGroupFlow.isLaneEndWritten(laneStr)) {
+            scheduleWrite(laneWriter);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package demany.Threading;
+
+import demany.Fastq.SequenceBlockRecycler;
+import demany.Utils.ChunkedByteArrayOutputStream;
+import demany.Utils.InflateChunkScheduler;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// bounds the bytes of the sequence groups that have been read but not yet written, readers acquire a group's bytes
+// before it goes into the pipeline and writers release them once it has been written, the budget shrinks when the heap
+// is still nearly full after a collection and grows back once it is not
+//
+// gzip chunks inflated ahead of their readers are charged to the same budget as read ahead, which only takes room the
+// groups leave free and never counts as a group in flight, so read ahead cannot keep the pipeline from making progress
+//
+// the sequences that a sample accumulator holds back are charged to the budget as well, they are already in memory so
+// they are charged whether or not they fit, and like read ahead they never count as a group in flight, once they are
+// let go they are in flight as part of a group until it has been written
+public class InFlightByteGovernor {
+
+    private static final Logger LOGGER = Logger.getLogger( InFlightByteGovernor.class.getName() );
+
+    static final double HEAP_PRESSURE_THRESHOLD = 0.8;
+    static final int MIN_BUDGET_FRACTION = 8;
+
+    private final long maxByteBudget;
+    private long byteBudget;
+    private long inFlightByteNumber = 0;
+    private long readAheadByteNumber = 0;
+    private long heldByteNumber = 0;
+
+    // the heap pools watched for pressure, and the listener that hears when one is over its threshold
+    private final List<MemoryPoolMXBean> heapMemoryPoolMXBeanList = new ArrayList<>();
+    private final NotificationListener heapPressureListener = this::handleMemoryNotification;
+
+    public InFlightByteGovernor(long maxByteBudget) {
+
+        // check input
+        if (maxByteBudget < 1) { throw new RuntimeException("the in flight byte budget must be at least 1"); }
+
+        this.maxByteBudget = maxByteBudget;
+        this.byteBudget = maxByteBudget;
+    }
+
+    public void watchHeapPressure() {
+
+        // watch the usage left after a collection of every heap pool that reports it, leaving thresholds that were
+        // already set alone
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory.getMemoryPoolMXBeans()) {
+
+            if (memoryPoolMXBean.getType() != MemoryType.HEAP) { continue; }
+            if (!memoryPoolMXBean.isCollectionUsageThresholdSupported()) { continue; }
+
+            long max = memoryPoolMXBean.getUsage().getMax();
+            if (max <= 0) { continue; }
+
+            if (memoryPoolMXBean.getCollectionUsageThreshold() == 0) {
+                memoryPoolMXBean.setCollectionUsageThreshold((long) (max * HEAP_PRESSURE_THRESHOLD));
+            }
+
+            this.heapMemoryPoolMXBeanList.add(memoryPoolMXBean);
+        }
+
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(
+                this.heapPressureListener, null, null
+        );
+    }
+
+    public void stopWatchingHeapPressure() {
+
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(
+                    this.heapPressureListener
+            );
+        } catch (ListenerNotFoundException e) {
+            // we were never watching
+        }
+    }
+
+    private void handleMemoryNotification(Notification notification, Object handback) {
+        if (notification.getType().equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED)) {
+            shrinkBudget();
+        }
+    }
+
+    // returns false if the bytes do not fit the budget, a group always fits when nothing else is in flight so that
+    // the pipeline can make progress however large its groups are
+    public synchronized boolean tryToAcquire(long byteNumber) {
+
+        if (!hasRoomFor(byteNumber)) { return false; }
+
+        this.inFlightByteNumber += byteNumber;
+
+        return true;
+    }
+
+    // waits until the bytes fit the budget
+    public synchronized void acquire(long byteNumber) throws InterruptedException {
+
+        while (!hasRoomFor(byteNumber)) { this.wait(); }
+
+        this.inFlightByteNumber += byteNumber;
+    }
+
+    public synchronized boolean hasRoomFor(long byteNumber) {
+        return this.inFlightByteNumber == this.readAheadByteNumber + this.heldByteNumber ||
+                this.inFlightByteNumber + byteNumber <= this.byteBudget;
+    }
+
+    // returns false unless the bytes fit the budget with everything else in flight
+    public synchronized boolean tryToAcquireReadAhead(long byteNumber) {
+
+        if (this.inFlightByteNumber + byteNumber > this.byteBudget) { return false; }
+
+        this.inFlightByteNumber += byteNumber;
+        this.readAheadByteNumber += byteNumber;
+
+        return true;
+    }
+
+    public synchronized void releaseReadAhead(long byteNumber) {
+
+        if (byteNumber > this.readAheadByteNumber) {
+            throw new RuntimeException("cannot release more read ahead bytes than were acquired");
+        }
+
+        this.readAheadByteNumber -= byteNumber;
+        releaseInFlightBytes(byteNumber);
+    }
+
+    // charges sequences held back for later groups, which fit whether or not there is room for them
+    public synchronized void hold(long byteNumber) {
+
+        this.inFlightByteNumber += byteNumber;
+        this.heldByteNumber += byteNumber;
+    }
+
+    // the bytes stay in flight until they are released with the group they were let go in
+    public synchronized void letGo(long byteNumber) {
+
+        if (byteNumber > this.heldByteNumber) {
+            throw new RuntimeException("cannot let go of more bytes than are held");
+        }
+
+        this.heldByteNumber -= byteNumber;
+    }
+
+    public synchronized void release(long byteNumber) {
+
+        if (byteNumber > this.inFlightByteNumber - this.readAheadByteNumber - this.heldByteNumber) {
+            throw new RuntimeException("cannot release more in flight bytes than were acquired");
+        }
+
+        releaseInFlightBytes(byteNumber);
+    }
+
+    private void releaseInFlightBytes(long byteNumber) {
+
+        this.inFlightByteNumber -= byteNumber;
+
+        // grow the budget back once the heap has recovered
+        if (this.byteBudget < this.maxByteBudget && !heapIsUnderPressure()) {
+            this.byteBudget = Math.min(this.maxByteBudget, this.byteBudget + this.maxByteBudget / MIN_BUDGET_FRACTION);
+        }
+
+        this.notifyAll();
+    }
+
+    synchronized void shrinkBudget() {
+
+        long byteBudget = Math.max(this.maxByteBudget / MIN_BUDGET_FRACTION, this.byteBudget / 2);
+
+        if (byteBudget < this.byteBudget) {
+            LOGGER.info("the heap is under pressure, the in flight byte budget is now " + byteBudget);
+        }
+
+        this.byteBudget = byteBudget;
+
+        // the pools only save allocations, their arrays are better left to the garbage collector while memory is short
+        SequenceBlockRecycler.emptyPool();
+        ChunkedByteArrayOutputStream.emptyPool();
+        InflateChunkScheduler.emptyPool();
+    }
+
+    private boolean heapIsUnderPressure() {
+
+        for (MemoryPoolMXBean memoryPoolMXBean : this.heapMemoryPoolMXBeanList) {
+            if (memoryPoolMXBean.isCollectionUsageThresholdExceeded()) { return true; }
+        }
+
+        return false;
+    }
+
+    public synchronized long getByteBudget() { return this.byteBudget; }
+
+    public synchronized long getInFlightByteNumber() { return this.inFlightByteNumber; }
+
+    public synchronized long getHeldByteNumber() { return this.heldByteNumber; }
+}
@@ -0,0 +1,82 @@
+package demany.Threading;
+
+import demany.Context.DemultiplexingContext;
+import demany.Fastq.CompressedSequenceGroup;
+import demany.Fastq.FastqWriterGroup;
+import demany.Fastq.Fastq;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// writes the demultiplexed sequence groups of a set of one lane's sample ids, a lane can have several writers that
+// each own different ids, and only one task of the pipeline runs a writer at a time
+public class LaneWriter {
+
+    public final String laneStr;
+    public final int writerIndex;
+    private final HashMap<String, FastqWriterGroup> fastqWriterGroupById = new HashMap<>();
+    private boolean closed = false;
+
+    // set while a write of this lane is submitted or running
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public LaneWriter(String laneStr, int writerIndex, Set<String> idSet,
+                      DemultiplexingContext demultiplexingContext) throws IOException {
+
+        this.laneStr = laneStr;
+        this.writerIndex = writerIndex;
+
+        // add a fastq writer group for each sample id this writer owns, which may include the undetermined id
+        Map<String, Map<String, Fastq>> outputFastqByReadTypeById =
+                demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(laneStr);
+
+        for (String id : idSet) {
+
+            if (!outputFastqByReadTypeById.containsKey(id)) {
+                throw new RuntimeException("lane " + laneStr + " has no output fastqs for id " + id);
+            }
+
+            this.fastqWriterGroupById.put(
+                    id,
+                    new FastqWriterGroup(outputFastqByReadTypeById.get(id))
+            );
+        }
+    }
+
+    void writeSequenceGroups(Map<String, CompressedSequenceGroup> compressedSequenceGroupById) {
+
+        if (this.closed) { throw new RuntimeException("cannot write sequences to a closed lane writer"); }
+
+        for (String id : compressedSequenceGroupById.keySet()) {
+
+            if (!this.fastqWriterGroupById.containsKey(id)) {
+                throw new RuntimeException("lane writer " + this.writerIndex + " does not own id " + id);
+            }
+
+            try {
+                this.fastqWriterGroupById.get(id).writeSequences(compressedSequenceGroupById.get(id));
+            } catch (IOException e) {
+                throw new RuntimeException("could not write sequences: " + e.getMessage());
+            }
+        }
+    }
+
+    boolean isClosed() { return this.closed; }
+
+    void close() {
+
+        // close all writer groups
+        for (FastqWriterGroup fastqWriterGroup : this.fastqWriterGroupById.values()) {
+            try {
+                fastqWriterGroup.close();
+            } catch (IOException e) {
+                throw new RuntimeException("could not close fastq writer group: " + e.getMessage());
+            }
+        }
+
+        this.closed = true;
+    }
+}
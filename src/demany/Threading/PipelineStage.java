@@ -0,0 +1,89 @@
+package demany.Threading;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+// one role of the demultiplexing pipeline, its tasks run on a shared pool but no more of them run at once than the
+// stage's thread limit, which the stage thread controller moves up and down as the stage falls behind or catches up
+public class PipelineStage {
+
+    public final String stageName;
+    public final PipelineStageMetrics metrics;
+    private final Executor executor;
+    private final Queue<Runnable> waitingTaskQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger runningTaskNumber = new AtomicInteger(0);
+    private volatile int threadLimit;
+
+    // the work waiting for this stage, whether or not it has been queued as tasks yet
+    private final IntSupplier backlogSupplier;
+
+    PipelineStage(String stageName, Executor executor, int threadLimit, IntSupplier backlogSupplier) {
+
+        // check input
+        if (threadLimit < 1) { throw new RuntimeException("a pipeline stage needs at least one thread"); }
+
+        this.stageName = stageName;
+        this.executor = executor;
+        this.threadLimit = threadLimit;
+        this.backlogSupplier = backlogSupplier;
+        this.metrics = new PipelineStageMetrics(stageName, threadLimit);
+    }
+
+    void submit(Runnable runnable) {
+
+        this.metrics.taskQueued();
+        this.waitingTaskQueue.add(runnable);
+
+        runWaitingTasks();
+    }
+
+    private void runWaitingTasks() {
+
+        // start waiting tasks while the stage is under its limit, a task that finishes runs this again so a task
+        // queued while the stage was full is never left behind
+        while (!this.waitingTaskQueue.isEmpty()) {
+
+            int runningTaskNumber = this.runningTaskNumber.get();
+            if (runningTaskNumber >= this.threadLimit) { return; }
+            if (!this.runningTaskNumber.compareAndSet(runningTaskNumber, runningTaskNumber + 1)) { continue; }
+
+            Runnable runnable = this.waitingTaskQueue.poll();
+            if (runnable == null) {
+                this.runningTaskNumber.decrementAndGet();
+                continue;
+            }
+
+            this.executor.execute(() -> {
+
+                long taskStartNanos = this.metrics.taskStarted();
+                try {
+                    runnable.run();
+                } finally {
+                    this.metrics.taskFinished(taskStartNanos);
+                    this.runningTaskNumber.decrementAndGet();
+                    runWaitingTasks();
+                }
+            });
+        }
+    }
+
+    int getThreadLimit() { return this.threadLimit; }
+
+    void setThreadLimit(int threadLimit) {
+
+        if (threadLimit < 1) { throw new RuntimeException("a pipeline stage needs at least one thread"); }
+
+        this.threadLimit = threadLimit;
+        this.metrics.setThreadNumber(threadLimit);
+
+        // a raised limit can start tasks right away
+        runWaitingTasks();
+    }
+
+    int getBacklog() { return this.backlogSupplier.getAsInt(); }
+
+    int getWaitingTaskNumber() { return this.waitingTaskQueue.size(); }
+}
@@ -0,0 +1,106 @@
+package demany.Threading;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// the queue depth and utilisation of one stage of the demultiplexing pipeline, so a run shows which stage is short of
+// threads
+public class PipelineStageMetrics {
+
+    public final String stageName;
+    private final long startNanos = System.nanoTime();
+
+    // the stage's thread number can change during a run, so the thread time it was given is added up as it goes
+    private int threadNumber;
+    private long threadNumberChangeNanos = this.startNanos;
+    private long allocatedThreadNanos = 0;
+
+    // tasks that have been queued but not yet started
+    private final AtomicInteger queueDepth = new AtomicInteger(0);
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private final LongAdder queueDepthSum = new LongAdder();
+    private final LongAdder queuedTaskNumber = new LongAdder();
+
+    // tasks that did work and the time they spent doing it
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder finishedTaskNumber = new LongAdder();
+
+    public PipelineStageMetrics(String stageName, int threadNumber) {
+
+        // check input
+        if (threadNumber < 1) { throw new RuntimeException("a pipeline stage needs at least one thread"); }
+
+        this.stageName = stageName;
+        this.threadNumber = threadNumber;
+    }
+
+    void taskQueued() {
+
+        int depth = this.queueDepth.incrementAndGet();
+
+        this.maxQueueDepth.accumulateAndGet(depth, Math::max);
+        this.queueDepthSum.add(depth);
+        this.queuedTaskNumber.increment();
+    }
+
+    // returns the time the task started, to be passed back when it finishes
+    long taskStarted() {
+
+        this.queueDepth.decrementAndGet();
+
+        return System.nanoTime();
+    }
+
+    void taskFinished(long taskStartNanos) {
+
+        this.busyNanos.add(System.nanoTime() - taskStartNanos);
+        this.finishedTaskNumber.increment();
+    }
+
+    synchronized void setThreadNumber(int threadNumber) {
+
+        if (threadNumber < 1) { throw new RuntimeException("a pipeline stage needs at least one thread"); }
+
+        long nanos = System.nanoTime();
+        this.allocatedThreadNanos += (nanos - this.threadNumberChangeNanos) * this.threadNumber;
+        this.threadNumberChangeNanos = nanos;
+        this.threadNumber = threadNumber;
+    }
+
+    public synchronized int getThreadNumber() { return this.threadNumber; }
+
+    public int getQueueDepth() { return this.queueDepth.get(); }
+
+    public int getMaxQueueDepth() { return this.maxQueueDepth.get(); }
+
+    public double getMeanQueueDepth() {
+
+        long queuedTaskNumber = this.queuedTaskNumber.sum();
+
+        return queuedTaskNumber == 0 ? 0.0 : (double) this.queueDepthSum.sum() / queuedTaskNumber;
+    }
+
+    public long getFinishedTaskNumber() { return this.finishedTaskNumber.sum(); }
+
+    // the fraction of the thread time given to the stage that it spent working since it was created
+    public synchronized double getUtilisation() {
+
+        long allocatedThreadNanos = this.allocatedThreadNanos
+                + (System.nanoTime() - this.threadNumberChangeNanos) * this.threadNumber;
+
+        return Math.min(1.0, (double) this.busyNanos.sum() / Math.max(1, allocatedThreadNanos));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s stage: %d threads, %d tasks, %.1f%% utilisation, queue depth mean %.1f max %d",
+                this.stageName,
+                getThreadNumber(),
+                getFinishedTaskNumber(),
+                getUtilisation() * 100,
+                getMeanQueueDepth(),
+                getMaxQueueDepth()
+        );
+    }
+}
@@ -0,0 +1,140 @@
+package demany.Threading;
+
+import demany.Fastq.CompressedSequenceGroup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// holds back the sequences of samples that get only a few of each sequence group's sequences, so that each gzip member
+// is built from many groups' worth of a sample rather than a handful of records, a sample's sequences are let go once
+// they reach the byte threshold, and the rest of every sample's sequences when its lane ends
+//
+// held sequences are charged to the in flight byte governor, and when they are let go their bytes are left in flight
+// for the group they are let go in to release once it has been written
+public class SampleAccumulator {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final long MAX_BYTE_THRESHOLD = 1024 * 1024;
+
+    // held sequences are charged to the in flight byte budget, all of them together are kept to a quarter of it so
+    // that they never leave too little for the groups being read
+    public static long getByteThreshold(long inFlightByteBudget, int heldSampleNumber) {
+        return Math.max(1, Math.min(MAX_BYTE_THRESHOLD, inFlightByteBudget / 4 / Math.max(1, heldSampleNumber)));
+    }
+
+    // returns the bytes of the ready sequence groups that had been held rather than passed straight on, which are in
+    // flight until those groups have been written
+    public static long getLetGoByteNumber(Map<String, CompressedSequenceGroup> readySequenceGroupById,
+                                          Map<String, CompressedSequenceGroup> compressedSequenceGroupById) {
+
+        long letGoByteNumber = 0;
+        for (String id : readySequenceGroupById.keySet()) {
+
+            CompressedSequenceGroup readySequenceGroup = readySequenceGroupById.get(id);
+            if (readySequenceGroup != compressedSequenceGroupById.get(id)) {
+                letGoByteNumber += readySequenceGroup.getUncompressedByteNumber();
+            }
+        }
+
+        return letGoByteNumber;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final long byteThreshold;
+    private final Set<String> readTypeSet;
+    private final InFlightByteGovernor inFlightByteGovernor;
+    private final Map<String, HashMap<String, CompressedSequenceGroup>> heldSequenceGroupByIdByLaneStr =
+            new HashMap<>();
+
+    public SampleAccumulator(long byteThreshold, Set<String> laneStrSet, Set<String> readTypeSet,
+                             InFlightByteGovernor inFlightByteGovernor) {
+
+        // check input
+        if (byteThreshold < 1) { throw new RuntimeException("the sample accumulation threshold must be at least 1"); }
+
+        this.byteThreshold = byteThreshold;
+        this.readTypeSet = readTypeSet;
+        this.inFlightByteGovernor = inFlightByteGovernor;
+
+        for (String laneStr : laneStrSet) { this.heldSequenceGroupByIdByLaneStr.put(laneStr, new HashMap<>()); }
+    }
+
+    // takes a lane's completed, uncompressed sequence groups by sample id and returns those that are ready to be
+    // compressed, the sequences of the rest are held for later groups
+    public HashMap<String, CompressedSequenceGroup> accumulate(
+            String laneStr, HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById) {
+
+        HashMap<String, CompressedSequenceGroup> heldSequenceGroupById = getHeldSequenceGroupById(laneStr);
+        HashMap<String, CompressedSequenceGroup> readySequenceGroupById = new HashMap<>();
+
+        synchronized (heldSequenceGroupById) {
+
+            for (String id : compressedSequenceGroupById.keySet()) {
+
+                CompressedSequenceGroup compressedSequenceGroup = compressedSequenceGroupById.get(id);
+                CompressedSequenceGroup heldSequenceGroup = heldSequenceGroupById.get(id);
+
+                // a sample with enough sequences of its own is passed on without a copy
+                if (heldSequenceGroup == null
+                        && compressedSequenceGroup.getUncompressedByteNumber() >= this.byteThreshold) {
+                    readySequenceGroupById.put(id, compressedSequenceGroup);
+                    continue;
+                }
+
+                if (heldSequenceGroup == null) {
+                    heldSequenceGroup = new CompressedSequenceGroup(this.readTypeSet);
+                    heldSequenceGroupById.put(id, heldSequenceGroup);
+                }
+
+                this.inFlightByteGovernor.hold(compressedSequenceGroup.getUncompressedByteNumber());
+                heldSequenceGroup.addSequences(compressedSequenceGroup);
+
+                if (heldSequenceGroup.getUncompressedByteNumber() >= this.byteThreshold) {
+
+                    this.inFlightByteGovernor.letGo(heldSequenceGroup.getUncompressedByteNumber());
+                    heldSequenceGroup.markCompleted();
+                    readySequenceGroupById.put(id, heldSequenceGroup);
+                    heldSequenceGroupById.remove(id);
+                }
+            }
+        }
+
+        return readySequenceGroupById;
+    }
+
+    // returns every sequence group still held for the lane, completed and ready to be compressed
+    public HashMap<String, CompressedSequenceGroup> drain(String laneStr) {
+
+        HashMap<String, CompressedSequenceGroup> heldSequenceGroupById = getHeldSequenceGroupById(laneStr);
+
+        synchronized (heldSequenceGroupById) {
+
+            HashMap<String, CompressedSequenceGroup> readySequenceGroupById = new HashMap<>(heldSequenceGroupById);
+            heldSequenceGroupById.clear();
+
+            for (CompressedSequenceGroup compressedSequenceGroup : readySequenceGroupById.values()) {
+
+                this.inFlightByteGovernor.letGo(compressedSequenceGroup.getUncompressedByteNumber());
+                compressedSequenceGroup.markCompleted();
+            }
+
+            return readySequenceGroupById;
+        }
+    }
+
+    private HashMap<String, CompressedSequenceGroup> getHeldSequenceGroupById(String laneStr) {
+
+        if (!this.heldSequenceGroupByIdByLaneStr.containsKey(laneStr)) {
+            throw new RuntimeException("a sample accumulator has no lane " + laneStr);
+        }
+
+        return this.heldSequenceGroupByIdByLaneStr.get(laneStr);
+    }
+}
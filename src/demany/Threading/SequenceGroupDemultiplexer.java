@@ -0,0 +1,174 @@
+package demany.Threading;
+
+import demany.Context.DemultiplexingContext;
+import demany.Fastq.CompressedSequenceGroup;
+import demany.Fastq.SequenceGroup;
+import demany.Fastq.SequenceBlock;
+import demany.Fastq.SequenceGroupFlow;
+import demany.SampleIndex.PackedIndexKey;
+import demany.SampleIndex.SampleIndexLookup;
+import demany.SampleIndex.SampleIndexLookupCache;
+
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+// classifies the sequences of sequence groups by sample for one worker of the pipeline, keeping that worker's index
+// counts, the per sample groups it makes are compressed by a later stage
+public class SequenceGroupDemultiplexer {
+
+    private static final Logger LOGGER = Logger.getLogger( SequenceGroupDemultiplexer.class.getName() );
+
+    final HashMap<String, HashMap<String, HashMap<String, Long>>> countByIndexStrByIdByLaneStr = new HashMap<>();
+    final DemultiplexingContext demultiplexingContext;
+
+    // each lane's lookup cache, which also keeps the counts of the index pairs it can key
+    private final HashMap<String, SampleIndexLookupCache> sampleIndexLookupCacheByLaneStr = new HashMap<>();
+
+    public SequenceGroupDemultiplexer(DemultiplexingContext demultiplexingContext) {
+
+        this.demultiplexingContext = demultiplexingContext;
+
+        // initialize the count by index str by id map
+        for (String laneStr : demultiplexingContext.sampleIdDataSetByLaneStr.keySet()) {
+
+            this.countByIndexStrByIdByLaneStr.put(laneStr, new HashMap<>());
+
+            this.countByIndexStrByIdByLaneStr.get(laneStr).put(DemultiplexingContext.UNDETERMINED_ID, new HashMap<>());
+
+            for (DemultiplexingContext.SampleIdData sampleIdData :
+                    demultiplexingContext.sampleIdDataSetByLaneStr.get(laneStr)) {
+
+                this.countByIndexStrByIdByLaneStr.get(laneStr).put(sampleIdData.id, new HashMap<>());
+            }
+
+            this.sampleIndexLookupCacheByLaneStr.put(
+                    laneStr, new SampleIndexLookupCache(demultiplexingContext.sampleIndexLookupByLaneStr.get(laneStr))
+            );
+        }
+    }
+
+    public void submitCounts(SequenceGroupFlow sequenceGroupFlow) {
+
+        // move the counts the lookup caches kept into the count by index str maps
+        for (String laneStr : this.sampleIndexLookupCacheByLaneStr.keySet()) {
+
+            SampleIndexLookupCache sampleIndexLookupCache = this.sampleIndexLookupCacheByLaneStr.get(laneStr);
+            sampleIndexLookupCache.drainCounts(
+                    this.countByIndexStrByIdByLaneStr.get(laneStr), DemultiplexingContext.UNDETERMINED_ID
+            );
+
+            LOGGER.info(String.format(
+                    "lane %s index lookup cache hit %d and missed %d times, a %.1f%% hit rate",
+                    laneStr,
+                    sampleIndexLookupCache.getHitNumber(),
+                    sampleIndexLookupCache.getMissNumber(),
+                    sampleIndexLookupCache.getHitRate() * 100
+            ));
+        }
+
+        // submit this demultiplexer's index counts to the sequence group flow
+        sequenceGroupFlow.submitCountByIndexStrByIdByLaneStr(this.countByIndexStrByIdByLaneStr);
+    }
+
+    public HashMap<String, CompressedSequenceGroup> classifySequenceGroup(String laneStr, SequenceGroup sequenceGroup) {
+
+        // a sample's compressed sequence group is only created once one of its sequences is found, most samples of
+        // a large lane have no sequences in any one group
+        HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById = new HashMap<>();
+
+        // get the count by index-str by id for this lane
+        HashMap<String, HashMap<String, Long>> countByIndexStrById = this.countByIndexStrByIdByLaneStr.get(laneStr);
+
+        // get the lookup and its cache for this lane
+        SampleIndexLookup lookup = this.demultiplexingContext.sampleIndexLookupByLaneStr.get(laneStr);
+        SampleIndexLookupCache lookupCache = this.sampleIndexLookupCacheByLaneStr.get(laneStr);
+
+        // get the index sequence blocks
+        SequenceBlock index1SequenceBlock =
+                sequenceGroup.sequenceBlockByReadType.get(this.demultiplexingContext.index1ReadType);
+
+        SequenceBlock index2SequenceBlock = null;
+        if (this.demultiplexingContext.hasIndex2) {
+            index2SequenceBlock = sequenceGroup.sequenceBlockByReadType.get(this.demultiplexingContext.index2ReadType);
+        }
+
+        // demultiplex the input sequence group
+        long index2Key = 0;
+        for (int i = 0; i < sequenceGroup.size(); i++) {
+
+            // pack the index keys straight from the sequences' bytes
+            long index1Key = PackedIndexKey.pack(
+                    index1SequenceBlock.buffer,
+                    index1SequenceBlock.getLineStart(i, 2),
+                    this.demultiplexingContext.index1Length
+            );
+
+            if (this.demultiplexingContext.hasIndex2) {
+                index2Key = PackedIndexKey.pack(
+                        index2SequenceBlock.buffer,
+                        index2SequenceBlock.getLineStart(i, 2),
+                        this.demultiplexingContext.index2Length
+                );
+            }
+
+            // lookup the sample through the cache, which has no counter slot for keys that could not be packed, an
+            // index with a character other than a base or an N, or shorter than the index length so that its line
+            // break was packed
+            int counterSlot = lookupCache.getCounterSlot(index1Key, index2Key);
+
+            int sampleOrdinal;
+            if (counterSlot != SampleIndexLookupCache.NO_COUNTER_SLOT) {
+                sampleOrdinal = lookupCache.getSampleOrdinal(counterSlot);
+            } else if (this.demultiplexingContext.hasIndex2) {
+                sampleOrdinal = lookup.lookupSampleOrdinal(index1Key, index2Key);
+            } else {
+                sampleOrdinal = lookup.lookupSampleOrdinal(index1Key);
+            }
+
+            // set the undetermined id if we didn't find a sample
+            String sampleId = sampleOrdinal == SampleIndexLookup.NO_SAMPLE ?
+                    DemultiplexingContext.UNDETERMINED_ID : lookup.getSampleId(sampleOrdinal);
+
+            // add lines to the sample's sequence group
+            CompressedSequenceGroup compressedSequenceGroup = compressedSequenceGroupById.get(sampleId);
+            if (compressedSequenceGroup == null) {
+                compressedSequenceGroup = new CompressedSequenceGroup(this.demultiplexingContext.readTypeSet);
+                compressedSequenceGroupById.put(sampleId, compressedSequenceGroup);
+            }
+
+            for (String readTypeString : sequenceGroup.sequenceBlockByReadType.keySet()) {
+                compressedSequenceGroup.addSequence(
+                        readTypeString,
+                        sequenceGroup.sequenceBlockByReadType.get(readTypeString),
+                        i
+                );
+            }
+
+            // record the index count, by the index strings only for an index pair the cache could not count
+            if (counterSlot != SampleIndexLookupCache.NO_COUNTER_SLOT) {
+                lookupCache.count(counterSlot);
+            } else {
+                countByIndexStrById.get(sampleId).merge(
+                        getIndexStr(index1SequenceBlock, index2SequenceBlock, i), 1L, Long::sum
+                );
+            }
+        }
+
+        // mark each sequence group complete, it is ready to be compressed, none of them is empty
+        for (CompressedSequenceGroup compressedSequenceGroup : compressedSequenceGroupById.values()) {
+            compressedSequenceGroup.markCompleted();
+        }
+
+        return compressedSequenceGroupById;
+    }
+
+    private String getIndexStr(SequenceBlock index1SequenceBlock, SequenceBlock index2SequenceBlock, int i) {
+
+        String index1 = index1SequenceBlock.getLinePrefixString(i, 2, this.demultiplexingContext.index1Length);
+
+        if (!this.demultiplexingContext.hasIndex2) { return index1; }
+
+        return index1 + "-" +
+                index2SequenceBlock.getLinePrefixString(i, 2, this.demultiplexingContext.index2Length);
+    }
+}
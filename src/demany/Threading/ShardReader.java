@@ -0,0 +1,95 @@
+package demany.Threading;
+
+import demany.Fastq.FastqReaderGroup;
+import demany.Fastq.MasterFastqShard;
+import demany.Fastq.SequenceGroup;
+import demany.Utils.InflateChunkScheduler;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// reads the sequence groups of one master fastq shard, a group at a time, as a task of the pipeline
+public class ShardReader {
+
+    public final String laneStr;
+    private final FastqReaderGroup fastqReaderGroup;
+    private final BatchSizeController batchSizeController;
+
+    // a sequence group that has been read but did not fit in the flow or the in flight byte budget yet, and whether
+    // its bytes were acquired before it was returned
+    private SequenceGroup pendingSequenceGroup = null;
+    private boolean pendingInFlightBytesAcquired = false;
+    private boolean takenInFlightBytesAcquired = false;
+
+    // set while a read of this shard is submitted or running, so that the shard is only ever read by one task
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public ShardReader(MasterFastqShard masterFastqShard, BatchSizeController batchSizeController,
+                       InflateChunkScheduler inflateChunkScheduler) throws IOException {
+
+        this.laneStr = masterFastqShard.laneStr;
+        this.fastqReaderGroup = masterFastqShard.getFastqReaderGroup(inflateChunkScheduler);
+        this.batchSizeController = batchSizeController;
+    }
+
+    // returns the next sequence group to add to the flow, or null once the shard has been read
+    SequenceGroup takeSequenceGroup() {
+
+        // hand out the group that did not fit last time first
+        if (this.pendingSequenceGroup != null) {
+
+            SequenceGroup sequenceGroup = this.pendingSequenceGroup;
+            this.pendingSequenceGroup = null;
+            this.takenInFlightBytesAcquired = this.pendingInFlightBytesAcquired;
+
+            return sequenceGroup;
+        }
+
+        this.takenInFlightBytesAcquired = false;
+
+        while (this.fastqReaderGroup.isNotDoneReading()) {
+
+            // read a group of as many sequences as the controller currently asks for
+            SequenceGroup sequenceGroup = this.fastqReaderGroup.readSequences(
+                    this.batchSizeController.getSequenceNumber()
+            );
+
+            // make sure that the sequence group is completed
+            if (!sequenceGroup.isCompleted()) {
+                throw new RuntimeException("a shard reader recieved a sequence group that was not completed");
+            }
+
+            // check to see if the sequence group is empty
+            if (sequenceGroup.isEmpty()) {
+
+                // make sure the fastq reader group is done reading
+                if (this.fastqReaderGroup.isNotDoneReading()) {
+                    throw new RuntimeException(
+                            "a fastq reader group that isn't done reading generated an empty sequence group"
+                    );
+                }
+
+                continue;
+            }
+
+            this.batchSizeController.recordSequenceGroupRead(sequenceGroup.getByteNumber(), sequenceGroup.size());
+
+            return sequenceGroup;
+        }
+
+        return null;
+    }
+
+    // whether the in flight bytes of the group that was last taken have already been acquired
+    boolean takenInFlightBytesAcquired() { return this.takenInFlightBytesAcquired; }
+
+    void returnSequenceGroup(SequenceGroup sequenceGroup, boolean inFlightBytesAcquired) {
+
+        if (this.pendingSequenceGroup != null) {
+            throw new RuntimeException("a shard reader can only hold on to one sequence group");
+        }
+
+        this.pendingSequenceGroup = sequenceGroup;
+        this.pendingInFlightBytesAcquired = inFlightBytesAcquired;
+    }
+}
@@ -0,0 +1,219 @@
+package demany.Threading;
+
+import demany.Context.DemultiplexingContext;
+import demany.Fastq.CompressedSequenceGroup;
+import demany.Fastq.MasterFastqShard;
+import demany.Fastq.SequenceGroup;
+import demany.Fastq.SequenceGroupFlow;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+// an alternative to the demultiplexing pipeline where each worker thread owns a shard from end to end, it reads,
+// classifies and compresses the shard's sequences itself and only hands finished gzip members to its lane's writer, so
+// nothing passes between threads but the writes
+//
+// there is never more than one worker per shard, so it only uses its whole thread budget when the lanes could be split
+// into a shard per thread, which takes bgzf master fastqs, it is chosen from the input and the staged pipeline is the
+// default
+public class SharedNothingPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger( SharedNothingPipeline.class.getName() );
+
+    private final int threadNumber;
+    private final Queue<ShardReader> shardReaderQueue = new ConcurrentLinkedQueue<>();
+    private final Map<String, LaneWriter> laneWriterByLaneStr = new HashMap<>();
+    private final DemultiplexingContext demultiplexingContext;
+    private final InFlightByteGovernor inFlightByteGovernor;
+    private final long inFlightByteBudget;
+    private final BatchSizeController batchSizeController;
+
+    // the first failure of any worker, the rest stop at their next sequence group
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
+
+    public SharedNothingPipeline(int threadNumber, long inFlightByteBudget,
+                                 Map<String, List<MasterFastqShard>> masterFastqShardListByLaneStr,
+                                 DemultiplexingContext demultiplexingContext) throws IOException {
+
+        // check input
+        if (threadNumber < 1) { throw new RuntimeException("a shared nothing pipeline needs at least one thread"); }
+
+        this.threadNumber = threadNumber;
+        this.demultiplexingContext = demultiplexingContext;
+        this.inFlightByteGovernor = new InFlightByteGovernor(inFlightByteBudget);
+        this.inFlightByteBudget = inFlightByteBudget;
+        this.batchSizeController = new BatchSizeController(inFlightByteBudget, threadNumber);
+
+        // create a reader for each shard and one writer for each lane that owns all of its ids
+        for (String laneStr : masterFastqShardListByLaneStr.keySet()) {
+
+            for (MasterFastqShard masterFastqShard : masterFastqShardListByLaneStr.get(laneStr)) {
+                // each worker inflates its own shard, so no reader inflates ahead on threads outside the workers
+                this.shardReaderQueue.add(new ShardReader(masterFastqShard, this.batchSizeController, null));
+            }
+
+            this.laneWriterByLaneStr.put(laneStr, new LaneWriter(
+                    laneStr,
+                    0,
+                    demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(laneStr).keySet(),
+                    demultiplexingContext
+            ));
+        }
+    }
+
+    public Map<String, Map<String, Map<String, Long>>> run() throws InterruptedException {
+
+        // there is no point in more workers than shards
+        int workerNumber = Math.min(this.threadNumber, this.shardReaderQueue.size());
+        LOGGER.info(workerNumber + " shared nothing workers will read " + this.shardReaderQueue.size() + " shards");
+
+        if (workerNumber < this.threadNumber) {
+            LOGGER.warning("only " + workerNumber + " of the " + this.threadNumber + " threads have a shard to work"
+                    + " on, the staged demultiplexing pipeline keeps every thread busy whatever the shard number");
+        }
+
+        // each worker holds back the sequences of small samples on its own, so the held sequences of all of them share
+        // the threshold's quarter of the in flight byte budget
+        int sampleNumber = 0;
+        for (String laneStr : this.laneWriterByLaneStr.keySet()) {
+            sampleNumber += this.demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(laneStr).size();
+        }
+
+        long sampleAccumulationByteThreshold =
+                SampleAccumulator.getByteThreshold(this.inFlightByteBudget, sampleNumber * Math.max(1, workerNumber));
+        LOGGER.info("samples are compressed once they hold " + sampleAccumulationByteThreshold + " bytes");
+
+        // start the workers, each with its own demultiplexer and sample accumulator
+        List<SequenceGroupDemultiplexer> sequenceGroupDemultiplexerList = new ArrayList<>();
+        List<Thread> workerThreadList = new ArrayList<>();
+        for (int i = 0; i < workerNumber; i++) {
+
+            SequenceGroupDemultiplexer demultiplexer = new SequenceGroupDemultiplexer(this.demultiplexingContext);
+            sequenceGroupDemultiplexerList.add(demultiplexer);
+
+            SampleAccumulator sampleAccumulator = new SampleAccumulator(
+                    sampleAccumulationByteThreshold,
+                    this.laneWriterByLaneStr.keySet(),
+                    this.demultiplexingContext.readTypeSet,
+                    this.inFlightByteGovernor
+            );
+
+            Thread workerThread = new Thread(
+                    () -> work(demultiplexer, sampleAccumulator), "shared-nothing-worker-" + i
+            );
+            workerThreadList.add(workerThread);
+            workerThread.start();
+        }
+
+        this.inFlightByteGovernor.watchHeapPressure();
+        try {
+            for (Thread workerThread : workerThreadList) { workerThread.join(); }
+        } catch (InterruptedException e) {
+            for (Thread workerThread : workerThreadList) { workerThread.interrupt(); }
+            throw e;
+        } finally {
+            this.inFlightByteGovernor.stopWatchingHeapPressure();
+        }
+
+        if (this.failure.get() != null) {
+            throw new RuntimeException("demultiplexing failed: " + this.failure.get().getMessage());
+        }
+
+        LOGGER.info(this.batchSizeController.toString());
+
+        // every shard has been written, close the lanes
+        for (LaneWriter laneWriter : this.laneWriterByLaneStr.values()) {
+
+            laneWriter.close();
+            LOGGER.info("lane " + laneWriter.laneStr + " has been written");
+        }
+
+        // the flow is only used to gather the index counts of every worker, no sequences pass through it
+        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(this.laneWriterByLaneStr.keySet());
+        for (SequenceGroupDemultiplexer demultiplexer : sequenceGroupDemultiplexerList) {
+            demultiplexer.submitCounts(sequenceGroupFlow);
+        }
+
+        return sequenceGroupFlow.getCountByIndexStrByIdByLaneStr();
+    }
+
+    private void work(SequenceGroupDemultiplexer demultiplexer, SampleAccumulator sampleAccumulator) {
+
+        try {
+
+            // take shards until there are none left
+            ShardReader shardReader;
+            while ((shardReader = this.shardReaderQueue.poll()) != null) {
+
+                SequenceGroup sequenceGroup;
+                while ((sequenceGroup = shardReader.takeSequenceGroup()) != null) {
+
+                    if (this.failure.get() != null) { return; }
+
+                    // wait for the group's bytes to fit the in flight byte budget
+                    long byteNumber = sequenceGroup.getByteNumber();
+                    this.inFlightByteGovernor.acquire(byteNumber);
+
+                    // the bytes of held sequences that are let go with the group are written with it
+                    long letGoByteNumber = 0;
+                    try {
+
+                        // classify the group on this thread, and compress and write the samples that hold enough
+                        long startNanos = System.nanoTime();
+                        HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById =
+                                demultiplexer.classifySequenceGroup(shardReader.laneStr, sequenceGroup);
+                        sequenceGroup.recycle();
+
+                        // a worker never waits on another's groups, so only the classification time tunes the size
+                        this.batchSizeController.recordSequenceGroupClassified(System.nanoTime() - startNanos, 1);
+
+                        HashMap<String, CompressedSequenceGroup> readySequenceGroupById =
+                                sampleAccumulator.accumulate(shardReader.laneStr, compressedSequenceGroupById);
+                        letGoByteNumber = SampleAccumulator.getLetGoByteNumber(
+                                readySequenceGroupById, compressedSequenceGroupById
+                        );
+
+                        compressAndWrite(shardReader.laneStr, readySequenceGroupById);
+
+                    } finally {
+                        // a failed group releases its bytes too, so no other worker waits on them
+                        this.inFlightByteGovernor.release(byteNumber + letGoByteNumber);
+                    }
+                }
+            }
+
+            // every shard has been taken, write what this worker held back for each lane's samples
+            for (String laneStr : this.laneWriterByLaneStr.keySet()) {
+
+                HashMap<String, CompressedSequenceGroup> readySequenceGroupById = sampleAccumulator.drain(laneStr);
+                long letGoByteNumber = SampleAccumulator.getLetGoByteNumber(readySequenceGroupById, Map.of());
+
+                try {
+                    compressAndWrite(laneStr, readySequenceGroupById);
+                } finally {
+                    this.inFlightByteGovernor.release(letGoByteNumber);
+                }
+            }
+
+        } catch (IOException | InterruptedException | RuntimeException | Error e) {
+            this.failure.compareAndSet(null, e);
+        }
+    }
+
+    private void compressAndWrite(String laneStr, HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById)
+            throws IOException {
+
+        if (compressedSequenceGroupById.isEmpty()) { return; }
+
+        for (CompressedSequenceGroup compressedSequenceGroup : compressedSequenceGroupById.values()) {
+            compressedSequenceGroup.compress();
+        }
+
+        // the lane's writer is the only thing the workers share
+        LaneWriter laneWriter = this.laneWriterByLaneStr.get(laneStr);
+        synchronized (laneWriter) { laneWriter.writeSequenceGroups(compressedSequenceGroupById); }
+    }
+}
@@ -0,0 +1,85 @@
+package demany.Threading;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// periodically moves a thread from the pipeline stage with the least backlog per thread to the one with the most, so
+// the split between stages follows the run instead of being tuned by hand, a move never changes the total of the
+// stages' limits
+public class StageThreadController {
+
+    private static final Logger LOGGER = Logger.getLogger( StageThreadController.class.getName() );
+
+    static final long DEFAULT_PERIOD_MILLIS = 250;
+
+    private final List<PipelineStage> pipelineStageList;
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    StageThreadController(List<PipelineStage> pipelineStageList) {
+
+        // check input
+        if (pipelineStageList.isEmpty()) { throw new RuntimeException("a stage thread controller needs stages"); }
+
+        this.pipelineStageList = pipelineStageList;
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stage-thread-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void start() { start(DEFAULT_PERIOD_MILLIS); }
+
+    void start(long periodMillis) {
+        this.scheduledExecutorService.scheduleAtFixedRate(
+                this::rebalance, periodMillis, periodMillis, TimeUnit.MILLISECONDS
+        );
+    }
+
+    void stop() { this.scheduledExecutorService.shutdownNow(); }
+
+    // returns true if a thread was moved
+    synchronized boolean rebalance() {
+
+        // find the stage that is furthest behind and the one with the most threads to spare
+        PipelineStage behindStage = null;
+        double behindPressure = 0;
+        PipelineStage spareStage = null;
+        double sparePressure = Double.MAX_VALUE;
+
+        for (PipelineStage pipelineStage : this.pipelineStageList) {
+
+            int threadLimit = pipelineStage.getThreadLimit();
+            int backlog = pipelineStage.getBacklog();
+            double pressure = (double) backlog / threadLimit;
+
+            // a stage is behind when it has more work waiting than threads to do it
+            if (backlog > threadLimit && pressure > behindPressure) {
+                behindStage = pipelineStage;
+                behindPressure = pressure;
+            }
+
+            if (threadLimit > 1 && pressure < sparePressure) {
+                spareStage = pipelineStage;
+                sparePressure = pressure;
+            }
+        }
+
+        // only move a thread if it leaves the spare stage less pressed than the stage that is behind
+        if (behindStage == null || spareStage == null || behindStage == spareStage) { return false; }
+
+        double spareStagePressureAfter = (double) spareStage.getBacklog() / (spareStage.getThreadLimit() - 1);
+        if (spareStagePressureAfter >= behindPressure) { return false; }
+
+        spareStage.setThreadLimit(spareStage.getThreadLimit() - 1);
+        behindStage.setThreadLimit(behindStage.getThreadLimit() + 1);
+
+        LOGGER.fine("moved a thread from the " + spareStage.stageName + " stage to the " + behindStage.stageName
+                + " stage");
+
+        return true;
+    }
+}
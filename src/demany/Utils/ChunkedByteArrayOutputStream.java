@@ -0,0 +1,162 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// a growable byte array output stream made of fixed size chunks chained together, growing never copies what has been
+// written, and the chunks go back to a shared pool for the next stream once the bytes have been written out
+public class ChunkedByteArrayOutputStream extends OutputStream {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    public static final int CHUNK_SIZE = 16384;
+
+    // the pool holds at most a small share of the heap
+    static final int MAX_POOLED_CHUNK_NUMBER = (int) Math.min(
+            Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 32 / CHUNK_SIZE
+    );
+
+    private static final Queue<byte[]> pooledChunkQueue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledChunkNumber = new AtomicInteger(0);
+
+    private static byte[] takeChunk() {
+
+        byte[] chunk = pooledChunkQueue.poll();
+        if (chunk == null) { return new byte[CHUNK_SIZE]; }
+
+        pooledChunkNumber.decrementAndGet();
+
+        return chunk;
+    }
+
+    private static void returnChunk(byte[] chunk) {
+
+        // chunks beyond what the pool holds are left for the garbage collector
+        if (pooledChunkNumber.incrementAndGet() > MAX_POOLED_CHUNK_NUMBER) {
+            pooledChunkNumber.decrementAndGet();
+            return;
+        }
+
+        pooledChunkQueue.add(chunk);
+    }
+
+    // leaves every pooled chunk for the garbage collector, for when the heap is under pressure
+    public static void emptyPool() {
+        while (pooledChunkQueue.poll() != null) { pooledChunkNumber.decrementAndGet(); }
+    }
+
+    static int getPooledChunkNumber() { return pooledChunkNumber.get(); }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final List<byte[]> chunkList = new ArrayList<>();
+    private int lastChunkLength = CHUNK_SIZE;
+    private long size = 0;
+    private boolean released = false;
+
+    private byte[] getWritableChunk() {
+
+        if (this.released) { throw new RuntimeException("cannot use a chunked output stream after it was released"); }
+
+        // start a new chunk once the last one is full
+        if (this.lastChunkLength == CHUNK_SIZE) {
+            this.chunkList.add(takeChunk());
+            this.lastChunkLength = 0;
+        }
+
+        return this.chunkList.get(this.chunkList.size() - 1);
+    }
+
+    @Override
+    public void write(int b) {
+
+        getWritableChunk()[this.lastChunkLength++] = (byte) b;
+        this.size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+
+        while (length > 0) {
+
+            byte[] chunk = getWritableChunk();
+            int copyLength = Math.min(length, CHUNK_SIZE - this.lastChunkLength);
+
+            System.arraycopy(bytes, offset, chunk, this.lastChunkLength, copyLength);
+            this.lastChunkLength += copyLength;
+            this.size += copyLength;
+
+            offset += copyLength;
+            length -= copyLength;
+        }
+    }
+
+    public void write(ByteBuffer buffer, int index, int length) {
+
+        while (length > 0) {
+
+            byte[] chunk = getWritableChunk();
+            int copyLength = Math.min(length, CHUNK_SIZE - this.lastChunkLength);
+
+            buffer.get(index, chunk, this.lastChunkLength, copyLength);
+            this.lastChunkLength += copyLength;
+            this.size += copyLength;
+
+            index += copyLength;
+            length -= copyLength;
+        }
+    }
+
+    public long size() { return this.size; }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+
+        if (this.released) { throw new RuntimeException("cannot use a chunked output stream after it was released"); }
+
+        for (int i = 0; i < this.chunkList.size(); i++) {
+            outputStream.write(this.chunkList.get(i), 0, getChunkLength(i));
+        }
+    }
+
+    private int getChunkLength(int chunkIndex) {
+        return chunkIndex == this.chunkList.size() - 1 ? this.lastChunkLength : CHUNK_SIZE;
+    }
+
+    public byte[] toByteArray() {
+
+        if (this.released) { throw new RuntimeException("cannot use a chunked output stream after it was released"); }
+        if (this.size > Integer.MAX_VALUE - 8) { throw new RuntimeException("too many bytes for one byte array"); }
+
+        byte[] bytes = new byte[(int) this.size];
+        int position = 0;
+        for (int i = 0; i < this.chunkList.size(); i++) {
+
+            int length = getChunkLength(i);
+            System.arraycopy(this.chunkList.get(i), 0, bytes, position, length);
+            position += length;
+        }
+
+        return bytes;
+    }
+
+    // hands the chunks back to the pool, the stream cannot be used again
+    public void release() {
+
+        if (this.released) { return; }
+
+        for (byte[] chunk : this.chunkList) { returnChunk(chunk); }
+
+        this.chunkList.clear();
+        this.released = true;
+    }
+}
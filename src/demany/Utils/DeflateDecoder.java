@@ -0,0 +1,509 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// a raw deflate decoder that can start at any bit position of a file, it writes 16 bit symbols so that when the
+// window before the start is not known, back references into it are kept as markers to be resolved later
+class DeflateDecoder {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final int WINDOW_SIZE = 32768;
+    static final int MARKER_BASE = 256;
+
+    static final int BLOCK_INVALID = -1;
+    static final int BLOCK_NOT_FINAL = 0;
+    static final int BLOCK_FINAL = 1;
+
+    private static final int INPUT_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_CODE_BITS = 15;
+
+    private static final int CODE_LENGTH_TABLE = 0;
+    private static final int LITERAL_TABLE = 1;
+    private static final int DISTANCE_TABLE = 2;
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227,
+            258
+    };
+    private static final int[] LENGTH_EXTRA_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+            6145, 8193, 12289, 16385, 24577
+    };
+    private static final int[] DISTANCE_EXTRA_BITS = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final HuffmanTable FIXED_LITERAL_TABLE = new HuffmanTable();
+    private static final HuffmanTable FIXED_DISTANCE_TABLE = new HuffmanTable();
+
+    static {
+
+        // the fixed code lengths from the deflate specification
+        int[] literalLengths = new int[288];
+        Arrays.fill(literalLengths, 0, 144, 8);
+        Arrays.fill(literalLengths, 144, 256, 9);
+        Arrays.fill(literalLengths, 256, 280, 7);
+        Arrays.fill(literalLengths, 280, 288, 8);
+        FIXED_LITERAL_TABLE.build(literalLengths, 0, 288, LITERAL_TABLE);
+
+        int[] distanceLengths = new int[30];
+        Arrays.fill(distanceLengths, 5);
+        FIXED_DISTANCE_TABLE.build(distanceLengths, 0, 30, DISTANCE_TABLE);
+    }
+
+    static char[] getMarkerWindow() {
+
+        char[] markerWindow = new char[WINDOW_SIZE];
+        for (int i = 0; i < WINDOW_SIZE; i++) { markerWindow[i] = (char) (MARKER_BASE + i); }
+
+        return markerWindow;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     HUFFMAN TABLE
+    // -------------------------------------------------------------------------------------------------------------
+
+    // a single level lookup table indexed by the next max-bits bits of input, each entry is symbol << 4 | code length
+    private static class HuffmanTable {
+
+        final int[] entries = new int[1 << MAX_CODE_BITS];
+        int maxBits = 0;
+        int mask = 0;
+
+        private final int[] lengthCounts = new int[MAX_CODE_BITS + 1];
+        private final int[] nextCodes = new int[MAX_CODE_BITS + 1];
+
+        boolean build(int[] lengths, int offset, int count, int tableType) {
+
+            // count the codes of each length
+            Arrays.fill(this.lengthCounts, 0);
+            int maxBits = 0;
+            for (int i = offset; i < offset + count; i++) {
+                this.lengthCounts[lengths[i]]++;
+                if (lengths[i] > maxBits) { maxBits = lengths[i]; }
+            }
+            this.lengthCounts[0] = 0;
+
+            // a table without codes can only be used for distances, and will fail on any lookup
+            if (maxBits == 0) {
+
+                this.maxBits = 1;
+                this.mask = 1;
+                this.entries[0] = 0;
+                this.entries[1] = 0;
+
+                return tableType == DISTANCE_TABLE;
+            }
+
+            // make sure the code is neither over subscribed nor incomplete, except for a single one bit code
+            int left = 1;
+            for (int bits = 1; bits <= MAX_CODE_BITS; bits++) {
+
+                left <<= 1;
+                left -= this.lengthCounts[bits];
+
+                if (left < 0) { return false; }
+            }
+
+            if (left > 0 && (tableType == CODE_LENGTH_TABLE || maxBits != 1)) { return false; }
+
+            // get the first canonical code of each length
+            int code = 0;
+            for (int bits = 1; bits <= MAX_CODE_BITS; bits++) {
+                code = (code + this.lengthCounts[bits - 1]) << 1;
+                this.nextCodes[bits] = code;
+            }
+
+            // fill the table, codes are read least significant bit first so the table index is the reversed code
+            int size = 1 << maxBits;
+            Arrays.fill(this.entries, 0, size, 0);
+            for (int i = offset; i < offset + count; i++) {
+
+                int length = lengths[i];
+                if (length == 0) { continue; }
+
+                int reversedCode = Integer.reverse(this.nextCodes[length]++) >>> (32 - length);
+                int entry = ((i - offset) << 4) | length;
+
+                for (int index = reversedCode; index < size; index += 1 << length) { this.entries[index] = entry; }
+            }
+
+            this.maxBits = maxBits;
+            this.mask = size - 1;
+
+            return true;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private FileChannel channel;
+    private long fileSize;
+    private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private long bufferFilePosition = 0;
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+    private long paddingBytes = 0;
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+
+    private final HuffmanTable codeLengthTable = new HuffmanTable();
+    private final HuffmanTable literalTable = new HuffmanTable();
+    private final HuffmanTable distanceTable = new HuffmanTable();
+    private final int[] codeLengths = new int[286 + 30];
+    private final int[] codeLengthCodeLengths = new int[19];
+
+    char[] output;
+    int outputStart = 0;
+    int outputLength = 0;
+
+    DeflateDecoder(FileChannel channel, long fileSize, int outputCapacity) {
+
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.output = new char[Math.max(outputCapacity, WINDOW_SIZE * 2)];
+    }
+
+    // points a decoder at another file, so that its buffers and tables can be reused
+    void setInput(FileChannel channel, long fileSize) {
+
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.bufferFilePosition = 0;
+        this.bufferLength = 0;
+        this.bufferPosition = 0;
+        this.paddingBytes = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+        this.outputStart = 0;
+        this.outputLength = 0;
+    }
+
+    // the bytes held by the decoder's input buffer and output
+    long getByteNumber() { return INPUT_BUFFER_SIZE + this.output.length * 2L; }
+
+    void setWindow(char[] window, int windowLength) {
+
+        // the window sits in front of the output so that back references can reach into it
+        System.arraycopy(window, window.length - windowLength, this.output, 0, windowLength);
+        this.outputStart = windowLength;
+        this.outputLength = windowLength;
+    }
+
+    void resetOutput() { this.outputLength = this.outputStart; }
+
+    long getBitPosition() { return (this.bufferFilePosition + this.bufferPosition + this.paddingBytes) * 8 - this.bitCount; }
+
+    boolean isPastEnd() { return getBitPosition() > this.fileSize * 8; }
+
+    void seekBit(long bitPosition) throws IOException {
+
+        long bytePosition = bitPosition >>> 3;
+
+        // load the input buffer at this position if it isn't already loaded
+        if (bytePosition < this.bufferFilePosition || bytePosition >= this.bufferFilePosition + this.bufferLength) {
+            loadInput(bytePosition);
+        }
+
+        this.bufferPosition = (int) (bytePosition - this.bufferFilePosition);
+        this.paddingBytes = 0;
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+
+        refill();
+        dropBits((int) (bitPosition & 7));
+    }
+
+    private void loadInput(long bytePosition) throws IOException {
+
+        this.bufferFilePosition = bytePosition;
+        this.bufferLength = 0;
+        this.bufferPosition = 0;
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(this.inputBuffer);
+        while (byteBuffer.hasRemaining()) {
+
+            int readCount = this.channel.read(byteBuffer, bytePosition + byteBuffer.position());
+            if (readCount == -1) { break; }
+        }
+
+        this.bufferLength = byteBuffer.position();
+    }
+
+    private void refill() throws IOException {
+
+        while (this.bitCount <= 56) {
+
+            if (this.bufferPosition == this.bufferLength) {
+
+                // past the end of the file the input is padded with zeros
+                if (this.bufferFilePosition + this.bufferLength >= this.fileSize) {
+
+                    this.paddingBytes++;
+                    this.bitCount += 8;
+
+                    continue;
+                }
+
+                loadInput(this.bufferFilePosition + this.bufferLength);
+            }
+
+            this.bitBuffer |= (long) (this.inputBuffer[this.bufferPosition++] & 0xff) << this.bitCount;
+            this.bitCount += 8;
+        }
+    }
+
+    private int readBits(int count) throws IOException {
+
+        if (this.bitCount < count) { refill(); }
+
+        int bits = (int) (this.bitBuffer & ((1L << count) - 1));
+        dropBits(count);
+
+        return bits;
+    }
+
+    private void dropBits(int count) {
+        this.bitBuffer >>>= count;
+        this.bitCount -= count;
+    }
+
+    private int decodeSymbol(HuffmanTable table) throws IOException {
+
+        if (this.bitCount < MAX_CODE_BITS) { refill(); }
+
+        int entry = table.entries[(int) (this.bitBuffer & table.mask)];
+        int length = entry & 15;
+
+        if (length == 0) { return -1; }
+
+        dropBits(length);
+
+        return entry >>> 4;
+    }
+
+    void ensureOutputCapacity(int capacity) {
+
+        if (capacity > this.output.length) {
+            this.output = Arrays.copyOf(this.output, Math.max(capacity, this.output.length * 2));
+        }
+    }
+
+    int decodeBlock() throws IOException {
+
+        int header = readBits(3);
+        boolean isFinal = (header & 1) == 1;
+        int blockType = header >>> 1;
+
+        boolean valid;
+        switch (blockType) {
+
+            case 0:
+                valid = decodeStoredData();
+                break;
+
+            case 1:
+                valid = decodeHuffmanData(FIXED_LITERAL_TABLE, FIXED_DISTANCE_TABLE);
+                break;
+
+            case 2:
+                valid = readDynamicTables() && decodeHuffmanData(this.literalTable, this.distanceTable);
+                break;
+
+            default:
+                valid = false;
+        }
+
+        if (!valid || isPastEnd()) { return BLOCK_INVALID; }
+
+        return isFinal ? BLOCK_FINAL : BLOCK_NOT_FINAL;
+    }
+
+    boolean isDynamicBlockHeaderAt(long bitPosition) throws IOException {
+
+        seekBit(bitPosition);
+
+        // the block must not be final and must have dynamic codes
+        if ((this.bitBuffer & 7) != 4) { return false; }
+
+        dropBits(3);
+
+        return readDynamicTables() && !isPastEnd();
+    }
+
+    boolean decodeDynamicBlockData() throws IOException {
+        return decodeHuffmanData(this.literalTable, this.distanceTable) && !isPastEnd();
+    }
+
+    void alignToByte() { dropBits(this.bitCount & 7); }
+
+    private boolean decodeStoredData() throws IOException {
+
+        alignToByte();
+
+        int length = readBits(16);
+        int lengthComplement = readBits(16);
+
+        if (length != (~lengthComplement & 0xffff)) { return false; }
+
+        ensureOutputCapacity(this.outputLength + length);
+        for (int i = 0; i < length; i++) { this.output[this.outputLength++] = (char) readBits(8); }
+
+        return true;
+    }
+
+    private boolean readDynamicTables() throws IOException {
+
+        int literalCount = readBits(5) + 257;
+        int distanceCount = readBits(5) + 1;
+        int codeLengthCount = readBits(4) + 4;
+
+        if (literalCount > 286 || distanceCount > 30) { return false; }
+
+        // read the code lengths of the code length code
+        Arrays.fill(this.codeLengthCodeLengths, 0);
+        for (int i = 0; i < codeLengthCount; i++) { this.codeLengthCodeLengths[CODE_LENGTH_ORDER[i]] = readBits(3); }
+
+        if (!this.codeLengthTable.build(this.codeLengthCodeLengths, 0, 19, CODE_LENGTH_TABLE)) { return false; }
+
+        // read the literal and distance code lengths
+        int totalCount = literalCount + distanceCount;
+        int index = 0;
+        while (index < totalCount) {
+
+            int symbol = decodeSymbol(this.codeLengthTable);
+
+            if (symbol < 0) { return false; }
+
+            if (symbol < 16) {
+                this.codeLengths[index++] = symbol;
+                continue;
+            }
+
+            int repeatLength;
+            int repeatCount;
+            if (symbol == 16) {
+
+                if (index == 0) { return false; }
+
+                repeatLength = this.codeLengths[index - 1];
+                repeatCount = 3 + readBits(2);
+
+            } else if (symbol == 17) {
+                repeatLength = 0;
+                repeatCount = 3 + readBits(3);
+
+            } else {
+                repeatLength = 0;
+                repeatCount = 11 + readBits(7);
+            }
+
+            if (index + repeatCount > totalCount) { return false; }
+
+            Arrays.fill(this.codeLengths, index, index + repeatCount, repeatLength);
+            index += repeatCount;
+        }
+
+        // the end of block symbol must have a code
+        if (this.codeLengths[256] == 0) { return false; }
+
+        return this.literalTable.build(this.codeLengths, 0, literalCount, LITERAL_TABLE)
+                && this.distanceTable.build(this.codeLengths, literalCount, distanceCount, DISTANCE_TABLE);
+    }
+
+    private boolean decodeHuffmanData(HuffmanTable literalTable, HuffmanTable distanceTable) throws IOException {
+
+        char[] output = this.output;
+        int outputLength = this.outputLength;
+
+        while (true) {
+
+            // make sure there are enough bits for a whole length and distance pair
+            if (this.bitCount < 48) {
+
+                refill();
+
+                if (this.paddingBytes > 8) { return false; }
+            }
+
+            int entry = literalTable.entries[(int) (this.bitBuffer & literalTable.mask)];
+            int codeLength = entry & 15;
+
+            if (codeLength == 0) { return false; }
+
+            dropBits(codeLength);
+            int symbol = entry >>> 4;
+
+            // literal
+            if (symbol < 256) {
+
+                if (outputLength == output.length) {
+                    this.outputLength = outputLength;
+                    ensureOutputCapacity(outputLength + 1);
+                    output = this.output;
+                }
+
+                output[outputLength++] = (char) symbol;
+                continue;
+            }
+
+            // end of block
+            if (symbol == 256) { break; }
+
+            // length and distance pair
+            symbol -= 257;
+            if (symbol >= 29) { return false; }
+
+            int length = LENGTH_BASE[symbol] + (int) (this.bitBuffer & ((1L << LENGTH_EXTRA_BITS[symbol]) - 1));
+            dropBits(LENGTH_EXTRA_BITS[symbol]);
+
+            entry = distanceTable.entries[(int) (this.bitBuffer & distanceTable.mask)];
+            codeLength = entry & 15;
+
+            if (codeLength == 0) { return false; }
+
+            dropBits(codeLength);
+            int distanceSymbol = entry >>> 4;
+
+            if (distanceSymbol >= 30) { return false; }
+
+            int distance = DISTANCE_BASE[distanceSymbol]
+                    + (int) (this.bitBuffer & ((1L << DISTANCE_EXTRA_BITS[distanceSymbol]) - 1));
+            dropBits(DISTANCE_EXTRA_BITS[distanceSymbol]);
+
+            // the distance cannot reach before the window
+            if (distance > outputLength) { return false; }
+
+            if (outputLength + length > output.length) {
+                this.outputLength = outputLength;
+                ensureOutputCapacity(outputLength + length);
+                output = this.output;
+            }
+
+            int from = outputLength - distance;
+            if (distance >= length) {
+                System.arraycopy(output, from, output, outputLength, length);
+                outputLength += length;
+
+            } else {
+                for (int i = 0; i < length; i++) { output[outputLength++] = output[from + i]; }
+            }
+        }
+
+        this.outputLength = outputLength;
+
+        return true;
+    }
+}
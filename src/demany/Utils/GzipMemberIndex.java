@@ -0,0 +1,251 @@
+package demany.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+// the start of every member of a bgzf file and the number of lines before it, so that the file can be read from any
+// line by inflating from the member that the line starts in
+//
+// a bgzf member header holds the member's size, so the members are found without inflating anything, and counting
+// their lines is split between threads, the index is built by the run that reads the file and is never saved
+public class GzipMemberIndex {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static final int BGZF_HEADER_SIZE = 18;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int MAX_MEMBER_SIZE = 65536;
+    private static final int MEMBERS_PER_TASK = 64;
+    private static final int INPUT_BUFFER_SIZE = 65536;
+
+    // returns the index of a bgzf file, or null if the file is not bgzf
+    public static GzipMemberIndex build(Path path, int threadNumber) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long[] memberStarts = findMemberStarts(channel);
+            if (memberStarts == null) { return null; }
+
+            // count the lines of runs of members on several threads
+            ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threadNumber), runnable -> {
+                Thread thread = new Thread(runnable, "gzip-member-index");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            try {
+
+                List<Future<long[]>> lineCountsFutureList = new ArrayList<>();
+                for (int i = 0; i < memberStarts.length - 1; i += MEMBERS_PER_TASK) {
+
+                    int firstMember = i;
+                    int endMember = Math.min(i + MEMBERS_PER_TASK, memberStarts.length - 1);
+                    lineCountsFutureList.add(executorService.submit(
+                            () -> countLines(channel, memberStarts, firstMember, endMember)
+                    ));
+                }
+
+                // the lines before each member, and before the end of the file
+                long[] memberLineStarts = new long[memberStarts.length];
+                int memberIndex = 0;
+                for (Future<long[]> lineCountsFuture : lineCountsFutureList) {
+                    for (long lineCount : lineCountsFuture.get()) {
+                        memberLineStarts[memberIndex + 1] = memberLineStarts[memberIndex] + lineCount;
+                        memberIndex++;
+                    }
+                }
+
+                return new GzipMemberIndex(path, memberStarts, memberLineStarts);
+
+            } catch (ExecutionException e) {
+                throw new IOException("could not index " + path + ": " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("indexing " + path + " was interrupted");
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    // returns the start of each member followed by the end of the file, or null if the file is not bgzf
+    private static long[] findMemberStarts(FileChannel channel) throws IOException {
+
+        long fileSize = channel.size();
+        long[] memberStarts = new long[1024];
+        int memberNumber = 0;
+
+        ByteBuffer headerBuffer = ByteBuffer.allocate(BGZF_HEADER_SIZE);
+        long memberStart = 0;
+        while (memberStart < fileSize) {
+
+            headerBuffer.clear();
+            while (headerBuffer.hasRemaining()) {
+                if (channel.read(headerBuffer, memberStart + headerBuffer.position()) == -1) { break; }
+            }
+
+            byte[] header = headerBuffer.array();
+            if (headerBuffer.hasRemaining() || !ParallelGzipInputStream.isBgzfHeader(header, 0)) {
+
+                // anything but bgzf is not indexed, a bgzf file that stops being bgzf is broken
+                if (memberStart == 0) { return null; }
+                throw new IOException("invalid bgzf member at byte " + memberStart);
+            }
+
+            if (memberNumber == memberStarts.length) { memberStarts = Arrays.copyOf(memberStarts, memberNumber * 2); }
+            memberStarts[memberNumber++] = memberStart;
+
+            // the block size field holds the size of the member less one
+            int memberSize = ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+            if (memberSize < BGZF_HEADER_SIZE + GZIP_TRAILER_SIZE) {
+                throw new IOException("invalid bgzf member at byte " + memberStart);
+            }
+
+            memberStart += memberSize;
+        }
+
+        if (memberNumber == 0) { return null; }
+        if (memberStart > fileSize) { throw new IOException("bgzf file ended in the middle of a member"); }
+
+        memberStarts = Arrays.copyOf(memberStarts, memberNumber + 1);
+        memberStarts[memberNumber] = fileSize;
+
+        return memberStarts;
+    }
+
+    private static long[] countLines(FileChannel channel, long[] memberStarts, int firstMember, int endMember)
+            throws IOException, DataFormatException {
+
+        // read the run of members in one go
+        long runStart = memberStarts[firstMember];
+        ByteBuffer runBuffer = ByteBuffer.allocate((int) (memberStarts[endMember] - runStart));
+        while (runBuffer.hasRemaining()) {
+            if (channel.read(runBuffer, runStart + runBuffer.position()) == -1) { break; }
+        }
+
+        byte[] bytes = runBuffer.array();
+        byte[] output = new byte[MAX_MEMBER_SIZE];
+        Inflater inflater = new Inflater(true);
+
+        try {
+
+            long[] lineCounts = new long[endMember - firstMember];
+            for (int i = firstMember; i < endMember; i++) {
+
+                int memberOffset = (int) (memberStarts[i] - runStart);
+                int memberSize = (int) (memberStarts[i + 1] - memberStarts[i]);
+
+                inflater.reset();
+                inflater.setInput(
+                        bytes, memberOffset + BGZF_HEADER_SIZE, memberSize - BGZF_HEADER_SIZE - GZIP_TRAILER_SIZE
+                );
+
+                int outputLength = 0;
+                while (!inflater.finished()) {
+
+                    int inflatedLength = inflater.inflate(output, outputLength, output.length - outputLength);
+                    outputLength += inflatedLength;
+
+                    if (inflatedLength == 0 && !inflater.finished()
+                            && (inflater.needsInput() || outputLength == output.length)) {
+                        throw new IOException("invalid bgzf member at byte " + memberStarts[i]);
+                    }
+                }
+
+                // the member's trailer ends with its uncompressed size
+                int trailerOffset = memberOffset + memberSize - 4;
+                int expectedOutputLength = (bytes[trailerOffset] & 0xff) | (bytes[trailerOffset + 1] & 0xff) << 8
+                        | (bytes[trailerOffset + 2] & 0xff) << 16 | (bytes[trailerOffset + 3] & 0xff) << 24;
+                if (outputLength != expectedOutputLength) {
+                    throw new IOException("bgzf member at byte " + memberStarts[i] + " has the wrong size");
+                }
+
+                for (int j = 0; j < outputLength; j++) {
+                    if (output[j] == '\n') { lineCounts[i - firstMember]++; }
+                }
+            }
+
+            return lineCounts;
+
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final Path path;
+    private final long[] memberStarts;
+    private final long[] memberLineStarts;
+    public final long lineCount;
+
+    private GzipMemberIndex(Path path, long[] memberStarts, long[] memberLineStarts) {
+
+        this.path = path;
+        this.memberStarts = memberStarts;
+        this.memberLineStarts = memberLineStarts;
+        this.lineCount = memberLineStarts[memberLineStarts.length - 1];
+    }
+
+    public int getMemberNumber() { return this.memberStarts.length - 1; }
+
+    public InputStream getInputStreamAtLine(long lineNumber) throws IOException {
+
+        if (lineNumber < 0 || lineNumber > this.lineCount) {
+            throw new RuntimeException("line number is outside of the indexed file, " + lineNumber);
+        }
+
+        // find the member the line starts in, the last one with fewer lines before it, the first line of a member
+        // may have started in an earlier one
+        int memberIndex = 0;
+        while (memberIndex + 1 < getMemberNumber() && this.memberLineStarts[memberIndex + 1] < lineNumber) {
+            memberIndex++;
+        }
+
+        FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        channel.position(this.memberStarts[memberIndex]);
+
+        // the members that follow are inflated in turn as the stream is read
+        InputStream inputStream = new BufferedInputStream(new GZIPInputStream(
+                Channels.newInputStream(channel), INPUT_BUFFER_SIZE
+        ), INPUT_BUFFER_SIZE);
+
+        // skip to the start of the line
+        try {
+
+            long skipCount = lineNumber - this.memberLineStarts[memberIndex];
+            while (skipCount > 0) {
+
+                int b = inputStream.read();
+                if (b == -1) { throw new IOException("cannot skip past the end of the gzip data"); }
+                if (b == '\n') { skipCount--; }
+            }
+
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+
+        return inputStream;
+    }
+}
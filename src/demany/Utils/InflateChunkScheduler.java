@@ -0,0 +1,232 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+// runs the chunks that the parallel and speculative gzip input streams inflate ahead of their readers, every chunk in
+// flight holds one of a fixed number of permits shared by all the streams of the process, so the chunks in flight do
+// not grow with the number of open streams, and each chunk's bytes are charged to a byte budget until its stream takes
+// it, a stream that gets no permit or no bytes inflates its next chunk on its own thread
+public class InflateChunkScheduler {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final int CHUNK_PERMIT_NUMBER = Math.max(2, Runtime.getRuntime().availableProcessors());
+    static final long MAX_POOLED_BYTE_NUMBER = 128L * 1024 * 1024;
+
+    private static final Semaphore chunkPermits = new Semaphore(CHUNK_PERMIT_NUMBER);
+
+    // the output arrays and decoders of chunks that have been taken, for the next chunks of any stream
+    private static final Queue<byte[]> pooledOutputArrayQueue = new ConcurrentLinkedQueue<>();
+    private static final Queue<DeflateDecoder> pooledDecoderQueue = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong pooledByteNumber = new AtomicLong(0);
+
+    private static final ExecutorService DEFAULT_EXECUTOR_SERVICE = Executors.newFixedThreadPool(
+            CHUNK_PERMIT_NUMBER,
+            runnable -> {
+                Thread thread = new Thread(runnable, "inflate-chunk");
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
+    // inflates on a pool of its own without a byte budget, for streams that are read outside of a pipeline
+    public static final InflateChunkScheduler DEFAULT = new InflateChunkScheduler(DEFAULT_EXECUTOR_SERVICE);
+
+    static int getAvailablePermitNumber() { return chunkPermits.availablePermits(); }
+
+    // returns an array of at least the given length, a pooled array that is too short is left for the garbage collector
+    static byte[] takeOutputArray(int minLength) {
+
+        byte[] outputArray = pooledOutputArrayQueue.poll();
+        if (outputArray == null) { return new byte[minLength]; }
+
+        pooledByteNumber.addAndGet(-outputArray.length);
+
+        return outputArray.length < minLength ? new byte[minLength] : outputArray;
+    }
+
+    static void returnOutputArray(byte[] outputArray) {
+        if (tryToPool(outputArray.length)) { pooledOutputArrayQueue.add(outputArray); }
+    }
+
+    // returns a decoder of the file with room for at least the given output
+    static DeflateDecoder takeDecoder(FileChannel channel, long fileSize, int outputCapacity) {
+
+        DeflateDecoder decoder = pooledDecoderQueue.poll();
+        if (decoder == null) { return new DeflateDecoder(channel, fileSize, outputCapacity); }
+
+        pooledByteNumber.addAndGet(-decoder.getByteNumber());
+
+        decoder.setInput(channel, fileSize);
+        decoder.ensureOutputCapacity(outputCapacity);
+
+        return decoder;
+    }
+
+    static void returnDecoder(DeflateDecoder decoder) {
+
+        // a pooled decoder holds on to no file
+        decoder.setInput(null, 0);
+
+        if (tryToPool(decoder.getByteNumber())) { pooledDecoderQueue.add(decoder); }
+    }
+
+    private static boolean tryToPool(long byteNumber) {
+
+        // whatever would take the pool past its bytes is left for the garbage collector
+        while (true) {
+
+            long pooledByteNumber = InflateChunkScheduler.pooledByteNumber.get();
+            if (pooledByteNumber + byteNumber > MAX_POOLED_BYTE_NUMBER) { return false; }
+
+            if (InflateChunkScheduler.pooledByteNumber.compareAndSet(pooledByteNumber, pooledByteNumber + byteNumber)) {
+                return true;
+            }
+        }
+    }
+
+    // leaves every pooled output array and decoder for the garbage collector, for when the heap is under pressure
+    public static void emptyPool() {
+
+        byte[] outputArray;
+        while ((outputArray = pooledOutputArrayQueue.poll()) != null) {
+            pooledByteNumber.addAndGet(-outputArray.length);
+        }
+
+        DeflateDecoder decoder;
+        while ((decoder = pooledDecoderQueue.poll()) != null) { pooledByteNumber.addAndGet(-decoder.getByteNumber()); }
+    }
+
+    static long getPooledByteNumber() { return pooledByteNumber.get(); }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     CHUNK
+    // -------------------------------------------------------------------------------------------------------------
+
+    // a chunk inflated ahead of its stream, whichever of a pool thread and the stream gets to it first inflates it, so
+    // a stream never waits on a chunk that no thread has started
+    class Chunk<T> {
+
+        private final Supplier<T> inflater;
+        private final long byteNumber;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private boolean released = false;
+
+        private Chunk(Supplier<T> inflater, long byteNumber) {
+            this.inflater = inflater;
+            this.byteNumber = byteNumber;
+        }
+
+        private void run() {
+
+            if (!this.started.compareAndSet(false, true)) { return; }
+
+            try {
+                this.future.complete(this.inflater.get());
+            } catch (RuntimeException | Error e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+
+        // inflates the chunk on this thread if no pool thread has started it, and waits for it otherwise
+        T take() throws IOException {
+
+            run();
+
+            try {
+                return this.future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("could not inflate a gzip chunk: " + e.getMessage());
+            } finally {
+                release();
+            }
+        }
+
+        // returns the chunk's result so that its buffers can be recycled, or null if it was never started, and then it
+        // never will be
+        T drop() {
+
+            boolean neverStarted = this.started.compareAndSet(false, true);
+            release();
+
+            if (neverStarted) { return null; }
+
+            try {
+                return this.future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+
+        private void release() {
+
+            if (this.released) { return; }
+            this.released = true;
+
+            chunkPermits.release();
+            InflateChunkScheduler.this.byteReleaser.accept(this.byteNumber);
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final Executor executor;
+    private final LongPredicate byteAcquirer;
+    private final LongConsumer byteReleaser;
+
+    public InflateChunkScheduler(Executor executor) { this(executor, byteNumber -> true, byteNumber -> {}); }
+
+    // inflates on the default pool, charging each chunk to a byte budget
+    public InflateChunkScheduler(LongPredicate byteAcquirer, LongConsumer byteReleaser) {
+        this(DEFAULT_EXECUTOR_SERVICE, byteAcquirer, byteReleaser);
+    }
+
+    public InflateChunkScheduler(Executor executor, LongPredicate byteAcquirer, LongConsumer byteReleaser) {
+
+        this.executor = executor;
+        this.byteAcquirer = byteAcquirer;
+        this.byteReleaser = byteReleaser;
+    }
+
+    // returns null if there is no permit or no room in the byte budget for the chunk
+    <T> Chunk<T> trySchedule(long byteNumber, Supplier<T> inflater) {
+
+        if (!chunkPermits.tryAcquire()) { return null; }
+
+        if (!this.byteAcquirer.test(byteNumber)) {
+            chunkPermits.release();
+            return null;
+        }
+
+        Chunk<T> chunk = new Chunk<>(inflater, byteNumber);
+
+        // a pool that no longer takes work leaves the chunk to its stream
+        try {
+            this.executor.execute(chunk::run);
+        } catch (RejectedExecutionException e) {
+            // the stream inflates it when it is taken
+        }
+
+        return chunk;
+    }
+}
@@ -0,0 +1,616 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class ParallelGzipInputStream extends InputStream {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final int OUTPUT_ARRAY_SIZE = 1024 * 1024;
+    private static final int OUTPUT_ARRAY_MAX_NUMBER = 16;
+    private static final int INPUT_BUFFER_SIZE = 256 * 1024;
+    private static final long CHUNK_BYTE_NUMBER = (long) OUTPUT_ARRAY_MAX_NUMBER * OUTPUT_ARRAY_SIZE + INPUT_BUFFER_SIZE;
+    private static final int PROBE_INPUT_LIMIT = 4 * 1024 * 1024;
+    private static final int GZIP_HEADER_MIN_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    public static boolean hasMultipleMembers(Path path) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long fileSize = channel.size();
+
+            // bgzf files are made of many small members by definition
+            if (isBgzf(channel)) { return true; }
+
+            // inflate the first member, giving up once we are past the probe limit
+            MemberRunInflater inflater = new MemberRunInflater(channel, fileSize, 0, 1, false);
+            byte[] scratch = new byte[OUTPUT_ARRAY_SIZE];
+
+            try {
+                while (inflater.getFilePosition() < PROBE_INPUT_LIMIT) {
+
+                    if (inflater.inflate(scratch, 0, scratch.length) == -1) {
+                        return !inflater.reachedEndOfData() && inflater.getFilePosition() < fileSize;
+                    }
+                }
+            } finally {
+                inflater.close();
+            }
+
+            return false;
+        }
+    }
+
+    private static boolean isBgzf(FileChannel channel) throws IOException {
+
+        ByteBuffer headerBuffer = ByteBuffer.allocate(16);
+        while (headerBuffer.hasRemaining()) {
+            if (channel.read(headerBuffer, headerBuffer.position()) == -1) { return false; }
+        }
+
+        return isBgzfHeader(headerBuffer.array(), 0);
+    }
+
+    static boolean isBgzfHeader(byte[] bytes, int offset) {
+
+        return (bytes[offset] & 0xff) == 0x1f && (bytes[offset + 1] & 0xff) == 0x8b && bytes[offset + 2] == 8
+                && bytes[offset + 3] == FEXTRA && bytes[offset + 10] == 6 && bytes[offset + 11] == 0
+                && bytes[offset + 12] == 'B' && bytes[offset + 13] == 'C' && bytes[offset + 14] == 2
+                && bytes[offset + 15] == 0;
+    }
+
+    static boolean isGzipHeader(byte[] bytes, int offset) {
+
+        int flags = bytes[offset + 3] & 0xff;
+        int extraFlags = bytes[offset + 8] & 0xff;
+        int operatingSystem = bytes[offset + 9] & 0xff;
+
+        return (bytes[offset] & 0xff) == 0x1f && (bytes[offset + 1] & 0xff) == 0x8b && bytes[offset + 2] == 8
+                && (flags & 0xe0) == 0 && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4)
+                && (operatingSystem <= 13 || operatingSystem == 255);
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     MEMBER RUN INFLATER
+    // -------------------------------------------------------------------------------------------------------------
+
+    // inflates consecutive gzip members, starting at a member header, until the first member that ends at or after
+    // the nominal end of its chunk
+    private static class MemberRunInflater {
+
+        private final FileChannel channel;
+        private final long fileSize;
+        private final long nominalEnd;
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc32 = new CRC32();
+        private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+        private long bufferFilePosition;
+        private int inputStart = 0;
+        private int inputEnd = 0;
+        private boolean speculativeStart;
+        private boolean inMember = false;
+        private long memberOutputSize = 0;
+        private boolean done = false;
+        private boolean endOfData = false;
+
+        MemberRunInflater(FileChannel channel, long fileSize, long start, long nominalEnd, boolean speculativeStart) {
+
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.nominalEnd = nominalEnd;
+            this.bufferFilePosition = start;
+            this.speculativeStart = speculativeStart;
+        }
+
+        long getFilePosition() { return this.bufferFilePosition + this.inputStart; }
+
+        boolean reachedEndOfData() { return this.endOfData; }
+
+        int inflate(byte[] bytes, int offset, int length) throws IOException {
+
+            while (true) {
+
+                if (this.done) { return -1; }
+
+                // start the next member if we are between members
+                if (!this.inMember) {
+
+                    // stop once we have reached the end of our chunk
+                    if (getFilePosition() >= this.nominalEnd || getFilePosition() >= this.fileSize) {
+                        this.done = true;
+                        this.endOfData = getFilePosition() >= this.fileSize;
+                        return -1;
+                    }
+
+                    if (!readHeader()) {
+
+                        // a speculative start that isn't a member header means the start was a false candidate
+                        if (this.speculativeStart) { throw new IOException("not a gzip member header"); }
+
+                        // like GZIPInputStream, ignore trailing bytes that are not a gzip member
+                        this.done = true;
+                        this.endOfData = true;
+                        return -1;
+                    }
+
+                    this.speculativeStart = false;
+                    this.inMember = true;
+                }
+
+                // give the inflater more input if it needs it
+                if (this.inflater.needsInput()) {
+
+                    if (!ensureInput(1)) { throw new IOException("unexpected end of gzip file"); }
+
+                    this.inflater.setInput(this.inputBuffer, this.inputStart, this.inputEnd - this.inputStart);
+                }
+
+                int inflatedCount;
+                try {
+                    inflatedCount = this.inflater.inflate(bytes, offset, length);
+                } catch (DataFormatException e) {
+                    throw new IOException("invalid gzip data: " + e.getMessage());
+                }
+
+                this.inputStart = this.inputEnd - this.inflater.getRemaining();
+                this.crc32.update(bytes, offset, inflatedCount);
+                this.memberOutputSize += inflatedCount;
+
+                // check the trailer once the member is finished
+                if (this.inflater.finished()) {
+
+                    readTrailer();
+
+                    this.inflater.reset();
+                    this.crc32.reset();
+                    this.memberOutputSize = 0;
+                    this.inMember = false;
+                }
+
+                if (inflatedCount > 0) { return inflatedCount; }
+
+                if (this.inflater.needsDictionary()) { throw new IOException("gzip member needs a dictionary"); }
+            }
+        }
+
+        void close() { this.inflater.end(); }
+
+        private boolean readHeader() throws IOException {
+
+            if (!ensureInput(GZIP_HEADER_MIN_SIZE) || !isGzipHeader(this.inputBuffer, this.inputStart)) {
+                return false;
+            }
+
+            int flags = this.inputBuffer[this.inputStart + 3] & 0xff;
+            this.inputStart += GZIP_HEADER_MIN_SIZE;
+
+            // skip the optional header fields
+            if ((flags & FEXTRA) != 0) {
+
+                if (!ensureInput(2)) { return false; }
+
+                int extraLength = readUnsignedShort(this.inputStart);
+                this.inputStart += 2;
+
+                if (!ensureInput(extraLength)) { return false; }
+                this.inputStart += extraLength;
+            }
+
+            if ((flags & FNAME) != 0 && !skipZeroTerminatedField()) { return false; }
+
+            if ((flags & FCOMMENT) != 0 && !skipZeroTerminatedField()) { return false; }
+
+            if ((flags & FHCRC) != 0) {
+
+                if (!ensureInput(2)) { return false; }
+                this.inputStart += 2;
+            }
+
+            return true;
+        }
+
+        private boolean skipZeroTerminatedField() throws IOException {
+
+            while (true) {
+
+                if (!ensureInput(1)) { return false; }
+
+                if (this.inputBuffer[this.inputStart++] == 0) { return true; }
+            }
+        }
+
+        private void readTrailer() throws IOException {
+
+            if (!ensureInput(GZIP_TRAILER_SIZE)) { throw new IOException("gzip member is missing its trailer"); }
+
+            long crc = readUnsignedInt(this.inputStart);
+            long outputSize = readUnsignedInt(this.inputStart + 4);
+            this.inputStart += GZIP_TRAILER_SIZE;
+
+            if (crc != this.crc32.getValue()) { throw new IOException("gzip member crc check failed"); }
+
+            if (outputSize != (this.memberOutputSize & 0xffffffffL)) {
+                throw new IOException("gzip member size check failed");
+            }
+        }
+
+        private int readUnsignedShort(int position) {
+            return (this.inputBuffer[position] & 0xff) | ((this.inputBuffer[position + 1] & 0xff) << 8);
+        }
+
+        private long readUnsignedInt(int position) {
+            return (readUnsignedShort(position) | ((long) readUnsignedShort(position + 2) << 16)) & 0xffffffffL;
+        }
+
+        private boolean ensureInput(int count) throws IOException {
+
+            if (this.inputEnd - this.inputStart >= count) { return true; }
+
+            if (count > this.inputBuffer.length) { throw new IOException("gzip header field is too long"); }
+
+            // move the unconsumed bytes to the front of the buffer
+            int remaining = this.inputEnd - this.inputStart;
+            System.arraycopy(this.inputBuffer, this.inputStart, this.inputBuffer, 0, remaining);
+            this.bufferFilePosition += this.inputStart;
+            this.inputStart = 0;
+            this.inputEnd = remaining;
+
+            // fill the rest of the buffer from the file
+            ByteBuffer byteBuffer = ByteBuffer.wrap(this.inputBuffer, this.inputEnd, this.inputBuffer.length - this.inputEnd);
+            while (this.inputEnd < count) {
+
+                int readCount = this.channel.read(byteBuffer, this.bufferFilePosition + this.inputEnd);
+
+                if (readCount == -1) { return false; }
+
+                this.inputEnd += readCount;
+            }
+
+            return true;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     CHUNK TASK
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static class ChunkResult {
+
+        long start = -1;
+        long end = -1;
+        final ArrayList<byte[]> outputArrayList = new ArrayList<>();
+        int lastOutputArrayLength = 0;
+        MemberRunInflater unfinishedInflater = null;
+        boolean endOfData = false;
+        IOException failure = null;
+
+        // releases the inflater and recycles the output arrays of a chunk that will not be read
+        void close() {
+
+            if (this.unfinishedInflater != null) { this.unfinishedInflater.close(); }
+
+            for (byte[] outputArray : this.outputArrayList) {
+                if (outputArray != null) { InflateChunkScheduler.returnOutputArray(outputArray); }
+            }
+            this.outputArrayList.clear();
+        }
+    }
+
+    private ChunkResult inflateChunk(long chunkStart, long chunkEnd) {
+
+        ChunkResult result = new ChunkResult();
+
+        MemberRunInflater inflater = null;
+        try {
+
+            // find the first member header in the chunk
+            result.start = chunkStart == 0 ? 0 : findMemberStart(chunkStart, chunkEnd);
+            if (result.start == -1) { return result; }
+
+            inflater = new MemberRunInflater(this.channel, this.fileSize, result.start, chunkEnd, chunkStart != 0);
+
+            while (true) {
+
+                // stop if the stream has already moved past this chunk's start
+                if (this.expectedPosition > result.start) {
+                    result.failure = new IOException("chunk was passed over");
+                    inflater.close();
+                    return result;
+                }
+
+                // hand the rest of an oversized member to the reader instead of holding it in memory
+                if (result.outputArrayList.size() == OUTPUT_ARRAY_MAX_NUMBER
+                        && result.lastOutputArrayLength == OUTPUT_ARRAY_SIZE) {
+
+                    result.unfinishedInflater = inflater;
+                    return result;
+                }
+
+                if (result.outputArrayList.isEmpty() || result.lastOutputArrayLength == OUTPUT_ARRAY_SIZE) {
+                    result.outputArrayList.add(InflateChunkScheduler.takeOutputArray(OUTPUT_ARRAY_SIZE));
+                    result.lastOutputArrayLength = 0;
+                }
+
+                byte[] outputArray = result.outputArrayList.get(result.outputArrayList.size() - 1);
+
+                int inflatedCount = inflater.inflate(
+                        outputArray, result.lastOutputArrayLength, OUTPUT_ARRAY_SIZE - result.lastOutputArrayLength
+                );
+
+                if (inflatedCount == -1) { break; }
+
+                result.lastOutputArrayLength += inflatedCount;
+            }
+
+            result.end = inflater.getFilePosition();
+            result.endOfData = inflater.reachedEndOfData();
+            inflater.close();
+
+        } catch (IOException e) {
+
+            result.failure = e;
+            if (inflater != null) { inflater.close(); }
+
+        } catch (RuntimeException e) {
+
+            result.failure = new IOException(e.getMessage());
+            if (inflater != null) { inflater.close(); }
+        }
+
+        return result;
+    }
+
+    private long findMemberStart(long chunkStart, long chunkEnd) throws IOException {
+
+        // read the chunk, plus enough to check a header that starts at its last byte
+        int length = (int) Math.min(chunkEnd - chunkStart + 16, this.fileSize - chunkStart);
+        byte[] bytes = new byte[length];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+        while (byteBuffer.hasRemaining()) {
+            if (this.channel.read(byteBuffer, chunkStart + byteBuffer.position()) == -1) { break; }
+        }
+
+        for (int i = 0; i + 16 <= length && i < chunkEnd - chunkStart; i++) {
+
+            if (bytes[i] != 0x1f) { continue; }
+
+            if (this.bgzf ? isBgzfHeader(bytes, i) : isGzipHeader(bytes, i)) { return chunkStart + i; }
+        }
+
+        return -1;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean bgzf;
+    private final InflateChunkScheduler inflateChunkScheduler;
+    private final int chunkSize;
+    private final ArrayDeque<InflateChunkScheduler.Chunk<ChunkResult>> chunkQueue = new ArrayDeque<>();
+    private final ArrayDeque<Long> chunkEndQueue = new ArrayDeque<>();
+    private long nextChunkStart = 0;
+    private volatile long expectedPosition = 0;
+    private boolean endOfData = false;
+    private boolean closed = false;
+
+    private ArrayList<byte[]> outputArrayList = new ArrayList<>();
+    private int lastOutputArrayLength = 0;
+    private int outputArrayIndex = 0;
+    private int outputArrayPosition = 0;
+    private MemberRunInflater streamingInflater = null;
+
+    public ParallelGzipInputStream(Path path) throws IOException {
+        this(path, InflateChunkScheduler.DEFAULT);
+    }
+
+    public ParallelGzipInputStream(Path path, InflateChunkScheduler inflateChunkScheduler) throws IOException {
+        this(path, inflateChunkScheduler, DEFAULT_CHUNK_SIZE);
+    }
+
+    ParallelGzipInputStream(Path path, InflateChunkScheduler inflateChunkScheduler, int chunkSize) throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.bgzf = isBgzf(this.channel);
+        this.inflateChunkScheduler = inflateChunkScheduler;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] singleByte = new byte[1];
+
+        int readCount;
+        do { readCount = read(singleByte, 0, 1); } while (readCount == 0);
+
+        return readCount == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+
+        if (this.closed) { throw new IOException("stream is closed"); }
+        if (length == 0) { return 0; }
+
+        while (true) {
+
+            // copy out inflated bytes that we already have
+            if (this.outputArrayIndex < this.outputArrayList.size()) {
+
+                int arrayLength = this.outputArrayIndex == this.outputArrayList.size() - 1 ?
+                        this.lastOutputArrayLength : OUTPUT_ARRAY_SIZE;
+
+                if (this.outputArrayPosition < arrayLength) {
+
+                    int copyCount = Math.min(length, arrayLength - this.outputArrayPosition);
+                    System.arraycopy(
+                            this.outputArrayList.get(this.outputArrayIndex), this.outputArrayPosition,
+                            bytes, offset, copyCount
+                    );
+                    this.outputArrayPosition += copyCount;
+
+                    return copyCount;
+                }
+
+                InflateChunkScheduler.returnOutputArray(this.outputArrayList.get(this.outputArrayIndex));
+                this.outputArrayList.set(this.outputArrayIndex, null);
+                this.outputArrayIndex++;
+                this.outputArrayPosition = 0;
+
+                continue;
+            }
+
+            // inflate on this thread while we are in a member that was too large for a chunk task
+            if (this.streamingInflater != null) {
+
+                int inflatedCount = this.streamingInflater.inflate(bytes, offset, length);
+                if (inflatedCount != -1) { return inflatedCount; }
+
+                this.expectedPosition = this.streamingInflater.getFilePosition();
+                this.endOfData = this.streamingInflater.reachedEndOfData();
+                this.streamingInflater.close();
+                this.streamingInflater = null;
+
+                continue;
+            }
+
+            if (!takeNextChunk()) { return -1; }
+        }
+    }
+
+    private boolean takeNextChunk() throws IOException {
+
+        while (true) {
+
+            if (this.endOfData || this.expectedPosition >= this.fileSize) { return false; }
+
+            // inflate the chunks ahead of us while there are permits and bytes for them
+            scheduleChunks();
+
+            ChunkResult result;
+
+            if (this.chunkQueue.isEmpty()) {
+
+                // no chunk could be inflated ahead, inflate the next one on this thread
+                long chunkEnd = Math.min(
+                        Math.max(this.nextChunkStart, this.expectedPosition) + this.chunkSize, this.fileSize
+                );
+                this.nextChunkStart = chunkEnd;
+
+                result = new ChunkResult();
+                result.start = this.expectedPosition;
+                result.unfinishedInflater = new MemberRunInflater(
+                        this.channel, this.fileSize, this.expectedPosition, chunkEnd, false
+                );
+
+            } else {
+
+                InflateChunkScheduler.Chunk<ChunkResult> chunk = this.chunkQueue.remove();
+                long chunkEnd = this.chunkEndQueue.remove();
+
+                // skip chunks that a previous member ran all the way through
+                if (this.expectedPosition >= chunkEnd) {
+                    closeChunkResult(chunk.drop());
+                    continue;
+                }
+
+                result = chunk.take();
+
+                // if the chunk did not start where the last one ended, its start was a false candidate
+                if (result.failure != null || result.start != this.expectedPosition) {
+
+                    result.close();
+
+                    result = new ChunkResult();
+                    result.start = this.expectedPosition;
+                    result.unfinishedInflater = new MemberRunInflater(
+                            this.channel, this.fileSize, this.expectedPosition, chunkEnd, false
+                    );
+                }
+            }
+
+            // take over the chunk's output
+            this.outputArrayList = result.outputArrayList;
+            this.lastOutputArrayLength = result.lastOutputArrayLength;
+            this.outputArrayIndex = 0;
+            this.outputArrayPosition = 0;
+            this.streamingInflater = result.unfinishedInflater;
+
+            if (this.streamingInflater == null) {
+                this.expectedPosition = result.end;
+                this.endOfData = result.endOfData;
+            }
+
+            return true;
+        }
+    }
+
+    private void scheduleChunks() {
+
+        while (this.nextChunkStart < this.fileSize) {
+
+            // a chunk never starts behind where the stream already is
+            long chunkStart = Math.max(this.nextChunkStart, this.expectedPosition);
+            long chunkEnd = Math.min(chunkStart + this.chunkSize, this.fileSize);
+
+            InflateChunkScheduler.Chunk<ChunkResult> chunk = this.inflateChunkScheduler.trySchedule(
+                    CHUNK_BYTE_NUMBER, () -> inflateChunk(chunkStart, chunkEnd)
+            );
+            if (chunk == null) { return; }
+
+            this.chunkQueue.add(chunk);
+            this.chunkEndQueue.add(chunkEnd);
+            this.nextChunkStart = chunkEnd;
+        }
+    }
+
+    private static void closeChunkResult(ChunkResult result) {
+        if (result != null) { result.close(); }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (this.closed) { return; }
+        this.closed = true;
+
+        // stop any chunks in flight and release their inflaters
+        this.expectedPosition = Long.MAX_VALUE;
+        for (InflateChunkScheduler.Chunk<ChunkResult> chunk : this.chunkQueue) { closeChunkResult(chunk.drop()); }
+        this.chunkQueue.clear();
+        this.chunkEndQueue.clear();
+
+        if (this.streamingInflater != null) { this.streamingInflater.close(); }
+
+        // hand back the output arrays that were not read
+        for (int i = this.outputArrayIndex; i < this.outputArrayList.size(); i++) {
+            InflateChunkScheduler.returnOutputArray(this.outputArrayList.get(i));
+        }
+        this.outputArrayList.clear();
+
+        this.channel.close();
+    }
+}
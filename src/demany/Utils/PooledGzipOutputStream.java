@@ -0,0 +1,98 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// writes one gzip member like a gzip output stream, but with a deflater and buffer that belong to the writing thread
+// and are reset for each member rather than created and ended every time
+public class PooledGzipOutputStream extends OutputStream {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static final int BUFFER_SIZE = 32768;
+
+    // the same header a gzip output stream writes, no flags, no modification time and an unknown operating system
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final ThreadLocal<Deflater> pooledDeflater =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final ThreadLocal<byte[]> pooledBuffer = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final OutputStream outputStream;
+    private final Deflater deflater;
+    private final byte[] buffer;
+    private final CRC32 crc = new CRC32();
+    private boolean finished = false;
+
+    public PooledGzipOutputStream(OutputStream outputStream) throws IOException {
+
+        this.outputStream = outputStream;
+        this.deflater = pooledDeflater.get();
+        this.buffer = pooledBuffer.get();
+
+        // the thread's deflater may still hold the state of its last member
+        this.deflater.reset();
+
+        this.outputStream.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException { write(new byte[] { (byte) b }, 0, 1); }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+
+        if (this.finished) { throw new RuntimeException("cannot write to a finished gzip member"); }
+        if (length == 0) { return; }
+
+        this.crc.update(bytes, offset, length);
+
+        // deflate all of the bytes now so that the deflater holds no reference to them
+        this.deflater.setInput(bytes, offset, length);
+        while (!this.deflater.needsInput()) { deflate(); }
+    }
+
+    public void finish() throws IOException {
+
+        if (this.finished) { return; }
+
+        this.deflater.finish();
+        while (!this.deflater.finished()) { deflate(); }
+
+        // the trailer holds the crc and the uncompressed size modulo 2^32, both little endian
+        writeLittleEndianInt((int) this.crc.getValue());
+        writeLittleEndianInt((int) this.deflater.getBytesRead());
+
+        this.finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        finish();
+        this.outputStream.close();
+    }
+
+    private void deflate() throws IOException {
+
+        int length = this.deflater.deflate(this.buffer, 0, this.buffer.length);
+        if (length > 0) { this.outputStream.write(this.buffer, 0, length); }
+    }
+
+    private void writeLittleEndianInt(int value) throws IOException {
+
+        this.outputStream.write(value);
+        this.outputStream.write(value >>> 8);
+        this.outputStream.write(value >>> 16);
+        this.outputStream.write(value >>> 24);
+    }
+}
@@ -0,0 +1,474 @@
+package demany.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+
+public class SpeculativeGzipInputStream extends InputStream {
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     STATIC
+    // -------------------------------------------------------------------------------------------------------------
+
+    static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final int EXPECTED_COMPRESSION_RATIO = 4;
+    private static final int GZIP_HEADER_MIN_SIZE = 10;
+    private static final int GZIP_HEADER_PROBE_SIZE = 65536;
+    static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final char[] MARKER_WINDOW = DeflateDecoder.getMarkerWindow();
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length);
+        while (byteBuffer.hasRemaining()) {
+            if (channel.read(byteBuffer, position + byteBuffer.position()) == -1) { break; }
+        }
+
+        return byteBuffer.position() == length ? byteBuffer.array() : null;
+    }
+
+    // returns the length of the gzip member header at this position, or -1 if there isn't one
+    static int getHeaderLength(FileChannel channel, long fileSize, long position) throws IOException {
+
+        int probeLength = (int) Math.min(GZIP_HEADER_PROBE_SIZE, fileSize - position);
+        if (probeLength < GZIP_HEADER_MIN_SIZE) { return -1; }
+
+        byte[] bytes = readBytes(channel, position, probeLength);
+        if (bytes == null || !ParallelGzipInputStream.isGzipHeader(bytes, 0)) { return -1; }
+
+        int flags = bytes[3] & 0xff;
+        int length = GZIP_HEADER_MIN_SIZE;
+
+        // skip the optional header fields
+        if ((flags & FEXTRA) != 0) {
+
+            if (length + 2 > probeLength) { return -1; }
+            length += 2 + ((bytes[length] & 0xff) | ((bytes[length + 1] & 0xff) << 8));
+        }
+
+        if ((flags & FNAME) != 0) { length = skipZeroTerminatedField(bytes, length, probeLength); }
+
+        if ((flags & FCOMMENT) != 0) { length = skipZeroTerminatedField(bytes, length, probeLength); }
+
+        if ((flags & FHCRC) != 0) { length += 2; }
+
+        return length <= probeLength ? length : -1;
+    }
+
+    static void checkTrailer(FileChannel channel, long trailerPosition, long crc, long outputSize) throws IOException {
+
+        byte[] trailer = readBytes(channel, trailerPosition, GZIP_TRAILER_SIZE);
+        if (trailer == null) { throw new IOException("gzip member is missing its trailer"); }
+
+        long trailerCrc = ((trailer[0] & 0xff) | ((trailer[1] & 0xff) << 8) | ((trailer[2] & 0xff) << 16)
+                | ((long) (trailer[3] & 0xff) << 24));
+        long trailerOutputSize = ((trailer[4] & 0xff) | ((trailer[5] & 0xff) << 8) | ((trailer[6] & 0xff) << 16)
+                | ((long) (trailer[7] & 0xff) << 24));
+
+        if (trailerCrc != crc) { throw new IOException("gzip member crc check failed"); }
+
+        if (trailerOutputSize != (outputSize & 0xffffffffL)) { throw new IOException("gzip member size check failed"); }
+    }
+
+    private static int skipZeroTerminatedField(byte[] bytes, int position, int length) {
+
+        while (position < length) {
+            if (bytes[position++] == 0) { return position; }
+        }
+
+        return Integer.MAX_VALUE - GZIP_HEADER_PROBE_SIZE;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     CHUNK TASK
+    // -------------------------------------------------------------------------------------------------------------
+
+    // the symbols decoded between two block boundaries, bytes from before the start are still window markers
+    private static class ChunkResult {
+
+        long startBit = -1;
+        long endBit = -1;
+        boolean finalBlock = false;
+        char[] symbols = null;
+        int symbolsStart = 0;
+        int symbolsEnd = 0;
+        IOException failure = null;
+
+        // the decoder that holds the symbols, until they have been taken
+        DeflateDecoder decoder = null;
+
+        void close() {
+
+            if (this.decoder != null) { InflateChunkScheduler.returnDecoder(this.decoder); }
+            this.decoder = null;
+            this.symbols = null;
+        }
+    }
+
+    private ChunkResult decodeChunk(long chunkStartBit, long chunkEndBit, boolean knownStart) {
+
+        ChunkResult result = new ChunkResult();
+
+        try {
+
+            DeflateDecoder decoder = InflateChunkScheduler.takeDecoder(
+                    this.channel, this.fileSize, getOutputCapacity()
+            );
+            result.decoder = decoder;
+
+            // a chunk at the start of the data has no window, anything else may refer back into an unknown window
+            if (knownStart) {
+                decoder.setWindow(MARKER_WINDOW, 0);
+                decoder.seekBit(chunkStartBit);
+                result.startBit = chunkStartBit;
+
+            } else {
+                decoder.setWindow(MARKER_WINDOW, DeflateDecoder.WINDOW_SIZE);
+                result.startBit = findBlockStart(decoder, chunkStartBit, chunkEndBit);
+            }
+
+            while (result.startBit != -1) {
+
+                if (decodeBlocks(decoder, chunkEndBit, result)) { return result; }
+
+                // the block found was a false candidate, keep looking after it
+                if (knownStart) { break; }
+                result.startBit = findBlockStart(decoder, result.startBit + 1, chunkEndBit);
+            }
+
+            result.failure = new IOException("no deflate block could be decoded in the chunk");
+
+        } catch (IOException e) {
+            result.failure = e;
+        } catch (RuntimeException e) {
+            result.failure = new IOException(e.getMessage());
+        }
+
+        return result;
+    }
+
+    private long findBlockStart(DeflateDecoder decoder, long fromBit, long toBit) throws IOException {
+
+        for (long bit = fromBit; bit < toBit; bit++) {
+
+            // stop if the stream has already moved past this chunk
+            if (this.expectedBit >= toBit) { return -1; }
+
+            if (!decoder.isDynamicBlockHeaderAt(bit)) { continue; }
+
+            // a header is only taken as a block start if the whole block decodes
+            decoder.resetOutput();
+            if (decoder.decodeDynamicBlockData()) { return bit; }
+        }
+
+        return -1;
+    }
+
+    // decodes blocks until one ends at or after the end bit, or the final block ends
+    private static boolean decodeBlocks(DeflateDecoder decoder, long endBit, ChunkResult result) throws IOException {
+
+        while (decoder.getBitPosition() < endBit) {
+
+            int status = decoder.decodeBlock();
+
+            if (status == DeflateDecoder.BLOCK_INVALID) { return false; }
+
+            if (status == DeflateDecoder.BLOCK_FINAL) {
+                result.finalBlock = true;
+                break;
+            }
+        }
+
+        result.endBit = decoder.getBitPosition();
+        result.symbols = decoder.output;
+        result.symbolsStart = decoder.outputStart;
+        result.symbolsEnd = decoder.outputLength;
+
+        return true;
+    }
+
+    // -----------------------------------------------------------------------------------------------------------------
+    //     INSTANCE
+    // -------------------------------------------------------------------------------------------------------------
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final InflateChunkScheduler inflateChunkScheduler;
+    private final int chunkSize;
+    private final ArrayDeque<InflateChunkScheduler.Chunk<ChunkResult>> chunkQueue = new ArrayDeque<>();
+    private final ArrayDeque<Long> chunkEndBitQueue = new ArrayDeque<>();
+    private long nextChunkStart;
+    private volatile long expectedBit;
+    private boolean memberFinished = false;
+    private boolean endOfData = false;
+    private boolean closed = false;
+
+    private final CRC32 crc32 = new CRC32();
+    private long memberOutputSize = 0;
+    private final byte[] window = new byte[DeflateDecoder.WINDOW_SIZE];
+    private int windowLength = 0;
+
+    // the output of the last chunk, reused for the next one once it has been read
+    private byte[] output = new byte[0];
+    private int outputLength = 0;
+    private int outputPosition = 0;
+
+    public SpeculativeGzipInputStream(Path path) throws IOException { this(path, InflateChunkScheduler.DEFAULT); }
+
+    public SpeculativeGzipInputStream(Path path, InflateChunkScheduler inflateChunkScheduler) throws IOException {
+        this(path, inflateChunkScheduler, DEFAULT_CHUNK_SIZE);
+    }
+
+    SpeculativeGzipInputStream(Path path, InflateChunkScheduler inflateChunkScheduler, int chunkSize)
+            throws IOException {
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = this.channel.size();
+        this.inflateChunkScheduler = inflateChunkScheduler;
+        this.chunkSize = chunkSize;
+
+        // the deflate data starts after the first member header
+        int headerLength = getHeaderLength(this.channel, this.fileSize, 0);
+        if (headerLength == -1) {
+            this.channel.close();
+            throw new IOException("not in gzip format");
+        }
+
+        this.nextChunkStart = headerLength;
+        this.expectedBit = headerLength * 8L;
+    }
+
+    private int getOutputCapacity() {
+        return DeflateDecoder.WINDOW_SIZE + this.chunkSize * EXPECTED_COMPRESSION_RATIO;
+    }
+
+    // the bytes a chunk's decoder holds until its symbols are taken
+    private long getChunkByteNumber() { return this.chunkSize + getOutputCapacity() * 2L; }
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] singleByte = new byte[1];
+
+        int readCount;
+        do { readCount = read(singleByte, 0, 1); } while (readCount == 0);
+
+        return readCount == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+
+        if (this.closed) { throw new IOException("stream is closed"); }
+        if (length == 0) { return 0; }
+
+        while (this.outputPosition == this.outputLength) {
+            if (!takeNextChunk()) { return -1; }
+        }
+
+        int copyCount = Math.min(length, this.outputLength - this.outputPosition);
+        System.arraycopy(this.output, this.outputPosition, bytes, offset, copyCount);
+        this.outputPosition += copyCount;
+
+        return copyCount;
+    }
+
+    private boolean takeNextChunk() throws IOException {
+
+        while (true) {
+
+            if (this.memberFinished) { finishMember(); }
+
+            if (this.endOfData) { return false; }
+
+            scheduleChunks();
+
+            ChunkResult result;
+
+            if (this.chunkQueue.isEmpty()) {
+
+                // no chunk could be scheduled, decode the next one on this thread
+                long chunkStart = Math.max(this.nextChunkStart, this.expectedBit / 8);
+                long chunkEnd = Math.min(chunkStart + this.chunkSize, this.fileSize);
+                this.nextChunkStart = Math.max(this.nextChunkStart, chunkEnd);
+
+                result = decodeInline(chunkEnd * 8);
+
+            } else {
+
+                InflateChunkScheduler.Chunk<ChunkResult> chunk = this.chunkQueue.remove();
+                long chunkEndBit = this.chunkEndBitQueue.remove();
+
+                // skip chunks that a previous chunk's last block ran all the way through
+                if (this.expectedBit >= chunkEndBit) {
+                    closeChunkResult(chunk.drop());
+                    continue;
+                }
+
+                result = chunk.take();
+
+                // if the chunk did not start where the last one ended, its start was a false candidate
+                if (result.failure != null || result.startBit != this.expectedBit) {
+                    result.close();
+                    result = decodeInline(chunkEndBit);
+                }
+            }
+
+            try {
+                takeChunkOutput(result);
+            } finally {
+                result.close();
+            }
+
+            return true;
+        }
+    }
+
+    // keeps the chunks ahead of us in flight, as far as the scheduler's permits and bytes go
+    private void scheduleChunks() {
+
+        while (this.nextChunkStart < this.fileSize) {
+
+            long chunkStartBit = this.nextChunkStart * 8;
+            long chunkEndBit = Math.min(this.nextChunkStart + this.chunkSize, this.fileSize) * 8;
+            boolean knownStart = chunkStartBit == this.expectedBit;
+
+            InflateChunkScheduler.Chunk<ChunkResult> chunk = this.inflateChunkScheduler.trySchedule(
+                    getChunkByteNumber(), () -> decodeChunk(chunkStartBit, chunkEndBit, knownStart)
+            );
+            if (chunk == null) { return; }
+
+            this.chunkQueue.add(chunk);
+            this.chunkEndBitQueue.add(chunkEndBit);
+            this.nextChunkStart = chunkEndBit / 8;
+        }
+    }
+
+    private static void closeChunkResult(ChunkResult result) {
+        if (result != null) { result.close(); }
+    }
+
+    private ChunkResult decodeInline(long endBit) throws IOException {
+
+        ChunkResult result = new ChunkResult();
+        result.decoder = InflateChunkScheduler.takeDecoder(this.channel, this.fileSize, getOutputCapacity());
+
+        // decode from where the last chunk ended, with the window we already know
+        char[] windowSymbols = new char[this.windowLength];
+        for (int i = 0; i < this.windowLength; i++) {
+            windowSymbols[i] = (char) (this.window[DeflateDecoder.WINDOW_SIZE - this.windowLength + i] & 0xff);
+        }
+
+        try {
+
+            result.decoder.setWindow(windowSymbols, this.windowLength);
+            result.decoder.seekBit(this.expectedBit);
+            result.startBit = this.expectedBit;
+
+            if (!decodeBlocks(result.decoder, endBit, result)) { throw new IOException("invalid deflate data"); }
+
+        } catch (IOException | RuntimeException e) {
+            result.close();
+            throw e;
+        }
+
+        return result;
+    }
+
+    private void takeChunkOutput(ChunkResult result) throws IOException {
+
+        int length = result.symbolsEnd - result.symbolsStart;
+        if (this.output.length < length) { this.output = new byte[length]; }
+
+        // resolve the window markers now that the window is known
+        int windowStart = DeflateDecoder.WINDOW_SIZE - this.windowLength;
+        byte[] bytes = this.output;
+        for (int i = 0; i < length; i++) {
+
+            char symbol = result.symbols[result.symbolsStart + i];
+
+            if (symbol < DeflateDecoder.MARKER_BASE) {
+                bytes[i] = (byte) symbol;
+                continue;
+            }
+
+            int windowIndex = symbol - DeflateDecoder.MARKER_BASE;
+            if (windowIndex < windowStart) { throw new IOException("deflate data refers back past the start of the data"); }
+
+            bytes[i] = this.window[windowIndex];
+        }
+
+        this.crc32.update(bytes, 0, length);
+        this.memberOutputSize += length;
+        updateWindow(bytes, length);
+
+        this.outputLength = length;
+        this.outputPosition = 0;
+        this.expectedBit = result.endBit;
+        this.memberFinished = result.finalBlock;
+    }
+
+    private void updateWindow(byte[] bytes, int length) {
+
+        if (length >= DeflateDecoder.WINDOW_SIZE) {
+
+            System.arraycopy(bytes, length - DeflateDecoder.WINDOW_SIZE, this.window, 0, DeflateDecoder.WINDOW_SIZE);
+
+        } else {
+
+            System.arraycopy(this.window, length, this.window, 0, DeflateDecoder.WINDOW_SIZE - length);
+            System.arraycopy(bytes, 0, this.window, DeflateDecoder.WINDOW_SIZE - length, length);
+        }
+
+        this.windowLength = Math.min(DeflateDecoder.WINDOW_SIZE, this.windowLength + length);
+    }
+
+    private void finishMember() throws IOException {
+
+        this.memberFinished = false;
+
+        // check the trailer, which starts at the next whole byte
+        long trailerPosition = (this.expectedBit + 7) / 8;
+        checkTrailer(this.channel, trailerPosition, this.crc32.getValue(), this.memberOutputSize);
+
+        // like GZIPInputStream, go on to a following member and ignore trailing bytes that are not one
+        long nextMemberPosition = trailerPosition + GZIP_TRAILER_SIZE;
+        int headerLength = getHeaderLength(this.channel, this.fileSize, nextMemberPosition);
+
+        if (headerLength == -1) {
+            this.endOfData = true;
+            return;
+        }
+
+        this.expectedBit = (nextMemberPosition + headerLength) * 8;
+        this.crc32.reset();
+        this.memberOutputSize = 0;
+        this.windowLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (this.closed) { return; }
+        this.closed = true;
+
+        // stop any chunks in flight, and give back their permits and decoders
+        this.expectedBit = Long.MAX_VALUE;
+        for (InflateChunkScheduler.Chunk<ChunkResult> chunk : this.chunkQueue) { closeChunkResult(chunk.drop()); }
+        this.chunkQueue.clear();
+        this.chunkEndBitQueue.clear();
+
+        this.channel.close();
+    }
+}
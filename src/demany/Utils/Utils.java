@@ -1,11 +1,16 @@
 package demany.Utils;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.GZIPInputStream;
 
 public class Utils {
 
+    private static final int GZIP_INPUT_BUFFER_SIZE = 65536;
+    private static final long SPECULATIVE_INFLATE_MIN_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int SPECULATIVE_INFLATE_MIN_PROCESSOR_NUMBER = 4;
+
     public static BufferedReader getBufferedGzippedFileReader(Path path) throws IOException {
         InputStream fileInputStream = new FileInputStream(path.toString());
         InputStream gzipInputStream = new GZIPInputStream(fileInputStream);
@@ -13,8 +18,38 @@ public class Utils {
         return new BufferedReader(decoder);
     }
 
-    public static void tryToSleep() {
-        try { Thread.sleep(2); }
-        catch (InterruptedException e) { throw new RuntimeException("could not sleep: " + e.getMessage()); }
+    public static BufferedReader getBufferedFastqFileReader(Path path) throws IOException {
+
+        // uncompressed fastqs are read as they are
+        if (!path.getFileName().toString().toLowerCase().endsWith(".gz")) { return Files.newBufferedReader(path); }
+
+        return getBufferedGzippedFileReader(path);
+    }
+
+    public static InputStream getGzippedFileInputStream(Path path) throws IOException {
+        return getGzippedFileInputStream(path, InflateChunkScheduler.DEFAULT);
+    }
+
+    // a null scheduler means there are no threads to inflate ahead on, the file is then inflated as it is read
+    public static InputStream getGzippedFileInputStream(Path path, InflateChunkScheduler inflateChunkScheduler)
+            throws IOException {
+
+        if (inflateChunkScheduler == null) {
+            return new GZIPInputStream(new FileInputStream(path.toString()), GZIP_INPUT_BUFFER_SIZE);
+        }
+
+        // files made of many gzip members, like bgzf, can be inflated in parallel
+        if (ParallelGzipInputStream.hasMultipleMembers(path)) {
+            return new ParallelGzipInputStream(path, inflateChunkScheduler);
+        }
+
+        // large single member files can be decoded speculatively from many places at once when there are cores to spare
+        if (Files.size(path) >= SPECULATIVE_INFLATE_MIN_FILE_SIZE
+                && Runtime.getRuntime().availableProcessors() >= SPECULATIVE_INFLATE_MIN_PROCESSOR_NUMBER) {
+            return new SpeculativeGzipInputStream(path, inflateChunkScheduler);
+        }
+
+        InputStream fileInputStream = new FileInputStream(path.toString());
+        return new GZIPInputStream(fileInputStream, GZIP_INPUT_BUFFER_SIZE);
     }
 }
@@ -7,6 +7,8 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -105,4 +107,44 @@ class BCLParametersTest {
         assertEquals(8, index1Length);
         assertEquals(10, index2Length);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRunInfoXMLParsingTiles() throws ParserConfigurationException, SAXException, IOException {
+
+        String runInfoXMLString = "<?xml version=\"1.0\"?>\n" +
+                "<RunInfo Version=\"5\">\n" +
+                "  <Run Id=\"200103_A00521_0143_AHWY2CDSXX\" Number=\"143\">\n" +
+                "    <FlowcellLayout LaneCount=\"2\" SurfaceCount=\"1\" SwathCount=\"1\" TileCount=\"3\">\n" +
+                "      <TileSet TileNamingConvention=\"FourDigit\">\n" +
+                "        <Tiles>\n" +
+                "          <Tile>2_1102</Tile>\n" +
+                "          <Tile>1_1103</Tile>\n" +
+                "          <Tile>1_1101</Tile>\n" +
+                "          <Tile>2_1101</Tile>\n" +
+                "          <Tile>1_1102</Tile>\n" +
+                "        </Tiles>\n" +
+                "      </TileSet>\n" +
+                "    </FlowcellLayout>\n" +
+                "  </Run>\n" +
+                "</RunInfo>";
+
+        Map<Integer, List<String>> tileNameListByLaneInt = BCLParameters.getTileNameListByLaneInt(runInfoXMLString);
+
+        assertEquals(List.of("1101", "1102", "1103"), tileNameListByLaneInt.get(1));
+        assertEquals(List.of("1101", "1102"), tileNameListByLaneInt.get(2));
+
+        // lane 2 only has two tiles, so there can only be two shards
+        assertEquals(
+                List.of("s_1_1101,s_2_1101", "s_1_1102,s_1_1103,s_2_1102"),
+                BCLParameters.getTilesArgList(tileNameListByLaneInt, Set.of(1, 2), 3)
+        );
+
+        assertEquals(
+                List.of("s_1_1101", "s_1_1102", "s_1_1103"),
+                BCLParameters.getTilesArgList(tileNameListByLaneInt, Set.of(1), 3)
+        );
+        assertTrue(BCLParameters.getTilesArgList(tileNameListByLaneInt, Set.of(1), 1).isEmpty());
+        assertTrue(BCLParameters.getTilesArgList(tileNameListByLaneInt, Set.of(1, 3), 2).isEmpty());
+        assertTrue(BCLParameters.getTilesArgList(Map.of(), Set.of(1), 2).isEmpty());
+    }
+}
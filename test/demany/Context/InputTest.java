@@ -9,7 +9,9 @@ import org.junit.jupiter.api.Test;
 import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 class InputTestHelper {
@@ -62,6 +64,11 @@ class InputTest {
         assertEquals(Path.of("test/workdir").toAbsolutePath(), input.workdirPath);
         assertEquals(Path.of("test/bcl").toAbsolutePath(), input.bclPath);
         assertNull(input.useBasesMaskArg);
+        assertNull(input.masterFastqDirPath);
+        assertEquals(1, input.tileShardNumber);
+        assertEquals(3, input.compressionThreadNumber);
+        assertFalse(input.sharedNothingPipeline);
+        assertEquals(Runtime.getRuntime().maxMemory() / 4, input.inFlightByteBudget);
     }
 
     @Test
@@ -90,4 +97,79 @@ class InputTest {
         assertEquals(Path.of("test/bcl").toAbsolutePath(), input.bclPath);
         assertEquals("Y51,I8,Y16,Y51", input.useBasesMaskArg);
     }
+
+    @Test
+    void testInputObjectConstructorDemultiplexWithTileShardNumber() throws Exception {
+
+        JSONObject inputObject = InputTestHelper.createInputJSON();
+        inputObject.put("tileShardNumber", "3");
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON(
+                "TestProject", "TestSample", "AGGGC", "TCGAA",  2
+        );
+        InputTestHelper.addSampleIndexJSON(inputObject, sampleIndexJSON);
+
+        Input input = new Input(inputObject.toJSONString());
+
+        assertEquals(3, input.tileShardNumber);
+    }
+
+    @Test
+    void testInputObjectConstructorDemultiplexWithCompressionThreadNumber() throws Exception {
+
+        JSONObject inputObject = InputTestHelper.createInputJSON();
+        inputObject.put("compressionThreadNumber", "2");
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON(
+                "TestProject", "TestSample", "AGGGC", "TCGAA",  2
+        );
+        InputTestHelper.addSampleIndexJSON(inputObject, sampleIndexJSON);
+
+        Input input = new Input(inputObject.toJSONString());
+
+        assertEquals(2, input.compressionThreadNumber);
+    }
+
+    @Test
+    void testInputObjectConstructorDemultiplexWithSharedNothingPipeline() throws Exception {
+
+        JSONObject inputObject = InputTestHelper.createInputJSON();
+        inputObject.put("sharedNothingPipeline", "true");
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON(
+                "TestProject", "TestSample", "AGGGC", "TCGAA",  2
+        );
+        InputTestHelper.addSampleIndexJSON(inputObject, sampleIndexJSON);
+
+        Input input = new Input(inputObject.toJSONString());
+
+        assertTrue(input.sharedNothingPipeline);
+    }
+
+    @Test
+    void testInputObjectConstructorDemultiplexWithMasterFastqDirPath() throws Exception {
+
+        JSONObject inputObject = InputTestHelper.createInputJSON();
+        inputObject.put("masterFastqDirPath", "test/master-fastqs");
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON(
+                "TestProject", "TestSample", "AGGGC", "TCGAA",  2
+        );
+        InputTestHelper.addSampleIndexJSON(inputObject, sampleIndexJSON);
+
+        Input input = new Input(inputObject.toJSONString());
+
+        assertEquals(Path.of("test/master-fastqs").toAbsolutePath(), input.masterFastqDirPath);
+    }
+
+    @Test
+    void testInputObjectConstructorDemultiplexWithInFlightByteBudget() throws Exception {
+
+        JSONObject inputObject = InputTestHelper.createInputJSON();
+        inputObject.put("inFlightByteBudget", "1073741824");
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON(
+                "TestProject", "TestSample", "AGGGC", "TCGAA",  2
+        );
+        InputTestHelper.addSampleIndexJSON(inputObject, sampleIndexJSON);
+
+        Input input = new Input(inputObject.toJSONString());
+
+        assertEquals(1073741824L, input.inFlightByteBudget);
+    }
 }
@@ -0,0 +1,133 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedSequenceGroupTest {
+
+    private static String createFastq(int numberOfSequences, int seed) {
+
+        Random random = new Random(seed);
+        char[] bases = {'A', 'C', 'G', 'T', 'N'};
+
+        StringBuilder fastqBuilder = new StringBuilder();
+        for (int i = 0; i < numberOfSequences; i++) {
+
+            fastqBuilder.append("@A00521:143:HWY2CDSXX:4:1101:").append(i).append(":1000 1:N:0:1\n");
+
+            int length = 100 + random.nextInt(51);
+            for (int j = 0; j < length; j++) { fastqBuilder.append(bases[random.nextInt(bases.length)]); }
+            fastqBuilder.append("\n+\n");
+            for (int j = 0; j < length; j++) { fastqBuilder.append((char) ('!' + random.nextInt(41))); }
+            fastqBuilder.append("\n");
+        }
+
+        return fastqBuilder.toString();
+    }
+
+    private static byte[] getLineWriterBytes(SequenceBlock sequenceBlock, int step) throws IOException {
+
+        // compress the sequences the way they were written before the pass-through path
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(byteArrayOutputStream)));
+
+        for (int i = 0; i < sequenceBlock.size(); i += step) {
+            for (int lineNumber = 1; lineNumber <= SequenceBlock.LINES_PER_SEQUENCE; lineNumber++) {
+                writer.write(sequenceBlock.getLineString(i, lineNumber));
+                writer.newLine();
+            }
+        }
+
+        writer.close();
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException {
+        return new GZIPInputStream(new ByteArrayInputStream(bytes)).readAllBytes();
+    }
+
+    @Test
+    void testOutputIsByteIdenticalToLineWriter() throws IOException {
+
+        String fastq = createFastq(5000, 1);
+
+        SequenceBlock sequenceBlock = new FastqScanner(
+                new ByteArrayInputStream(fastq.getBytes(StandardCharsets.US_ASCII))
+        ).scanSequences(SequenceGroup.MAX_NUMBER_OF_SEQUENCES);
+
+        // write every sequence, then every third sequence
+        for (int step : new int[]{1, 3}) {
+
+            CompressedSequenceGroup compressedSequenceGroup = new CompressedSequenceGroup(Set.of("R1"));
+            for (int i = 0; i < sequenceBlock.size(); i += step) {
+                compressedSequenceGroup.addSequence("R1", sequenceBlock, i);
+            }
+            compressedSequenceGroup.markCompleted();
+            compressedSequenceGroup.compress();
+
+            byte[] passThroughBytes = compressedSequenceGroup.byteArrayByReadType.get("R1").toByteArray();
+            byte[] lineWriterBytes = getLineWriterBytes(sequenceBlock, step);
+
+            assertArrayEquals(lineWriterBytes, passThroughBytes);
+            assertArrayEquals(decompress(lineWriterBytes), decompress(passThroughBytes));
+        }
+    }
+
+    @Test
+    void testCarriageReturnsAreDropped() throws IOException {
+
+        // every other sequence has lines that end in carriage returns
+        String[] lines = createFastq(1000, 2).split("\n");
+        StringBuilder fastqBuilder = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            fastqBuilder.append(lines[i]).append(i / SequenceBlock.LINES_PER_SEQUENCE % 2 == 0 ? "\r\n" : "\n");
+        }
+
+        SequenceBlock sequenceBlock = new FastqScanner(
+                new ByteArrayInputStream(fastqBuilder.toString().getBytes(StandardCharsets.US_ASCII))
+        ).scanSequences(SequenceGroup.MAX_NUMBER_OF_SEQUENCES);
+
+        CompressedSequenceGroup compressedSequenceGroup = new CompressedSequenceGroup(Set.of("R1"));
+        for (int i = 0; i < sequenceBlock.size(); i++) { compressedSequenceGroup.addSequence("R1", sequenceBlock, i); }
+        compressedSequenceGroup.markCompleted();
+        compressedSequenceGroup.compress();
+
+        byte[] passThroughBytes = compressedSequenceGroup.byteArrayByReadType.get("R1").toByteArray();
+
+        assertArrayEquals(getLineWriterBytes(sequenceBlock, 1), passThroughBytes);
+        assertEquals(-1, new String(decompress(passThroughBytes), StandardCharsets.US_ASCII).indexOf('\r'));
+    }
+
+    @Test
+    void testEmptyAndMismatchedGroups() throws IOException {
+
+        CompressedSequenceGroup emptyGroup = new CompressedSequenceGroup(Set.of("R1", "I1"));
+        emptyGroup.markCompleted();
+        emptyGroup.compress();
+
+        assertTrue(emptyGroup.isEmpty());
+        assertEquals(0, decompress(emptyGroup.byteArrayByReadType.get("I1").toByteArray()).length);
+
+        SequenceBlock sequenceBlock = new FastqScanner(
+                new ByteArrayInputStream(createFastq(2, 2).getBytes(StandardCharsets.US_ASCII))
+        ).scanSequences(SequenceGroup.MAX_NUMBER_OF_SEQUENCES);
+
+        CompressedSequenceGroup mismatchedGroup = new CompressedSequenceGroup(Set.of("R1", "I1"));
+        mismatchedGroup.addSequence("R1", sequenceBlock, 0);
+
+        assertThrows(RuntimeException.class, mismatchedGroup::markCompleted);
+    }
+}
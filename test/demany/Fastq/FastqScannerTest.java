@@ -0,0 +1,149 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastqScannerTest {
+
+    private static final String FASTQ =
+            "@read1 1:N:0:1\nACGTACGT\n+\nFFFFFFFF\n" +
+            "@read2 1:N:0:1\nTTGCAAGC\n+\nF:FFF,FF\n" +
+            "@read3 1:N:0:1\nGGNNCCAA\n+\nFF##FFFF\n";
+
+    private static InputStream getOneByteAtATimeStream(String content) {
+
+        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+
+        return new InputStream() {
+
+            @Override
+            public int read() { return byteArrayInputStream.read(); }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                return byteArrayInputStream.read(bytes, offset, Math.min(length, 1));
+            }
+        };
+    }
+
+    @Test
+    void testScanSequences() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(
+                new ByteArrayInputStream(FASTQ.getBytes(StandardCharsets.US_ASCII))
+        );
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(3, sequenceBlock.size());
+        assertFalse(scanner.isNotDoneScanning());
+
+        assertEquals("@read1 1:N:0:1", sequenceBlock.getLineString(0, 1));
+        assertEquals("TTGCAAGC", sequenceBlock.getLineString(1, 2));
+        assertEquals("+", sequenceBlock.getLineString(2, 3));
+        assertEquals("FF##FFFF", sequenceBlock.getLineString(2, 4));
+        assertEquals("GGNN", sequenceBlock.getLinePrefixString(2, 2, 4));
+
+        byte[] sequenceBytes = new byte[sequenceBlock.getSequenceLength(1)];
+        sequenceBlock.copySequence(1, sequenceBytes, 0);
+        assertEquals("@read2 1:N:0:1\nTTGCAAGC\n+\nF:FFF,FF\n", new String(sequenceBytes, StandardCharsets.US_ASCII));
+
+        assertThrows(RuntimeException.class, () -> sequenceBlock.getLinePrefixString(0, 2, 9));
+        assertThrows(RuntimeException.class, () -> scanner.scanSequences(10));
+    }
+
+    @Test
+    void testScanSequencesAcrossBlocks() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ));
+
+        SequenceBlock firstBlock = scanner.scanSequences(2);
+        assertEquals(2, firstBlock.size());
+        assertTrue(scanner.isNotDoneScanning());
+        assertEquals("@read2 1:N:0:1", firstBlock.getLineString(1, 1));
+
+        SequenceBlock secondBlock = scanner.scanSequences(2);
+        assertEquals(1, secondBlock.size());
+        assertFalse(scanner.isNotDoneScanning());
+        assertEquals("@read3 1:N:0:1", secondBlock.getLineString(0, 1));
+        assertEquals("GGNNCCAA", secondBlock.getLineString(0, 2));
+    }
+
+    @Test
+    void testScanSequencesIntoRecycledArrays() throws IOException {
+
+        SequenceBlock firstBlock = new FastqScanner(getOneByteAtATimeStream(FASTQ)).scanSequences(10);
+        firstBlock.recycle();
+
+        // a block built from the arrays of a recycled one reads only its own sequences
+        SequenceBlock secondBlock = new FastqScanner(getOneByteAtATimeStream("@read9 1:N:0:1\nAC\n+\nFF\n"))
+                .scanSequences(10);
+
+        assertEquals(1, secondBlock.size());
+        assertEquals("@read9 1:N:0:1", secondBlock.getLineString(0, 1));
+        assertEquals("AC", secondBlock.getLineString(0, 2));
+        assertEquals(23, secondBlock.getByteNumber());
+    }
+
+    @Test
+    void testScanSequencesWithExactMultiple() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ));
+
+        assertEquals(3, scanner.scanSequences(3).size());
+        assertTrue(scanner.isNotDoneScanning());
+
+        assertTrue(scanner.scanSequences(3).isEmpty());
+        assertFalse(scanner.isNotDoneScanning());
+    }
+
+    @Test
+    void testScanSequencesWithoutLastNewLine() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ.strip()));
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(3, sequenceBlock.size());
+        assertEquals("FF##FFFF", sequenceBlock.getLineString(2, 4));
+        assertEquals('\n', sequenceBlock.buffer.get(sequenceBlock.getSequenceEnd(2) - 1));
+    }
+
+    @Test
+    void testScanSequencesWithCarriageReturns() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ.replace("\n", "\r\n")));
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(3, sequenceBlock.size());
+        assertEquals("ACGTACGT", sequenceBlock.getLineString(0, 2));
+        assertEquals(8, sequenceBlock.getLineLength(0, 4));
+    }
+
+    @Test
+    void testScanSequencesWithLimit() throws IOException {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ), 2);
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(2, sequenceBlock.size());
+        assertFalse(scanner.isNotDoneScanning());
+        assertEquals("@read2 1:N:0:1", sequenceBlock.getLineString(1, 1));
+    }
+
+    @Test
+    void testScanPartialSequence() {
+
+        FastqScanner scanner = new FastqScanner(getOneByteAtATimeStream(FASTQ + "@read4 1:N:0:1\nACGT\n"));
+
+        assertThrows(RuntimeException.class, () -> scanner.scanSequences(10));
+    }
+}
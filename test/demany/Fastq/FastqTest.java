@@ -84,4 +84,20 @@ class FastqTest {
         assertEquals("I1", fastq.readTypeStr);
         assertEquals("001.fastq.gz", fastq.tail);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUncompressedFastq() {
+
+        Fastq fastq = new Fastq(Path.of("200103_A00521_0143_AHWY2CDSXX/Undetermined_S0_L003_I1_001.fastq"));
+
+        assertTrue(fastq.isAnUndeterminedFastq());
+        assertTrue(fastq.isAnIndexFastq);
+        assertFalse(fastq.isGzipped);
+        assertEquals("L003", fastq.laneStr);
+        assertEquals("I1", fastq.readTypeStr);
+        assertEquals("001.fastq", fastq.tail);
+
+        assertTrue(new Fastq(Path.of("Undetermined_S0_L003_I1_001.fastq.gz")).isGzipped);
+        assertThrows(RuntimeException.class, () -> new Fastq(Path.of("Undetermined_S0_L003_I1_001.fastq.bz2")));
+    }
+}
@@ -0,0 +1,103 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFastqScannerTest {
+
+    private static final String FASTQ =
+            "@read1 1:N:0:1\nACGTACGT\n+\nFFFFFFFF\n" +
+            "@read2 1:N:0:1\nTTGCAAGC\n+\nF:FFF,FF\n" +
+            "@read3 1:N:0:1\nGGNNCCAA\n+\nFF##FFFF\n";
+
+    @TempDir
+    Path tempDirPath;
+
+    private Path writeFastq(String content) throws IOException {
+
+        Path path = this.tempDirPath.resolve("Undetermined_S0_L001_R1_001.fastq");
+        Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+
+        return path;
+    }
+
+    @Test
+    void testScanSequences() throws IOException {
+
+        MappedFastqScanner scanner = new MappedFastqScanner(writeFastq(FASTQ));
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(3, sequenceBlock.size());
+        assertFalse(scanner.isNotDoneScanning());
+        assertFalse(sequenceBlock.buffer.hasArray());
+
+        assertEquals("@read1 1:N:0:1", sequenceBlock.getLineString(0, 1));
+        assertEquals("TTGCAAGC", sequenceBlock.getLineString(1, 2));
+        assertEquals("FF##FFFF", sequenceBlock.getLineString(2, 4));
+        assertEquals("GGNN", sequenceBlock.getLinePrefixString(2, 2, 4));
+
+        byte[] sequenceBytes = new byte[sequenceBlock.getSequenceLength(1)];
+        sequenceBlock.copySequence(1, sequenceBytes, 0);
+        assertEquals("@read2 1:N:0:1\nTTGCAAGC\n+\nF:FFF,FF\n", new String(sequenceBytes, StandardCharsets.US_ASCII));
+
+        assertThrows(RuntimeException.class, () -> scanner.scanSequences(10));
+    }
+
+    @Test
+    void testScanSequencesAcrossWindows() throws IOException {
+
+        // a tiny window makes every block run past the end of the window it started in
+        MappedFastqScanner scanner = new MappedFastqScanner(writeFastq(FASTQ), 7);
+
+        SequenceBlock firstBlock = scanner.scanSequences(2);
+        assertEquals(2, firstBlock.size());
+        assertTrue(scanner.isNotDoneScanning());
+        assertEquals("@read2 1:N:0:1", firstBlock.getLineString(1, 1));
+
+        SequenceBlock secondBlock = scanner.scanSequences(2);
+        assertEquals(1, secondBlock.size());
+        assertFalse(scanner.isNotDoneScanning());
+        assertEquals("@read3 1:N:0:1", secondBlock.getLineString(0, 1));
+        assertEquals("GGNNCCAA", secondBlock.getLineString(0, 2));
+    }
+
+    @Test
+    void testScanSequencesWithExactMultiple() throws IOException {
+
+        MappedFastqScanner scanner = new MappedFastqScanner(writeFastq(FASTQ));
+
+        assertEquals(3, scanner.scanSequences(3).size());
+        assertTrue(scanner.isNotDoneScanning());
+
+        assertTrue(scanner.scanSequences(3).isEmpty());
+        assertFalse(scanner.isNotDoneScanning());
+    }
+
+    @Test
+    void testScanSequencesWithoutLastNewLine() throws IOException {
+
+        MappedFastqScanner scanner = new MappedFastqScanner(writeFastq(FASTQ.strip()), 16);
+
+        SequenceBlock sequenceBlock = scanner.scanSequences(10);
+
+        assertEquals(3, sequenceBlock.size());
+        assertEquals("FF##FFFF", sequenceBlock.getLineString(2, 4));
+        assertEquals('\n', sequenceBlock.buffer.get(sequenceBlock.getSequenceEnd(2) - 1));
+    }
+
+    @Test
+    void testScanPartialSequence() throws IOException {
+
+        MappedFastqScanner scanner = new MappedFastqScanner(writeFastq(FASTQ + "@read4 1:N:0:1\nACGT\n"));
+
+        assertThrows(RuntimeException.class, () -> scanner.scanSequences(10));
+    }
+}
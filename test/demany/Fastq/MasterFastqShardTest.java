@@ -0,0 +1,143 @@
+package demany.Fastq;
+
+import demany.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MasterFastqShardTest {
+
+    @TempDir
+    Path tempDirPath;
+
+    // writes bgzf master fastqs the way bcl2fastq does, or plain gzip ones
+    private Map<String, Fastq> writeMasterFastqs(int numberOfSequences, boolean bgzf) throws IOException {
+
+        Random random = new Random(1);
+        char[] bases = {'A', 'C', 'G', 'T'};
+
+        Map<String, StringBuilder> fastqBuilderByReadType = Map.of("R1", new StringBuilder(), "I1", new StringBuilder());
+        for (int i = 0; i < numberOfSequences; i++) {
+
+            for (String readType : fastqBuilderByReadType.keySet()) {
+
+                int length = readType.equals("I1") ? 8 : 50 + random.nextInt(3);
+
+                StringBuilder fastqBuilder = fastqBuilderByReadType.get(readType);
+                fastqBuilder.append("@A00521:143:HWY2CDSXX:4:1101:").append(i).append(":1000 ").append(readType).append("\n");
+                for (int j = 0; j < length; j++) { fastqBuilder.append(bases[random.nextInt(bases.length)]); }
+                fastqBuilder.append("\n+\n").append("F".repeat(length)).append("\n");
+            }
+        }
+
+        Map<String, Fastq> fastqByReadType = new HashMap<>();
+        for (String readType : fastqBuilderByReadType.keySet()) {
+
+            Fastq fastq = Fastq.getUndeterminedFastqAtDir(this.tempDirPath, "L001", readType);
+            byte[] bytes = fastqBuilderByReadType.get(readType).toString().getBytes(StandardCharsets.US_ASCII);
+
+            if (bgzf) {
+                TestUtil.writeBgzf(fastq.path, bytes, 65280);
+            } else {
+                try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(fastq.path))) {
+                    outputStream.write(bytes);
+                }
+            }
+
+            fastqByReadType.put(readType, fastq);
+        }
+
+        return fastqByReadType;
+    }
+
+    private static List<String> readHeaders(MasterFastqShard masterFastqShard, String readType) throws IOException {
+
+        FastqReaderGroup fastqReaderGroup = masterFastqShard.getFastqReaderGroup();
+
+        List<String> headerList = new ArrayList<>();
+        while (fastqReaderGroup.isNotDoneReading()) {
+
+            SequenceGroup sequenceGroup = fastqReaderGroup.readSequences();
+            SequenceBlock sequenceBlock = sequenceGroup.sequenceBlockByReadType.get(readType);
+
+            for (int i = 0; i < sequenceBlock.size(); i++) { headerList.add(sequenceBlock.getLineString(i, 1)); }
+        }
+
+        return headerList;
+    }
+
+    @Test
+    void testShards() throws IOException {
+
+        Map<String, Fastq> fastqByReadType = writeMasterFastqs(30001, true);
+
+        // fresh bgzf fastqs are indexed as they are split
+        List<MasterFastqShard> masterFastqShardList = MasterFastqShard.getMasterFastqShardList(
+                "L001", fastqByReadType, 3, 2
+        );
+
+        assertEquals(3, masterFastqShardList.size());
+
+        // the shards should cover every sequence once, in order, with each read type on the same sequence
+        long expectedFirstSequence = 0;
+        for (MasterFastqShard masterFastqShard : masterFastqShardList) {
+
+            assertFalse(masterFastqShard.isWholeLane());
+            assertEquals(expectedFirstSequence, masterFastqShard.firstSequence);
+
+            List<String> r1HeaderList = readHeaders(masterFastqShard, "R1");
+            List<String> i1HeaderList = readHeaders(masterFastqShard, "I1");
+
+            assertEquals(masterFastqShard.numberOfSequences, r1HeaderList.size());
+
+            for (int i = 0; i < r1HeaderList.size(); i++) {
+
+                String expectedHeaderPrefix = "@A00521:143:HWY2CDSXX:4:1101:" + (expectedFirstSequence + i) + ":1000 ";
+                assertEquals(expectedHeaderPrefix + "R1", r1HeaderList.get(i));
+                assertEquals(expectedHeaderPrefix + "I1", i1HeaderList.get(i));
+            }
+
+            expectedFirstSequence += masterFastqShard.numberOfSequences;
+        }
+
+        assertEquals(30001, expectedFirstSequence);
+    }
+
+    @Test
+    void testGzipLane() throws IOException {
+
+        Map<String, Fastq> fastqByReadType = writeMasterFastqs(1000, false);
+
+        // a lane is read whole unless every one of its fastqs is bgzf
+        List<MasterFastqShard> masterFastqShardList = MasterFastqShard.getMasterFastqShardList(
+                "L001", fastqByReadType, 3, 2
+        );
+
+        assertEquals(1, masterFastqShardList.size());
+        assertTrue(masterFastqShardList.get(0).isWholeLane());
+        assertEquals(1000, readHeaders(masterFastqShardList.get(0), "I1").size());
+    }
+
+    @Test
+    void testWholeLane() throws IOException {
+
+        Map<String, Fastq> fastqByReadType = writeMasterFastqs(100, true);
+
+        List<MasterFastqShard> masterFastqShardList = MasterFastqShard.getMasterFastqShardList(
+                "L001", fastqByReadType, 1, 2
+        );
+
+        assertEquals(1, masterFastqShardList.size());
+        assertTrue(masterFastqShardList.get(0).isWholeLane());
+        assertEquals(100, readHeaders(masterFastqShardList.get(0), "R1").size());
+    }
+}
@@ -0,0 +1,42 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceBlockRecyclerTest {
+
+    @Test
+    void testPoolIsCappedInBytes() {
+
+        SequenceBlockRecycler.emptyPool();
+
+        // an array larger than the pool's bytes is never pooled
+        SequenceBlockRecycler.returnBytes(new byte[(int) SequenceBlockRecycler.MAX_POOLED_BYTE_NUMBER + 1]);
+        assertEquals(0, SequenceBlockRecycler.getPooledBytesNumber());
+        assertEquals(0, SequenceBlockRecycler.getPooledByteNumber());
+
+        // line starts count four bytes each
+        SequenceBlockRecycler.returnBytes(new byte[100]);
+        SequenceBlockRecycler.returnLineStarts(new int[10]);
+        assertEquals(1, SequenceBlockRecycler.getPooledBytesNumber());
+        assertEquals(1, SequenceBlockRecycler.getPooledLineStartsNumber());
+        assertEquals(140, SequenceBlockRecycler.getPooledByteNumber());
+
+        // a taken array gives its bytes back to the pool
+        assertEquals(100, SequenceBlockRecycler.takeBytes(50).length);
+        assertEquals(40, SequenceBlockRecycler.getPooledByteNumber());
+    }
+
+    @Test
+    void testEmptyPool() {
+
+        SequenceBlockRecycler.returnBytes(new byte[100]);
+        SequenceBlockRecycler.returnLineStarts(new int[10]);
+
+        SequenceBlockRecycler.emptyPool();
+        assertEquals(0, SequenceBlockRecycler.getPooledBytesNumber());
+        assertEquals(0, SequenceBlockRecycler.getPooledLineStartsNumber());
+        assertEquals(0, SequenceBlockRecycler.getPooledByteNumber());
+    }
+}
@@ -0,0 +1,135 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceGroupFlowTest {
+
+    @Test
+    void testLaneFinished() {
+
+        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(Map.of("L001", 2));
+
+        assertNull(sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup());
+
+        SequenceGroup sequenceGroup = new SequenceGroup(Set.of("R1"));
+        assertTrue(sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L001", sequenceGroup));
+
+        SequenceGroupFlow.LaneSequenceGroupPair pair = sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup();
+        assertEquals("L001", pair.laneStr);
+        assertSame(sequenceGroup, pair.sequenceGroup);
+
+        // the lane is not finished until every reader has finished and every group has been written
+        sequenceGroupFlow.markReaderFinished("L001");
+        sequenceGroupFlow.markReaderFinished("L001");
+        assertThrows(RuntimeException.class, () -> sequenceGroupFlow.markReaderFinished("L001"));
+        assertFalse(sequenceGroupFlow.isLaneFinished("L001"));
+
+        sequenceGroupFlow.addDemultiplexedSequenceGroups("L001", new HashMap<>());
+        assertTrue(sequenceGroupFlow.moreDemultiplexedSequenceGroupsAvailable("L001", 0));
+        SequenceGroupFlow.DemultiplexedSequenceGroups demultiplexedSequenceGroups =
+                sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups("L001", 0);
+        assertNotNull(demultiplexedSequenceGroups);
+        assertFalse(sequenceGroupFlow.isLaneFinished("L001"));
+
+        sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten("L001", demultiplexedSequenceGroups);
+        assertTrue(sequenceGroupFlow.isLaneFinished("L001"));
+    }
+
+    @Test
+    void testLaneEnd() {
+
+        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(Map.of("L001", 1));
+
+        // the lane end cannot be taken while the lane is still being read
+        assertFalse(sequenceGroupFlow.tryToTakeLaneEnd("L001"));
+
+        sequenceGroupFlow.markReaderFinished("L001");
+        assertTrue(sequenceGroupFlow.isLaneFinished("L001"));
+        assertFalse(sequenceGroupFlow.isLaneEndWritten("L001"));
+
+        // only one caller takes the lane end, and the lane end is written once its last groups are
+        assertTrue(sequenceGroupFlow.tryToTakeLaneEnd("L001"));
+        assertFalse(sequenceGroupFlow.tryToTakeLaneEnd("L001"));
+        assertFalse(sequenceGroupFlow.isLaneEndWritten("L001"));
+
+        sequenceGroupFlow.addDemultiplexedSequenceGroups("L001", new HashMap<>());
+        sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten(
+                "L001", sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups("L001", 0)
+        );
+        assertTrue(sequenceGroupFlow.isLaneEndWritten("L001"));
+    }
+
+    @Test
+    void testDemultiplexedRingBackPressure() {
+
+        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(Set.of("L001", "L002"));
+
+        // the multiplexed ring only holds so many groups
+        for (int i = 0; i < 4; i++) {
+            assertTrue(sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L001", new SequenceGroup(Set.of("R1"))));
+        }
+
+        assertFalse(sequenceGroupFlow.multiplexedSequenceGroupRoomAvailable("L001"));
+        assertFalse(sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L001", new SequenceGroup(Set.of("R1"))));
+
+        // taking groups holds a place in the demultiplexed ring for each of them
+        for (int i = 0; i < 4; i++) { assertNotNull(sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup()); }
+        assertTrue(sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L001", new SequenceGroup(Set.of("R1"))));
+        assertNull(sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup());
+
+        // another lane with room is still served
+        assertTrue(sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L002", new SequenceGroup(Set.of("R1"))));
+        assertEquals("L002", sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup().laneStr);
+
+        // writing a group frees its place
+        sequenceGroupFlow.addDemultiplexedSequenceGroups("L001", new HashMap<>());
+        SequenceGroupFlow.DemultiplexedSequenceGroups demultiplexedSequenceGroups =
+                sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups("L001", 0);
+        assertNull(sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup());
+
+        sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten("L001", demultiplexedSequenceGroups);
+        assertEquals("L001", sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup().laneStr);
+    }
+
+    @Test
+    void testDemultiplexedSequenceGroupsRoutedToOwningWriter() {
+
+        SequenceGroupFlow sequenceGroupFlow = new SequenceGroupFlow(
+                Map.of("L001", 1), Map.of("L001", Map.of("undetermined", 0, "sample-a", 1, "sample-b", 2))
+        );
+        assertEquals(3, sequenceGroupFlow.getWriterNumber("L001"));
+
+        sequenceGroupFlow.tryToAddMultiplexedSequenceGroup("L001", new SequenceGroup(Set.of("R1")));
+        assertNotNull(sequenceGroupFlow.tryToTakeMultiplexedSequenceGroup());
+
+        CompressedSequenceGroup sampleAGroup = new CompressedSequenceGroup(Set.of("R1"));
+        HashMap<String, CompressedSequenceGroup> compressedSequenceGroupById = new HashMap<>();
+        compressedSequenceGroupById.put("sample-a", sampleAGroup);
+        sequenceGroupFlow.addDemultiplexedSequenceGroups("L001", compressedSequenceGroupById);
+
+        // only the owner of sample-a and the first writer get a part
+        assertFalse(sequenceGroupFlow.moreDemultiplexedSequenceGroupsAvailable("L001", 2));
+
+        SequenceGroupFlow.DemultiplexedSequenceGroups firstPart =
+                sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups("L001", 0);
+        SequenceGroupFlow.DemultiplexedSequenceGroups sampleAPart =
+                sequenceGroupFlow.tryToTakeDemultiplexedSequenceGroups("L001", 1);
+
+        assertTrue(firstPart.compressedSequenceGroupById.isEmpty());
+        assertEquals(Map.of("sample-a", sampleAGroup), sampleAPart.compressedSequenceGroupById);
+
+        // the lane is finished once every part has been written
+        sequenceGroupFlow.markReaderFinished("L001");
+        sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten("L001", sampleAPart);
+        assertFalse(sequenceGroupFlow.isLaneFinished("L001"));
+
+        sequenceGroupFlow.markDemultiplexedSequenceGroupsWritten("L001", firstPart);
+        assertTrue(sequenceGroupFlow.isLaneFinished("L001"));
+    }
+}
@@ -0,0 +1,87 @@
+package demany.Fastq;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequenceGroupRingTest {
+
+    @Test
+    void testOfferPoll() {
+
+        SequenceGroupRing<Integer> ring = new SequenceGroupRing<>(4);
+
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+
+        for (int i = 0; i < 4; i++) { assertTrue(ring.offer(i)); }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        // items come out in order, and the ring can go around again
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(lap * 4 + i, ring.poll());
+                assertTrue(ring.offer(lap * 4 + i + 4));
+            }
+        }
+
+        assertThrows(RuntimeException.class, () -> new SequenceGroupRing<Integer>(3));
+    }
+
+    @Test
+    void testManyProducersAndConsumers() throws Exception {
+
+        SequenceGroupRing<Integer> ring = new SequenceGroupRing<>(4);
+        int producerNumber = 4;
+        int itemsPerProducer = 20000;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(producerNumber * 2);
+        try {
+
+            for (int p = 0; p < producerNumber; p++) {
+
+                int firstItem = p * itemsPerProducer;
+                executorService.submit(() -> {
+                    for (int i = firstItem; i < firstItem + itemsPerProducer; i++) {
+                        while (!ring.offer(i)) { Thread.yield(); }
+                    }
+                });
+            }
+
+            List<Future<List<Integer>>> futureList = new ArrayList<>();
+            for (int c = 0; c < producerNumber; c++) {
+                futureList.add(executorService.submit(() -> {
+
+                    List<Integer> itemList = new ArrayList<>();
+                    for (int i = 0; i < itemsPerProducer; i++) {
+
+                        Integer item;
+                        while ((item = ring.poll()) == null) { Thread.yield(); }
+                        itemList.add(item);
+                    }
+
+                    return itemList;
+                }));
+            }
+
+            // every item comes out exactly once
+            Set<Integer> itemSet = new HashSet<>();
+            for (Future<List<Integer>> future : futureList) {
+                for (int item : future.get(60, TimeUnit.SECONDS)) { assertTrue(itemSet.add(item)); }
+            }
+
+            assertEquals(producerNumber * itemsPerProducer, itemSet.size());
+            assertTrue(ring.isEmpty());
+
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
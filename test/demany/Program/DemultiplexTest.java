@@ -0,0 +1,242 @@
+package demany.Program;
+
+import demany.Context.DemultiplexingContext;
+import demany.Context.Input;
+import demany.Fastq.Fastq;
+import demany.Fastq.MasterFastqShard;
+import demany.TestUtil;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DemultiplexTest {
+
+    private static final String LANE_STR = "L001";
+    private static final String[] READ_TYPES = {"R1", "I1", "I2", "R2"};
+    private static final int SEQUENCE_NUMBER = 20000;
+    private static final String INDEX_1 = "ACGTACGT";
+    private static final String INDEX_2 = "TTGGCCAA";
+
+    @TempDir
+    Path tempDirPath;
+
+    private Input createInput(
+            int processingThreadNumber, Path masterFastqDirPath, boolean sharedNothingPipeline) throws Exception {
+
+        JSONObject sampleIndexJSON = TestUtil.createSampleIndexJSON("Project", "Sample", INDEX_1, INDEX_2, 1);
+
+        JSONArray sampleIndexSpecArray = new JSONArray();
+        sampleIndexSpecArray.add(sampleIndexJSON);
+
+        JSONObject inputObject = new JSONObject();
+        inputObject.put("processingThreadNumber", Integer.toString(processingThreadNumber));
+        inputObject.put("workdirPath", this.tempDirPath.resolve("workdir").toString());
+        inputObject.put("bclPath", this.tempDirPath.resolve("bcl").toString());
+        inputObject.put("sampleIndexSpecArray", sampleIndexSpecArray);
+        if (masterFastqDirPath != null) { inputObject.put("masterFastqDirPath", masterFastqDirPath.toString()); }
+        inputObject.put("sharedNothingPipeline", Boolean.toString(sharedNothingPipeline));
+
+        return new Input(inputObject.toJSONString());
+    }
+
+    // the records of each read type, every other sequence has the sample's indexes and the rest have none
+    private static Map<String, String> createFastqByReadType() {
+
+        Random random = new Random(1);
+
+        Map<String, StringBuilder> fastqBuilderByReadType = new HashMap<>();
+        for (int i = 0; i < SEQUENCE_NUMBER; i++) {
+            for (String readType : READ_TYPES) {
+
+                String bases;
+                if (readType.equals("I1")) {
+                    bases = i % 2 == 0 ? INDEX_1 : "NNNNNNNN";
+                } else if (readType.equals("I2")) {
+                    bases = i % 2 == 0 ? INDEX_2 : "NNNNNNNN";
+                } else {
+
+                    StringBuilder basesBuilder = new StringBuilder();
+                    for (int j = 0; j < 50; j++) { basesBuilder.append("ACGT".charAt(random.nextInt(4))); }
+                    bases = basesBuilder.toString();
+                }
+
+                fastqBuilderByReadType.computeIfAbsent(readType, k -> new StringBuilder())
+                        .append("@A00521:143:HWY2CDSXX:1:1101:").append(i).append(":1000 ").append(readType)
+                        .append("\n").append(bases).append("\n+\n").append("F".repeat(bases.length())).append("\n");
+            }
+        }
+
+        Map<String, String> fastqByReadType = new HashMap<>();
+        for (String readType : READ_TYPES) {
+            fastqByReadType.put(readType, fastqBuilderByReadType.get(readType).toString());
+        }
+
+        return fastqByReadType;
+    }
+
+    // writes the master fastqs of one lane as bcl2fastq leaves them in its output dir
+    private Path writeBcl2fastqOutputDir() throws IOException {
+
+        Path outputDirPath = Files.createDirectory(this.tempDirPath.resolve("bcl2fastq-output"));
+
+        Map<String, String> fastqByReadType = createFastqByReadType();
+        for (String readType : READ_TYPES) {
+            TestUtil.writeBgzf(
+                    Fastq.getUndeterminedFastqAtDir(outputDirPath, LANE_STR, readType).path,
+                    fastqByReadType.get(readType).getBytes(StandardCharsets.US_ASCII),
+                    65280
+            );
+        }
+
+        return outputDirPath;
+    }
+
+    // writes the master fastqs of one lane uncompressed
+    private Path writeUncompressedMasterFastqDir() throws IOException {
+
+        Path masterFastqDirPath = Files.createDirectory(this.tempDirPath.resolve("master-fastqs"));
+
+        Map<String, String> fastqByReadType = createFastqByReadType();
+        for (String readType : READ_TYPES) {
+            Files.writeString(
+                    masterFastqDirPath.resolve("Undetermined_S0_" + LANE_STR + "_" + readType + "_001.fastq"),
+                    fastqByReadType.get(readType),
+                    StandardCharsets.US_ASCII
+            );
+        }
+
+        return masterFastqDirPath;
+    }
+
+    private static long countRecords(Path path) throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.US_ASCII))) {
+            return bufferedReader.lines().count() / 4;
+        }
+    }
+
+    private DemultiplexingContext createDemultiplexingContext(
+            Input input, Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr) throws IOException {
+
+        return new DemultiplexingContext(
+                masterFastqByReadTypeListByLaneStr,
+                Map.of(LANE_STR, input.sampleIndexSpecSet),
+                8,
+                8,
+                false,
+                1,
+                1,
+                Files.createDirectory(this.tempDirPath.resolve("demultiplexed-fastqs")),
+                Files.createDirectory(this.tempDirPath.resolve("index-counts"))
+        );
+    }
+
+    private void assertOutputs(
+            DemultiplexingContext demultiplexingContext,
+            Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr) throws IOException {
+
+        // every other sequence is the sample's, the rest are undetermined
+        Map<String, Map<String, Fastq>> outputFastqByReadTypeById =
+                demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(LANE_STR);
+
+        for (String readType : READ_TYPES) {
+            assertEquals(SEQUENCE_NUMBER / 2, countRecords(
+                    outputFastqByReadTypeById.get("Project-Sample").get(readType).path
+            ));
+            assertEquals(SEQUENCE_NUMBER / 2, countRecords(
+                    outputFastqByReadTypeById.get(DemultiplexingContext.UNDETERMINED_ID).get(readType).path
+            ));
+        }
+
+        assertEquals(
+                SEQUENCE_NUMBER / 2,
+                countByIndexStrByIdByLaneStr.get(LANE_STR).get("Project-Sample").values().stream()
+                        .mapToLong(Long::longValue).sum()
+        );
+    }
+
+    @Test
+    void testShardsFromBcl2fastqOutputDir() throws Exception {
+
+        Path outputDirPath = writeBcl2fastqOutputDir();
+        Set<Path> outputDirFilePathSet = new HashSet<>();
+        try (var pathStream = Files.list(outputDirPath)) { pathStream.forEach(outputDirFilePathSet::add); }
+
+        // enough threads for two readers of the lane
+        Input input = createInput(16, null, false);
+
+        Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr =
+                Demultiplex.getMasterFastqByReadTypeListByLaneStr(input, List.of(outputDirPath));
+
+        List<MasterFastqShard> masterFastqShardList = Demultiplex.getMasterFastqShardListByLaneStr(
+                input, createDemultiplexingContext(input, masterFastqByReadTypeListByLaneStr), 1
+        ).get(LANE_STR);
+
+        // the fresh bgzf fastqs are indexed in the same run, so the lane is split
+        assertEquals(2, masterFastqShardList.size());
+
+        long numberOfSequences = 0;
+        for (MasterFastqShard masterFastqShard : masterFastqShardList) {
+
+            assertFalse(masterFastqShard.isWholeLane());
+            assertEquals(numberOfSequences, masterFastqShard.firstSequence);
+            numberOfSequences += masterFastqShard.numberOfSequences;
+        }
+
+        assertEquals(SEQUENCE_NUMBER, numberOfSequences);
+
+        // nothing is left next to the master fastqs
+        Set<Path> afterOutputDirFilePathSet = new HashSet<>();
+        try (var pathStream = Files.list(outputDirPath)) { pathStream.forEach(afterOutputDirFilePathSet::add); }
+        assertEquals(outputDirFilePathSet, afterOutputDirFilePathSet);
+    }
+
+    @Test
+    void testUncompressedMasterFastqs() throws Exception {
+
+        // the master fastqs are given instead of made by bcl2fastq, and are scanned straight from memory
+        Input input = createInput(2, writeUncompressedMasterFastqDir(), false);
+
+        Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr =
+                Demultiplex.getMasterFastqByReadTypeListByLaneStr(input, List.of(input.masterFastqDirPath));
+
+        for (Fastq fastq : masterFastqByReadTypeListByLaneStr.get(LANE_STR).get(0).values()) {
+            assertFalse(fastq.isGzipped);
+        }
+
+        DemultiplexingContext demultiplexingContext =
+                createDemultiplexingContext(input, masterFastqByReadTypeListByLaneStr);
+
+        assertOutputs(demultiplexingContext, Demultiplex.demultiplexMasterFastqs(input, demultiplexingContext));
+    }
+
+    @Test
+    void testSharedNothingPipeline() throws Exception {
+
+        Input input = createInput(2, writeBcl2fastqOutputDir(), true);
+
+        Map<String, List<Map<String, Fastq>>> masterFastqByReadTypeListByLaneStr =
+                Demultiplex.getMasterFastqByReadTypeListByLaneStr(input, List.of(input.masterFastqDirPath));
+
+        DemultiplexingContext demultiplexingContext =
+                createDemultiplexingContext(input, masterFastqByReadTypeListByLaneStr);
+
+        // shared nothing workers get a shard per thread, where the staged pipeline would read the lane whole
+        assertEquals(2, Demultiplex.getMasterFastqShardListByLaneStr(input, demultiplexingContext, 1)
+                .get(LANE_STR).size());
+
+        assertOutputs(demultiplexingContext, Demultiplex.demultiplexMasterFastqs(input, demultiplexingContext));
+    }
+}
@@ -0,0 +1,26 @@
+package demany.SampleIndex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedIndexKeyTableTest {
+
+    @Test
+    void testPutAndGetThroughGrowth() {
+
+        PackedIndexKeyTable packedIndexKeyTable = new PackedIndexKeyTable(2);
+
+        // keys that differ in a single low bit still find their own values once the table has grown
+        for (int i = 0; i < 1000; i++) { packedIndexKeyTable.put(i * 4L, i); }
+        packedIndexKeyTable.put(0, 7);
+
+        assertEquals(1000, packedIndexKeyTable.size());
+        assertEquals(7, packedIndexKeyTable.get(0));
+        for (int i = 1; i < 1000; i++) { assertEquals(i, packedIndexKeyTable.get(i * 4L)); }
+
+        assertEquals(PackedIndexKeyTable.MISSING_VALUE, packedIndexKeyTable.get(1));
+        assertEquals(PackedIndexKeyTable.MISSING_VALUE, packedIndexKeyTable.get(PackedIndexKey.INVALID_KEY));
+        assertThrows(RuntimeException.class, () -> packedIndexKeyTable.put(PackedIndexKey.INVALID_KEY, 1));
+    }
+}
@@ -0,0 +1,49 @@
+package demany.SampleIndex;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedIndexKeyTest {
+
+    @Test
+    void testDistinctKeysPackDifferently() {
+
+        // every key of length 3 over A, C, G, T and N
+        Set<Long> packedKeySet = new HashSet<>();
+        String bases = "ACGTN";
+        for (int i = 0; i < 125; i++) {
+
+            String key = "" + bases.charAt(i % 5) + bases.charAt(i / 5 % 5) + bases.charAt(i / 25);
+            long packedKey = PackedIndexKey.pack(key);
+
+            assertNotEquals(PackedIndexKey.INVALID_KEY, packedKey);
+            assertTrue(packedKeySet.add(packedKey));
+            assertEquals(key, PackedIndexKey.unpack(packedKey, 3));
+        }
+    }
+
+    @Test
+    void testPackFromBytes() {
+
+        ByteBuffer buffer = ByteBuffer.wrap("@r\nGATNACA\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(PackedIndexKey.pack("GATNAC"), PackedIndexKey.pack(buffer, 3, 6));
+        assertEquals(PackedIndexKey.pack("GATN"), PackedIndexKey.pack(buffer, 3, 4));
+        assertNotEquals(PackedIndexKey.pack("GATA"), PackedIndexKey.pack(buffer, 3, 4));
+    }
+
+    @Test
+    void testInvalidKeys() {
+
+        assertEquals(PackedIndexKey.INVALID_KEY, PackedIndexKey.pack("ACGX"));
+        assertEquals(PackedIndexKey.INVALID_KEY, PackedIndexKey.pack("acgt"));
+        assertEquals(PackedIndexKey.INVALID_KEY, PackedIndexKey.pack("A".repeat(PackedIndexKey.MAX_LENGTH + 1)));
+        assertNotEquals(PackedIndexKey.INVALID_KEY, PackedIndexKey.pack("N".repeat(PackedIndexKey.MAX_LENGTH)));
+    }
+}
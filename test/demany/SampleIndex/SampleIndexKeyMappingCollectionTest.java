@@ -3,6 +3,7 @@ package demany.SampleIndex;
 import org.junit.jupiter.api.Test;
 
 import demany.TestUtil;
+import java.util.ArrayList;
 import java.util.HashSet;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -77,4 +78,43 @@ class SampleIndexKeyMappingCollectionTest {
         assertTrue(mappingCollection.hasKeyOverlap());
         assertFalse(mappingCollection.getOverlapReportLines().isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testOverlapReportLinesMatchPairwiseChecks() throws Exception {
+
+        HashSet<SampleIndexSpec> sampleIndexSpecSet = new HashSet<>();
+        sampleIndexSpecSet.add(TestUtil.getSampleIndexSpec(
+                "TestProject1", "TestSample1", "CACG", "CGTC", 1
+        ));
+        sampleIndexSpecSet.add(TestUtil.getSampleIndexSpec(
+                "TestProject1", "TestSample2", "CAGG", "CGTC", 1
+        ));
+        sampleIndexSpecSet.add(TestUtil.getSampleIndexSpec(
+                "TestProject1", "TestSample3", "CAC", null, 1
+        ));
+        sampleIndexSpecSet.add(TestUtil.getSampleIndexSpec(
+                "TestProject1", "TestSample4", "ATTG", "GCAA", 1
+        ));
+
+        SampleIndexKeyMappingCollection mappingCollection = new SampleIndexKeyMappingCollection(
+                sampleIndexSpecSet, 4, 4
+        );
+
+        // the lines from the key owners are those of checking every pair of mappings in the mapping list's order
+        ArrayList<SampleIndexKeyMapping> mappingList = mappingCollection.getSampleIndexKeyMappingList();
+        ArrayList<String> pairwiseLineList = new ArrayList<>();
+        for (int i = 0; i < mappingList.size() - 1; i++) {
+            for (int j = i + 1; j < mappingList.size(); j++) {
+                pairwiseLineList.addAll(
+                        new SampleIndexKeyMappingOverlapCheck(mappingList.get(i), mappingList.get(j))
+                                .getOverlapReportLines()
+                );
+            }
+        }
+
+        assertTrue(mappingCollection.hasIdentityKeyCollision());
+        assertTrue(mappingCollection.hasKeyOverlap());
+        assertFalse(pairwiseLineList.isEmpty());
+        assertEquals(pairwiseLineList, mappingCollection.getOverlapReportLines());
+    }
+}
@@ -0,0 +1,96 @@
+package demany.SampleIndex;
+
+import demany.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleIndexLookupCacheTest {
+
+    @Test
+    void testLookupAndCount() throws Exception {
+
+        HashSet<SampleIndexSpec> specSet = new HashSet<>();
+        specSet.add(TestUtil.getSampleIndexSpec("TestProject1", "TestSample1", "AGCT", "CCGT", 1));
+        specSet.add(TestUtil.getSampleIndexSpec("TestProject2", "TestSample2", "CAGG", "GTAA", 1));
+
+        SampleIndexLookup lookup = new SampleIndexLookup(specSet, 4, 4, false, 1, 1);
+        SampleIndexLookupCache lookupCache = new SampleIndexLookupCache(lookup);
+
+        // the first look at a pair misses, the rest hit and share its counter slot
+        long index1Key = PackedIndexKey.pack("AGCN");
+        long index2Key = PackedIndexKey.pack("CCGT");
+        int counterSlot = lookupCache.getCounterSlot(index1Key, index2Key);
+        for (int i = 0; i < 9; i++) { assertEquals(counterSlot, lookupCache.getCounterSlot(index1Key, index2Key)); }
+        for (int i = 0; i < 10; i++) { lookupCache.count(counterSlot); }
+
+        assertEquals("TestProject1-TestSample1", lookup.getSampleId(lookupCache.getSampleOrdinal(counterSlot)));
+        assertEquals(9, lookupCache.getHitNumber());
+        assertEquals(1, lookupCache.getMissNumber());
+        assertEquals(0.9, lookupCache.getHitRate(), 1e-9);
+
+        // a pair of no sample has a counter slot too, a key that could not be packed has none
+        int otherCounterSlot = lookupCache.getCounterSlot(PackedIndexKey.pack("AGCT"), PackedIndexKey.pack("GTAA"));
+        lookupCache.count(otherCounterSlot);
+
+        assertEquals(SampleIndexLookup.NO_SAMPLE, lookupCache.getSampleOrdinal(otherCounterSlot));
+        assertEquals(
+                SampleIndexLookupCache.NO_COUNTER_SLOT,
+                lookupCache.getCounterSlot(index1Key, PackedIndexKey.INVALID_KEY)
+        );
+
+        // the counts are drained by index str and sample id
+        HashMap<String, HashMap<String, Long>> countByIndexStrById = new HashMap<>();
+        countByIndexStrById.put("TestProject1-TestSample1", new HashMap<>());
+        countByIndexStrById.put("TestProject2-TestSample2", new HashMap<>());
+        countByIndexStrById.put("undetermined", new HashMap<>());
+        countByIndexStrById.get("TestProject1-TestSample1").put("AGCN-CCGT", 5L);
+
+        lookupCache.drainCounts(countByIndexStrById, "undetermined");
+        lookupCache.drainCounts(countByIndexStrById, "undetermined");
+
+        assertEquals(15L, countByIndexStrById.get("TestProject1-TestSample1").get("AGCN-CCGT"));
+        assertEquals(1L, countByIndexStrById.get("undetermined").get("AGCT-GTAA"));
+        assertTrue(countByIndexStrById.get("TestProject2-TestSample2").isEmpty());
+    }
+
+    @Test
+    void testManyPairs() throws Exception {
+
+        HashSet<SampleIndexSpec> specSet = new HashSet<>();
+        specSet.add(TestUtil.getSampleIndexSpec("TestProject1", "TestSample1", "AGCTAG", null, 1));
+
+        SampleIndexLookup lookup = new SampleIndexLookup(specSet, 6, 0, false, 1, 1);
+        SampleIndexLookupCache lookupCache = new SampleIndexLookupCache(lookup);
+
+        // more pairs than the cache holds still keep their own counter slots as the slot table grows
+        String bases = "ACGT";
+        HashMap<String, Integer> counterSlotByKey = new HashMap<>();
+        for (int i = 0; i < 4096; i++) {
+
+            StringBuilder keyBuilder = new StringBuilder();
+            for (int position = 0, value = i; position < 6; position++, value /= 4) {
+                keyBuilder.append(bases.charAt(value % 4));
+            }
+
+            String key = keyBuilder.toString();
+            counterSlotByKey.put(key, lookupCache.getCounterSlot(PackedIndexKey.pack(key), PackedIndexKey.INVALID_KEY));
+        }
+
+        assertEquals(4096, new HashSet<>(counterSlotByKey.values()).size());
+        for (String key : counterSlotByKey.keySet()) {
+            assertEquals(
+                    (int) counterSlotByKey.get(key),
+                    lookupCache.getCounterSlot(PackedIndexKey.pack(key), PackedIndexKey.INVALID_KEY)
+            );
+        }
+
+        assertEquals(
+                "TestProject1-TestSample1",
+                lookup.getSampleId(lookupCache.getSampleOrdinal(counterSlotByKey.get("AGCTAC")))
+        );
+    }
+}
@@ -84,12 +84,46 @@ class SampleIndexLookupTest {
         assertNull(lookup.lookupProjectSampleId("NNAC", "AACC"));
     }
 
+    @Test
+    void testLookupSampleOrdinal() throws Exception {
+
+        String[][] specArrayArray = {
+                {"TestProject1", "TestSample1", "AGCT", "CCGT", "1"},
+                {"TestProject2", "TestSample2", "CAGG", "GTAA", "1"}
+        };
+        SampleIndexLookup lookup = createSampleIndexLookup(
+                specArrayArray,
+                4, 4, true
+        );
+
+        assertEquals(2, lookup.getSampleNumber());
+
+        // index 2 is matched by its reverse compliment
+        int ordinal = lookup.lookupSampleOrdinal(PackedIndexKey.pack("CAGN"), PackedIndexKey.pack("TTAC"));
+        assertNotEquals(SampleIndexLookup.NO_SAMPLE, ordinal);
+        assertEquals("TestProject2-TestSample2", lookup.getSampleId(ordinal));
+        assertEquals(ordinal, lookup.lookupSampleOrdinal(PackedIndexKey.pack("CAGG")));
+
+        // an index 2 that belongs to another sample, or that cannot be packed, is no match
+        assertEquals(
+                SampleIndexLookup.NO_SAMPLE,
+                lookup.lookupSampleOrdinal(PackedIndexKey.pack("CAGG"), PackedIndexKey.pack("ACGG"))
+        );
+        assertEquals(
+                SampleIndexLookup.NO_SAMPLE,
+                lookup.lookupSampleOrdinal(PackedIndexKey.pack("CAGG"), PackedIndexKey.pack("TT.C"))
+        );
+
+        // keys only match indexes of their own length
+        assertNull(lookup.lookupProjectSampleId("CAGGA", "TTAC"));
+    }
+
     @Test
     void testLookupWithCollision() throws Exception {
 
         String[][] specArrayArray1 = {
                 {"TestProject1", "TestSample1", "AGCT", "CCGT", "1"},
-                {"TestProject2", "TestSample2", "AGCT", "GTAA", "1"},
+                {"TestProject2", "TestSample2", "AGCT", "CCGT", "1"},
                 {"TestProject3", "TestSample3", "TCAC", "AACC", "1"}
         };
 
@@ -105,18 +139,88 @@ class SampleIndexLookupTest {
 
         String[][] specArrayArray2 = {
                 {"TestProject1", "TestSample1", "AGCT", "CCGT", "1"},
-                {"TestProject2", "TestSample2", "ACTC", "GTAA", "1"},
+                {"TestProject2", "TestSample2", "AGCT", "GTAA", "1"},
                 {"TestProject3", "TestSample3", "TCAC", "GTAA", "1"}
         };
 
+        // Throws exceptions without index 2 to tell samples apart
+        assertThrows(
+                RuntimeException.class,
+                () -> {
+                    createSampleIndexLookup(
+                            specArrayArray2, 4, 0, false
+                    );
+                }
+        );
+
+        String[][] specArrayArray3 = {
+                {"TestProject1", "TestSample1", "AGCT", null, "1"},
+                {"TestProject2", "TestSample2", "AGCT", "GTAA", "1"}
+        };
+
         // Throws exceptions
         assertThrows(
                 RuntimeException.class,
                 () -> {
                     createSampleIndexLookup(
-                            specArrayArray2, 4, 4, false
+                            specArrayArray3, 4, 4, false
                     );
                 }
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCombinatorialLookup() throws Exception {
+
+        // samples that share an index 1 or an index 2 are told apart by the pair
+        String[][] specArrayArray = {
+                {"TestProject1", "TestSample1", "AGCT", "CCGT", "1"},
+                {"TestProject1", "TestSample2", "AGCT", "GTAA", "1"},
+                {"TestProject1", "TestSample3", "TCAC", "GTAA", "1"},
+                {"TestProject1", "TestSample4", "TCAC", "CCGT", "1"},
+                {"TestProject2", "TestSample5", "GATG", "TTGC", "1"},
+                {"TestProject2", "TestSample6", "CTGA", null, "1"}
+        };
+        SampleIndexLookup lookup = createSampleIndexLookup(specArrayArray, 4, 4, true);
+
+        assertEquals(6, lookup.getSampleNumber());
+        assertEquals("TestProject1-TestSample1", lookup.lookupProjectSampleId("AGCT", "ACGG"));
+        assertEquals("TestProject1-TestSample2", lookup.lookupProjectSampleId("AGCA", "TTAC"));
+        assertEquals("TestProject1-TestSample3", lookup.lookupProjectSampleId("TCAC", "TNAC"));
+        assertEquals("TestProject1-TestSample4", lookup.lookupProjectSampleId("TCAC", "ACGG"));
+        assertEquals("TestProject2-TestSample5", lookup.lookupProjectSampleId("GATG", "GCAA"));
+        assertEquals("TestProject2-TestSample6", lookup.lookupProjectSampleId("CTGA", "ACGG"));
+
+        // a pair that is no sample's, or an index 2 that matches no barcode, is no match
+        assertNull(lookup.lookupProjectSampleId("GATG", "ACGG"));
+        assertNull(lookup.lookupProjectSampleId("AGCT", "GGGG"));
+
+        // a shared index 1 alone cannot tell its samples apart
+        assertEquals(SampleIndexLookup.NO_SAMPLE, lookup.lookupSampleOrdinal(PackedIndexKey.pack("AGCT")));
+        assertEquals("TestProject2-TestSample5", lookup.lookupProjectSampleId("GATG", null));
+    }
+
+    @Test
+    void testLookupWithPrefixCollision() throws Exception {
+
+        // a barcode shorter than the key collides with any barcode it starts
+        String[][] specArrayArray = {
+                {"TestProject1", "TestSample1", "AGC", "CCGT", "1"},
+                {"TestProject2", "TestSample2", "AGCT", "GTAA", "1"}
+        };
+        assertThrows(RuntimeException.class, () -> createSampleIndexLookup(specArrayArray, 4, 4, false));
+
+        // barcodes that only differ past the key length are one barcode, told apart by index 2
+        String[][] otherSpecArrayArray = {
+                {"TestProject1", "TestSample1", "AGCTA", "CCGT", "1"},
+                {"TestProject2", "TestSample2", "AGGAT", "GTAA", "1"}
+        };
+        assertThrows(RuntimeException.class, () -> createSampleIndexLookup(otherSpecArrayArray, 2, 0, false));
+
+        SampleIndexLookup lookup = createSampleIndexLookup(otherSpecArrayArray, 2, 4, false);
+        assertEquals("TestProject2-TestSample2", lookup.lookupProjectSampleId("AG", "GTAA"));
+
+        lookup = createSampleIndexLookup(otherSpecArrayArray, 4, 4, false);
+        assertEquals("TestProject2-TestSample2", lookup.lookupProjectSampleId("AGGA", "GTAA"));
+    }
+}
@@ -0,0 +1,122 @@
+package demany.SampleIndex;
+
+import demany.Fastq.SequenceOperator;
+import demany.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleIndexMatcherTest {
+
+    private static List<String> getAllKeys(int keyLength) {
+
+        List<String> keyList = new ArrayList<>();
+        keyList.add("");
+        for (int i = 0; i < keyLength; i++) {
+
+            List<String> newKeyList = new ArrayList<>();
+            for (String key : keyList) {
+                for (char character : new char[] {'A', 'C', 'G', 'T', 'N'}) { newKeyList.add(key + character); }
+            }
+
+            keyList = newKeyList;
+        }
+
+        return keyList;
+    }
+
+    // the sample ordinal of each key that the enumerated and pruned sample index key sets match
+    private static HashMap<String, Integer> getEnumeratedOrdinalByKey(
+            String[] barcodeArray, int keyLength, boolean reverseCompliment) throws Exception {
+
+        List<HashSet<String>> keySetList = new ArrayList<>();
+        for (int i = 0; i < barcodeArray.length; i++) {
+            keySetList.add(new SampleIndexKeyMapping(
+                    TestUtil.getSampleIndexSpec("TestProject", "TestSample" + i, barcodeArray[i], null, 1),
+                    keyLength, 0
+            ).getIndex1KeySetCopy());
+        }
+
+        HashMap<String, Integer> ordinalByKey = new HashMap<>();
+        for (int i = 0; i < keySetList.size(); i++) {
+
+            HashSet<String> keySet = new HashSet<>(keySetList.get(i));
+            for (int j = 0; j < keySetList.size(); j++) {
+                if (i != j) { keySet.removeAll(keySetList.get(j)); }
+            }
+
+            for (String key : keySet) {
+                ordinalByKey.put(reverseCompliment ? SequenceOperator.getReverseCompliment(key) : key, i);
+            }
+        }
+
+        return ordinalByKey;
+    }
+
+    private static void assertMatchesEnumeratedKeySets(String[] barcodeArray, int keyLength, boolean reverseCompliment)
+            throws Exception {
+
+        HashMap<String, Integer> ordinalByKey = getEnumeratedOrdinalByKey(barcodeArray, keyLength, reverseCompliment);
+        SampleIndexMatcher matcher = new SampleIndexMatcher(barcodeArray, keyLength, 1, reverseCompliment);
+
+        for (String key : getAllKeys(keyLength)) {
+            assertEquals(
+                    ordinalByKey.getOrDefault(key, SampleIndexMatcher.NO_SAMPLE),
+                    matcher.match(PackedIndexKey.pack(key)),
+                    key
+            );
+        }
+    }
+
+    @Test
+    void testMatchesEnumeratedKeySets() throws Exception {
+
+        // overlapping barcodes, barcodes shorter and longer than the key, N and non base characters
+        assertMatchesEnumeratedKeySets(new String[] {"AGCT", "ACGT", "TCAC"}, 4, false);
+        assertMatchesEnumeratedKeySets(new String[] {"AGC", "AGCTA", "TTGN", "CA"}, 4, false);
+        assertMatchesEnumeratedKeySets(new String[] {"AGC", "AGCTA", "TTGN", "CA"}, 4, true);
+        assertMatchesEnumeratedKeySets(new String[] {"AGXT", "CCGG", "NNGG"}, 4, false);
+        assertMatchesEnumeratedKeySets(new String[] {"ACG", "TTA", "GGCAT"}, 5, true);
+    }
+
+    @Test
+    void testMismatchLimits() {
+
+        String[] barcodeArray = {"ACGTAC", "ACGGTC", "TTGCAA", "GATTACA", null};
+
+        for (int mismatchLimit = 0; mismatchLimit < 4; mismatchLimit++) {
+
+            SampleIndexMatcher matcher = new SampleIndexMatcher(barcodeArray, 6, mismatchLimit, false);
+
+            for (String key : getAllKeys(6)) {
+
+                // count mismatches character by character, the barcode without one is never matched
+                int expectedOrdinal = SampleIndexMatcher.NO_SAMPLE;
+                for (int i = 0; i < barcodeArray.length - 1; i++) {
+
+                    int mismatchNumber = 0;
+                    for (int position = 0; position < 6; position++) {
+                        if (key.charAt(position) != barcodeArray[i].charAt(position)) { mismatchNumber++; }
+                    }
+                    if (mismatchNumber > mismatchLimit) { continue; }
+
+                    expectedOrdinal = expectedOrdinal == SampleIndexMatcher.NO_SAMPLE ? i : -2;
+                }
+                if (expectedOrdinal == -2) { expectedOrdinal = SampleIndexMatcher.NO_SAMPLE; }
+
+                assertEquals(expectedOrdinal, matcher.match(PackedIndexKey.pack(key)), key);
+            }
+        }
+
+        assertEquals(
+                SampleIndexMatcher.NO_SAMPLE,
+                new SampleIndexMatcher(barcodeArray, 6, 1, false).match(PackedIndexKey.INVALID_KEY)
+        );
+        assertThrows(RuntimeException.class, () -> new SampleIndexMatcher(barcodeArray, 6, -1, false));
+    }
+}
@@ -3,6 +3,13 @@ package demany;
 import demany.SampleIndex.SampleIndexSpec;
 import org.json.simple.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
 public class TestUtil {
 
     public static JSONObject createSampleIndexJSON(String project, String sample, String index1, String index2,
@@ -30,4 +37,45 @@ public class TestUtil {
         return getSampleIndexSpec(createSampleIndexJSON(project, sample, index1, index2, lane));
     }
 
+    // writes the bytes as bgzf the way bcl2fastq does, in members of at most the given number of uncompressed bytes
+    // followed by the empty end of file member
+    public static void writeBgzf(Path path, byte[] bytes, int blockSize) throws IOException {
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+
+            for (int offset = 0; offset < bytes.length; offset += blockSize) {
+                writeBgzfBlock(outputStream, bytes, offset, Math.min(blockSize, bytes.length - offset));
+            }
+
+            writeBgzfBlock(outputStream, bytes, 0, 0);
+        }
+    }
+
+    private static void writeBgzfBlock(OutputStream outputStream, byte[] bytes, int offset, int length)
+            throws IOException {
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        byte[] compressedBytes = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressedBytes);
+        deflater.end();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+
+        // the header's extra field holds the size of the member less one
+        int blockSizeField = 18 + compressedLength + 8 - 1;
+        outputStream.write(new byte[]{
+                0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) blockSizeField, (byte) (blockSizeField >> 8)
+        });
+        outputStream.write(compressedBytes, 0, compressedLength);
+        writeIntLE(outputStream, (int) crc32.getValue());
+        writeIntLE(outputStream, length);
+    }
+
+    private static void writeIntLE(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
 }
@@ -0,0 +1,67 @@
+package demany.Threading;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchSizeControllerTest {
+
+    private static void classifyWindow(BatchSizeController batchSizeController, long nanos, double occupancy) {
+        for (int i = 0; i < BatchSizeController.WINDOW_GROUP_NUMBER; i++) {
+            batchSizeController.recordSequenceGroupClassified(nanos, occupancy);
+        }
+    }
+
+    @Test
+    void testSequenceNumberFollowsBytesPerSequence() {
+
+        BatchSizeController batchSizeController = new BatchSizeController(1L << 40, 4);
+        assertEquals(BatchSizeController.INITIAL_GROUP_BYTE_NUMBER, batchSizeController.getGroupByteNumber());
+
+        // long reads make for fewer sequences per group than short ones
+        batchSizeController.recordSequenceGroupRead(2048L * 1000, 1000);
+        assertEquals(4096, batchSizeController.getSequenceNumber());
+
+        BatchSizeController shortReadController = new BatchSizeController(1L << 40, 4);
+        shortReadController.recordSequenceGroupRead(16L * 1000, 1000);
+        assertEquals(BatchSizeController.MAX_SEQUENCE_NUMBER, shortReadController.getSequenceNumber());
+    }
+
+    @Test
+    void testGroupBytesFollowClassificationTimeAndOccupancy() {
+
+        BatchSizeController batchSizeController = new BatchSizeController(1L << 40, 4);
+        long initialGroupByteNumber = batchSizeController.getGroupByteNumber();
+
+        // quick groups grow, but not before a window of them has been seen
+        for (int i = 0; i < BatchSizeController.WINDOW_GROUP_NUMBER - 1; i++) {
+            batchSizeController.recordSequenceGroupClassified(1000, 1);
+        }
+        assertEquals(initialGroupByteNumber, batchSizeController.getGroupByteNumber());
+
+        batchSizeController.recordSequenceGroupClassified(1000, 1);
+        assertEquals(initialGroupByteNumber * 2, batchSizeController.getGroupByteNumber());
+
+        // slow groups only shrink while the rings are running low
+        classifyWindow(batchSizeController, BatchSizeController.MAX_GROUP_NANOS * 2, 1);
+        assertEquals(initialGroupByteNumber * 2, batchSizeController.getGroupByteNumber());
+
+        classifyWindow(batchSizeController, BatchSizeController.MAX_GROUP_NANOS * 2, 0);
+        assertEquals(initialGroupByteNumber, batchSizeController.getGroupByteNumber());
+
+        for (int i = 0; i < 20; i++) {
+            classifyWindow(batchSizeController, BatchSizeController.MAX_GROUP_NANOS * 2, 0);
+        }
+        assertEquals(BatchSizeController.MIN_GROUP_BYTE_NUMBER, batchSizeController.getGroupByteNumber());
+    }
+
+    @Test
+    void testGroupBytesFitTheInFlightByteBudget() {
+
+        BatchSizeController batchSizeController = new BatchSizeController(32L * 1024 * 1024, 4);
+        assertEquals(4L * 1024 * 1024, batchSizeController.getGroupByteNumber());
+
+        classifyWindow(batchSizeController, 1000, 1);
+        assertEquals(4L * 1024 * 1024, batchSizeController.getGroupByteNumber());
+    }
+}
@@ -0,0 +1,352 @@
+package demany.Threading;
+
+import demany.Context.DemultiplexingContext;
+import demany.Fastq.Fastq;
+import demany.Fastq.MasterFastqShard;
+import demany.SampleIndex.SampleIndexSpec;
+import demany.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DemultiplexingPipelineTest {
+
+    private static final String LANE_STR = "L001";
+    private static final String[] READ_TYPES = {"R1", "I1", "I2", "R2"};
+    private static final int INDEX_LENGTH = 8;
+    private static final int SAMPLE_NUMBER = 6;
+    private static final int SEQUENCE_NUMBER = 3000;
+
+    // small enough that only a sequence group or two is ever in flight
+    private static final long IN_FLIGHT_BYTE_BUDGET = 4096;
+
+    @TempDir
+    Path tempDirPath;
+
+    private Map<String, Fastq> masterFastqByReadType;
+    private Set<SampleIndexSpec> sampleIndexSpecSet;
+
+    // the records each id should get by read type, and its counts by index string
+    private final Map<String, Map<String, List<String>>> expectedRecordListByReadTypeById = new HashMap<>();
+    private final Map<String, Map<String, Long>> expectedCountByIndexStrById = new HashMap<>();
+
+    private static String getRandomBases(Random random, int length) {
+
+        char[] bases = {'A', 'C', 'G', 'T'};
+
+        StringBuilder basesBuilder = new StringBuilder();
+        for (int i = 0; i < length; i++) { basesBuilder.append(bases[random.nextInt(bases.length)]); }
+
+        return basesBuilder.toString();
+    }
+
+    private static int getMismatchNumber(String index, String barcode) {
+
+        int mismatchNumber = 0;
+        for (int i = 0; i < index.length(); i++) {
+            if (index.charAt(i) != barcode.charAt(i)) { mismatchNumber++; }
+        }
+
+        return mismatchNumber;
+    }
+
+    // barcodes at least 3 mismatches apart, so that an index is within 1 mismatch of at most one of them
+    private static String[] getBarcodes(Random random) {
+
+        String[] barcodes = new String[SAMPLE_NUMBER];
+        for (int i = 0; i < SAMPLE_NUMBER; i++) {
+
+            boolean tooClose;
+            do {
+
+                barcodes[i] = getRandomBases(random, INDEX_LENGTH);
+
+                tooClose = false;
+                for (int j = 0; j < i; j++) { tooClose |= getMismatchNumber(barcodes[i], barcodes[j]) < 3; }
+
+            } while (tooClose);
+        }
+
+        return barcodes;
+    }
+
+    // the reference classification, the one sample both of whose barcodes the indexes are within 1 mismatch of
+    private String classify(String index1, String index2) {
+
+        for (SampleIndexSpec sampleIndexSpec : this.sampleIndexSpecSet) {
+            if (getMismatchNumber(index1, sampleIndexSpec.index1) <= 1 &&
+                    getMismatchNumber(index2, sampleIndexSpec.index2) <= 1) {
+                return sampleIndexSpec.id;
+            }
+        }
+
+        return DemultiplexingContext.UNDETERMINED_ID;
+    }
+
+    // writes the master fastqs, each as the given number of gzip members, or as bgzf the way bcl2fastq does
+    private void writeMasterFastqs(int memberNumber, boolean bgzf) throws Exception {
+
+        Random random = new Random(1);
+
+        String[] index1Barcodes = getBarcodes(random);
+        String[] index2Barcodes = getBarcodes(random);
+
+        this.sampleIndexSpecSet = new HashSet<>();
+        for (int i = 0; i < SAMPLE_NUMBER; i++) {
+            this.sampleIndexSpecSet.add(new SampleIndexSpec(
+                    "Project-Sample" + i, "Project", "Sample" + i, index1Barcodes[i], index2Barcodes[i], 1
+            ));
+        }
+
+        Path masterFastqsDirPath = Files.createDirectory(this.tempDirPath.resolve("master-fastqs"));
+
+        Map<String, List<String>> recordListByReadType = new HashMap<>();
+        for (String readType : READ_TYPES) { recordListByReadType.put(readType, new ArrayList<>()); }
+
+        for (int i = 0; i < SEQUENCE_NUMBER; i++) {
+
+            // most sequences are from a sample, some with a mismatch, the rest are from no sample
+            int sampleIndex = random.nextInt(SAMPLE_NUMBER + 2);
+
+            String index1;
+            String index2;
+            if (sampleIndex < SAMPLE_NUMBER) {
+
+                char[] index1Characters = index1Barcodes[sampleIndex].toCharArray();
+                if (random.nextInt(4) == 0) { index1Characters[random.nextInt(INDEX_LENGTH)] = 'N'; }
+                if (random.nextInt(4) == 0) { index1Characters[random.nextInt(INDEX_LENGTH)] = 'A'; }
+
+                index1 = new String(index1Characters);
+                index2 = random.nextInt(8) == 0 ?
+                        getRandomBases(random, INDEX_LENGTH) : index2Barcodes[sampleIndex];
+
+            } else {
+
+                index1 = getRandomBases(random, INDEX_LENGTH);
+                index2 = getRandomBases(random, INDEX_LENGTH);
+            }
+
+            String id = classify(index1, index2);
+            this.expectedCountByIndexStrById.computeIfAbsent(id, k -> new HashMap<>())
+                    .merge(index1 + "-" + index2, 1L, Long::sum);
+
+            Map<String, String> basesByReadType = Map.of(
+                    "R1", getRandomBases(random, 50 + random.nextInt(3)),
+                    "I1", index1,
+                    "I2", index2,
+                    "R2", getRandomBases(random, 40)
+            );
+
+            for (String readType : READ_TYPES) {
+
+                String bases = basesByReadType.get(readType);
+                String record = "@A00521:143:HWY2CDSXX:4:1101:" + i + ":1000 " + readType + "\n" + bases + "\n+\n" +
+                        "F".repeat(bases.length()) + "\n";
+
+                recordListByReadType.get(readType).add(record);
+                this.expectedRecordListByReadTypeById.computeIfAbsent(id, k -> new HashMap<>())
+                        .computeIfAbsent(readType, k -> new ArrayList<>())
+                        .add(record);
+            }
+        }
+
+        this.masterFastqByReadType = new HashMap<>();
+        for (String readType : READ_TYPES) {
+
+            Fastq fastq = Fastq.getUndeterminedFastqAtDir(masterFastqsDirPath, LANE_STR, readType);
+            this.masterFastqByReadType.put(readType, fastq);
+
+            List<String> recordList = recordListByReadType.get(readType);
+            if (bgzf) {
+                TestUtil.writeBgzf(
+                        fastq.path, String.join("", recordList).getBytes(StandardCharsets.US_ASCII), 16384
+                );
+                continue;
+            }
+
+            try (OutputStream outputStream = Files.newOutputStream(fastq.path)) {
+                for (int i = 0; i < memberNumber; i++) {
+
+                    GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+                    for (String record : recordList.subList(
+                            recordList.size() * i / memberNumber, recordList.size() * (i + 1) / memberNumber)) {
+                        gzipOutputStream.write(record.getBytes(StandardCharsets.US_ASCII));
+                    }
+                    gzipOutputStream.finish();
+                }
+            }
+        }
+    }
+
+    private DemultiplexingContext createDemultiplexingContext(String runName) throws IOException {
+
+        Path runDirPath = Files.createDirectory(this.tempDirPath.resolve(runName));
+
+        return new DemultiplexingContext(
+                Map.of(LANE_STR, List.of(this.masterFastqByReadType)),
+                Map.of(LANE_STR, this.sampleIndexSpecSet),
+                INDEX_LENGTH,
+                INDEX_LENGTH,
+                false,
+                1,
+                1,
+                Files.createDirectory(runDirPath.resolve("demultiplexed-fastqs")),
+                Files.createDirectory(runDirPath.resolve("index-counts"))
+        );
+    }
+
+    private static List<String> readRecords(Path path) throws IOException {
+
+        List<String> recordList = new ArrayList<>();
+        if (!Files.exists(path)) { return recordList; }
+
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.US_ASCII))) {
+
+            StringBuilder recordBuilder = new StringBuilder();
+            String line;
+            for (int lineNumber = 1; (line = bufferedReader.readLine()) != null; lineNumber++) {
+
+                recordBuilder.append(line).append("\n");
+
+                if (lineNumber % 4 == 0) {
+                    recordList.add(recordBuilder.toString());
+                    recordBuilder.setLength(0);
+                }
+            }
+
+            assertEquals(0, recordBuilder.length());
+        }
+
+        return recordList;
+    }
+
+    // each id's records should be the expected ones in any order, and its index counts the expected ones
+    private void checkOutput(DemultiplexingContext demultiplexingContext,
+                             Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr)
+            throws IOException {
+
+        Map<String, Map<String, Fastq>> outputFastqByReadTypeById =
+                demultiplexingContext.outputFastqByReadTypeByIdByLaneStr.get(LANE_STR);
+
+        for (String id : outputFastqByReadTypeById.keySet()) {
+
+            for (String readType : READ_TYPES) {
+
+                List<String> expectedRecordList = new ArrayList<>(
+                        this.expectedRecordListByReadTypeById.getOrDefault(id, Map.of())
+                                .getOrDefault(readType, List.of())
+                );
+                List<String> recordList = readRecords(outputFastqByReadTypeById.get(id).get(readType).path);
+
+                Collections.sort(expectedRecordList);
+                Collections.sort(recordList);
+                assertEquals(expectedRecordList, recordList, id + " " + readType);
+            }
+
+            Map<String, Long> countByIndexStr = new HashMap<>(
+                    countByIndexStrByIdByLaneStr.get(LANE_STR).getOrDefault(id, Map.of())
+            );
+            countByIndexStr.values().removeIf(count -> count == 0);
+
+            assertEquals(this.expectedCountByIndexStrById.getOrDefault(id, Map.of()), countByIndexStr, id);
+        }
+
+        // every expected id was written
+        assertTrue(outputFastqByReadTypeById.keySet().containsAll(this.expectedRecordListByReadTypeById.keySet()));
+    }
+
+    private List<MasterFastqShard> getMasterFastqShardList(int maxShardNumber) throws IOException {
+        return MasterFastqShard.getMasterFastqShardList(LANE_STR, this.masterFastqByReadType, maxShardNumber, 1);
+    }
+
+    @Test
+    void testDemultiplexingPipeline() throws Exception {
+
+        writeMasterFastqs(1, false);
+
+        DemultiplexingContext demultiplexingContext = createDemultiplexingContext("whole-lane");
+
+        Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr = new DemultiplexingPipeline(
+                1,
+                1,
+                IN_FLIGHT_BYTE_BUDGET,
+                Map.of(LANE_STR, getMasterFastqShardList(1)),
+                Map.of(LANE_STR, 3),
+                demultiplexingContext
+        ).run();
+
+        checkOutput(demultiplexingContext, countByIndexStrByIdByLaneStr);
+    }
+
+    @Test
+    void testMultipleMemberDemultiplexingPipeline() throws Exception {
+
+        // fastqs of many members are inflated ahead of their readers by the inflate stage
+        writeMasterFastqs(40, false);
+
+        DemultiplexingContext demultiplexingContext = createDemultiplexingContext("multiple-member");
+
+        Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr = new DemultiplexingPipeline(
+                1,
+                1,
+                IN_FLIGHT_BYTE_BUDGET,
+                Map.of(LANE_STR, getMasterFastqShardList(1)),
+                Map.of(LANE_STR, 3),
+                demultiplexingContext
+        ).run();
+
+        checkOutput(demultiplexingContext, countByIndexStrByIdByLaneStr);
+    }
+
+    @Test
+    void testShardedDemultiplexingPipeline() throws Exception {
+
+        writeMasterFastqs(1, true);
+
+        List<MasterFastqShard> masterFastqShardList = getMasterFastqShardList(3);
+        assertEquals(3, masterFastqShardList.size());
+
+        DemultiplexingContext demultiplexingContext = createDemultiplexingContext("sharded");
+
+        Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr = new DemultiplexingPipeline(
+                1,
+                1,
+                IN_FLIGHT_BYTE_BUDGET,
+                Map.of(LANE_STR, masterFastqShardList),
+                Map.of(LANE_STR, 3),
+                demultiplexingContext
+        ).run();
+
+        checkOutput(demultiplexingContext, countByIndexStrByIdByLaneStr);
+    }
+
+    @Test
+    void testSharedNothingPipeline() throws Exception {
+
+        writeMasterFastqs(1, true);
+
+        DemultiplexingContext demultiplexingContext = createDemultiplexingContext("shared-nothing");
+
+        Map<String, Map<String, Map<String, Long>>> countByIndexStrByIdByLaneStr = new SharedNothingPipeline(
+                1,
+                IN_FLIGHT_BYTE_BUDGET,
+                Map.of(LANE_STR, getMasterFastqShardList(3)),
+                demultiplexingContext
+        ).run();
+
+        checkOutput(demultiplexingContext, countByIndexStrByIdByLaneStr);
+    }
+}
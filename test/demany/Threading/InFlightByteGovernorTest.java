@@ -0,0 +1,92 @@
+package demany.Threading;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InFlightByteGovernorTest {
+
+    @Test
+    void testAcquireAndRelease() {
+
+        InFlightByteGovernor inFlightByteGovernor = new InFlightByteGovernor(100);
+
+        assertTrue(inFlightByteGovernor.tryToAcquire(60));
+        assertTrue(inFlightByteGovernor.tryToAcquire(40));
+        assertFalse(inFlightByteGovernor.tryToAcquire(1));
+
+        inFlightByteGovernor.release(60);
+        assertTrue(inFlightByteGovernor.tryToAcquire(50));
+        assertEquals(90, inFlightByteGovernor.getInFlightByteNumber());
+
+        // a group larger than the budget still fits once nothing else is in flight
+        inFlightByteGovernor.release(90);
+        assertTrue(inFlightByteGovernor.tryToAcquire(500));
+
+        assertThrows(RuntimeException.class, () -> inFlightByteGovernor.release(501));
+    }
+
+    @Test
+    void testReadAhead() {
+
+        InFlightByteGovernor inFlightByteGovernor = new InFlightByteGovernor(100);
+
+        // read ahead only takes room that is free, and never larger than the budget
+        assertTrue(inFlightByteGovernor.tryToAcquireReadAhead(70));
+        assertFalse(inFlightByteGovernor.tryToAcquireReadAhead(40));
+
+        // a group still fits when only read ahead is in flight
+        assertTrue(inFlightByteGovernor.tryToAcquire(500));
+        assertFalse(inFlightByteGovernor.tryToAcquire(1));
+        assertFalse(inFlightByteGovernor.tryToAcquireReadAhead(1));
+
+        // read ahead and group bytes are released on their own
+        assertThrows(RuntimeException.class, () -> inFlightByteGovernor.release(501));
+        assertThrows(RuntimeException.class, () -> inFlightByteGovernor.releaseReadAhead(71));
+
+        inFlightByteGovernor.releaseReadAhead(70);
+        inFlightByteGovernor.release(500);
+        assertEquals(0, inFlightByteGovernor.getInFlightByteNumber());
+    }
+
+    @Test
+    void testHeldBytes() {
+
+        InFlightByteGovernor inFlightByteGovernor = new InFlightByteGovernor(100);
+
+        // held bytes are charged even past the budget, and a group still fits when only they are in flight
+        inFlightByteGovernor.hold(150);
+        assertEquals(150, inFlightByteGovernor.getInFlightByteNumber());
+        assertTrue(inFlightByteGovernor.tryToAcquire(50));
+        assertFalse(inFlightByteGovernor.tryToAcquire(1));
+
+        // held bytes are not released until they have been let go
+        assertThrows(RuntimeException.class, () -> inFlightByteGovernor.release(51));
+        assertThrows(RuntimeException.class, () -> inFlightByteGovernor.letGo(151));
+
+        inFlightByteGovernor.letGo(150);
+        inFlightByteGovernor.release(200);
+        assertEquals(0, inFlightByteGovernor.getInFlightByteNumber());
+        assertEquals(0, inFlightByteGovernor.getHeldByteNumber());
+    }
+
+    @Test
+    void testBudgetShrinksAndGrowsBack() {
+
+        InFlightByteGovernor inFlightByteGovernor = new InFlightByteGovernor(800);
+
+        // the budget halves under heap pressure, but never below its floor
+        inFlightByteGovernor.shrinkBudget();
+        assertEquals(400, inFlightByteGovernor.getByteBudget());
+
+        for (int i = 0; i < 10; i++) { inFlightByteGovernor.shrinkBudget(); }
+        assertEquals(100, inFlightByteGovernor.getByteBudget());
+
+        assertTrue(inFlightByteGovernor.tryToAcquire(60));
+        assertFalse(inFlightByteGovernor.tryToAcquire(60));
+
+        // releases grow the budget back while the heap is not under pressure
+        inFlightByteGovernor.release(60);
+        assertEquals(200, inFlightByteGovernor.getByteBudget());
+    }
+}
@@ -0,0 +1,97 @@
+package demany.Threading;
+
+import demany.Fastq.CompressedSequenceGroup;
+import demany.Fastq.FastqScanner;
+import demany.Fastq.SequenceBlock;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleAccumulatorTest {
+
+    // each sequence is 22 bytes
+    private static final String FASTQ =
+            "@r1\nACGTACG\n+\nFFFFFFF\n" +
+            "@r2\nTTGCAAG\n+\nF:FFF,F\n" +
+            "@r3\nGGNNCCA\n+\nFF##FFF\n";
+
+    private static CompressedSequenceGroup createGroup(SequenceBlock sequenceBlock, int... sequenceIndexes) {
+
+        CompressedSequenceGroup compressedSequenceGroup = new CompressedSequenceGroup(Set.of("R1"));
+        for (int sequenceIndex : sequenceIndexes) {
+            compressedSequenceGroup.addSequence("R1", sequenceBlock, sequenceIndex);
+        }
+        compressedSequenceGroup.markCompleted();
+
+        return compressedSequenceGroup;
+    }
+
+    @Test
+    void testSmallSamplesAreHeldUntilTheThreshold() throws IOException {
+
+        SequenceBlock sequenceBlock = new FastqScanner(
+                new ByteArrayInputStream(FASTQ.getBytes(StandardCharsets.US_ASCII))
+        ).scanSequences(10);
+
+        InFlightByteGovernor inFlightByteGovernor = new InFlightByteGovernor(1000);
+        SampleAccumulator sampleAccumulator =
+                new SampleAccumulator(40, Set.of("L001"), Set.of("R1"), inFlightByteGovernor);
+
+        // a sample with enough sequences of its own is passed straight on, a sample with too few is held
+        CompressedSequenceGroup largeGroup = createGroup(sequenceBlock, 0, 1);
+        HashMap<String, CompressedSequenceGroup> firstGroupById = new HashMap<>();
+        firstGroupById.put("large", largeGroup);
+        firstGroupById.put("small", createGroup(sequenceBlock, 2));
+
+        HashMap<String, CompressedSequenceGroup> readyGroupById = sampleAccumulator.accumulate("L001", firstGroupById);
+        assertEquals(Set.of("large"), readyGroupById.keySet());
+        assertSame(largeGroup, readyGroupById.get("large"));
+
+        // only the held sequences are charged
+        assertEquals(22, inFlightByteGovernor.getHeldByteNumber());
+        assertEquals(0, SampleAccumulator.getLetGoByteNumber(readyGroupById, firstGroupById));
+
+        // the small sample is let go once its held sequences reach the threshold
+        HashMap<String, CompressedSequenceGroup> secondGroupById = new HashMap<>();
+        secondGroupById.put("small", createGroup(sequenceBlock, 0));
+        secondGroupById.put("smaller", createGroup(sequenceBlock, 1));
+
+        readyGroupById = sampleAccumulator.accumulate("L001", secondGroupById);
+        assertEquals(Set.of("small"), readyGroupById.keySet());
+        assertEquals(44, readyGroupById.get("small").getUncompressedByteNumber());
+        assertTrue(readyGroupById.get("small").isCompleted());
+
+        // the let go sequences stay in flight until they are released with the group
+        assertEquals(44, SampleAccumulator.getLetGoByteNumber(readyGroupById, secondGroupById));
+        assertEquals(22, inFlightByteGovernor.getHeldByteNumber());
+        assertEquals(66, inFlightByteGovernor.getInFlightByteNumber());
+
+        // the rest are let go when the lane ends
+        readyGroupById = sampleAccumulator.drain("L001");
+        assertEquals(Set.of("smaller"), readyGroupById.keySet());
+        assertTrue(readyGroupById.get("smaller").isCompleted());
+        assertEquals(22, SampleAccumulator.getLetGoByteNumber(readyGroupById, Map.of()));
+        assertEquals(0, inFlightByteGovernor.getHeldByteNumber());
+
+        inFlightByteGovernor.release(66);
+        assertEquals(0, inFlightByteGovernor.getInFlightByteNumber());
+        assertTrue(sampleAccumulator.drain("L001").isEmpty());
+
+        assertThrows(RuntimeException.class, () -> sampleAccumulator.drain("L002"));
+    }
+
+    @Test
+    void testByteThreshold() {
+
+        assertEquals(SampleAccumulator.MAX_BYTE_THRESHOLD, SampleAccumulator.getByteThreshold(1L << 40, 10));
+        assertEquals(1000, SampleAccumulator.getByteThreshold(400000, 100));
+        assertEquals(1, SampleAccumulator.getByteThreshold(1, 100));
+    }
+}
@@ -0,0 +1,80 @@
+package demany.Threading;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageThreadControllerTest {
+
+    @Test
+    void testRebalanceMovesThreadsToTheStageThatIsBehind() {
+
+        AtomicInteger classificationBacklog = new AtomicInteger(0);
+        AtomicInteger compressionBacklog = new AtomicInteger(0);
+
+        PipelineStage classificationStage = new PipelineStage(
+                "classification", Runnable::run, 4, classificationBacklog::get
+        );
+        PipelineStage compressionStage = new PipelineStage(
+                "compression", Runnable::run, 2, compressionBacklog::get
+        );
+
+        StageThreadController stageThreadController = new StageThreadController(
+                List.of(classificationStage, compressionStage)
+        );
+
+        // nothing is behind
+        assertFalse(stageThreadController.rebalance());
+
+        // compression falls behind while classification is idle, threads move until classification has just one
+        compressionBacklog.set(20);
+        while (stageThreadController.rebalance()) {
+            assertEquals(6, getThreadLimitSum(classificationStage, compressionStage));
+        }
+
+        assertEquals(1, classificationStage.getThreadLimit());
+        assertEquals(5, compressionStage.getThreadLimit());
+
+        // a thread is not moved if it would leave the other stage as far behind
+        classificationBacklog.set(2);
+        compressionBacklog.set(9);
+        assertFalse(stageThreadController.rebalance());
+    }
+
+    @Test
+    void testStageRunsNoMoreTasksThanItsLimit() {
+
+        List<Runnable> executedRunnableList = new ArrayList<>();
+        PipelineStage pipelineStage = new PipelineStage("write", executedRunnableList::add, 1, () -> 0);
+
+        // the second task waits until the first has finished
+        pipelineStage.submit(() -> { });
+        pipelineStage.submit(() -> { });
+        assertEquals(1, executedRunnableList.size());
+        assertEquals(1, pipelineStage.getWaitingTaskNumber());
+
+        executedRunnableList.get(0).run();
+        assertEquals(2, executedRunnableList.size());
+        assertEquals(0, pipelineStage.getWaitingTaskNumber());
+
+        // raising the limit starts waiting tasks straight away
+        pipelineStage.submit(() -> { });
+        pipelineStage.submit(() -> { });
+        assertEquals(2, executedRunnableList.size());
+
+        pipelineStage.setThreadLimit(3);
+        assertEquals(4, executedRunnableList.size());
+    }
+
+    private static int getThreadLimitSum(PipelineStage... pipelineStages) {
+
+        int threadLimitSum = 0;
+        for (PipelineStage pipelineStage : pipelineStages) { threadLimitSum += pipelineStage.getThreadLimit(); }
+
+        return threadLimitSum;
+    }
+}
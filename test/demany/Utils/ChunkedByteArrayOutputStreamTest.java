@@ -0,0 +1,70 @@
+package demany.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedByteArrayOutputStreamTest {
+
+    @Test
+    void testWriteAcrossChunks() throws IOException {
+
+        byte[] bytes = new byte[ChunkedByteArrayOutputStream.CHUNK_SIZE * 2 + 123];
+        new Random(7).nextBytes(bytes);
+
+        ChunkedByteArrayOutputStream chunkedByteArrayOutputStream = new ChunkedByteArrayOutputStream();
+        chunkedByteArrayOutputStream.write(bytes[0]);
+        chunkedByteArrayOutputStream.write(bytes, 1, 1000);
+        chunkedByteArrayOutputStream.write(ByteBuffer.wrap(bytes), 1001, bytes.length - 1001);
+
+        assertEquals(bytes.length, chunkedByteArrayOutputStream.size());
+        assertArrayEquals(bytes, chunkedByteArrayOutputStream.toByteArray());
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        chunkedByteArrayOutputStream.writeTo(byteArrayOutputStream);
+        assertArrayEquals(bytes, byteArrayOutputStream.toByteArray());
+    }
+
+    @Test
+    void testReleaseReturnsChunksToThePool() {
+
+        ChunkedByteArrayOutputStream chunkedByteArrayOutputStream = new ChunkedByteArrayOutputStream();
+        chunkedByteArrayOutputStream.write(new byte[ChunkedByteArrayOutputStream.CHUNK_SIZE + 1], 0,
+                ChunkedByteArrayOutputStream.CHUNK_SIZE + 1);
+
+        int pooledChunkNumber = ChunkedByteArrayOutputStream.getPooledChunkNumber();
+        chunkedByteArrayOutputStream.release();
+        assertEquals(pooledChunkNumber + 2, ChunkedByteArrayOutputStream.getPooledChunkNumber());
+
+        // releasing twice does not pool the chunks twice, and the stream cannot be used again
+        chunkedByteArrayOutputStream.release();
+        assertEquals(pooledChunkNumber + 2, ChunkedByteArrayOutputStream.getPooledChunkNumber());
+        assertThrows(RuntimeException.class, () -> chunkedByteArrayOutputStream.write(1));
+        assertThrows(RuntimeException.class, chunkedByteArrayOutputStream::toByteArray);
+
+        // a new stream takes its chunk from the pool
+        new ChunkedByteArrayOutputStream().write(1);
+        assertEquals(pooledChunkNumber + 1, ChunkedByteArrayOutputStream.getPooledChunkNumber());
+    }
+
+    @Test
+    void testEmptyPool() {
+
+        ChunkedByteArrayOutputStream chunkedByteArrayOutputStream = new ChunkedByteArrayOutputStream();
+        chunkedByteArrayOutputStream.write(1);
+        chunkedByteArrayOutputStream.release();
+        assertTrue(ChunkedByteArrayOutputStream.getPooledChunkNumber() > 0);
+
+        ChunkedByteArrayOutputStream.emptyPool();
+        assertEquals(0, ChunkedByteArrayOutputStream.getPooledChunkNumber());
+
+        // the pool holds no more of the heap than its share
+        assertTrue((long) ChunkedByteArrayOutputStream.MAX_POOLED_CHUNK_NUMBER * ChunkedByteArrayOutputStream.CHUNK_SIZE
+                <= Runtime.getRuntime().maxMemory() / 32);
+    }
+}
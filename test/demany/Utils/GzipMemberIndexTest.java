@@ -0,0 +1,109 @@
+package demany.Utils;
+
+import demany.TestUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipMemberIndexTest {
+
+    @TempDir
+    Path tempDirPath;
+
+    private static byte[] createLines(int lineNumber, int seed) {
+
+        Random random = new Random(seed);
+
+        StringBuilder linesBuilder = new StringBuilder();
+        for (int i = 0; i < lineNumber; i++) {
+            linesBuilder.append(i).append(" ").append("ACGT".repeat(random.nextInt(40))).append("\n");
+        }
+
+        return linesBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+
+        StringBuilder lineBuilder = new StringBuilder();
+        int b;
+        while ((b = inputStream.read()) != '\n') {
+
+            assertNotEquals(-1, b);
+            lineBuilder.append((char) b);
+        }
+
+        return lineBuilder.toString();
+    }
+
+    @Test
+    void testInputStreamAtLine() throws IOException {
+
+        // members far smaller than a line's share of the file, so that lines start in members before their own
+        Path path = this.tempDirPath.resolve("lines.gz");
+        TestUtil.writeBgzf(path, createLines(5000, 1), 1000);
+
+        // counting the lines on several threads gives the same index as on one
+        GzipMemberIndex gzipMemberIndex = GzipMemberIndex.build(path, 3);
+        assertEquals(5000, gzipMemberIndex.lineCount);
+        assertEquals(GzipMemberIndex.build(path, 1).getMemberNumber(), gzipMemberIndex.getMemberNumber());
+        assertTrue(gzipMemberIndex.getMemberNumber() > 100);
+
+        for (long lineNumber : new long[]{0, 1, 7, 1234, 2500, 4999}) {
+            try (InputStream inputStream = gzipMemberIndex.getInputStreamAtLine(lineNumber)) {
+
+                // the stream reads on from the line through the members that follow
+                assertTrue(readLine(inputStream).startsWith(lineNumber + " "));
+                if (lineNumber < 4999) { assertTrue(readLine(inputStream).startsWith((lineNumber + 1) + " ")); }
+            }
+        }
+
+        try (InputStream inputStream = gzipMemberIndex.getInputStreamAtLine(5000)) {
+            assertEquals(-1, inputStream.read());
+        }
+
+        assertThrows(RuntimeException.class, () -> gzipMemberIndex.getInputStreamAtLine(5001));
+    }
+
+    @Test
+    void testNotBgzf() throws IOException {
+
+        // plain gzip files, even of several members, cannot be indexed without inflating them
+        Path path = this.tempDirPath.resolve("lines.gz");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            for (int i = 0; i < 2; i++) {
+
+                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+                gzipOutputStream.write(createLines(100, i));
+                gzipOutputStream.finish();
+            }
+        }
+
+        assertNull(GzipMemberIndex.build(path, 2));
+    }
+
+    @Test
+    void testCorruptMember() throws IOException {
+
+        Path path = this.tempDirPath.resolve("lines.gz");
+        TestUtil.writeBgzf(path, createLines(5000, 2), 1000);
+
+        // cut the file in the middle of a member
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        assertThrows(IOException.class, () -> GzipMemberIndex.build(path, 2));
+    }
+}
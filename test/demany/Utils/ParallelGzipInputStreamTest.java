@@ -0,0 +1,240 @@
+package demany.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGzipInputStreamTest {
+
+    @TempDir
+    Path tempDirPath;
+
+    private static byte[] createFastqBytes(int numberOfSequences, int seed) {
+
+        Random random = new Random(seed);
+        char[] bases = {'A', 'C', 'G', 'T'};
+
+        StringBuilder fastqBuilder = new StringBuilder();
+        for (int i = 0; i < numberOfSequences; i++) {
+
+            fastqBuilder.append("@A00521:143:HWY2CDSXX:4:1101:").append(i).append(":1000 1:N:0:1\n");
+            for (int j = 0; j < 100; j++) { fastqBuilder.append(bases[random.nextInt(bases.length)]); }
+            fastqBuilder.append("\n+\n");
+            for (int j = 0; j < 100; j++) { fastqBuilder.append((char) ('F' - random.nextInt(3) * 7)); }
+            fastqBuilder.append("\n");
+        }
+
+        return fastqBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeGzipMember(OutputStream outputStream, byte[] bytes, int offset, int length)
+            throws IOException {
+
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream) {
+            @Override
+            public void close() throws IOException { finish(); def.end(); }
+        };
+        gzipOutputStream.write(bytes, offset, length);
+        gzipOutputStream.close();
+    }
+
+    private static void writeBgzfBlock(OutputStream outputStream, byte[] bytes, int offset, int length)
+            throws IOException {
+
+        // deflate the block
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+        byte[] compressedBytes = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressedBytes);
+        deflater.end();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, offset, length);
+
+        // write the header with the block size extra field, the data and the trailer
+        int blockSize = 18 + compressedLength + 8 - 1;
+        outputStream.write(new byte[]{
+                0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) blockSize, (byte) (blockSize >> 8)
+        });
+        outputStream.write(compressedBytes, 0, compressedLength);
+        writeIntLE(outputStream, (int) crc32.getValue());
+        writeIntLE(outputStream, length);
+    }
+
+    private static void writeIntLE(OutputStream outputStream, int value) throws IOException {
+        outputStream.write(new byte[]{(byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24)});
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7919];
+        int readCount;
+        while ((readCount = inputStream.read(buffer)) != -1) { byteArrayOutputStream.write(buffer, 0, readCount); }
+        inputStream.close();
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private void checkParallelRead(Path path, byte[] expectedBytes) throws IOException {
+
+        // the reference inflate
+        assertArrayEquals(expectedBytes, readAll(new GZIPInputStream(new FileInputStream(path.toFile()))));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            for (int chunkSize : new int[]{4096, 65536, ParallelGzipInputStream.DEFAULT_CHUNK_SIZE}) {
+                assertArrayEquals(
+                        expectedBytes, readAll(new ParallelGzipInputStream(
+                                path, new InflateChunkScheduler(executorService), chunkSize
+                        ))
+                );
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertArrayEquals(expectedBytes, readAll(Utils.getGzippedFileInputStream(path)));
+    }
+
+    @Test
+    void testMultiMemberGzip() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(20000, 1);
+        Path path = this.tempDirPath.resolve("multi_member.fastq.gz");
+
+        // write members of varying sizes, including empty members and ones larger than a chunk
+        Random random = new Random(2);
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+
+            int offset = 0;
+            while (offset < fastqBytes.length) {
+
+                int length = Math.min(random.nextInt(4) == 0 ? random.nextInt(600000) : random.nextInt(30000),
+                        fastqBytes.length - offset);
+                writeGzipMember(outputStream, fastqBytes, offset, length);
+                offset += length;
+            }
+        }
+
+        assertTrue(ParallelGzipInputStream.hasMultipleMembers(path));
+        checkParallelRead(path, fastqBytes);
+    }
+
+    @Test
+    void testBgzf() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(20000, 3);
+        Path path = this.tempDirPath.resolve("bgzf.fastq.gz");
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+
+            for (int offset = 0; offset < fastqBytes.length; offset += 65280) {
+                writeBgzfBlock(outputStream, fastqBytes, offset, Math.min(65280, fastqBytes.length - offset));
+            }
+
+            // the bgzf end of file marker
+            writeBgzfBlock(outputStream, fastqBytes, 0, 0);
+        }
+
+        assertTrue(ParallelGzipInputStream.hasMultipleMembers(path));
+        checkParallelRead(path, fastqBytes);
+    }
+
+    @Test
+    void testSingleMemberGzip() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(5000, 4);
+        Path path = this.tempDirPath.resolve("single_member.fastq.gz");
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            writeGzipMember(outputStream, fastqBytes, 0, fastqBytes.length);
+        }
+
+        assertFalse(ParallelGzipInputStream.hasMultipleMembers(path));
+        checkParallelRead(path, fastqBytes);
+    }
+
+    @Test
+    void testChunkPermitsAndBytes() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(20000, 6);
+        Path path = this.tempDirPath.resolve("permits.fastq.gz");
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            for (int offset = 0; offset < fastqBytes.length; offset += 50000) {
+                writeGzipMember(outputStream, fastqBytes, offset, Math.min(50000, fastqBytes.length - offset));
+            }
+        }
+
+        // a budget with no room inflates every chunk on the reading thread
+        InflateChunkScheduler noRoomScheduler = new InflateChunkScheduler(
+                runnable -> { throw new AssertionError("no chunk should be scheduled"); },
+                byteNumber -> false,
+                byteNumber -> { throw new AssertionError("no bytes were acquired"); }
+        );
+        assertArrayEquals(fastqBytes, readAll(new ParallelGzipInputStream(path, noRoomScheduler, 4096)));
+
+        // every permit and byte a chunk takes is given back, whether the chunk is read or dropped on close
+        AtomicLong chargedByteNumber = new AtomicLong(0);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            InflateChunkScheduler inflateChunkScheduler = new InflateChunkScheduler(
+                    executorService,
+                    byteNumber -> { chargedByteNumber.addAndGet(byteNumber); return true; },
+                    byteNumber -> chargedByteNumber.addAndGet(-byteNumber)
+            );
+
+            assertArrayEquals(fastqBytes, readAll(new ParallelGzipInputStream(path, inflateChunkScheduler, 4096)));
+
+            InputStream inputStream = new ParallelGzipInputStream(path, inflateChunkScheduler, 4096);
+            assertTrue(inputStream.read(new byte[100]) > 0);
+            inputStream.close();
+
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(0, chargedByteNumber.get());
+        assertEquals(InflateChunkScheduler.CHUNK_PERMIT_NUMBER, InflateChunkScheduler.getAvailablePermitNumber());
+    }
+
+    @Test
+    void testCorruptMember() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(5000, 5);
+        Path path = this.tempDirPath.resolve("corrupt.fastq.gz");
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        writeGzipMember(byteArrayOutputStream, fastqBytes, 0, 1000);
+        writeGzipMember(byteArrayOutputStream, fastqBytes, 1000, fastqBytes.length - 1000);
+
+        // break the crc of the last member
+        byte[] gzipBytes = byteArrayOutputStream.toByteArray();
+        gzipBytes[gzipBytes.length - 8] ^= 1;
+        Files.write(path, Arrays.copyOf(gzipBytes, gzipBytes.length));
+
+        assertThrows(IOException.class, () -> readAll(new ParallelGzipInputStream(path)));
+    }
+}
@@ -0,0 +1,64 @@
+package demany.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledGzipOutputStreamTest {
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+        PooledGzipOutputStream gzipOutputStream = new PooledGzipOutputStream(byteArrayOutputStream);
+        gzipOutputStream.write(bytes, 0, bytes.length / 2);
+        gzipOutputStream.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+        gzipOutputStream.close();
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    @Test
+    void testMembersMatchGzipOutputStream() throws IOException {
+
+        // a compressible payload, larger than the deflate buffer
+        byte[] bytes = new byte[200000];
+        Random random = new Random(11);
+        for (int i = 0; i < bytes.length; i++) { bytes[i] = (byte) "ACGTN\n".charAt(random.nextInt(6)); }
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
+        gzipOutputStream.write(bytes);
+        gzipOutputStream.close();
+
+        // the thread's deflater is reset between members, so every member comes out the same
+        for (int i = 0; i < 3; i++) {
+
+            byte[] gzipBytes = gzip(bytes);
+
+            assertArrayEquals(byteArrayOutputStream.toByteArray(), gzipBytes);
+            assertArrayEquals(bytes, new GZIPInputStream(new ByteArrayInputStream(gzipBytes)).readAllBytes());
+        }
+
+        // an empty member is still a valid gzip member
+        byte[] emptyGzipBytes = gzip(new byte[0]);
+        assertEquals(0, new GZIPInputStream(new ByteArrayInputStream(emptyGzipBytes)).readAllBytes().length);
+    }
+
+    @Test
+    void testCannotWriteAfterFinish() throws IOException {
+
+        PooledGzipOutputStream gzipOutputStream = new PooledGzipOutputStream(new ByteArrayOutputStream());
+        gzipOutputStream.write('A');
+        gzipOutputStream.finish();
+
+        assertThrows(RuntimeException.class, () -> gzipOutputStream.write('C'));
+    }
+}
@@ -0,0 +1,185 @@
+package demany.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeculativeGzipInputStreamTest {
+
+    @TempDir
+    Path tempDirPath;
+
+    private static byte[] createFastqBytes(int numberOfSequences, int seed) {
+
+        Random random = new Random(seed);
+        char[] bases = {'A', 'C', 'G', 'T'};
+
+        StringBuilder fastqBuilder = new StringBuilder();
+        for (int i = 0; i < numberOfSequences; i++) {
+
+            fastqBuilder.append("@A00521:143:HWY2CDSXX:4:1101:").append(i).append(":1000 1:N:0:1\n");
+            for (int j = 0; j < 100; j++) { fastqBuilder.append(bases[random.nextInt(bases.length)]); }
+            fastqBuilder.append("\n+\n");
+            for (int j = 0; j < 100; j++) { fastqBuilder.append((char) ('F' - random.nextInt(3) * 7)); }
+            fastqBuilder.append("\n");
+        }
+
+        return fastqBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeGzip(OutputStream outputStream, byte[] bytes, int level) throws IOException {
+
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream) {
+            {
+                def.setLevel(level);
+            }
+
+            @Override
+            public void close() throws IOException { finish(); def.end(); }
+        };
+        gzipOutputStream.write(bytes);
+        gzipOutputStream.close();
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7919];
+        int readCount;
+        while ((readCount = inputStream.read(buffer)) != -1) { byteArrayOutputStream.write(buffer, 0, readCount); }
+        inputStream.close();
+
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private void checkSpeculativeRead(Path path, byte[] expectedBytes) throws IOException {
+
+        // the reference inflate
+        assertArrayEquals(expectedBytes, readAll(new GZIPInputStream(new FileInputStream(path.toFile()))));
+
+        // every permit and byte a chunk takes is given back once the stream is read
+        AtomicLong chargedByteNumber = new AtomicLong(0);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            InflateChunkScheduler inflateChunkScheduler = new InflateChunkScheduler(
+                    executorService,
+                    byteNumber -> { chargedByteNumber.addAndGet(byteNumber); return true; },
+                    byteNumber -> chargedByteNumber.addAndGet(-byteNumber)
+            );
+
+            for (int chunkSize : new int[]{4096, 65536, SpeculativeGzipInputStream.DEFAULT_CHUNK_SIZE}) {
+                assertArrayEquals(
+                        expectedBytes, readAll(new SpeculativeGzipInputStream(path, inflateChunkScheduler, chunkSize))
+                );
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        assertEquals(0, chargedByteNumber.get());
+        assertEquals(InflateChunkScheduler.CHUNK_PERMIT_NUMBER, InflateChunkScheduler.getAvailablePermitNumber());
+
+        // a budget with no room decodes every chunk on the reading thread
+        InflateChunkScheduler noRoomScheduler = new InflateChunkScheduler(
+                runnable -> { throw new AssertionError("no chunk should be scheduled"); },
+                byteNumber -> false,
+                byteNumber -> { throw new AssertionError("no bytes were acquired"); }
+        );
+        assertArrayEquals(expectedBytes, readAll(new SpeculativeGzipInputStream(path, noRoomScheduler, 4096)));
+    }
+
+    @Test
+    void testCompressionLevels() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(20000, 1);
+
+        // stored, fast, default and best compression give different mixes of block types and back references
+        for (int level : new int[]{0, 1, Deflater.DEFAULT_COMPRESSION, 9}) {
+
+            Path path = this.tempDirPath.resolve("level_" + level + ".fastq.gz");
+            try (OutputStream outputStream = Files.newOutputStream(path)) { writeGzip(outputStream, fastqBytes, level); }
+
+            checkSpeculativeRead(path, fastqBytes);
+        }
+    }
+
+    @Test
+    void testRepetitiveData() throws IOException {
+
+        // long runs make back references that reach far into the previous chunk's window
+        byte[] bytes = new byte[3000000];
+        Random random = new Random(2);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = i % 50000 < 25000 ? (byte) ('A' + (i % 7)) : (byte) ('A' + random.nextInt(4));
+        }
+
+        Path path = this.tempDirPath.resolve("repetitive.gz");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            writeGzip(outputStream, bytes, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        checkSpeculativeRead(path, bytes);
+    }
+
+    @Test
+    void testFollowingMember() throws IOException {
+
+        byte[] firstBytes = createFastqBytes(8000, 3);
+        byte[] secondBytes = createFastqBytes(3000, 4);
+
+        Path path = this.tempDirPath.resolve("two_members.fastq.gz");
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            writeGzip(outputStream, firstBytes, Deflater.DEFAULT_COMPRESSION);
+            writeGzip(outputStream, secondBytes, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        byte[] expectedBytes = new byte[firstBytes.length + secondBytes.length];
+        System.arraycopy(firstBytes, 0, expectedBytes, 0, firstBytes.length);
+        System.arraycopy(secondBytes, 0, expectedBytes, firstBytes.length, secondBytes.length);
+
+        checkSpeculativeRead(path, expectedBytes);
+    }
+
+    @Test
+    void testCorruptTrailer() throws IOException {
+
+        byte[] fastqBytes = createFastqBytes(5000, 5);
+        Path path = this.tempDirPath.resolve("corrupt.fastq.gz");
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        writeGzip(byteArrayOutputStream, fastqBytes, Deflater.DEFAULT_COMPRESSION);
+
+        // break the crc
+        byte[] gzipBytes = byteArrayOutputStream.toByteArray();
+        gzipBytes[gzipBytes.length - 8] ^= 1;
+        Files.write(path, gzipBytes);
+
+        assertThrows(IOException.class, () -> readAll(new SpeculativeGzipInputStream(path)));
+    }
+
+    @Test
+    void testNotGzip() throws IOException {
+
+        Path path = this.tempDirPath.resolve("plain.fastq");
+        Files.write(path, createFastqBytes(10, 6));
+
+        assertThrows(IOException.class, () -> new SpeculativeGzipInputStream(path));
+    }
+}